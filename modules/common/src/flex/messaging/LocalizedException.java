@@ -16,6 +16,8 @@
  */
 package flex.messaging;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.Locale;
 
 import flex.messaging.util.PropertyStringResourceLoader;
@@ -31,6 +33,9 @@ import flex.messaging.util.ResourceLoader;
  *
  * The various overloads optionally support specifying a target locale as well as
  * arguments to substitute into the localized string if it is parameterized.
+ * The localized string is only looked up and formatted when it is first read,
+ * so exceptions that are created and handled without ever reporting their
+ * message cost no formatting.
  *
  * Localized error message and details strings are stored in the flex.messaging.errors
  * resource bundle. Entries must have the following format.
@@ -54,6 +59,11 @@ public class LocalizedException extends RuntimeException
 
     protected Throwable rootCause;
 
+    /** - transient, pending lookups are resolved before the exception is serialized. */
+    private transient PendingString pendingMessage;
+
+    private transient PendingString pendingDetails;
+
     /**
      * This number was generated using the 'serialver' command line tool.
      * This number should remain consistent with the version used by
@@ -87,6 +97,12 @@ public class LocalizedException extends RuntimeException
      */
     public String getDetails()
     {
+        PendingString pending = pendingDetails;
+        if (pending != null)
+        {
+            details = pending.format();
+            pendingDetails = null;
+        }
         return details;
     }
 
@@ -97,6 +113,7 @@ public class LocalizedException extends RuntimeException
      */
     public void setDetails(String details)
     {
+        pendingDetails = null;
         this.details = details;
     }
 
@@ -173,7 +190,7 @@ public class LocalizedException extends RuntimeException
     /**
      * Sets the message property to a localized string based on error number, variant and
      * target locale. The passed arguments are substituted into the parameterized error
-     * message string.
+     * message string when the message is first read.
      *
      * @param number The error number for this exception instance.
      * @param variant The variant of the error message for this instance.
@@ -183,8 +200,8 @@ public class LocalizedException extends RuntimeException
     public void setMessage(int number, String variant, Locale locale, Object[] arguments)
     {
         setNumber(number);
-        ResourceLoader resources = getResourceLoader();
-        setMessage(resources.getString(generateFullKey(number, variant), locale, arguments));
+        message = null;
+        pendingMessage = new PendingString(getResourceLoader(), generateFullKey(number, variant), locale, arguments);
     }
 
     /**
@@ -194,6 +211,12 @@ public class LocalizedException extends RuntimeException
      */
     public String getMessage()
     {
+        PendingString pending = pendingMessage;
+        if (pending != null)
+        {
+            message = pending.format();
+            pendingMessage = null;
+        }
         return message;
     }
 
@@ -204,6 +227,7 @@ public class LocalizedException extends RuntimeException
      */
     public void setMessage(String message)
     {
+        pendingMessage = null;
         this.message = message;
     }
 
@@ -278,7 +302,7 @@ public class LocalizedException extends RuntimeException
     /**
      * Sets the details property to a localized string based on error number, variant,
      * and target locale. The passed arguments are substituted into the parameterized error
-     * details string.
+     * details string when the details are first read.
      *
      * @param number The error number to lookup a localized details string for.
      * @param variant The variant of the details string to lookup.
@@ -288,8 +312,8 @@ public class LocalizedException extends RuntimeException
     public void setDetails(int number, String variant, Locale locale, Object[] arguments)
     {
         setNumber(number);
-        ResourceLoader resources = getResourceLoader();
-        setDetails(resources.getString(generateDetailsKey(number, variant), locale, arguments));
+        details = null;
+        pendingDetails = new PendingString(getResourceLoader(), generateDetailsKey(number, variant), locale, arguments);
     }
 
     /**
@@ -322,11 +346,40 @@ public class LocalizedException extends RuntimeException
     protected ResourceLoader getResourceLoader()
     {
         if (resourceLoader == null)
-            resourceLoader = new PropertyStringResourceLoader();
+            resourceLoader = PropertyStringResourceLoader.getSharedInstance();
 
         return resourceLoader;
     }
 
+    /**
+     * Captures the stack trace of the exception unless <code>isStackTraceCaptured()</code>
+     * returns false.
+     *
+     * @return This exception.
+     */
+    @Override public synchronized Throwable fillInStackTrace()
+    {
+        return isStackTraceCaptured() ? super.fillInStackTrace() : this;
+    }
+
+    /**
+     * Indicates whether the stack trace is captured when the exception is created.
+     * Internal exception types that are raised often during normal operation and
+     * never report their stack trace can override this to return false, which
+     * makes creating them considerably cheaper. Public exception types should
+     * keep their stack traces, which users rely on when debugging. Default is true.
+     * <p>
+     * This method is invoked from the <code>Throwable</code> constructor, before
+     * any fields are assigned, so overrides must not depend on instance state.
+     * </p>
+     *
+     * @return true if the stack trace is captured.
+     */
+    protected boolean isStackTraceCaptured()
+    {
+        return true;
+    }
+
     /**
      * Generates the full key to lookup a localized error message based on an error number
      * and an optional variant followed by a "-details" suffix. If the variant is null, the
@@ -363,6 +416,7 @@ public class LocalizedException extends RuntimeException
     public String toString()
     {
         String result = super.toString();
+        String details = getDetails();
         if (details != null)
         {
             StringBuffer buffer = new StringBuffer(result);
@@ -375,4 +429,39 @@ public class LocalizedException extends RuntimeException
         }
         return result;
     }
+
+    /**
+     * Resolves pending localized strings before the default serialization so that
+     * the message and details are sent as formatted text.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        getMessage();
+        getDetails();
+        out.defaultWriteObject();
+    }
+
+    /**
+     * A localized string lookup that is performed when the string is first read.
+     */
+    private static final class PendingString
+    {
+        private final ResourceLoader resourceLoader;
+        private final String key;
+        private final Locale locale;
+        private final Object[] arguments;
+
+        PendingString(ResourceLoader resourceLoader, String key, Locale locale, Object[] arguments)
+        {
+            this.resourceLoader = resourceLoader;
+            this.key = key;
+            this.locale = locale;
+            this.arguments = arguments;
+        }
+
+        String format()
+        {
+            return resourceLoader.getString(key, locale, arguments);
+        }
+    }
 }
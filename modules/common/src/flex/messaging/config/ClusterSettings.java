@@ -29,10 +29,12 @@ public class ClusterSettings extends PropertiesSettings
     public static final String IMPLEMENTATION_CLASS = "class";
 
     public static final String JGROUPS_CLUSTER = "flex.messaging.cluster.JGroupsCluster";
+    public static final String TCP_CLUSTER = "flex.messaging.cluster.TcpCluster";
 
     private String clusterName;
     private String propsFileName;
     private String implementationClass;
+    private boolean implementationClassSet;
     private boolean def;
     private boolean urlLoadBalancing;
 
@@ -128,7 +130,8 @@ public class ClusterSettings extends PropertiesSettings
 
     /**
      * Sets the name of the cluster implementation class.
-     * The default is 'flex.messaging.cluster.JGroupsCluster'.
+     * The default is 'flex.messaging.cluster.JGroupsCluster' when that class
+     * is available, and 'flex.messaging.cluster.TcpCluster' otherwise.
      *
      * @param className name of the cluster implementation class
      *
@@ -136,6 +139,18 @@ public class ClusterSettings extends PropertiesSettings
     public void setImplementationClass(String className)
     {
         this.implementationClass = className;
+        implementationClassSet = true;
+    }
+
+    /**
+     * Returns whether the implementation class was set, rather than left at
+     * its default.
+     *
+     * @return <code>true</code> if the implementation class was set; otherwise <code>false</code>.
+     */
+    public boolean isImplementationClassSet()
+    {
+        return implementationClassSet;
     }
 
     /**
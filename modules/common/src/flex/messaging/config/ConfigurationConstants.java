@@ -45,6 +45,7 @@ public interface ConfigurationConstants
     String ID_ATTR = "id";
     String CLASS_ATTR = "class";
     String PER_CLIENT_AUTH="per-client-authentication";
+    String AUTHORIZATION_CACHE_TTL_MILLIS = "authorization-cache-ttl-millis";
     String MESSAGE_TYPES_ATTR = "messageTypes";
 
     String PROPERTIES_ELEMENT = "properties";
@@ -147,6 +148,7 @@ public interface ConfigurationConstants
     String ADAPTIVE_FREQUENCY = "adaptive-frequency";
     String FLEX_CLIENT_RELIABLE_RECONNECT_DURATION_MILLIS = "reliable-reconnect-duration-millis";
     String FLEX_CLIENT_HEARTBEAT_INTERVAL_MILLIS = "heartbeat-interval-millis";
+    String FLEX_CLIENT_MAX_OUTBOUND_QUEUE_BYTES = "max-outbound-queue-bytes";
 
     // Message filters
     String ASYNC_MESSAGE_FILTERS_ELEMENT = "async-message-filters";
@@ -212,7 +214,8 @@ public interface ConfigurationConstants
 
     String[] FLEX_CLIENT_CHILDREN = {
         FLEX_CLIENT_TIMEOUT_MINUTES_ELEMENT, FLEX_CLIENT_OUTBOUND_QUEUE_PROCESSOR_ELEMENT,
-        ADAPTIVE_FREQUENCY, FLEX_CLIENT_RELIABLE_RECONNECT_DURATION_MILLIS, FLEX_CLIENT_HEARTBEAT_INTERVAL_MILLIS
+        ADAPTIVE_FREQUENCY, FLEX_CLIENT_RELIABLE_RECONNECT_DURATION_MILLIS, FLEX_CLIENT_HEARTBEAT_INTERVAL_MILLIS,
+        FLEX_CLIENT_MAX_OUTBOUND_QUEUE_BYTES
     };
 
     String[] FLEX_CLIENT_OUTBOUND_QUEUE_PROCESSOR_REQ_CHILDREN = {
@@ -238,7 +241,7 @@ public interface ConfigurationConstants
     };
 
     String[] LOGIN_COMMAND_CHILDREN = {
-        SERVER_ATTR, CLASS_ATTR, PER_CLIENT_AUTH
+        SERVER_ATTR, CLASS_ATTR, PER_CLIENT_AUTH, AUTHORIZATION_CACHE_TTL_MILLIS
     };
 
     String[] LOGIN_COMMAND_REQ_CHILDREN = {
@@ -464,4 +467,9 @@ public interface ConfigurationConstants
     int ERR_MSG_CLIENT_LOAD_BALANCING_URL_WITH_TOKEN = 11147;
 
     int EXTERNAL_ENTITY_NOT_ALLOW = 11149;
+
+    int INVALID_FLEX_CLIENT_MAX_OUTBOUND_QUEUE_BYTES = 11401;
+    int INVALID_OUTBOUND_QUEUE_OVERFLOW_POLICY = 11402;
+    int INVALID_AUTHORIZATION_CACHE_TTL_MILLIS = 11403;
+    int MISSING_MAX_POLLS_PER_SECOND = 11404;
 }
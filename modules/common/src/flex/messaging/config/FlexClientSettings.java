@@ -108,6 +108,30 @@ public class FlexClientSettings extends PropertiesSettings
         this.flexClientOutboundQueueProcessorProperties = flexClientOutboundQueueProcessorProperties;
     }
     
+    private long maxOutboundQueueBytes;
+
+    /**
+     * Returns the maximum estimated size in bytes of the messages in all
+     * outbound queues of FlexClients.
+     *
+     * @return The maximum size in bytes, or zero for no limit.
+     */
+    public long getMaxOutboundQueueBytes()
+    {
+        return maxOutboundQueueBytes;
+    }
+
+    /**
+     * Sets the maximum estimated size in bytes of the messages in all
+     * outbound queues of FlexClients.
+     *
+     * @param value The maximum size in bytes, or zero for no limit.
+     */
+    public void setMaxOutboundQueueBytes(long value)
+    {
+        maxOutboundQueueBytes = value;
+    }
+
     private int reliableReconnectDurationMillis;
     
     public int getReliableReconnectDurationMillis()
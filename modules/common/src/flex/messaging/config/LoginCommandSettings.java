@@ -28,6 +28,7 @@ public class LoginCommandSettings
     private String className;
     private String server;
     private boolean perClientAuthentication;
+    private long authorizationCacheTtlMillis;
 
     /**
      * Create a new <code>LoginCommandSettings</code> instance with default settings.
@@ -98,4 +99,26 @@ public class LoginCommandSettings
     {
         this.perClientAuthentication = perClientAuthentication;
     }
+
+    /**
+     * Returns how long authorization decisions are cached.
+     *
+     * @return The time to live of authorization decisions in milliseconds;
+     * zero if they are not cached.
+     */
+    public long getAuthorizationCacheTtlMillis()
+    {
+        return authorizationCacheTtlMillis;
+    }
+
+    /**
+     * Sets how long authorization decisions are cached.
+     *
+     * @param value The time to live of authorization decisions in milliseconds;
+     * zero if they are not cached.
+     */
+    public void setAuthorizationCacheTtlMillis(long value)
+    {
+        authorizationCacheTtlMillis = value;
+    }
 }
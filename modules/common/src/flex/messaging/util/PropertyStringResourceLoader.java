@@ -18,14 +18,17 @@ package flex.messaging.util;
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Locale;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import flex.messaging.log.Log;
 import flex.messaging.log.Logger;
@@ -38,6 +41,16 @@ import flex.messaging.log.LogCategories;
  * This class uses <code>MessageFormat</code> to perform substitutions
  * within parameterized strings.
  * </p>
+ * <p>
+ * Property files are looked up through the thread context class loader, so
+ * strings are kept apart per class loader. Each property file is read once per
+ * class loader and the resulting table is shared, read-only, by every
+ * <code>PropertyStringResourceLoader</code>, so lookups do not lock. Subclasses
+ * read their files into tables of their own, so that overrides of
+ * <code>loadStrings</code>, <code>loadProperties</code> and <code>loadFile</code>
+ * take effect. Exceptions that are not given a loader of their own use the
+ * loader returned by <code>getSharedInstance()</code>.
+ * </p>
  *
  * @see MessageFormat
  *
@@ -57,17 +70,26 @@ public class PropertyStringResourceLoader implements ResourceLoader
     // The category to write log entries under.
     private static final String LOG_CATEGORY = LogCategories.RESOURCE;
 
+    // The strings of every property file read so far by instances of this class, keyed
+    // by class loader and file name. Tables are never modified once published; a file
+    // that could not be read maps to an empty table. Guarded by itself.
+    private static final Map<ClassLoader, ConcurrentHashMap<String, Map<String, String>>> sharedPropertyTables =
+            new WeakHashMap<ClassLoader, ConcurrentHashMap<String, Map<String, String>>>();
+
     // The property bundle names to use in string lookups.
     private String[] propertyBundles;
 
     // The default FDS locale.
-    private Locale defaultLocale;
+    private volatile Locale defaultLocale;
+
+    // Whether this is the process-wide loader, whose default locale is fixed.
+    private boolean shared;
 
-    // The set of locales that have strings loaded.
-    private Set loadedLocales = new TreeSet();
+    // The strings of this loader for each class loader it has been used with. Guarded by itself.
+    private final Map<ClassLoader, LoaderStrings> loaderStrings = new WeakHashMap<ClassLoader, LoaderStrings>();
 
-    // A map of all loaded strings.
-    private Map strings = new HashMap();
+    // The strings of the class loader this loader was last used with.
+    private volatile LoaderStrings lastLoaderStrings;
 
     // The logger for this instance.
     private Logger logger;
@@ -105,6 +127,18 @@ public class PropertyStringResourceLoader implements ResourceLoader
         logger = Log.getLogger(LOG_CATEGORY);
     }
 
+    /**
+     * Returns the process-wide loader for the default property bundles. Its
+     * strings for the root locale and the JVM default locale are loaded when it
+     * is first requested, and its default locale cannot be changed.
+     *
+     * @return The shared <code>PropertyStringResourceLoader</code>.
+     */
+    public static PropertyStringResourceLoader getSharedInstance()
+    {
+        return SharedInstanceHolder.INSTANCE;
+    }
+
     // Implements flex.messaging.util.ResourceLoader.init; inherits javadoc specification.
     public void init(Map properties)
     {}
@@ -130,20 +164,16 @@ public class PropertyStringResourceLoader implements ResourceLoader
     // Implements flex.messaging.util.ResourceLoader.getString; inherits javadoc specification.
     public String getString(String key, Locale locale, Object[] arguments)
     {
-        synchronized(strings)
-        {
-            if (defaultLocale == null)
-            {
-                defaultLocale = getDefaultLocale();
-            }
-        }
-        String value = null;
-        String stringKey = null;
+        Locale defaultLocale = getDefaultLocale();
         String localeKey = (locale != null) ?
                            generateLocaleKey(locale) :
                            generateLocaleKey(defaultLocale);
         String originalStringKey = generateStringKey(key, localeKey);
-        int trimIndex = 0;
+
+        Map<String, String> strings = getLoaderStrings().strings;
+        String value = strings.get(originalStringKey);
+        if (value != null)
+            return substituteArguments(value, arguments);
 
         /*
          * Attempt to get a string for the target locale - fail back to less specific
@@ -151,21 +181,13 @@ public class PropertyStringResourceLoader implements ResourceLoader
          */
         while (true)
         {
-            loadStrings(localeKey);
-            stringKey = generateStringKey(key, localeKey);
-            synchronized(strings)
+            value = findString(key, localeKey);
+            if (value != null)
             {
-                value = (String) strings.get(stringKey);
-                if (value != null)
-                {
-                    if (!stringKey.equals(originalStringKey))
-                    {
-                        strings.put(originalStringKey, value);
-                    }
-                    return substituteArguments(value, arguments);
-                }
+                strings.put(originalStringKey, value);
+                return substituteArguments(value, arguments);
             }
-            trimIndex = localeKey.lastIndexOf('_');
+            int trimIndex = localeKey.lastIndexOf('_');
             if (trimIndex != -1)
             {
                 localeKey = localeKey.substring(0, trimIndex);
@@ -182,30 +204,20 @@ public class PropertyStringResourceLoader implements ResourceLoader
          */
         if ((locale != null) && (!locale.equals(defaultLocale)))
         {
-            localeKey = generateLocaleKey(defaultLocale);
-            stringKey = generateStringKey(key, localeKey);
-            synchronized(strings)
+            value = findString(key, generateLocaleKey(defaultLocale));
+            if (value != null)
             {
-                value = (String) strings.get(stringKey);
-                if (value != null)
-                {
-                    strings.put(originalStringKey, value);
-                    return substituteArguments(value, arguments);
-                }
+                strings.put(originalStringKey, value);
+                return substituteArguments(value, arguments);
             }
         }
 
         // As a last resort, try to get a non-locale-specific string.
-        loadStrings("");
-        stringKey = generateStringKey(key, "");
-        synchronized(strings)
+        value = findString(key, "");
+        if (value != null)
         {
-            value = (String) strings.get(stringKey);
-            if (value != null)
-            {
-                strings.put(originalStringKey, value);
-                return substituteArguments(value, arguments);
-            }
+            strings.put(originalStringKey, value);
+            return substituteArguments(value, arguments);
         }
 
         // No string is available. Return a formatted missing string value.
@@ -220,17 +232,26 @@ public class PropertyStringResourceLoader implements ResourceLoader
      */
     public void setDefaultLocale(String locale)
     {
-        defaultLocale = LocaleUtils.buildLocale(locale);
+        setDefaultLocale(LocaleUtils.buildLocale(locale));
     }
 
     /**
      * Sets the default locale to be used when locating resources.
      *
      * @param locale The default locale to be used.
+     * @throws UnsupportedOperationException if this is the shared loader.
      */
     public void setDefaultLocale(Locale locale)
     {
+        if (shared)
+            throw new UnsupportedOperationException("The default locale of the shared resource loader cannot be changed.");
+
         defaultLocale = locale;
+        synchronized (loaderStrings)
+        {
+            for (LoaderStrings ls : loaderStrings.values())
+                ls.strings.clear();
+        }
     }
 
     /**
@@ -247,11 +268,13 @@ public class PropertyStringResourceLoader implements ResourceLoader
 
     /**
      * Loads localized strings for the specified locale from a property file.
+     * Files already read for the thread context class loader are not read again.
      *
      * @param localeKey The locale to load strings for.
      */
-    protected synchronized void loadStrings(String localeKey)
+    protected void loadStrings(String localeKey)
     {
+        Set<String> loadedLocales = getLoaderStrings().loadedLocales;
         if (loadedLocales.contains(localeKey))
         {
             return;
@@ -265,6 +288,7 @@ public class PropertyStringResourceLoader implements ResourceLoader
                 loadProperties(localeKey, propertyBundle);
             }
         }
+        loadedLocales.add(localeKey);
     }
 
     protected InputStream loadFile(String filename)
@@ -285,12 +309,11 @@ public class PropertyStringResourceLoader implements ResourceLoader
     protected void loadProperties(String localeKey, String propertyBundle)
     {
         // Build the path to the target property file.
-        String filename = propertyBundle;
-        if (localeKey.length() > 0)
-        {
-            filename += "_" + localeKey;
-        }
-        filename += ".properties";
+        String filename = generateFileName(localeKey, propertyBundle);
+        ConcurrentHashMap<String, Map<String, String>> propertyTables = getLoaderStrings().propertyTables;
+        if (propertyTables.containsKey(filename))
+            return;
+
         // Load the property file.
         InputStream stream = loadFile(filename); 
             
@@ -325,19 +348,105 @@ public class PropertyStringResourceLoader implements ResourceLoader
         {
             logger.warn("The class loader could not locate the string resource property file '" + filename + "'. This may not be an issue if a property file is available for a less specific locale or the default locale.");
         }
-        // Move strings into string cache.
+        // Publish the strings to the tables of the class loader.
+        Map<String, String> table = Collections.emptyMap();
         if (props.size() > 0)
         {
-            synchronized(strings)
+            table = new HashMap<String, String>(props.size() * 2);
+            Iterator iter = props.keySet().iterator();
+            while (iter.hasNext())
+            {
+                String key = (String) iter.next();
+                table.put(key, props.getProperty(key));
+            }
+            table = Collections.unmodifiableMap(table);
+        }
+        propertyTables.putIfAbsent(filename, table);
+    }
+
+    /**
+     * Looks up a string for an exact locale. Later property bundles take
+     * precedence over earlier ones.
+     *
+     * @param key The string to look up.
+     * @param localeKey The locale to look the string up for.
+     * @return The string or <code>null</code> if no bundle defines it for the locale.
+     */
+    private String findString(String key, String localeKey)
+    {
+        loadStrings(localeKey);
+        if (propertyBundles == null)
+            return null;
+
+        ConcurrentHashMap<String, Map<String, String>> propertyTables = getLoaderStrings().propertyTables;
+        for (int i = propertyBundles.length - 1; i >= 0; i--)
+        {
+            Map<String, String> table = propertyTables.get(generateFileName(localeKey, propertyBundles[i]));
+            String value = table != null ? table.get(key) : null;
+            if (value != null)
+                return value;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the strings of this loader for the thread context class loader,
+     * which <code>loadFile</code> looks property files up with.
+     *
+     * @return The strings for the class loader.
+     */
+    private LoaderStrings getLoaderStrings()
+    {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null)
+            classLoader = PropertyStringResourceLoader.class.getClassLoader();
+
+        LoaderStrings ls = lastLoaderStrings;
+        if (ls != null && ls.classLoader.get() == classLoader)
+            return ls;
+
+        synchronized (loaderStrings)
+        {
+            ls = loaderStrings.get(classLoader);
+            if (ls == null)
             {
-                Iterator iter = props.keySet().iterator();
-                while (iter.hasNext())
+                ConcurrentHashMap<String, Map<String, String>> propertyTables;
+                if (getClass() == PropertyStringResourceLoader.class)
+                {
+                    synchronized (sharedPropertyTables)
+                    {
+                        propertyTables = sharedPropertyTables.get(classLoader);
+                        if (propertyTables == null)
+                        {
+                            propertyTables = new ConcurrentHashMap<String, Map<String, String>>();
+                            sharedPropertyTables.put(classLoader, propertyTables);
+                        }
+                    }
+                }
+                else
                 {
-                    String key = (String) iter.next();
-                    strings.put(generateStringKey(key, localeKey), props.getProperty(key));
+                    propertyTables = new ConcurrentHashMap<String, Map<String, String>>();
                 }
+                ls = new LoaderStrings(classLoader, propertyTables);
+                loaderStrings.put(classLoader, ls);
             }
         }
+        lastLoaderStrings = ls;
+        return ls;
+    }
+
+    /**
+     * Generates the name of the property file of a bundle for a locale.
+     *
+     * @param localeKey The locale.
+     * @param propertyBundle The property bundle.
+     * @return The property file name.
+     */
+    private String generateFileName(String localeKey, String propertyBundle)
+    {
+        return (localeKey.length() > 0) ?
+               (propertyBundle + "_" + localeKey + ".properties") :
+               (propertyBundle + ".properties");
     }
 
     /**
@@ -375,4 +484,50 @@ public class PropertyStringResourceLoader implements ResourceLoader
         return MessageFormat.format(parameterized, arguments).trim();
     }
 
-}
\ No newline at end of file
+    /**
+     * The strings of a loader for one class loader.
+     */
+    private static final class LoaderStrings
+    {
+        // Weak so that the loader does not keep an undeployed application's class loader.
+        final WeakReference<ClassLoader> classLoader;
+
+        // The property tables, keyed by file name.
+        final ConcurrentHashMap<String, Map<String, String>> propertyTables;
+
+        // The set of locales that have strings loaded.
+        final Set<String> loadedLocales = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        // The strings resolved so far, keyed by string and requested locale.
+        final Map<String, String> strings = new ConcurrentHashMap<String, String>();
+
+        LoaderStrings(ClassLoader classLoader, ConcurrentHashMap<String, Map<String, String>> propertyTables)
+        {
+            this.classLoader = new WeakReference<ClassLoader>(classLoader);
+            this.propertyTables = propertyTables;
+        }
+    }
+
+    /**
+     * Holds the shared loader so the default bundles are only read once one is needed.
+     */
+    private static final class SharedInstanceHolder
+    {
+        static final PropertyStringResourceLoader INSTANCE = new PropertyStringResourceLoader();
+
+        static
+        {
+            String localeKey = INSTANCE.generateLocaleKey(INSTANCE.getDefaultLocale());
+            while (true)
+            {
+                INSTANCE.loadStrings(localeKey);
+                int trimIndex = localeKey.lastIndexOf('_');
+                if (trimIndex == -1)
+                    break;
+                localeKey = localeKey.substring(0, trimIndex);
+            }
+            INSTANCE.loadStrings("");
+            INSTANCE.shared = true;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.management.runtime.messaging;
+
+import flex.management.BaseControl;
+import flex.management.runtime.AdminConsoleTypes;
+import flex.messaging.FlexSessionManager;
+
+/**
+ * The <code>FlexSessionManagerControl</code> class is the MBean implementation for
+ * monitoring the FlexSessions of a <code>FlexSessionManager</code> at runtime.
+ */
+public class FlexSessionManagerControl extends BaseControl implements FlexSessionManagerControlMBean
+{
+    private FlexSessionManager flexSessionManager;
+
+    public FlexSessionManagerControl(BaseControl parent, FlexSessionManager manager)
+    {
+        super(parent);
+        flexSessionManager = manager;
+    }
+
+    public void onRegistrationComplete()
+    {
+        String name = getObjectName().getCanonicalName();
+        getRegistrar().registerObject(AdminConsoleTypes.GENERAL_POLLABLE, name, "FlexSessionCount");
+        getRegistrar().registerObject(AdminConsoleTypes.GENERAL_SERVER, name, "MaxFlexSessionsInCurrentHour");
+    }
+
+    /* (non-Javadoc)
+     * @see flex.management.BaseControl#getId()
+     */
+    public String getId()
+    {
+        return flexSessionManager.getId();
+    }
+
+    /* (non-Javadoc)
+     * @see flex.management.BaseControl#getType()
+     */
+    public String getType()
+    {
+        return FlexSessionManager.TYPE;
+    }
+
+    /* (non-Javadoc)
+     * @see flex.management.runtime.messaging.FlexSessionManagerControlMBean#getFlexSessionCount()
+     */
+    public Integer getFlexSessionCount()
+    {
+        return new Integer(flexSessionManager.getFlexSessionCount());
+    }
+
+    /* (non-Javadoc)
+     * @see flex.management.runtime.messaging.FlexSessionManagerControlMBean#getMaxFlexSessionsInCurrentHour()
+     */
+    public Integer getMaxFlexSessionsInCurrentHour()
+    {
+        return new Integer(flexSessionManager.getMaxFlexSessionsInCurrentHour());
+    }
+}
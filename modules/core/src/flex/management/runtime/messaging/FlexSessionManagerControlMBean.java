@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.management.runtime.messaging;
+
+import java.io.IOException;
+
+import flex.management.BaseControlMBean;
+
+/**
+ * Defines the runtime monitoring and management interface for managed Flex session managers.
+ */
+public interface FlexSessionManagerControlMBean extends BaseControlMBean
+{
+    /**
+     * Returns the number of active Flex sessions.
+     *
+     * @return The number of active Flex sessions.
+     * @throws IOException Throws IOException.
+     */
+    Integer getFlexSessionCount() throws IOException;
+
+    /**
+     * Returns the maximum number of concurrent Flex sessions over the last hour.
+     *
+     * @return The maximum number of concurrent Flex sessions over the last hour.
+     * @throws IOException Throws IOException.
+     */
+    Integer getMaxFlexSessionsInCurrentHour() throws IOException;
+}
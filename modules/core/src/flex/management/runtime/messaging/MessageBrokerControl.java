@@ -20,6 +20,7 @@ import flex.management.BaseControl;
 import flex.management.runtime.AdminConsoleDisplayRegistrar;
 import flex.management.runtime.AdminConsoleTypes;
 import flex.messaging.MessageBroker;
+import flex.messaging.client.FlexClientManager;
 import flex.messaging.endpoints.AMFEndpoint;
 import flex.messaging.endpoints.AbstractEndpoint;
 import flex.messaging.endpoints.Endpoint;
@@ -82,6 +83,7 @@ public class MessageBrokerControl extends BaseControl implements MessageBrokerCo
     {
         String name = this.getObjectName().getCanonicalName();
         getRegistrar().registerObject(AdminConsoleTypes.GENERAL_POLLABLE, name, "FlexSessionCount");
+        getRegistrar().registerObject(AdminConsoleTypes.GENERAL_POLLABLE, name, "OutboundQueueBytes");
         getRegistrar().registerObjects(new int[] {AdminConsoleTypes.GENERAL_POLLABLE, AdminConsoleTypes.GRAPH_BY_POLL_INTERVAL },
                 name, new String[] {"AMFThroughput", "HTTPThroughput", "EnterpriseThroughput"});
 
@@ -214,6 +216,16 @@ public class MessageBrokerControl extends BaseControl implements MessageBrokerCo
         return broker.getFlexSessionManager().getFlexSessionCount();
     }
 
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.MessageBrokerControlMBean#getOutboundQueueBytes()
+     */
+    public Long getOutboundQueueBytes()
+    {
+        FlexClientManager flexClientManager = broker.getFlexClientManager();
+        return flexClientManager != null ? flexClientManager.getOutboundQueueBytes() : 0L;
+    }
+
     /*
      *  (non-Javadoc)
      * @see flex.management.runtime.MessageBrokerControlMBean#getMaxFlexSessionsInCurrentHour()
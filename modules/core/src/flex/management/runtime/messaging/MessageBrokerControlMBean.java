@@ -79,6 +79,15 @@ public interface MessageBrokerControlMBean extends BaseControlMBean
      */
     Integer getMaxFlexSessionsInCurrentHour() throws IOException;
 
+    /**
+     * Returns the estimated size in bytes of the messages held in the outbound
+     * queues of all FlexClients of the <code>MessageBroker</code>.
+     *
+     * @return The estimated size of the queued outbound messages in bytes.
+     * @throws IOException Throws IOException.
+     */
+    Long getOutboundQueueBytes() throws IOException;
+
     /**
      * Returns the number of Enterprise Connections across all
      * Enterprise Endpoints.
@@ -37,6 +37,7 @@ public class FlexClientManagerControl extends BaseControl implements FlexClientM
     {
         String name = getObjectName().getCanonicalName();
         getRegistrar().registerObject(AdminConsoleTypes.GENERAL_POLLABLE, name, "FlexClientCount");
+        getRegistrar().registerObject(AdminConsoleTypes.GENERAL_POLLABLE, name, "ExpiredMessageCount");
     }
 
     /* (non-Javadoc)
@@ -93,5 +94,13 @@ public class FlexClientManagerControl extends BaseControl implements FlexClientM
     public Integer getFlexClientCount() 
     {
         return new Integer(flexClientManager.getFlexClientCount());
-    }    
+    }
+
+    /* (non-Javadoc)
+     * @see flex.management.runtime.messaging.client.FlexClientManagerControlMBean#getExpiredMessageCount()
+     */
+    public Long getExpiredMessageCount()
+    {
+        return new Long(flexClientManager.getExpiredMessageCount());
+    }
 }
@@ -67,4 +67,13 @@ public interface FlexClientManagerControlMBean extends BaseControlMBean
      * @throws IOException Throws IOException.
      */
     Integer getFlexClientCount() throws IOException;
+
+    /**
+     * Returns the number of messages that expired before they were delivered
+     * to the clients.
+     *
+     * @return The number of messages that expired before delivery.
+     * @throws IOException Throws IOException.
+     */
+    Long getExpiredMessageCount() throws IOException;
 }
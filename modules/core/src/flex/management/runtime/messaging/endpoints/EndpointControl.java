@@ -39,6 +39,8 @@ public abstract class EndpointControl extends BaseControl implements EndpointCon
     private long serviceMessageStart;
     private AtomicLong bytesDeserialized = new AtomicLong(0);
     private AtomicLong bytesSerialized = new AtomicLong(0);
+    private AtomicLong conflatableMessageCount = new AtomicLong(0);
+    private AtomicLong conflatedMessageCount = new AtomicLong(0);
 
     /**
      * Constructs an <code>EndpointControl</code>, assigning its managed endpoint and
@@ -59,7 +61,8 @@ public abstract class EndpointControl extends BaseControl implements EndpointCon
     {
         String name = this.getObjectName().getCanonicalName();
         String[] generalNames = { "SecurityConstraint"};
-        String[] generalPollables = { "ServiceMessageCount", "LastServiceMessageTimestamp", "ServiceMessageFrequency"};
+        String[] generalPollables = { "ServiceMessageCount", "LastServiceMessageTimestamp", "ServiceMessageFrequency",
+                "ConflatableMessageCount", "ConflatedMessageCount", "ConflationRatio"};
         String[] pollableGraphByInterval = {"BytesDeserialized", "BytesSerialized"};
 
         getRegistrar().registerObjects(AdminConsoleTypes.ENDPOINT_SCALAR,
@@ -236,4 +239,45 @@ public abstract class EndpointControl extends BaseControl implements EndpointCon
     public void addToBytesSerialized(int currentBytesSerialized) {
         bytesSerialized.addAndGet(currentBytesSerialized);
     }
+
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.EndpointControlMBean#getConflatableMessageCount()
+     */
+    public Long getConflatableMessageCount()
+    {
+        return Long.valueOf(conflatableMessageCount.get());
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.EndpointControlMBean#getConflatedMessageCount()
+     */
+    public Long getConflatedMessageCount()
+    {
+        return Long.valueOf(conflatedMessageCount.get());
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.EndpointControlMBean#getConflationRatio()
+     */
+    public Double getConflationRatio()
+    {
+        long conflatable = conflatableMessageCount.get();
+        return new Double(conflatable > 0 ? (double)conflatedMessageCount.get() / conflatable : 0);
+    }
+
+    /**
+     * Increments the count of messages with a conflation key that were queued for
+     * clients of the endpoint, and the count of those that replaced a queued message.
+     *
+     * @param conflated Whether the message replaced a queued message with the same key.
+     */
+    public void incrementConflationMessageCount(boolean conflated)
+    {
+        conflatableMessageCount.incrementAndGet();
+        if (conflated)
+            conflatedMessageCount.incrementAndGet();
+    }
 }
@@ -108,4 +108,32 @@ public interface EndpointControlMBean extends BaseControlMBean
      * @throws IOException Throws IOException.
      */
     Long getBytesSerialized() throws IOException;
+
+    /**
+     * Returns the count of messages with a conflation key that have been queued
+     * for clients of this endpoint by a conflating outbound queue processor.
+     *
+     * @return The count of messages with a conflation key.
+     * @throws IOException Throws IOException.
+     */
+    Long getConflatableMessageCount() throws IOException;
+
+    /**
+     * Returns the count of queued messages that have been replaced by a newer
+     * message with the same conflation key, and so were never sent or kept
+     * in memory until the next flush.
+     *
+     * @return The count of conflated messages.
+     * @throws IOException Throws IOException.
+     */
+    Long getConflatedMessageCount() throws IOException;
+
+    /**
+     * Returns the fraction of messages with a conflation key that replaced a
+     * queued message.
+     *
+     * @return The conflation ratio, between 0 and 1.
+     * @throws IOException Throws IOException.
+     */
+    Double getConflationRatio() throws IOException;
 }
@@ -44,7 +44,7 @@ public abstract class PollingEndpointControl extends EndpointControl implements
         super.onRegistrationComplete();
 
         String name = this.getObjectName().getCanonicalName();
-        String[] generalPollables = {"WaitingPollRequestsCount"};
+        String[] generalPollables = {"WaitingPollRequestsCount", "PollsPerSecond", "AveragePollingInterval"};
 
         getRegistrar().registerObjects(AdminConsoleTypes.ENDPOINT_POLLABLE, name, generalPollables);
         getRegistrar().registerObject(AdminConsoleTypes.ENDPOINT_SCALAR, name, "MaxWaitingPollRequests");
@@ -69,4 +69,24 @@ public abstract class PollingEndpointControl extends EndpointControl implements
         int waitingPollRequestsCount = ((BasePollingHTTPEndpoint)endpoint).getWaitingPollRequestsCount();
         return new Integer(waitingPollRequestsCount);
     }
+
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.messaging.endpoints.PollingEndpointControlMBean#getPollsPerSecond()
+     */
+    public Integer getPollsPerSecond()
+    {
+        int pollsPerSecond = ((BasePollingHTTPEndpoint)endpoint).getPollsPerSecond();
+        return new Integer(pollsPerSecond);
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see flex.management.runtime.messaging.endpoints.PollingEndpointControlMBean#getAveragePollingInterval()
+     */
+    public Integer getAveragePollingInterval()
+    {
+        int averagePollingInterval = ((BasePollingHTTPEndpoint)endpoint).getAveragePollingInterval();
+        return new Integer(averagePollingInterval);
+    }
 }
@@ -42,4 +42,22 @@ public interface PollingEndpointControlMBean extends EndpointControlMBean
      * @throws IOException Throws IOException.
      */
     Integer getWaitingPollRequestsCount() throws IOException;
+
+    /**
+     * Returns the number of poll requests the endpoint handled per second while
+     * adaptive polling is enabled.
+     *
+     * @return The number of poll requests per second.
+     * @throws IOException Throws IOException.
+     */
+    Integer getPollsPerSecond() throws IOException;
+
+    /**
+     * Returns the moving average of the polling intervals in milliseconds that
+     * adaptive polling suggested to clients.
+     *
+     * @return The average suggested polling interval in milliseconds.
+     * @throws IOException Throws IOException.
+     */
+    Integer getAveragePollingInterval() throws IOException;
 }
@@ -78,12 +78,13 @@ public class FactoryInstance
 
         if (!FlexFactory.SCOPE_SESSION.equals(scope)
                 && !FlexFactory.SCOPE_APPLICATION.equals(scope)
-                && !FlexFactory.SCOPE_REQUEST.equals(scope))
+                && !FlexFactory.SCOPE_REQUEST.equals(scope)
+                && !FlexFactory.SCOPE_POOLED.equals(scope))
         {
             // Invalid scope setting for RemotingService destination '{id}'.
-            // Valid options are 'request', 'session', or 'application'.
+            // Valid options are 'request', 'session', 'application', or 'pooled'.
             ConfigurationException ex = new ConfigurationException();
-            ex.setMessage(INVALID_SCOPE, new Object[] {id, "\'request\', \'session\', or \'application\'"});
+            ex.setMessage(INVALID_SCOPE, new Object[] {id, "\'request\', \'session\', \'application\', or \'pooled\'"});
             throw ex;
         }
 
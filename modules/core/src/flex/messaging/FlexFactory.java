@@ -37,6 +37,8 @@ public interface FlexFactory extends FlexConfigurable
     String SCOPE_SESSION = "session";
     /** Application scope string .*/
     String SCOPE_APPLICATION = "application";
+    /** Pooled scope string. */
+    String SCOPE_POOLED = "pooled";
     /** Scope string. */
     String SCOPE = "scope";
     /** Source string. */
@@ -30,7 +30,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
@@ -70,6 +70,12 @@ public abstract class FlexSession extends TimeoutAbstractObject implements FlexC
      */
     private static final int FLEX_SESSION_INVALIDATED = 10019;
 
+    /**
+     * The key of an attribute bound under a null name, which the attributes
+     * map does not accept as a key.
+     */
+    private static final Object NULL_ATTRIBUTE_NAME = new Object();
+
     //--------------------------------------------------------------------------
     //
     // Constructor
@@ -148,12 +154,13 @@ public abstract class FlexSession extends TimeoutAbstractObject implements FlexC
     /**
      * Flag indicated whether the session has been invalidated/destroyed.
      */
-    protected boolean valid = true;
+    protected volatile boolean valid = true;
 
     /**
-     * The attributes associated with this session.
+     * The attributes associated with this session; created on first use. Attributes are read
+     * and written without holding the session lock.
      */
-    private Map<String, Object> attributes;
+    private volatile Map<Object, Object> attributes;
 
     /**
      * Registered attribute listeners for the session.
@@ -438,12 +445,10 @@ public abstract class FlexSession extends TimeoutAbstractObject implements FlexC
      */
     public Object getAttribute(String name)
     {
-        synchronized (lock)
-        {
-            checkValid();
+        checkValid();
 
-            return (attributes == null) ? null : attributes.get(name);
-        }
+        Map<Object, Object> attributes = this.attributes;
+        return (attributes == null) ? null : attributes.get(attributeKey(name));
     }
 
     /**
@@ -453,17 +458,18 @@ public abstract class FlexSession extends TimeoutAbstractObject implements FlexC
      */
     public Enumeration<String> getAttributeNames()
     {
-        synchronized (lock)
-        {
-            checkValid();
-
-            if (attributes == null)
-                return Collections.enumeration(Collections.<String>emptyList());
-
-            // Return a copy so we do not run into concurrent modification problems if
-            // someone adds to the attributes while iterating through the returned enumeration.
-            return Collections.enumeration(new ArrayList<String>(attributes.keySet()));
-        }
+        checkValid();
+
+        Map<Object, Object> attributes = this.attributes;
+        if (attributes == null)
+            return Collections.enumeration(Collections.<String>emptyList());
+
+        // Return a copy so the enumeration does not reflect attributes that are
+        // added or removed while iterating through it.
+        List<String> names = new ArrayList<String>(attributes.size());
+        for (Object key : attributes.keySet())
+            names.add(attributeName(key));
+        return Collections.enumeration(names);
     }
 
     /**
@@ -514,14 +520,10 @@ public abstract class FlexSession extends TimeoutAbstractObject implements FlexC
      */
     public void removeAttribute(String name)
     {
-        Object value; // Used for event dispatch after the attribute is removed.
+        checkValid();
 
-        synchronized (lock)
-        {
-            checkValid(); // Re-enters lock but should be fast because we're already holding it.
-
-            value = (attributes != null) ? attributes.remove(name) : null;
-        }
+        Map<Object, Object> attributes = this.attributes;
+        Object value = (attributes != null) ? attributes.remove(attributeKey(name)) : null; // Used for event dispatch.
 
         // If no value was bound under this name it's a no-op.
         if (value == null)
@@ -572,19 +574,23 @@ public abstract class FlexSession extends TimeoutAbstractObject implements FlexC
             return;
         }
 
-        Object oldValue; // Used to determine which events to dispatch after the set is performed.
+        checkValid();
 
-        // Only synchronize for the attribute mutation; event dispatch doesn't require it.
-        synchronized (lock)
+        Map<Object, Object> attributes = this.attributes;
+        if (attributes == null)
         {
-            checkValid(); // Re-enters lock but should be fast because we're already holding it.
-
-            if (attributes == null)
-                attributes = new HashMap<String, Object>();
-
-            oldValue = attributes.put(name, value);
+            // Only synchronize to create the attributes; reads, writes and event dispatch don't require it.
+            synchronized (lock)
+            {
+                if (this.attributes == null)
+                    this.attributes = new ConcurrentHashMap<Object, Object>();
+                attributes = this.attributes;
+            }
         }
 
+        // Used to determine which events to dispatch after the set is performed.
+        Object oldValue = attributes.put(attributeKey(name), value);
+
         if (oldValue == null)
         {
             notifyAttributeBound(name, value);
@@ -725,14 +731,13 @@ public abstract class FlexSession extends TimeoutAbstractObject implements FlexC
         }
 
         // Unbind all attributes.
+        Map<Object, Object> attributes = this.attributes;
         if (attributes != null && !attributes.isEmpty())
         {
-            Set<String> keySet = attributes.keySet();
-            String[] keys = keySet.toArray(new String[keySet.size()]);
-            for (String key : keys)
-                removeAttribute(key);
+            for (Object key : attributes.keySet())
+                removeAttribute(attributeName(key));
 
-            attributes = null;
+            this.attributes = null;
         }
 
         internalInvalidate();
@@ -945,14 +950,12 @@ public abstract class FlexSession extends TimeoutAbstractObject implements FlexC
      */
     protected void checkValid()
     {
-        synchronized (lock)
+        // The valid flag is volatile so this check doesn't need the session lock.
+        if (!valid)
         {
-            if (!valid)
-            {
-                LocalizedException e = new LocalizedException();
-                e.setMessage(FLEX_SESSION_INVALIDATED);
-                throw e;
-            }
+            LocalizedException e = new LocalizedException();
+            e.setMessage(FLEX_SESSION_INVALIDATED);
+            throw e;
         }
     }
 
@@ -1061,4 +1064,26 @@ public abstract class FlexSession extends TimeoutAbstractObject implements FlexC
                 iter.next().sessionCreated(this);
         }
     }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the key that the attribute with the specified name is stored under.
+     */
+    private static Object attributeKey(String name)
+    {
+        return (name == null) ? NULL_ATTRIBUTE_NAME : name;
+    }
+
+    /**
+     * Returns the name of the attribute stored under the specified key.
+     */
+    private static String attributeName(Object key)
+    {
+        return (key == NULL_ATTRIBUTE_NAME) ? null : (String)key;
+    }
 }
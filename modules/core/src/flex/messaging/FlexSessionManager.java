@@ -17,7 +17,11 @@
 package flex.messaging;
 
 import flex.management.ManageableComponent;
+import flex.management.runtime.messaging.FlexSessionManagerControl;
 import flex.messaging.log.LogCategories;
+import flex.messaging.util.concurrent.SlidingWindowMax;
+import flex.messaging.util.concurrent.StripedCounter;
+
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -28,6 +32,11 @@ public class FlexSessionManager extends ManageableComponent
     public static final String TYPE = "FlexSessionManager";
     
     private static final long MILLIS_IN_HOUR = 3600000;
+
+    /**
+     * The number of slots the hour over which the maximum session count is tracked is divided into.
+     */
+    private static final int MAX_SESSIONS_WINDOW_SLOTS = 60;
     
     //--------------------------------------------------------------------------
     //
@@ -72,9 +81,9 @@ public class FlexSessionManager extends ManageableComponent
     //--------------------------------------------------------------------------
 
     /**
-     * Instance-level lock.
+     * The MBean controller for this manager.
      */
-    private final Object lock = new Object();
+    private FlexSessionManagerControl controller;
     
     //--------------------------------------------------------------------------
     //
@@ -101,7 +110,10 @@ public class FlexSessionManager extends ManageableComponent
     //  flexSessionCount
     //----------------------------------
     
-    private int flexSessionCount;
+    /**
+     * Striped so that sessions created and destroyed on many threads at once don't contend.
+     */
+    private final StripedCounter flexSessionCount = new StripedCounter();
     
     /**
      * Returns the total count of active FlexSessions.
@@ -110,10 +122,7 @@ public class FlexSessionManager extends ManageableComponent
      */
     public int getFlexSessionCount()
     {
-        synchronized (lock)
-        {
-            return flexSessionCount;
-        }
+        return (int)flexSessionCount.sum();
     }
 
     //----------------------------------
@@ -183,11 +192,8 @@ public class FlexSessionManager extends ManageableComponent
      */
     public void registerFlexSession(FlexSession session)
     {
-        synchronized (lock)
-        {
-            ++flexSessionCount;            
-            resetMaxFlexSessionsInCurrentHour(flexSessionCount);
-        }
+        flexSessionCount.increment();
+        maxFlexSessions.record(getFlexSessionCount(), System.currentTimeMillis());
     }
     
     /**
@@ -197,44 +203,25 @@ public class FlexSessionManager extends ManageableComponent
      */
     public void unregisterFlexSession(FlexSession session)
     {
-        synchronized (lock)
-        {
-            --flexSessionCount;
-            resetMaxFlexSessionsInCurrentHour(flexSessionCount);            
-        }
+        flexSessionCount.decrement();
     }
     
     //----------------------------------
     //  maxFlexSessionsInCurrentHour
     //----------------------------------
     
-    private int maxSessionCountInCurrentHour;
-    private long currentHourStartTimestamp = System.currentTimeMillis();
+    private final SlidingWindowMax maxFlexSessions = new SlidingWindowMax(MILLIS_IN_HOUR, MAX_SESSIONS_WINDOW_SLOTS);
     
+    /**
+     * Returns the maximum count of active FlexSessions over the last hour, which
+     * slides forward a minute at a time.
+     * 
+     * @return The maximum count of active FlexSessions over the last hour.
+     */
     public int getMaxFlexSessionsInCurrentHour()
     {
-        synchronized (lock)
-        {            
-            // Make sure we report the correct value if the system has been idle across an hour transition.
-            resetMaxFlexSessionsInCurrentHour(flexSessionCount);
-            
-            return maxSessionCountInCurrentHour;
-        }
-    }
-    
-    /* Must be called within a synchronized block. */
-    private void resetMaxFlexSessionsInCurrentHour(int currentCount)
-    {
-        long offset = (System.currentTimeMillis() - currentHourStartTimestamp) / MILLIS_IN_HOUR;
-        if (offset > 0) // Shift to the current hour and reset to the current session count.
-        {
-            currentHourStartTimestamp += (MILLIS_IN_HOUR * offset);
-            maxSessionCountInCurrentHour = currentCount;
-        }
-        else if (maxSessionCountInCurrentHour < currentCount)
-        {
-            maxSessionCountInCurrentHour = currentCount;
-        }
+        // The current count covers a system that has been idle for the whole hour.
+        return Math.max(maxFlexSessions.getMax(System.currentTimeMillis()), getFlexSessionCount());
     }
     
     //----------------------------------
@@ -268,6 +255,13 @@ public class FlexSessionManager extends ManageableComponent
     {
         if (isStarted())
             return;
+
+        if (isManaged())
+        {
+            controller = new FlexSessionManagerControl(getParent().getControl(), this);
+            setControl(controller);
+            controller.register();
+        }
         
         for (AbstractFlexSessionProvider provider : providers.values())
         {
@@ -289,6 +283,12 @@ public class FlexSessionManager extends ManageableComponent
             return;
         
         super.stop();
+
+        if (controller != null)
+        {
+            controller.unregister();
+            controller = null;
+        }
         
         for (Class<? extends FlexSession> sessionClass : providers.keySet())
         {
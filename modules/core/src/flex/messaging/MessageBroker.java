@@ -65,6 +65,7 @@ import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -227,8 +228,10 @@ public class MessageBroker extends ManageableComponent
     private MessageBrokerControl controller;
     private List<String> defaultChannels;
     private DeserializationValidator deserializationValidator;
+    private final ConcurrentHashMap<String, DestinationRoute> destinationRoutes = new ConcurrentHashMap<String, DestinationRoute>();
     private Map<String, String> destinationToService; // destiantionId to serviceId map.
     private Map<String, Endpoint> endpoints;
+    private volatile EndpointTable endpointTable;
     private boolean enforceEndpointValidation;
     private Map<String, FlexFactory> factories;
     private FlexClientManager flexClientManager;
@@ -350,6 +353,8 @@ public class MessageBroker extends ManageableComponent
             startServices();
             loginManager.start();
             startEndpoints();
+            if (servletContext != null)
+                endpointTable = new EndpointTable(servletContext.getContextPath(), endpoints.values());
             startServers();
             redeployManager.start();
         }
@@ -675,6 +680,7 @@ public class MessageBroker extends ManageableComponent
 
         // Finally add the endpoint to endpoints map
         endpoints.put(id, endpoint);
+        endpointTable = null;
     }
 
     /**
@@ -711,12 +717,23 @@ public class MessageBroker extends ManageableComponent
      */
     public Endpoint getEndpoint(String path, String contextPath)
     {
+        EndpointTable table = endpointTable;
+        if (table == null || !table.isFor(contextPath))
+            endpointTable = table = new EndpointTable(contextPath, endpoints.values());
+
+        Endpoint endpoint = table.get(path);
+        if (endpoint != null)
+            return endpoint;
+
+        // Fall back to matching each endpoint in case one changed its url
+        // after the table was built.
         for (String id : endpoints.keySet())
         {
             Endpoint e = endpoints.get(id);
 
             if (matchEndpoint(path, contextPath, e))
             {
+                endpointTable = null;
                 return e;
             }
         }
@@ -739,6 +756,7 @@ public class MessageBroker extends ManageableComponent
         {
             endpoint.stop();
             endpoints.remove(id);
+            endpointTable = null;
         }
         return endpoint;
     }
@@ -1122,6 +1140,7 @@ public class MessageBroker extends ManageableComponent
         {
             service.stop();
             services.remove(id);
+            destinationRoutes.clear();
         }
         return service;
     }
@@ -1438,23 +1457,22 @@ public class MessageBroker extends ManageableComponent
         String destId = message.getDestination();
         try
         {
-            String serviceId = destId != null ? destinationToService.get(destId) : null;
+            DestinationRoute route = destId != null ? getDestinationRoute(destId) : null;
 
-            if ((serviceId == null) && (destId != null) && (!serviceValidationListeners.isEmpty()))
+            if ((route == null) && (destId != null) && (!serviceValidationListeners.isEmpty()))
             {
                 for (Enumeration<ServiceValidationListener> iter = serviceValidationListeners.elements(); iter.hasMoreElements();)
                 {
                     iter.nextElement().validateDestination(destId);
                 }
-                serviceId = destinationToService.get(destId);
+                route = getDestinationRoute(destId);
             }
 
-            if (serviceId != null)
+            if (route != null)
             {
-                service = services.get(serviceId);
+                service = route.service;
                 serviced = true;
-                Destination destination = service.getDestination(destId);
-                inspectOperation(message, destination);
+                inspectOperation(message, route.destination);
                 // Remove the validate endpoint header if it was set.
                 if (message.headerExists(Message.VALIDATE_ENDPOINT_HEADER))
                     message.getHeaders().remove(Message.VALIDATE_ENDPOINT_HEADER);
@@ -1546,6 +1564,7 @@ public class MessageBroker extends ManageableComponent
         AsyncMessage replyMessage;
         Service service;
         String serviceId;
+        DestinationRoute route = null;
         Object commandResult = null;
         boolean serviced = false;
         boolean recreateHttpFlexSessionAfterLogin = false;
@@ -1560,15 +1579,16 @@ public class MessageBroker extends ManageableComponent
         }
         else
         {
-            serviceId = destId != null? destinationToService.get(destId) : null;
+            route = destId != null? getDestinationRoute(destId) : null;
+            serviceId = route != null? route.service.getId() : destId != null? destinationToService.get(destId) : null;
         }
 
-        service = serviceId != null? services.get(serviceId) : null;
+        service = route != null? route.service : serviceId != null? services.get(serviceId) : null;
         if (service != null)
         {
             // Before passing the message to the service, need to check
             // the security constraints.
-            Destination destination = service.getDestination(destId);
+            Destination destination = route != null? route.destination : service.getDestination(destId);
             if (destination != null)
                 inspectOperation(command, destination);
 
@@ -1845,6 +1865,7 @@ public class MessageBroker extends ManageableComponent
             throw ex;
         }
         destinationToService.put(destId, svcId);
+        destinationRoutes.remove(destId);
     }
 
     /**
@@ -1857,6 +1878,7 @@ public class MessageBroker extends ManageableComponent
     public void unregisterDestination(String destId)
     {
         destinationToService.remove(destId);
+        destinationRoutes.remove(destId);
     }
 
     /**
@@ -1869,8 +1891,8 @@ public class MessageBroker extends ManageableComponent
      */
     public Destination getRegisteredDestination(String destId)
     {
-        String serviceId = destId != null? destinationToService.get(destId) : null;
-        return serviceId != null? getService(serviceId).getDestination(destId) : null;
+        DestinationRoute route = destId != null? getDestinationRoute(destId) : null;
+        return route != null? route.destination : null;
     }
 
     /**
@@ -2121,6 +2143,35 @@ public class MessageBroker extends ManageableComponent
         }
     }
 
+    /**
+     * Returns the routing record for the destination, resolving and caching it
+     * if it is not cached yet.
+     *
+     * @param destId The destination id.
+     * @return The routing record, or null if no service has a destination
+     * with the id.
+     */
+    private DestinationRoute getDestinationRoute(String destId)
+    {
+        DestinationRoute route = destinationRoutes.get(destId);
+        if (route != null)
+            return route;
+
+        String serviceId = destinationToService.get(destId);
+        Service service = serviceId != null ? services.get(serviceId) : null;
+        Destination destination = service != null ? service.getDestination(destId) : null;
+        if (destination == null)
+            return null;
+
+        route = new DestinationRoute(service, destination);
+        destinationRoutes.put(destId, route);
+        // Drop the record again if the destination was unregistered while it
+        // was being resolved.
+        if (!serviceId.equals(destinationToService.get(destId)))
+            destinationRoutes.remove(destId, route);
+        return route;
+    }
+
     /**
      *
      * Matches the current &quot;servlet + pathinfo&quot; to a list of channels registered
@@ -2249,4 +2300,63 @@ public class MessageBroker extends ManageableComponent
         for (Service svc : services.values())
             svc.stop();
     }
+
+    //--------------------------------------------------------------------------
+    //
+    // Nested Classes
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * The service and destination that messages for a destination id are
+     * routed to. The destination's adapter and security constraint are read
+     * from the destination for each message as both may be changed at runtime.
+     */
+    private static final class DestinationRoute
+    {
+        final Service service;
+        final Destination destination;
+
+        DestinationRoute(Service service, Destination destination)
+        {
+            this.service = service;
+            this.destination = destination;
+        }
+    }
+
+    /**
+     * An immutable table of the parsed urls of the endpoints for one context
+     * path, used to find the endpoint for a request path with a single lookup.
+     * The table is replaced as a whole when endpoints are added or removed.
+     */
+    private static final class EndpointTable
+    {
+        private final String contextPath;
+        private final Map<String, Endpoint> endpointsByPath;
+
+        EndpointTable(String contextPath, Collection<Endpoint> endpoints)
+        {
+            this.contextPath = contextPath;
+            endpointsByPath = new HashMap<String, Endpoint>();
+            for (Endpoint endpoint : endpoints)
+            {
+                String path = endpoint.getParsedUrl(contextPath);
+                // Keep the first endpoint registered for a path, like matchEndpoint.
+                if (path != null && !endpointsByPath.containsKey(path))
+                    endpointsByPath.put(path, endpoint);
+            }
+        }
+
+        boolean isFor(String contextPath)
+        {
+            return contextPath == null ? this.contextPath == null : contextPath.equals(this.contextPath);
+        }
+
+        Endpoint get(String path)
+        {
+            if (path.endsWith("/"))
+                path = path.substring(0, path.length() - 1);
+            return endpointsByPath.get(path.toLowerCase());
+        }
+    }
 }
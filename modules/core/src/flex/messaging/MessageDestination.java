@@ -439,6 +439,9 @@ public class MessageDestination extends FactoryDestination
 
         String routingMode = server.getPropertyAsString(MessagingConstants.CLUSTER_MESSAGE_ROUTING, "server-to-server");
         serverSettings.setBroadcastRoutingMode(routingMode);
+
+        long batchWindowMillis = server.getPropertyAsLong(MessagingConstants.CLUSTER_BATCH_WINDOW_MILLIS, 0);
+        serverSettings.setClusterBatchWindowMillis(batchWindowMillis);
     }
 
     /**
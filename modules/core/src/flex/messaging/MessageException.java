@@ -288,11 +288,11 @@ public class MessageException extends LocalizedException
             {
                 MessageBroker broker = FlexContext.getMessageBroker();
                 resourceLoader = broker != null? broker.getSystemSettings().getResourceLoader()
-                        : new PropertyStringResourceLoader();
+                        : PropertyStringResourceLoader.getSharedInstance();
             }
             catch (NoClassDefFoundError exception) // Could happen in client mode.
             {
-                return new PropertyStringResourceLoader();
+                return PropertyStringResourceLoader.getSharedInstance();
             }
         }
 
@@ -355,8 +355,8 @@ public class MessageException extends LocalizedException
     {
         ErrorMessage msg = new ErrorMessage();
         msg.faultCode = code != null? code : "Server.Processing";
-        msg.faultString = message;
-        msg.faultDetail = details;
+        msg.faultString = getMessage();
+        msg.faultDetail = getDetails();
         msg.rootCause = getRootCauseErrorMessage();
         if (extendedData != null)
             msg.extendedData = extendedData;
@@ -0,0 +1,674 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.client;
+
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.CommandMessage;
+import flex.messaging.messages.Message;
+
+/**
+ * An outbound queue that limits the number of messages and the estimated
+ * serialized size of the messages it holds, wrapping the queue that orders
+ * them. It also reports the size of its messages to the
+ * <code>FlexClientManager</code>, if there is one, whose limit on the size of
+ * all outbound queues applies to the queue while it holds more than its fair
+ * share of that limit: the limit divided by the number of non-empty queues.
+ * <p>
+ * When a new message does not fit, the overflow policy decides what happens:
+ * </p>
+ * <ul>
+ *   <li>drop-oldest - Messages are removed until the new message fits, oldest
+ *       first, or lowest priority first if the wrapped queue is a
+ *       <code>PriorityOutboundQueue</code>.</li>
+ *   <li>drop-newest - The new message is dropped.</li>
+ *   <li>conflate - The new message replaces a queued message for the same
+ *       MessageClient and subtopic if there is one, otherwise messages are
+ *       dropped as for drop-oldest.</li>
+ *   <li>disconnect - The new message is dropped and the queue is marked as
+ *       overflowed, upon which the <code>FlexClient</code> is invalidated.</li>
+ * </ul>
+ * <p>
+ * A message that would not fit even in an empty queue is dropped, and no queued
+ * message is removed for it.
+ * </p>
+ * <p>
+ * The size of a message is estimated from the length of its strings and byte
+ * arrays and the number of its other values, rather than by serializing it,
+ * and it is remembered for as long as the message is queued.
+ * </p>
+ * <p>
+ * Like the <code>ArrayList</code> used by default, it is not thread safe; the
+ * <code>FlexClient</code> synchronizes on its outbound queue.
+ * </p>
+ */
+public class BoundedOutboundQueue extends AbstractList<Message> implements MessageClientQueue
+{
+    //--------------------------------------------------------------------------
+    //
+    // Public Static Constants
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * What to do with a message that does not fit in the queue.
+     */
+    public enum OverflowPolicy
+    {
+        DROP_OLDEST,
+        DROP_NEWEST,
+        CONFLATE,
+        DISCONNECT;
+
+        /**
+         * Returns the policy for a configuration value such as
+         * <code>drop-oldest</code>, or null if there is none.
+         *
+         * @param value The configuration value.
+         * @return The policy, or null.
+         */
+        public static OverflowPolicy forName(String value)
+        {
+            if (value == null)
+                return null;
+            try
+            {
+                return valueOf(value.trim().toUpperCase().replace('-', '_'));
+            }
+            catch (IllegalArgumentException e)
+            {
+                return null;
+            }
+        }
+    };
+
+    //--------------------------------------------------------------------------
+    //
+    // Private Static Constants
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * The estimated size of the fixed fields of a message, such as its
+     * timestamps and the AMF framing around it.
+     */
+    private static final int MESSAGE_OVERHEAD = 64;
+
+    /**
+     * The estimated size of an object of a type the estimate does not look
+     * into, and of anything nested deeper than the depth limit.
+     */
+    private static final int OBJECT_ESTIMATE = 64;
+
+    private static final int MAX_DEPTH = 16;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructs a bounded queue.
+     *
+     * @param queue The queue that holds and orders the messages.
+     * @param maxMessages The maximum number of messages; zero or less for no limit.
+     * @param maxBytes The maximum estimated size of the messages in bytes; zero
+     * or less for no limit.
+     * @param overflowPolicy What to do with a message that does not fit.
+     * @param flexClientManager The manager whose limit on the size of all
+     * outbound queues applies, or null.
+     */
+    public BoundedOutboundQueue(List<Message> queue, int maxMessages, long maxBytes,
+            OverflowPolicy overflowPolicy, FlexClientManager flexClientManager)
+    {
+        this.queue = queue;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.overflowPolicy = overflowPolicy != null ? overflowPolicy : OverflowPolicy.DROP_OLDEST;
+        this.flexClientManager = flexClientManager;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Variables
+    //
+    //--------------------------------------------------------------------------
+
+    private final List<Message> queue;
+    private final int maxMessages;
+    private final long maxBytes;
+    private final OverflowPolicy overflowPolicy;
+    private final FlexClientManager flexClientManager;
+
+    /**
+     * The estimated size of each queued message.
+     */
+    private final Map<Message, Integer> sizes = new IdentityHashMap<Message, Integer>();
+
+    /**
+     * The estimated size of all queued messages.
+     */
+    private long bytes;
+
+    /**
+     * The number of messages that were dropped or replaced because they did not fit.
+     */
+    private long overflowCount;
+
+    /**
+     * Set when a message did not fit and the policy is to disconnect.
+     */
+    private boolean overflowed;
+
+    //--------------------------------------------------------------------------
+    //
+    // Public Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns an estimate of the serialized size of a message in bytes.
+     *
+     * @param message The message.
+     * @return The estimated size of the message in bytes.
+     */
+    public static int estimateSize(Message message)
+    {
+        long size = MESSAGE_OVERHEAD
+                + estimateSize(message.getMessageId(), 0)
+                + estimateSize(message.getClientId(), 0)
+                + estimateSize(message.getDestination(), 0)
+                + estimateSize(message.getHeaders(), 0)
+                + estimateSize(message.getBody(), 0);
+        if (message instanceof AsyncMessage)
+            size += estimateSize(((AsyncMessage)message).getCorrelationId(), 0);
+        return (int)Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the estimated size of the queued messages in bytes.
+     *
+     * @return The estimated size of the queued messages in bytes.
+     */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * Returns the maximum number of messages in the queue.
+     *
+     * @return The maximum number of messages, or zero or less for no limit.
+     */
+    public int getMaxMessages()
+    {
+        return maxMessages;
+    }
+
+    /**
+     * Returns the maximum estimated size of the messages in the queue.
+     *
+     * @return The maximum size in bytes, or zero or less for no limit.
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Returns what the queue does with a message that does not fit.
+     *
+     * @return The overflow policy.
+     */
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return overflowPolicy;
+    }
+
+    /**
+     * Returns the number of messages that were dropped, or that replaced a
+     * queued message, because they did not fit.
+     *
+     * @return The number of messages that did not fit.
+     */
+    public long getOverflowCount()
+    {
+        return overflowCount;
+    }
+
+    /**
+     * Returns whether a message did not fit in the queue under the disconnect
+     * policy, and resets that state.
+     *
+     * @return <code>true</code> if the queue overflowed since the last call.
+     */
+    public boolean checkOverflowed()
+    {
+        boolean result = overflowed;
+        overflowed = false;
+        return result;
+    }
+
+    /**
+     * Adds the message to the queue if it fits, otherwise applies the
+     * overflow policy.
+     *
+     * @param message The message to add.
+     * @return <code>true</code> if the message was queued.
+     */
+    @Override
+    public boolean add(Message message)
+    {
+        int messageBytes = estimateSize(message);
+        if (fits(1, messageBytes))
+        {
+            append(message, messageBytes);
+            return true;
+        }
+
+        overflowCount++;
+        switch (overflowPolicy)
+        {
+            case DISCONNECT:
+                overflowed = true;
+                return false;
+            case DROP_NEWEST:
+                return false;
+            case CONFLATE:
+                if (conflate(message, messageBytes))
+                    return true;
+                // Fall through to drop the oldest messages instead.
+            default:
+                if (!fitsEmpty(messageBytes))
+                    return false;
+                Iterator<Message> iter = evictionIterator();
+                while (iter.hasNext() && !fits(1, messageBytes))
+                {
+                    iter.next();
+                    iter.remove();
+                }
+                if (!fits(1, messageBytes))
+                    return false;
+                append(message, messageBytes);
+                return true;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Message get(int index)
+    {
+        return queue.get(index);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Message set(int index, Message message)
+    {
+        Message replaced = queue.set(index, message);
+        release(replaced);
+        account(message, estimateSize(message));
+        return replaced;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Message remove(int index)
+    {
+        Message removed = queue.remove(index);
+        release(removed);
+        return removed;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear()
+    {
+        queue.clear();
+        sizes.clear();
+        addBytes(-bytes);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size()
+    {
+        return queue.size();
+    }
+
+    /**
+     * Returns an iterator over the messages in the order of the wrapped queue.
+     *
+     * @return An iterator over the queued messages.
+     */
+    @Override
+    public Iterator<Message> iterator()
+    {
+        return new AccountingIterator(queue.iterator());
+    }
+
+    /** {@inheritDoc} */
+    public Iterator<Message> iterator(Object clientId)
+    {
+        if (queue instanceof MessageClientQueue)
+            return new AccountingIterator(((MessageClientQueue)queue).iterator(clientId));
+        return new ClientIterator(clientId);
+    }
+
+    /** {@inheritDoc} */
+    public void clear(Object clientId)
+    {
+        for (Iterator<Message> iter = iterator(clientId); iter.hasNext();)
+        {
+            iter.next();
+            iter.remove();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean replace(Message queued, Message message)
+    {
+        if (queue instanceof MessageClientQueue)
+        {
+            if (!((MessageClientQueue)queue).replace(queued, message))
+                return false;
+            release(queued);
+            account(message, estimateSize(message));
+            return true;
+        }
+
+        for (int i = queue.size() - 1; i >= 0; i--)
+        {
+            if (queue.get(i) == queued)
+            {
+                set(i, message);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Package Private Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the queue that holds the messages.
+     */
+    List<Message> getQueue()
+    {
+        return queue;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private Methods
+    //
+    //--------------------------------------------------------------------------
+
+    private static long estimateSize(Object value, int depth)
+    {
+        if (value == null || value instanceof Boolean)
+            return 1;
+        if (value instanceof String)
+            return 3 + ((String)value).length();
+        if (value instanceof Number || value instanceof Date)
+            return 9;
+        if (value instanceof byte[])
+            return 5 + ((byte[])value).length;
+        if (depth >= MAX_DEPTH)
+            return OBJECT_ESTIMATE;
+
+        long size = 5;
+        if (value instanceof Collection)
+        {
+            for (Object element : (Collection<?>)value)
+                size += estimateSize(element, depth + 1);
+        }
+        else if (value instanceof Map)
+        {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet())
+                size += estimateSize(entry.getKey(), depth + 1) + estimateSize(entry.getValue(), depth + 1);
+        }
+        else if (value instanceof Object[])
+        {
+            for (Object element : (Object[])value)
+                size += estimateSize(element, depth + 1);
+        }
+        else if (value.getClass().isArray())
+        {
+            size += 8L * Array.getLength(value);
+        }
+        else
+        {
+            size = OBJECT_ESTIMATE;
+        }
+        return size;
+    }
+
+    /**
+     * Returns whether the queue stays within its limits with the given number
+     * of messages and bytes added.
+     */
+    private boolean fits(int addedMessages, long addedBytes)
+    {
+        return withinLimits(queue.size() + addedMessages, bytes + addedBytes, addedBytes);
+    }
+
+    /**
+     * Returns whether a new message would fit once all queued messages are removed.
+     */
+    private boolean fitsEmpty(int messageBytes)
+    {
+        return withinLimits(1, messageBytes, messageBytes - bytes);
+    }
+
+    /**
+     * Returns whether the queue would be within its limits holding the given
+     * number of messages and bytes, once the size of all outbound queues has
+     * changed by the given number of bytes. While the limit of the manager is
+     * exceeded, only queues holding more than their fair share of it are over
+     * their limits.
+     */
+    private boolean withinLimits(int messages, long queueBytes, long addedBytes)
+    {
+        if (maxMessages > 0 && messages > maxMessages)
+            return false;
+        if (maxBytes > 0 && queueBytes > maxBytes)
+            return false;
+        if (flexClientManager != null && addedBytes > 0)
+        {
+            long maxQueuedBytes = flexClientManager.getMaxOutboundQueueBytes();
+            if (maxQueuedBytes > 0 && flexClientManager.getOutboundQueueBytes() + addedBytes > maxQueuedBytes)
+            {
+                int queues = flexClientManager.getNonEmptyOutboundQueueCount() + (bytes == 0 ? 1 : 0);
+                return queueBytes <= maxQueuedBytes / queues;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns an iterator over the messages in the order they are dropped to
+     * make room: lowest priority first for a priority ordered queue, and oldest
+     * first otherwise.
+     */
+    private Iterator<Message> evictionIterator()
+    {
+        if (queue instanceof PriorityOutboundQueue)
+            return new AccountingIterator(((PriorityOutboundQueue)queue).evictionIterator());
+        return iterator();
+    }
+
+    /**
+     * Replaces the first queued message for the same MessageClient and
+     * subtopic as the new message, if the new message then fits.
+     */
+    private boolean conflate(Message message, int messageBytes)
+    {
+        Object subtopic = message.getHeader(AsyncMessage.SUBTOPIC_HEADER_NAME);
+        if (message instanceof CommandMessage || subtopic == null || message.getClientId() == null)
+            return false;
+
+        for (Iterator<Message> iter = iterator(message.getClientId()); iter.hasNext();)
+        {
+            Message queued = iter.next();
+            if (!(queued instanceof CommandMessage) && subtopic.equals(queued.getHeader(AsyncMessage.SUBTOPIC_HEADER_NAME)))
+            {
+                Integer queuedBytes = sizes.get(queued);
+                if (!fits(0, messageBytes - (queuedBytes != null ? queuedBytes.intValue() : 0)))
+                    return false;
+                return replace(queued, message);
+            }
+        }
+        return false;
+    }
+
+    private void append(Message message, int messageBytes)
+    {
+        queue.add(message);
+        account(message, messageBytes);
+    }
+
+    private void account(Message message, int messageBytes)
+    {
+        // The same message may be queued twice; its entry then holds both sizes.
+        Integer previous = sizes.put(message, messageBytes);
+        if (previous != null)
+            sizes.put(message, previous.intValue() + messageBytes);
+        addBytes(messageBytes);
+    }
+
+    private void release(Message message)
+    {
+        Integer messageBytes = message != null ? sizes.remove(message) : null;
+        if (messageBytes != null)
+            addBytes(-messageBytes.intValue());
+    }
+
+    private void addBytes(long delta)
+    {
+        long previous = bytes;
+        bytes += delta;
+        if (flexClientManager != null)
+        {
+            flexClientManager.addOutboundQueueBytes(delta);
+            if (previous == 0 && bytes > 0)
+                flexClientManager.addNonEmptyOutboundQueues(1);
+            else if (previous > 0 && bytes == 0)
+                flexClientManager.addNonEmptyOutboundQueues(-1);
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Nested Classes
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Releases the size of the messages removed through an iterator of the
+     * wrapped queue.
+     */
+    private final class AccountingIterator implements Iterator<Message>
+    {
+        private final Iterator<Message> iter;
+        private Message last;
+
+        AccountingIterator(Iterator<Message> iter)
+        {
+            this.iter = iter;
+        }
+
+        public boolean hasNext()
+        {
+            return iter.hasNext();
+        }
+
+        public Message next()
+        {
+            last = iter.next();
+            return last;
+        }
+
+        public void remove()
+        {
+            iter.remove();
+            release(last);
+            last = null;
+        }
+    }
+
+    /**
+     * Iterates the messages of one MessageClient by position, for wrapped
+     * queues that do not keep them apart.
+     */
+    private final class ClientIterator implements Iterator<Message>
+    {
+        private final Object clientId;
+        private int lastIndex = -1;
+        private int nextIndex = -1;
+        private boolean removable;
+
+        ClientIterator(Object clientId)
+        {
+            this.clientId = clientId;
+        }
+
+        public boolean hasNext()
+        {
+            if (nextIndex <= lastIndex)
+            {
+                nextIndex = lastIndex + 1;
+                while (nextIndex < queue.size() && !clientId.equals(queue.get(nextIndex).getClientId()))
+                    nextIndex++;
+            }
+            return nextIndex < queue.size();
+        }
+
+        public Message next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            lastIndex = nextIndex;
+            removable = true;
+            return queue.get(lastIndex);
+        }
+
+        public void remove()
+        {
+            if (!removable)
+                throw new IllegalStateException();
+            BoundedOutboundQueue.this.remove(lastIndex);
+            lastIndex--;
+            nextIndex = -1;
+            removable = false;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.client;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import flex.management.runtime.messaging.endpoints.EndpointControl;
+import flex.messaging.MessageClient;
+import flex.messaging.config.ConfigMap;
+import flex.messaging.endpoints.Endpoint;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.CommandMessage;
+import flex.messaging.messages.Message;
+
+/**
+ * An outbound queue processor that only keeps the newest message for each key
+ * in the queue, for feeds where a slow client only needs the latest value, such
+ * as price updates per instrument. The key is the value of a message header,
+ * the subtopic header by default, and is scoped to the subscription the message
+ * is for. A new message with the same key as a queued message replaces it in
+ * place, so keys keep the order in which they first arrived since the last
+ * flush. Messages without the header, and command messages, are always added
+ * to the tail of the queue.
+ * <p>
+ * The position of each keyed message is remembered, so that replacing it does
+ * not search the queue. With a queue partitioned by MessageClient, the message
+ * is looked up in the partition of its MessageClient instead.
+ * </p>
+ * <p>
+ * It is configured for an endpoint as follows:
+ * </p>
+ * <pre>
+ * &lt;flex-client-outbound-queue-processor class="flex.messaging.client.ConflatingOutboundQueueProcessor"&gt;
+ *     &lt;properties&gt;
+ *         &lt;conflation-key-header&gt;DSSubtopic&lt;/conflation-key-header&gt;
+ *     &lt;/properties&gt;
+ * &lt;/flex-client-outbound-queue-processor&gt;
+ * </pre>
+ * <p>
+ * The number of messages that were queued and that were replaced are reported
+ * on the management control of the endpoint.
+ * </p>
+ */
+public class ConflatingOutboundQueueProcessor extends FlexClientOutboundQueueProcessor
+{
+    //--------------------------------------------------------------------------
+    //
+    // Public Static Constants
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * The property that names the header whose value is the conflation key.
+     */
+    public static final String CONFLATION_KEY_HEADER = "conflation-key-header";
+
+    //--------------------------------------------------------------------------
+    //
+    // Variables
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * The name of the header whose value is the conflation key.
+     */
+    private String keyHeader = AsyncMessage.SUBTOPIC_HEADER_NAME;
+
+    /**
+     * The queued message for each key, by MessageClient id.
+     */
+    private final Map<Object, Map<Object, QueuedMessage>> queuedByClient = new HashMap<Object, Map<Object, QueuedMessage>>();
+
+    /**
+     * The management control of the endpoint, looked up on the first add.
+     */
+    private EndpointControl endpointControl;
+    private boolean endpointControlResolved;
+
+    //--------------------------------------------------------------------------
+    //
+    // Public Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the name of the header whose value is the conflation key.
+     *
+     * @return The name of the header whose value is the conflation key.
+     */
+    public String getKeyHeader()
+    {
+        return keyHeader;
+    }
+
+    /**
+     * Sets the name of the header whose value is the conflation key.
+     *
+     * @param value The name of the header whose value is the conflation key.
+     */
+    public void setKeyHeader(String value)
+    {
+        keyHeader = value;
+    }
+
+    /**
+     * Reads the optional <code>conflation-key-header</code> property.
+     *
+     * @param properties A ConfigMap containing any custom initialization properties.
+     */
+    @Override
+    public void initialize(ConfigMap properties)
+    {
+        if (properties != null)
+            keyHeader = properties.getPropertyAsString(CONFLATION_KEY_HEADER, keyHeader);
+    }
+
+    /**
+     * Replaces the queued message with the same key as the new message, or adds
+     * the new message to the tail of the queue if there is none.
+     *
+     * @param outboundQueue The queue of outbound messages.
+     * @param message The new message to add to the queue.
+     */
+    @Override
+    public void add(List<Message> outboundQueue, Message message)
+    {
+        Object key = getConflationKey(message);
+        if (key == null)
+        {
+            outboundQueue.add(message);
+            return;
+        }
+
+        Map<Object, QueuedMessage> queuedByKey = queuedByClient.get(message.getClientId());
+        if (queuedByKey == null)
+        {
+            queuedByKey = new HashMap<Object, QueuedMessage>();
+            queuedByClient.put(message.getClientId(), queuedByKey);
+        }
+
+        boolean conflated = false;
+        QueuedMessage queued = queuedByKey.get(key);
+        if (queued != null && isPartitioned(outboundQueue))
+        {
+            conflated = ((MessageClientQueue)outboundQueue).replace(queued.message, message);
+        }
+        else if (queued != null)
+        {
+            int index = indexOf(outboundQueue, queued);
+            if (index != -1)
+            {
+                outboundQueue.set(index, message);
+                queued.index = index;
+                conflated = true;
+            }
+        }
+
+        if (conflated)
+        {
+            queued.message = message;
+        }
+        else
+        {
+            outboundQueue.add(message);
+            queuedByKey.put(key, new QueuedMessage(message, outboundQueue.size() - 1));
+        }
+
+        EndpointControl control = getEndpointControl();
+        if (control != null)
+            control.incrementConflationMessageCount(conflated);
+    }
+
+    /**
+     * Flushes the queue as the base processor does, and forgets the keys of the
+     * messages that are no longer queued. Keys of messages that are removed
+     * from the queue otherwise are found to be stale on the next add.
+     *
+     * @param messageClient The specific MessageClient to return messages for.
+     * @param outboundQueue The queue of outbound messages.
+     * @return A FlushResult containing the messages that have been removed from the outbound queue
+     *         to be written to the network for this MessageClient.
+     */
+    @Override
+    public FlushResult flush(MessageClient messageClient, List<Message> outboundQueue)
+    {
+        FlushResult flushResult = super.flush(messageClient, outboundQueue);
+
+        if (outboundQueue.isEmpty())
+        {
+            queuedByClient.clear();
+            return flushResult;
+        }
+
+        if (messageClient != null)
+        {
+            // The flush has taken all queued messages of the MessageClient.
+            queuedByClient.remove(messageClient.getClientId());
+            // Only the partition of the MessageClient has changed.
+            if (isPartitioned(outboundQueue))
+                return flushResult;
+        }
+
+        if (!queuedByClient.isEmpty())
+        {
+            // Forget the messages that were flushed and update the position of the others.
+            Map<Message, Integer> remaining = new IdentityHashMap<Message, Integer>(outboundQueue.size());
+            int index = 0;
+            for (Message message : outboundQueue)
+                remaining.put(message, Integer.valueOf(index++));
+
+            for (Iterator<Map<Object, QueuedMessage>> clients = queuedByClient.values().iterator(); clients.hasNext();)
+            {
+                Map<Object, QueuedMessage> queuedByKey = clients.next();
+                for (Iterator<QueuedMessage> iter = queuedByKey.values().iterator(); iter.hasNext();)
+                {
+                    QueuedMessage queued = iter.next();
+                    Integer position = remaining.get(queued.message);
+                    if (position == null)
+                        iter.remove();
+                    else
+                        queued.index = position.intValue();
+                }
+                if (queuedByKey.isEmpty())
+                    clients.remove();
+            }
+        }
+        return flushResult;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Protected Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the conflation key of the message, which is scoped to the
+     * MessageClient of the message, or null if the message should not be conflated.
+     *
+     * @param message The message.
+     * @return The conflation key of the message, or null.
+     */
+    protected Object getConflationKey(Message message)
+    {
+        if (message instanceof CommandMessage || message.getClientId() == null)
+            return null;
+
+        return message.getHeader(keyHeader);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns whether the queue is partitioned by MessageClient, in which case
+     * queued messages are replaced through <code>MessageClientQueue.replace</code>.
+     */
+    private static boolean isPartitioned(List<Message> outboundQueue)
+    {
+        if (outboundQueue instanceof BoundedOutboundQueue)
+            outboundQueue = ((BoundedOutboundQueue)outboundQueue).getQueue();
+        return outboundQueue instanceof PartitionedOutboundQueue;
+    }
+
+    /**
+     * Returns the position of a queued message, or -1 if it is no longer queued.
+     * The message is looked for at its remembered position first. Messages
+     * removed from the queue between flushes, for example when a subscription
+     * is invalidated or a bounded queue overflows, move it towards the head,
+     * and messages of a higher priority added to a priority ordered queue move
+     * it towards the tail, so the search continues in both directions.
+     */
+    private static int indexOf(List<Message> outboundQueue, QueuedMessage queued)
+    {
+        int size = outboundQueue.size();
+        int start = Math.min(queued.index, size - 1);
+        for (int i = start; i >= 0; i--)
+        {
+            if (outboundQueue.get(i) == queued.message)
+                return i;
+        }
+        for (int i = start + 1; i < size; i++)
+        {
+            if (outboundQueue.get(i) == queued.message)
+                return i;
+        }
+        return -1;
+    }
+
+    private EndpointControl getEndpointControl()
+    {
+        if (!endpointControlResolved)
+        {
+            endpointControlResolved = true;
+            FlexClient flexClient = getFlexClient();
+            if (flexClient != null && flexClient.flexClientManager != null)
+            {
+                Endpoint endpoint = flexClient.flexClientManager.getMessageBroker().getEndpoint(getEndpointId());
+                if (endpoint != null && endpoint.getControl() instanceof EndpointControl)
+                    endpointControl = (EndpointControl)endpoint.getControl();
+            }
+        }
+        return endpointControl;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Nested Classes
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * A queued message for a key and its last known position in the queue.
+     */
+    private static final class QueuedMessage
+    {
+        Message message;
+        int index;
+
+        QueuedMessage(Message message, int index)
+        {
+            this.message = message;
+            this.index = index;
+        }
+    }
+}
@@ -277,6 +277,30 @@ public class EndpointPushNotifier extends TimeoutAbstractObject implements Endpo
         return closed;
     }
 
+    /**
+     * Returns whether messages pushed to this notifier have yet to be drained by the endpoint.
+     * This method acquires a lock on <code>pushNeeded</code>.
+     *
+     * @return True if there are messages to drain; otherwise false.
+     */
+    public boolean hasPendingMessages()
+    {
+        synchronized (pushNeeded)
+        {
+            return messages != null && !messages.isEmpty();
+        }
+    }
+
+    /**
+     * Notified endpoints should invoke this method once they have streamed the drained messages
+     * to the client, without holding a lock on <code>pushNeeded</code>. It lets the FlexClient push
+     * any messages that its bounded outbound queue held back while the drained ones were pending.
+     */
+    public void messagesStreamed()
+    {
+        flexClient.flushDeferredPush(endpoint.getId());
+    }
+
     /**
      * Returns the endpoint that is using this notifier.
      *
@@ -0,0 +1,310 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.client;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
+
+import flex.messaging.client.FlexClient.EndpointQueue;
+import flex.messaging.log.Log;
+import flex.messaging.messages.Message;
+import flex.messaging.util.TimeoutAbstractObject;
+import flex.messaging.util.TimeoutManager;
+
+/**
+ * Removes messages whose time to live has elapsed from the outbound queues of
+ * the FlexClients, so that queues of idle or disconnected clients do not hold on
+ * to them until the next flush.
+ *
+ * Expiry times are rounded up to buckets of <code>BUCKET_MILLIS</code>. Each
+ * EndpointQueue remembers the buckets of its queued messages and this sweeper
+ * indexes the queues by bucket; neither keeps references to the messages
+ * themselves. When a bucket is due the sweeper runs on the timeout thread of the
+ * FlexClientManager and removes the expired messages from the queues indexed
+ * under it.
+ */
+final class ExpiredMessageSweeper extends TimeoutAbstractObject
+{
+    //--------------------------------------------------------------------------
+    //
+    // Constants
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * The width in milliseconds of the expiry buckets.
+     */
+    static final long BUCKET_MILLIS = 1000;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructs a sweeper for the FlexClients of a FlexClientManager.
+     *
+     * @param manager The FlexClientManager that counts the expired messages.
+     * @param timeoutManager The TimeoutManager to run the sweeps on, or null to
+     *        only sweep when <code>sweep</code> is called.
+     */
+    ExpiredMessageSweeper(FlexClientManager manager, TimeoutManager timeoutManager)
+    {
+        this.manager = manager;
+        this.timeoutManager = timeoutManager;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Variables
+    //
+    //--------------------------------------------------------------------------
+
+    private final FlexClientManager manager;
+
+    private final TimeoutManager timeoutManager;
+
+    /**
+     * The queues with messages that expire in each bucket, keyed by the end time
+     * of the bucket. Guarded by this sweeper.
+     */
+    private final TreeMap<Long, Set<EndpointQueue>> buckets = new TreeMap<Long, Set<EndpointQueue>>();
+
+    /**
+     * The bucket that the scheduled sweep is due for, or zero when no sweep is
+     * scheduled. Guarded by this sweeper.
+     */
+    private long scheduledBucket;
+
+    //--------------------------------------------------------------------------
+    //
+    // Public Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Sweeps the buckets that are due and schedules the next sweep.
+     */
+    public void timeout()
+    {
+        long now = System.currentTimeMillis();
+        synchronized (this)
+        {
+            // A sweep that was replaced by an earlier one, but had already
+            // started, leaves the scheduled sweep in place.
+            if (scheduledBucket <= now)
+                scheduledBucket = 0;
+        }
+        try
+        {
+            sweep(now);
+        }
+        finally
+        {
+            scheduleNext();
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Package Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Indexes a message that was added to a queue if it has a time to live.
+     * The caller must hold the lock of the queue.
+     *
+     * @param queue The queue that the message was added to.
+     * @param message The message.
+     */
+    void add(EndpointQueue queue, Message message)
+    {
+        long timeToLive = message.getTimeToLive();
+        if (timeToLive <= 0)
+            return;
+
+        Long bucket = Long.valueOf(((message.getTimestamp() + timeToLive) / BUCKET_MILLIS + 1) * BUCKET_MILLIS);
+        if (queue.expiryBuckets == null)
+            queue.expiryBuckets = new TreeSet<Long>();
+        if (!queue.expiryBuckets.add(bucket))
+            return;
+
+        synchronized (this)
+        {
+            Set<EndpointQueue> queues = buckets.get(bucket);
+            if (queues == null)
+            {
+                queues = new LinkedHashSet<EndpointQueue>();
+                buckets.put(bucket, queues);
+            }
+            queues.add(queue);
+        }
+        scheduleNext();
+    }
+
+    /**
+     * Removes a queue that is no longer used from the index, so that the sweeper
+     * does not keep it, or its FlexClient, until its buckets are due. The caller
+     * must hold the lock of the queue.
+     *
+     * @param queue The queue.
+     */
+    void remove(EndpointQueue queue)
+    {
+        if (queue.expiryBuckets == null)
+            return;
+
+        synchronized (this)
+        {
+            for (Long bucket : queue.expiryBuckets)
+            {
+                Set<EndpointQueue> queues = buckets.get(bucket);
+                if (queues != null && queues.remove(queue) && queues.isEmpty())
+                    buckets.remove(bucket);
+            }
+        }
+        queue.expiryBuckets = null;
+    }
+
+    /**
+     * Removes the expired messages from the queues indexed under the buckets
+     * that end at or before the given time.
+     *
+     * @param now The current time.
+     * @return The number of messages removed.
+     */
+    int sweep(long now)
+    {
+        List<EndpointQueue> due = new ArrayList<EndpointQueue>();
+        synchronized (this)
+        {
+            Map<Long, Set<EndpointQueue>> dueBuckets = buckets.headMap(Long.valueOf(now), true);
+            for (Set<EndpointQueue> queues : dueBuckets.values())
+                due.addAll(queues);
+            dueBuckets.clear();
+        }
+
+        int expired = 0;
+        for (EndpointQueue queue : due)
+        {
+            FlexClient flexClient = queue.flexClient;
+            // Follow the FlexClient.lock before queue lock order used by push.
+            synchronized (flexClient.lock)
+            {
+                if (!flexClient.valid)
+                    continue;
+
+                synchronized (queue)
+                {
+                    if (queue.expiryBuckets == null)
+                        continue;
+                    queue.expiryBuckets.headSet(Long.valueOf(now), true).clear();
+
+                    expired += removeExpired(queue, queue.messages);
+                    expired += removeExpired(queue, queue.flushedMessagesBetweenPolls);
+                }
+            }
+        }
+
+        if (expired > 0)
+        {
+            manager.addExpiredMessages(expired);
+            if (Log.isDebug())
+                Log.getLogger(FlexClient.FLEX_CLIENT_LOG_CATEGORY).debug("Removed " + expired + " expired messages from " + due.size() + " outbound queues.");
+        }
+        return expired;
+    }
+
+    /**
+     * Returns the number of buckets with queues to sweep.
+     */
+    synchronized int size()
+    {
+        return buckets.size();
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private Methods
+    //
+    //--------------------------------------------------------------------------
+
+    private int removeExpired(EndpointQueue queue, List<Message> messages)
+    {
+        if (messages == null || messages.isEmpty())
+            return 0;
+
+        int expired = 0;
+        for (Iterator<Message> iter = messages.iterator(); iter.hasNext();)
+        {
+            if (queue.processor.isMessageExpired(iter.next()))
+            {
+                iter.remove();
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Schedules a sweep for the earliest bucket unless one is scheduled for it
+     * or an earlier bucket already. A sweep scheduled for a later bucket is
+     * cancelled.
+     */
+    private void scheduleNext()
+    {
+        if (timeoutManager == null)
+            return;
+
+        synchronized (this)
+        {
+            if (buckets.isEmpty())
+                return;
+
+            long bucket = buckets.firstKey().longValue();
+            if (scheduledBucket != 0)
+            {
+                if (scheduledBucket <= bucket)
+                    return;
+                timeoutManager.unscheduleTimeout(this);
+                scheduledBucket = 0;
+            }
+
+            long now = System.currentTimeMillis();
+            setLastUse(now);
+            setTimeoutPeriod(Math.max(bucket - now, 1));
+            try
+            {
+                timeoutManager.scheduleTimeout(this);
+                scheduledBucket = bucket;
+            }
+            catch (RejectedExecutionException e)
+            {
+                // The FlexClientManager has been stopped.
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ import flex.messaging.HttpFlexSession;
 import flex.messaging.MessageClient;
 import flex.messaging.MessageClientListener;
 import flex.messaging.MessageException;
+import flex.messaging.endpoints.AbstractEndpoint;
 import flex.messaging.endpoints.Endpoint;
 import flex.messaging.log.Log;
 import flex.messaging.log.LogCategories;
@@ -43,6 +44,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -83,6 +85,17 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
 
     private static final String POLL_WAIT_THREAD_NAME_EXTENSION = "-in-poll-wait";
 
+    /**
+     * The weight of the latest poll in the moving average of messages per poll.
+     */
+    private static final float RECENT_POLL_DEPTH_WEIGHT = 0.5f;
+
+    /**
+     * The key of an attribute bound under a null name, which the attributes
+     * map does not accept as a key.
+     */
+    private static final Object NULL_ATTRIBUTE_NAME = new Object();
+
     //--------------------------------------------------------------------------
     //
     // Private Static Variables
@@ -169,9 +182,10 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
     //--------------------------------------------------------------------------
 
     /**
-     * Storage for custom attributes.
+     * Storage for custom attributes; created on first use. Attributes are read and
+     * written without holding the FlexClient lock.
      */
-    private volatile Map<String, Object> attributes;
+    private volatile Map<Object, Object> attributes;
 
     /**
      * List of registered FlexClient attribute listeners.
@@ -232,7 +246,7 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
      * Flag indicating whether the instance is valid; once invalidated this flag is
      * set to false.
      */
-    boolean valid;
+    volatile boolean valid;
 
     /**
      * The principal associated with this client.  Only used when perClientAuthentication
@@ -305,14 +319,12 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
      */
     public Object getAttribute(String name)
     {
-        synchronized (lock)
-        {
-            checkValid();
+        checkValid();
 
-            updateLastUse();
+        updateLastUse();
 
-            return (attributes == null) ? null : attributes.get(name);
-        }
+        Map<Object, Object> attributes = this.attributes;
+        return (attributes == null) ? null : attributes.get(attributeKey(name));
     }
 
     /**
@@ -322,19 +334,20 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
      */
     public Enumeration<String> getAttributeNames()
     {
-        synchronized (lock)
-        {
-            checkValid();
+        checkValid();
 
-            updateLastUse();
+        updateLastUse();
 
-            if (attributes == null)
-                return Collections.enumeration(Collections.<String>emptyList());
+        Map<Object, Object> attributes = this.attributes;
+        if (attributes == null)
+            return Collections.enumeration(Collections.<String>emptyList());
 
-            // Return a copy so we do not run into concurrent modification problems if
-            // someone adds to the attributes while iterating through the returned enumeration.
-            return Collections.enumeration(new ArrayList<String>(attributes.keySet()));
-        }
+        // Return a copy so the enumeration does not reflect attributes that are
+        // added or removed while iterating through it.
+        List<String> names = new ArrayList<String>(attributes.size());
+        for (Object key : attributes.keySet())
+            names.add(attributeName(key));
+        return Collections.enumeration(names);
     }
 
     /**
@@ -553,12 +566,11 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
         }
 
         // Unbind all attributes.
+        Map<Object, Object> attributes = this.attributes;
         if (attributes != null && !attributes.isEmpty())
         {
-            Set<String> keySet = attributes.keySet();
-            String[] keys = keySet.toArray(new String[keySet.size()]);
-            for (String key : keys)
-                removeAttribute(key);
+            for (Object key : attributes.keySet())
+                removeAttribute(attributeName(key));
         }
 
         // Close any registered push handlers.
@@ -577,6 +589,16 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
             invalidating = false;
         }
 
+        // Release the outbound queues; push() adds no more messages once the
+        // FlexClient is no longer valid.
+        for (EndpointQueue queue : outboundQueues.values())
+        {
+            synchronized (queue)
+            {
+                releaseQueue(queue);
+            }
+        }
+
         if (Log.isDebug())
             Log.getLogger(FLEX_CLIENT_LOG_CATEGORY).debug("FlexClient with id '" + this.id + "' has been invalidated.");
     }
@@ -777,6 +799,24 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
         return null;
     }
 
+    /**
+     * Returns the moving average of the number of messages that recent polls of the
+     * endpoint returned to the FlexClient. Polling endpoints use this to suggest when
+     * the client should poll next.
+     *
+     * @param endpointId The Id of the endpoint.
+     * @return The average number of messages per poll, or zero if the FlexClient
+     *         is not subscribed over the endpoint.
+     */
+    public float getRecentPollDepth(String endpointId)
+    {
+        synchronized (lock)
+        {
+            EndpointQueue queue = outboundQueues.get(endpointId);
+            return queue != null ? queue.recentPollDepth : 0;
+        }
+    }
+
     /**
      *
      * Poll for outbound messages for the FlexClient and if no messages are available
@@ -1089,12 +1129,17 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
             return;
 
         boolean empty;
+        boolean overflowed = false;
         
         // We need to obtain the lock here
         // Maintain the pattern of using the FlexClient.lock and ensure that order of locks should always start with the FlexClient.lock
         // This is critical to prevent deadlock cases, see Watson bug 2724938 
         synchronized (lock)
         {
+            // The FlexClient may have been invalidated since the check above.
+            if (!valid)
+                return;
+
             synchronized (queue) // To protect the list during the add and allow for notification.
             {
                 // Let the processor add the message to the queue.
@@ -1102,6 +1147,11 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
                 {
                     queue.processor.add(queue.messages, message);
                     empty = queue.messages.isEmpty();
+                    ExpiredMessageSweeper sweeper = flexClientManager.expiredMessageSweeper;
+                    if (sweeper != null && !empty)
+                        sweeper.add(queue, message);
+                    overflowed = queue.messages instanceof BoundedOutboundQueue
+                            && ((BoundedOutboundQueue)queue.messages).checkOverflowed();
 
                     if (Log.isDebug())
                         Log.getLogger(LogCategories.MESSAGE_GENERAL).debug(
@@ -1131,7 +1181,7 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
                 }
             }
 
-            if (!empty)
+            if (!empty && !overflowed)
             {
                 if (queue.asyncPoll != null)
                 {
@@ -1151,6 +1201,15 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
                 }
             }
         }
+
+        // A bounded outbound queue that is full and whose policy is to disconnect
+        // has dropped the message; shut the FlexClient down outside of the locks.
+        if (overflowed)
+        {
+            if (Log.isError())
+                Log.getLogger(FLEX_CLIENT_LOG_CATEGORY).error("Invalidating FlexClient '" + getId() + "' because its outbound queue for endpoint '" + queue.endpointId + "' is full.");
+            invalidate();
+        }
     }
 
     /**
@@ -1236,16 +1295,12 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
      */
     public void removeAttribute(String name)
     {
-        Object value; // Used for event dispatch after the attribute is removed.
-
-        synchronized (lock)
-        {
-            checkValid();
+        checkValid();
 
-            updateLastUse();
+        updateLastUse();
 
-            value = (attributes != null) ? attributes.remove(name) : null;
-        }
+        Map<Object, Object> attributes = this.attributes;
+        Object value = (attributes != null) ? attributes.remove(attributeKey(name)) : null; // Used for event dispatch.
 
         // If no value was bound under this name it's a no-op.
         if (value == null)
@@ -1332,21 +1387,25 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
             return;
         }
 
-        Object oldValue; // Used to determine which events to dispatch after the set is performed.
-
-        // Only synchronize for the attribute mutation; event dispatch doesn't require it.
-        synchronized (lock)
-        {
-            checkValid();
-
-            updateLastUse();
+        checkValid();
 
-            if (attributes == null)
-                attributes = new HashMap<String, Object>();
+        updateLastUse();
 
-            oldValue = attributes.put(name, value);
+        Map<Object, Object> attributes = this.attributes;
+        if (attributes == null)
+        {
+            // Only synchronize to create the attributes; reads, writes and event dispatch don't require it.
+            synchronized (lock)
+            {
+                if (this.attributes == null)
+                    this.attributes = new ConcurrentHashMap<Object, Object>();
+                attributes = this.attributes;
+            }
         }
 
+        // Used to determine which events to dispatch after the set is performed.
+        Object oldValue = attributes.put(attributeKey(name), value);
+
         if (oldValue == null)
         {
             notifyAttributeBound(name, value);
@@ -1456,11 +1515,18 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
                     if (!messageClient.isAttemptingInvalidationClientNotification())
                     {
                         Object messageClientId = messageClient.getClientId();
-                        for (Iterator<Message> iter = queue.messages.iterator(); iter.hasNext(); )
+                        if (queue.messages instanceof MessageClientQueue)
                         {
-                            Message message = iter.next();
-                            if (message.getClientId().equals(messageClientId))
-                                iter.remove();
+                            ((MessageClientQueue)queue.messages).clear(messageClientId);
+                        }
+                        else
+                        {
+                            for (Iterator<Message> iter = queue.messages.iterator(); iter.hasNext(); )
+                            {
+                                Message message = iter.next();
+                                if (message.getClientId().equals(messageClientId))
+                                    iter.remove();
+                            }
                         }
                     }
 
@@ -1490,6 +1556,10 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
 
                             // Remove the empty, unused queue.
                             outboundQueues.remove(endpointId);
+                            synchronized (queue)
+                            {
+                                releaseQueue(queue);
+                            }
                         }
                         // Otherwise, the queue is being used by a polling client or contains messages
                         // that will be written by a delayed flush.
@@ -1527,14 +1597,12 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
      */
     protected void checkValid()
     {
-        synchronized (lock)
+        // The valid flag is volatile so this check doesn't need the FlexClient lock.
+        if (!valid)
         {
-            if (!valid)
-            {
-                MessageException e = new MessageException();
-                e.setMessage(FLEX_CLIENT_INVALIDATED);
-                throw e;
-            }
+            MessageException e = new MessageException();
+            e.setMessage(FLEX_CLIENT_INVALIDATED);
+            throw e;
         }
     }
     
@@ -1580,6 +1648,21 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
             if (queue.flushTask != null)
                 queue.flushTask = null;
 
+            // Hold the messages in a bounded queue while the endpoint has yet to
+            // drain the ones pushed before, so that the queue limits apply to a
+            // streaming connection that has stalled. The endpoint resumes the
+            // push once it has written the pending messages.
+            if (queue.messages instanceof BoundedOutboundQueue && queue.pushSession == null && endpointPushHandlers != null)
+            {
+                EndpointPushHandler handler = endpointPushHandlers.get(queue.endpointId);
+                if (handler instanceof EndpointPushNotifier && ((EndpointPushNotifier)handler).hasPendingMessages())
+                {
+                    queue.pushDeferred = true;
+                    return;
+                }
+            }
+            queue.pushDeferred = false;
+
             FlushResult flushResult = internalFlush(queue, null, false /* updateLastUse */);
             if (flushResult == null) // If there's no flush result, return.
                 return;
@@ -1613,6 +1696,28 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
                 queue.flushTask = new FlexClientScheduledFlushForPush(queue, flushWaitTime);
         }
     }
+
+    /**
+     * Invoked by an <tt>EndpointPushNotifier</tt> once the endpoint has written the messages
+     * it drained, to push the messages that a direct flush held back in the meantime.
+     *
+     * @param endpointId The id of the endpoint.
+     */
+    void flushDeferredPush(String endpointId)
+    {
+        EndpointQueue queue = outboundQueues.get(endpointId);
+        if (queue == null)
+            return;
+
+        synchronized (lock)
+        {
+            synchronized (queue)
+            {
+                if (queue.pushDeferred && queue.flushTask == null)
+                    directFlush(queue);
+            }
+        }
+    }
     
     /**
      * Utility method to initialize an EndpointQueue (if necessary) and associate a subscription (MessageClient) with it.
@@ -1626,7 +1731,9 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
             newQueue.flexClient = this;
             newQueue.endpointId = endpointId;
             newQueue.endpoint = flexClientManager.getMessageBroker().getEndpoint(endpointId);
-            newQueue.messages = new ArrayList<Message>(); /* Default size of 10 is fine */
+            newQueue.messages = newQueue.endpoint instanceof AbstractEndpoint
+                    ? ((AbstractEndpoint)newQueue.endpoint).createFlexClientOutboundQueue()
+                    : new ArrayList<Message>(); /* Default size of 10 is fine */
             FlexSession session = messageClient.getFlexSession();
             if (session.isPushSupported())
                 newQueue.pushSession = session;
@@ -1734,6 +1841,9 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
         if (flushedMessages != null && !flushedMessages.isEmpty())
             allMessages.addAll(flushedMessages);
 
+        // Track the number of messages recent polls returned for adaptive polling.
+        queue.recentPollDepth += (allMessages.size() - queue.recentPollDepth) * RECENT_POLL_DEPTH_WEIGHT;
+
         // Schedule a delayed flush, if necessary.
         int flushWaitTime = internalFlushResult.getNextFlushWaitTimeMillis();
         if (flushWaitTime > 0)
@@ -1848,6 +1958,25 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
         }
     }
     
+    /**
+     * Releases what an outbound queue that is no longer used holds on to: the
+     * messages of a bounded queue, which count towards the size of all outbound
+     * queues, and the entries of the queue in the index of the expired message
+     * sweeper. The caller must hold the lock of the queue.
+     *
+     * @param queue The queue to release.
+     */
+    private void releaseQueue(EndpointQueue queue)
+    {
+        if (queue.messages instanceof BoundedOutboundQueue)
+            queue.messages.clear();
+
+        ExpiredMessageSweeper sweeper = flexClientManager.expiredMessageSweeper;
+        if (sweeper != null)
+            sweeper.remove(queue);
+        queue.expiryBuckets = null;
+    }
+
     /**
      * Utility method used to shutdown endpoint queues accessed via polling channels
      * that have no more active subscriptions and no more pending outbound messages.
@@ -1864,6 +1993,7 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
             // Notify any threads waiting on this queue.
             synchronized (queue)
             {
+                releaseQueue(queue);
                 queue.notifyAll();
             }
             return true;
@@ -1935,6 +2065,22 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
     //
     //--------------------------------------------------------------------------
 
+    /**
+     * Returns the key that the attribute with the specified name is stored under.
+     */
+    private static Object attributeKey(String name)
+    {
+        return (name == null) ? NULL_ATTRIBUTE_NAME : name;
+    }
+
+    /**
+     * Returns the name of the attribute stored under the specified key.
+     */
+    private static String attributeName(Object key)
+    {
+        return (key == NULL_ATTRIBUTE_NAME) ? null : (String)key;
+    }
+
     private Set<String> getSessionAttributeNames(FlexSession session)
     {
         Set<String> attributeNames = new HashSet<String>();
@@ -2220,6 +2366,11 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
      *   <li>messageClientRefCount - A reference count of MessageClients subcribed over this endpoint.
      *       Once all MessageClients unsubscribe this queue can be shut down.</li>
      *   <li>avoidBusyPolling - Used to signal poll result generation for the queue to avoid busy polling.</li>
+     *   <li>pushDeferred - Set when a direct flush held the messages back because the endpoint had yet
+     *       to drain the messages pushed before; see <tt>flushDeferredPush()</tt>.</li>
+     *   <li>recentPollDepth - The moving average of the number of messages returned by polls.</li>
+     *   <li>expiryBuckets - The expiry buckets of the queued messages that have a time to live and
+     *       are indexed for removal by the <tt>ExpiredMessageSweeper</tt>; null if there are none.</li>
      * </ul>
      */
     public static class EndpointQueue
@@ -2236,5 +2387,8 @@ public class FlexClient extends TimeoutAbstractObject implements FlexSessionList
         public TimeoutAbstractObject flushTask;
         public int messageClientRefCount;
         public boolean avoidBusyPolling;
+        public boolean pushDeferred;
+        public TreeSet<Long> expiryBuckets;
+        public float recentPollDepth;
     }
 }
@@ -20,6 +20,8 @@ import java.util.ArrayList;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import flex.management.ManageableComponent;
 import flex.management.runtime.messaging.client.FlexClientManagerControl;
@@ -84,6 +86,8 @@ public class FlexClientManager extends ManageableComponent
             // Convert from minutes to millis.
             setFlexClientTimeoutMillis(flexClientSettings.getTimeoutMinutes()*60*1000);
         }
+        if (flexClientSettings != null)
+            maxOutboundQueueBytes = flexClientSettings.getMaxOutboundQueueBytes();
 
         this.setParent(broker);
     }
@@ -113,10 +117,17 @@ public class FlexClientManager extends ManageableComponent
     /**
      * Manages time outs for FlexClients.
      * This currently includes timeout of FlexClient instances, timeouts for async
-     * long-poll handling, and scheduling delayed flushes of outbound messages.
+     * long-poll handling, scheduling delayed flushes of outbound messages and
+     * sweeping expired messages from the outbound queues.
      */
     private volatile TimeoutManager flexClientTimeoutManager;
 
+    /**
+     * Removes expired messages from the outbound queues of the FlexClients;
+     * null while the manager is stopped.
+     */
+    volatile ExpiredMessageSweeper expiredMessageSweeper;
+
     //--------------------------------------------------------------------------
     //
     // Properties
@@ -189,6 +200,113 @@ public class FlexClientManager extends ManageableComponent
         }
     }
 
+    //----------------------------------
+    //  maxOutboundQueueBytes
+    //----------------------------------
+
+    private volatile long maxOutboundQueueBytes;
+
+    /**
+     * Returns the maximum estimated size in bytes of the messages in all
+     * outbound queues of the FlexClients.
+     *
+     * @return The maximum size in bytes, or zero or less for no limit.
+     */
+    public long getMaxOutboundQueueBytes()
+    {
+        return maxOutboundQueueBytes;
+    }
+
+    /**
+     * Sets the maximum estimated size in bytes of the messages in all outbound
+     * queues of the FlexClients. While it is exceeded, the overflow policy of an
+     * outbound queue applies to the messages pushed to it only if the queue
+     * holds more than its fair share of the limit, which is the limit divided
+     * by the number of non-empty outbound queues, so that the clients that keep
+     * up are not penalized for the backlog of those that do not.
+     *
+     * @param value The maximum size in bytes, or zero or less for no limit.
+     */
+    public void setMaxOutboundQueueBytes(long value)
+    {
+        maxOutboundQueueBytes = value;
+    }
+
+    //----------------------------------
+    //  outboundQueueBytes
+    //----------------------------------
+
+    private final AtomicLong outboundQueueBytes = new AtomicLong();
+
+    /**
+     * Returns the estimated size in bytes of the messages in all outbound
+     * queues of the FlexClients.
+     *
+     * @return The estimated size of the queued messages in bytes.
+     */
+    public long getOutboundQueueBytes()
+    {
+        return outboundQueueBytes.get();
+    }
+
+    /**
+     * Used by outbound queues to report the change in the size of their messages.
+     */
+    void addOutboundQueueBytes(long delta)
+    {
+        outboundQueueBytes.addAndGet(delta);
+    }
+
+    //----------------------------------
+    //  nonEmptyOutboundQueueCount
+    //----------------------------------
+
+    private final AtomicInteger nonEmptyOutboundQueueCount = new AtomicInteger();
+
+    /**
+     * Returns the number of outbound queues of the FlexClients that hold messages.
+     *
+     * @return The number of non-empty outbound queues.
+     */
+    public int getNonEmptyOutboundQueueCount()
+    {
+        return nonEmptyOutboundQueueCount.get();
+    }
+
+    /**
+     * Used by outbound queues to report that they became empty or non-empty.
+     */
+    void addNonEmptyOutboundQueues(int delta)
+    {
+        nonEmptyOutboundQueueCount.addAndGet(delta);
+    }
+
+    //----------------------------------
+    //  expiredMessageCount
+    //----------------------------------
+
+    private final AtomicLong expiredMessageCount = new AtomicLong();
+
+    /**
+     * Returns the number of messages whose time to live elapsed while they were
+     * queued for the FlexClients, and that were therefore never delivered.
+     *
+     * @return The number of messages that expired before delivery.
+     */
+    public long getExpiredMessageCount()
+    {
+        return expiredMessageCount.get();
+    }
+
+    /**
+     * Used by the outbound queue processors and the expired message sweeper to
+     * count the expired messages they remove from the outbound queues.
+     */
+    void addExpiredMessages(long count)
+    {
+        expiredMessageCount.addAndGet(count);
+    }
+
     //----------------------------------
     //  messageBroker
     //----------------------------------
@@ -352,6 +470,7 @@ public class FlexClientManager extends ManageableComponent
                                                                 return t;
                                                             }
                                                         });
+        expiredMessageSweeper = new ExpiredMessageSweeper(this, flexClientTimeoutManager);
     }
 
     /**
@@ -364,6 +483,7 @@ public class FlexClientManager extends ManageableComponent
             controller.unregister();
         }
 
+        expiredMessageSweeper = null;
         if (flexClientTimeoutManager != null)
             flexClientTimeoutManager.shutdown();
     }
@@ -170,7 +170,8 @@ public class FlexClientOutboundQueueProcessor
 
     /**
      * Removes all messages in the queue targeted to this specific MessageClient subscription(s) and
-     * returns them to be sent to the client.
+     * returns them to be sent to the client, in the iteration order of the queue; that is by
+     * priority if the endpoint uses priority ordered outbound queues.
      * Overrides should be careful to only return messages for the specified MessageClient.
      *
      * @param messageClient The specific MessageClient to return messages for.
@@ -183,7 +184,11 @@ public class FlexClientOutboundQueueProcessor
         FlushResult flushResult = new FlushResult();
         List<Message> messagesToFlush = null;
 
-        for (Iterator<Message> iter = outboundQueue.iterator(); iter.hasNext();)
+        // A partitioned queue only needs to visit the messages of the MessageClient.
+        Iterator<Message> queued = messageClient != null && outboundQueue instanceof MessageClientQueue
+                ? ((MessageClientQueue)outboundQueue).iterator(messageClient.getClientId())
+                : outboundQueue.iterator();
+        for (Iterator<Message> iter = queued; iter.hasNext();)
         {
             Message message = iter.next();
             if (messageClient == null || (message.getClientId().equals(messageClient.getClientId())))
@@ -191,6 +196,8 @@ public class FlexClientOutboundQueueProcessor
                 if (isMessageExpired(message)) // Don't flush expired messages.
                 {
                     iter.remove();
+                    if (client != null)
+                        client.flexClientManager.addExpiredMessages(1);
                     continue;
                 }
 
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.client;
+
+import java.util.Iterator;
+
+import flex.messaging.messages.Message;
+
+/**
+ * Implemented by outbound queues that can address the messages queued for one
+ * MessageClient without the caller walking the whole queue. Queue processors
+ * and the <code>FlexClient</code> use these methods when the outbound queue
+ * implements this interface.
+ */
+public interface MessageClientQueue
+{
+    /**
+     * Returns an iterator over the queued messages for a MessageClient in the
+     * order they were queued; its <code>remove</code> removes the message from
+     * the queue.
+     *
+     * @param clientId The id of the MessageClient.
+     * @return An iterator over the queued messages for the MessageClient.
+     */
+    Iterator<Message> iterator(Object clientId);
+
+    /**
+     * Removes all queued messages for a MessageClient.
+     *
+     * @param clientId The id of the MessageClient.
+     */
+    void clear(Object clientId);
+
+    /**
+     * Replaces a queued message, compared by identity, with another message
+     * that keeps its place.
+     *
+     * @param queued The queued message.
+     * @param message The new message.
+     * @return <code>true</code> if the queued message was found and replaced.
+     */
+    boolean replace(Message queued, Message message);
+}
@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.client;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import flex.messaging.messages.Message;
+
+/**
+ * An outbound queue that keeps a separate FIFO for the messages of each
+ * MessageClient (subscription), and stamps every message with a sequence
+ * number in the order it was queued. Flushing the messages of one
+ * MessageClient only visits that MessageClient's messages, while iterating
+ * the whole queue merges the partitions back into arrival order in
+ * O(log k) per message for k partitions.
+ * <p>
+ * Positional access merges the partitions up to the position, so
+ * <code>get(int)</code>, <code>set(int, Message)</code> and
+ * <code>remove(int)</code> are linear; queue processors should iterate, or use
+ * {@link #iterator(Object)} and {@link #replace(Message, Message)}.
+ * </p>
+ * <p>
+ * Like the <code>ArrayList</code> used by default, it is not thread safe; the
+ * <code>FlexClient</code> synchronizes on its outbound queue.
+ * </p>
+ */
+public class PartitionedOutboundQueue extends AbstractList<Message> implements MessageClientQueue
+{
+    //--------------------------------------------------------------------------
+    //
+    // Variables
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * The FIFO for each MessageClient id that has queued messages.
+     */
+    private final Map<Object, StampedMessageFifo> partitions = new HashMap<Object, StampedMessageFifo>();
+
+    /**
+     * The sequence number of the next queued message.
+     */
+    private long nextSequence;
+
+    /**
+     * The total number of messages in all partitions.
+     */
+    private int size;
+
+    //--------------------------------------------------------------------------
+    //
+    // Public Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Adds the message to the tail of the partition of its MessageClient.
+     *
+     * @param message The message to add.
+     * @return true
+     */
+    @Override
+    public boolean add(Message message)
+    {
+        Object clientId = message.getClientId();
+        StampedMessageFifo partition = partitions.get(clientId);
+        if (partition == null)
+        {
+            partition = new StampedMessageFifo();
+            partitions.put(clientId, partition);
+        }
+        partition.add(message, nextSequence++);
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Message get(int index)
+    {
+        return iteratorAt(index).next();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Message set(int index, Message message)
+    {
+        MergedIterator iter = iteratorAt(index);
+        iter.next();
+        return iter.last.set(iter.lastIndex, message);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Message remove(int index)
+    {
+        Iterator<Message> iter = iteratorAt(index);
+        Message message = iter.next();
+        iter.remove();
+        return message;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear()
+    {
+        partitions.clear();
+        size = 0;
+        modCount++;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the number of queued messages for a MessageClient.
+     *
+     * @param clientId The id of the MessageClient.
+     * @return The number of queued messages for the MessageClient.
+     */
+    public int size(Object clientId)
+    {
+        StampedMessageFifo partition = partitions.get(clientId);
+        return partition != null ? partition.size() : 0;
+    }
+
+    /** {@inheritDoc} */
+    public void clear(Object clientId)
+    {
+        StampedMessageFifo partition = partitions.remove(clientId);
+        if (partition != null)
+        {
+            size -= partition.size();
+            modCount++;
+        }
+    }
+
+    /**
+     * Replaces a queued message, compared by identity, with another message
+     * that keeps its place, looking only at the partition of its MessageClient.
+     *
+     * @param queued The queued message.
+     * @param message The new message.
+     * @return <code>true</code> if the queued message was found and replaced.
+     */
+    public boolean replace(Message queued, Message message)
+    {
+        StampedMessageFifo partition = partitions.get(queued.getClientId());
+        int index = partition != null ? partition.indexOf(queued) : -1;
+        if (index == -1)
+            return false;
+        partition.set(index, message);
+        return true;
+    }
+
+    /**
+     * Returns an iterator over all queued messages in the order they were queued.
+     *
+     * @return An iterator over all queued messages.
+     */
+    @Override
+    public Iterator<Message> iterator()
+    {
+        return new MergedIterator();
+    }
+
+    /** {@inheritDoc} */
+    public Iterator<Message> iterator(Object clientId)
+    {
+        StampedMessageFifo partition = partitions.get(clientId);
+        if (partition == null)
+            return Collections.<Message>emptyList().iterator();
+        return new PartitionIterator(clientId, partition);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private Methods
+    //
+    //--------------------------------------------------------------------------
+
+    private MergedIterator iteratorAt(int index)
+    {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        MergedIterator iter = new MergedIterator();
+        for (int i = 0; i < index; i++)
+            iter.next();
+        return iter;
+    }
+
+    /**
+     * Drops a partition that has become empty, so that partitions of
+     * MessageClients that are gone do not accumulate.
+     */
+    private void removed(Object clientId, StampedMessageFifo partition)
+    {
+        size--;
+        modCount++;
+        if (partition.size() == 0)
+            partitions.remove(clientId);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Nested Classes
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * The position of a merged iteration in a partition.
+     */
+    private static final class Cursor
+    {
+        final Object clientId;
+        final StampedMessageFifo partition;
+        int index;
+
+        Cursor(Object clientId, StampedMessageFifo partition)
+        {
+            this.clientId = clientId;
+            this.partition = partition;
+        }
+
+        long nextSequence()
+        {
+            return partition.getStamp(index);
+        }
+    }
+
+    private static final Comparator<Cursor> CURSOR_ORDER = new Comparator<Cursor>()
+    {
+        public int compare(Cursor c1, Cursor c2)
+        {
+            long s1 = c1.nextSequence();
+            long s2 = c2.nextSequence();
+            return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+        }
+    };
+
+    /**
+     * Merges the partitions by sequence number, keeping the partitions that
+     * have messages left in a heap ordered by their next sequence number.
+     * Removing the last message returned does not change the next message of
+     * its partition, so the heap stays ordered.
+     */
+    private final class MergedIterator implements Iterator<Message>
+    {
+        private final PriorityQueue<Cursor> heads;
+        private StampedMessageFifo last;
+        private Object lastClientId;
+        private int lastIndex = -1;
+        private Cursor lastCursor;
+        private int expectedModCount = modCount;
+
+        MergedIterator()
+        {
+            heads = new PriorityQueue<Cursor>(Math.max(1, partitions.size()), CURSOR_ORDER);
+            for (Map.Entry<Object, StampedMessageFifo> entry : partitions.entrySet())
+                heads.add(new Cursor(entry.getKey(), entry.getValue()));
+        }
+
+        public boolean hasNext()
+        {
+            return !heads.isEmpty();
+        }
+
+        public Message next()
+        {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+
+            Cursor cursor = heads.poll();
+            if (cursor == null)
+                throw new NoSuchElementException();
+
+            lastCursor = cursor;
+            last = cursor.partition;
+            lastClientId = cursor.clientId;
+            lastIndex = cursor.index++;
+            if (cursor.index < cursor.partition.size())
+                heads.add(cursor);
+            return last.get(lastIndex);
+        }
+
+        public void remove()
+        {
+            if (lastIndex == -1)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+
+            last.remove(lastIndex);
+            lastCursor.index--;
+            lastIndex = -1;
+            removed(lastClientId, last);
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * Iterates the messages of one partition.
+     */
+    private final class PartitionIterator implements Iterator<Message>
+    {
+        private final Object clientId;
+        private final StampedMessageFifo partition;
+        private int index;
+        private boolean removable;
+        private int expectedModCount = modCount;
+
+        PartitionIterator(Object clientId, StampedMessageFifo partition)
+        {
+            this.clientId = clientId;
+            this.partition = partition;
+        }
+
+        public boolean hasNext()
+        {
+            return index < partition.size();
+        }
+
+        public Message next()
+        {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            removable = true;
+            return partition.get(index++);
+        }
+
+        public void remove()
+        {
+            if (!removable)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            partition.remove(--index);
+            removable = false;
+            removed(clientId, partition);
+            expectedModCount = modCount;
+        }
+    }
+}
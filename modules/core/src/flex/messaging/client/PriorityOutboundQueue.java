@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.client;
+
+import java.util.AbstractList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import flex.messaging.messages.Message;
+
+/**
+ * An outbound queue that orders messages by their <code>DSPriority</code>
+ * header, highest first, and in arrival order within a priority. It keeps
+ * one FIFO per priority level from 0 to 9, so adding a message is a constant
+ * time append, and iterating it, as queue processors do to flush, returns the
+ * messages in priority order.
+ * <p>
+ * To prevent low priority messages from waiting forever behind a steady stream
+ * of higher priority ones, a message that has waited longer than the starvation
+ * timeout at its level is moved to the tail of the next higher level each time
+ * the queue is iterated.
+ * </p>
+ * <p>
+ * Like the <code>ArrayList</code> used by default, it is not thread safe; the
+ * <code>FlexClient</code> synchronizes on its outbound queue.
+ * </p>
+ */
+public class PriorityOutboundQueue extends AbstractList<Message>
+{
+    //--------------------------------------------------------------------------
+    //
+    // Public Static Constants
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * The lowest message priority.
+     */
+    public static final int MIN_PRIORITY = 0;
+
+    /**
+     * The highest message priority.
+     */
+    public static final int MAX_PRIORITY = 9;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructs a queue.
+     *
+     * @param starvationTimeoutMillis The time a message may wait at its priority
+     * level before it is moved up a level; zero or less disables this.
+     */
+    public PriorityOutboundQueue(long starvationTimeoutMillis)
+    {
+        this.starvationTimeoutMillis = starvationTimeoutMillis;
+        levels = new StampedMessageFifo[MAX_PRIORITY - MIN_PRIORITY + 1];
+        for (int i = 0; i < levels.length; i++)
+            levels[i] = new StampedMessageFifo();
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Variables
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * The FIFO for each priority, from the lowest to the highest, with the
+     * time at which each message was queued at that level.
+     */
+    private final StampedMessageFifo[] levels;
+
+    /**
+     * The total number of messages in all levels.
+     */
+    private int size;
+
+    private final long starvationTimeoutMillis;
+
+    //--------------------------------------------------------------------------
+    //
+    // Public Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the priority of a message, from its <code>DSPriority</code>
+     * header limited to the range of 0 to 9, or the default priority if it
+     * does not have one.
+     *
+     * @param message The message.
+     * @return The priority of the message.
+     */
+    public static int getPriority(Message message)
+    {
+        Object header = message.getHeader(Message.PRIORITY_HEADER);
+        int priority = Message.DEFAULT_PRIORITY;
+        if (header instanceof Number)
+        {
+            priority = ((Number)header).intValue();
+        }
+        else if (header instanceof String)
+        {
+            try
+            {
+                priority = Integer.parseInt(((String)header).trim());
+            }
+            catch (NumberFormatException e)
+            {
+                // Use the default priority.
+            }
+        }
+        return Math.max(MIN_PRIORITY, Math.min(MAX_PRIORITY, priority));
+    }
+
+    /**
+     * Returns the starvation timeout of the queue.
+     *
+     * @return The starvation timeout in milliseconds.
+     */
+    public long getStarvationTimeoutMillis()
+    {
+        return starvationTimeoutMillis;
+    }
+
+    /**
+     * Adds the message to the tail of its priority level.
+     *
+     * @param message The message to add.
+     * @return true
+     */
+    @Override
+    public boolean add(Message message)
+    {
+        levels[getPriority(message) - MIN_PRIORITY].add(message, System.currentTimeMillis());
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Message get(int index)
+    {
+        checkIndex(index);
+        for (int i = levels.length - 1; i >= 0; i--)
+        {
+            StampedMessageFifo level = levels[i];
+            if (index < level.size())
+                return level.get(index);
+            index -= level.size();
+        }
+        throw new IndexOutOfBoundsException();
+    }
+
+    /**
+     * Replaces the message at the position, which keeps its place in the
+     * queue whatever the priority of the new message is.
+     *
+     * @param index The position of the message to replace.
+     * @param message The new message.
+     * @return The message that was replaced.
+     */
+    @Override
+    public Message set(int index, Message message)
+    {
+        checkIndex(index);
+        for (int i = levels.length - 1; i >= 0; i--)
+        {
+            StampedMessageFifo level = levels[i];
+            if (index < level.size())
+                return level.set(index, message);
+            index -= level.size();
+        }
+        throw new IndexOutOfBoundsException();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Message remove(int index)
+    {
+        checkIndex(index);
+        for (int i = levels.length - 1; i >= 0; i--)
+        {
+            StampedMessageFifo level = levels[i];
+            if (index < level.size())
+            {
+                size--;
+                modCount++;
+                return level.remove(index);
+            }
+            index -= level.size();
+        }
+        throw new IndexOutOfBoundsException();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear()
+    {
+        for (int i = 0; i < levels.length; i++)
+            levels[i].clear();
+        size = 0;
+        modCount++;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Moves the messages that have waited too long at their level up a level,
+     * and returns an iterator over the messages in priority order.
+     *
+     * @return An iterator over the messages in priority order.
+     */
+    @Override
+    public Iterator<Message> iterator()
+    {
+        promoteStarved(System.currentTimeMillis());
+        return new QueueIterator(true);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Package Private Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns an iterator over the messages from the lowest priority to the
+     * highest, oldest first within a priority, for a bounded queue to drop
+     * messages from.
+     */
+    Iterator<Message> evictionIterator()
+    {
+        return new QueueIterator(false);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private Methods
+    //
+    //--------------------------------------------------------------------------
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    /**
+     * Starting from the highest level, so that a message moves at most one
+     * level per call, moves the oldest messages of each level to the next one
+     * while they have waited longer than the starvation timeout.
+     */
+    private void promoteStarved(long now)
+    {
+        if (starvationTimeoutMillis <= 0 || size == 0)
+            return;
+
+        for (int i = levels.length - 2; i >= 0; i--)
+        {
+            StampedMessageFifo level = levels[i];
+            while (level.size() > 0 && now - level.getStamp(0) >= starvationTimeoutMillis)
+            {
+                levels[i + 1].add(level.remove(0), now);
+                modCount++;
+            }
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Nested Classes
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Iterates the levels from the highest priority to the lowest, or from the
+     * lowest to the highest.
+     */
+    private final class QueueIterator implements Iterator<Message>
+    {
+        private final int step;
+        private int level;
+        private int index;
+        private boolean removable;
+        private int expectedModCount = modCount;
+
+        QueueIterator(boolean highestFirst)
+        {
+            step = highestFirst ? -1 : 1;
+            level = highestFirst ? levels.length - 1 : 0;
+        }
+
+        public boolean hasNext()
+        {
+            while (level >= 0 && level < levels.length && index >= levels[level].size())
+            {
+                level += step;
+                index = 0;
+            }
+            return level >= 0 && level < levels.length;
+        }
+
+        public Message next()
+        {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            removable = true;
+            return levels[level].get(index++);
+        }
+
+        public void remove()
+        {
+            if (!removable)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            levels[level].remove(--index);
+            size--;
+            modCount++;
+            expectedModCount = modCount;
+            removable = false;
+        }
+    }
+}
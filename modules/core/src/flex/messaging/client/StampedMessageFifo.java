@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.client;
+
+import flex.messaging.messages.Message;
+
+/**
+ * A FIFO of messages, each with a stamp such as the time or sequence number
+ * at which it was queued, used by the outbound queue implementations. Messages
+ * are appended at the tail and usually removed from the head, which only
+ * advances the head index.
+ */
+final class StampedMessageFifo
+{
+    private Message[] messages = new Message[4];
+    private long[] stamps = new long[4];
+    private int head;
+    private int tail;
+
+    int size()
+    {
+        return tail - head;
+    }
+
+    Message get(int index)
+    {
+        return messages[head + index];
+    }
+
+    long getStamp(int index)
+    {
+        return stamps[head + index];
+    }
+
+    Message set(int index, Message message)
+    {
+        Message old = messages[head + index];
+        messages[head + index] = message;
+        return old;
+    }
+
+    void add(Message message, long stamp)
+    {
+        if (tail == messages.length)
+        {
+            int count = size();
+            // Grow only if the free space at the head is less than half.
+            if (head < messages.length / 2)
+            {
+                Message[] newMessages = new Message[messages.length * 2];
+                long[] newStamps = new long[messages.length * 2];
+                System.arraycopy(messages, head, newMessages, 0, count);
+                System.arraycopy(stamps, head, newStamps, 0, count);
+                messages = newMessages;
+                stamps = newStamps;
+            }
+            else
+            {
+                System.arraycopy(messages, head, messages, 0, count);
+                System.arraycopy(stamps, head, stamps, 0, count);
+                for (int i = count; i < tail; i++)
+                    messages[i] = null;
+            }
+            head = 0;
+            tail = count;
+        }
+        messages[tail] = message;
+        stamps[tail] = stamp;
+        tail++;
+    }
+
+    Message remove(int index)
+    {
+        int position = head + index;
+        Message message = messages[position];
+        if (index == 0)
+        {
+            messages[head++] = null;
+        }
+        else
+        {
+            int moved = tail - position - 1;
+            System.arraycopy(messages, position + 1, messages, position, moved);
+            System.arraycopy(stamps, position + 1, stamps, position, moved);
+            messages[--tail] = null;
+        }
+        if (head == tail)
+            head = tail = 0;
+        return message;
+    }
+
+    /**
+     * Returns the position of the message, compared by identity, or -1.
+     */
+    int indexOf(Message message)
+    {
+        for (int i = tail - 1; i >= head; i--)
+        {
+            if (messages[i] == message)
+                return i - head;
+        }
+        return -1;
+    }
+
+    void clear()
+    {
+        for (int i = head; i < tail; i++)
+            messages[i] = null;
+        head = tail = 0;
+    }
+}
@@ -36,9 +36,11 @@ import org.w3c.dom.Element;
 
 import flex.messaging.Destination;
 import flex.messaging.MessageBroker;
+import flex.messaging.MessageException;
 import flex.messaging.config.ClusterSettings;
 import flex.messaging.config.ConfigMap;
 import flex.messaging.endpoints.Endpoint;
+import flex.messaging.log.Log;
 import flex.messaging.util.ClassUtil;
 
 /**
@@ -64,6 +66,8 @@ public class ClusterManager
     public static final String OPERATION_SUBSCRIBE_FROM_PEER = "subscribeFromPeer";
     public static final String OPERATION_PUSH_MESSAGE_FROM_PEER_TO_PEER = "pushMessageFromPeerToPeer";
     public static final String OPERATION_PEER_SYNC_AND_PUSH_ONE_TO_PEER = "peerSyncAndPushOneToPeer";
+    public static final String OPERATION_PUSH_MESSAGES_FROM_PEER = "pushMessagesFromPeer";
+    public static final String OPERATION_PUSH_MESSAGES_FROM_PEER_TO_PEER = "pushMessagesFromPeerToPeer";
 
     /**
      * A link to the MessageBroker.
@@ -556,6 +560,34 @@ public class ClusterManager
             throwClusterException(10201, new Object[] {clusterName, propsFileName}, null);
     }
 
+    /**
+     * Loads the implementation class of a cluster. When no class is configured
+     * and the default JGroups implementation is not available, the cluster uses
+     * <code>TcpCluster</code>.
+     *
+     * @param cls The cluster settings.
+     * @return The cluster implementation class.
+     */
+    private Class createClusterClass(ClusterSettings cls)
+    {
+        if (!cls.isImplementationClassSet())
+        {
+            try
+            {
+                return ClassUtil.createClass(cls.getImplementationClass());
+            }
+            catch (MessageException e)
+            {
+                if (Log.isInfo())
+                    Log.getLogger(Cluster.LOG_CATEGORY).info("Cluster " + cls.getClusterName()
+                            + " uses " + ClusterSettings.TCP_CLUSTER + " because "
+                            + cls.getImplementationClass() + " is not available.");
+                return ClassUtil.createClass(ClusterSettings.TCP_CLUSTER);
+            }
+        }
+        return ClassUtil.createClass(cls.getImplementationClass());
+    }
+
     /**
      * Create the cluster based on the cluster settings already available. The cluster
      * is added to the cluster managers list of clusters indexed by the cluster id.
@@ -574,7 +606,7 @@ public class ClusterManager
         Element propsFile = clusterConfig.get(clusterId);
         ClusterSettings cls = clusterSettings.get(clusterId);
         Cluster cluster = null;
-        Class clusterClass = ClassUtil.createClass(cls.getImplementationClass());
+        Class clusterClass = createClusterClass(cls);
         Constructor clusterConstructor = null;
         try
         {
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.cluster;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.regex.Pattern;
+
+import flex.messaging.validators.DeserializationValidator;
+
+/**
+ *
+ * An <code>ObjectInputStream</code> for the data cluster nodes send each other.
+ * Only the classes of messages, their bodies and headers, and the cluster's own
+ * frames are resolved: the message, AMF and cluster types, the boxed primitives,
+ * strings, numbers, dates and the <code>java.util</code> collections, and arrays
+ * of these. Other classes, such as application types in message bodies, are
+ * resolved only if the <code>DeserializationValidator</code> of the broker
+ * allows their creation. Classes are loaded through the thread context class
+ * loader.
+ */
+public class ClusterObjectInputStream extends ObjectInputStream
+{
+    private static final Pattern ALLOWED_CLASSES = Pattern.compile(
+            "flex\\.messaging\\.messages\\.[^.]+"
+            + "|flex\\.messaging\\.io\\.[^.]+"
+            + "|flex\\.messaging\\.io\\.amf\\.[^.]+"
+            + "|flex\\.messaging\\.cluster\\.[^.]+"
+            + "|flex\\.messaging\\.services\\.messaging\\.[^.]+"
+            + "|java\\.lang\\.(Boolean|Byte|Character|Double|Enum|Float|Integer|Long|Number|Object|Short|String)"
+            + "|java\\.math\\.(BigDecimal|BigInteger)"
+            + "|java\\.util\\.[^.$]+"
+            + "|java\\.util\\.(Arrays|Collections)\\$[^.]+");
+
+    private final DeserializationValidator validator;
+
+    /**
+     * Constructs a stream reading from the given stream.
+     *
+     * @param in The stream to read.
+     * @param validator The validator of the broker, used to allow application
+     * types; may be <code>null</code>.
+     * @throws IOException If the stream header cannot be read.
+     */
+    public ClusterObjectInputStream(InputStream in, DeserializationValidator validator) throws IOException
+    {
+        super(in);
+        this.validator = validator;
+    }
+
+    @Override protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+    {
+        String name = desc.getName();
+        boolean allowed = isAllowed(name);
+
+        Class<?> c = null;
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader != null)
+        {
+            try
+            {
+                c = Class.forName(name, false, loader);
+            }
+            catch (ClassNotFoundException e)
+            {
+                // Fall back to the default resolution.
+            }
+        }
+        if (c == null)
+        {
+            if (!allowed && validator == null)
+                throw notAllowed(name);
+            c = super.resolveClass(desc);
+        }
+
+        if (!allowed && (validator == null || !validator.validateCreation(c)))
+            throw notAllowed(name);
+        return c;
+    }
+
+    @Override protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException
+    {
+        throw new InvalidClassException("Proxy classes are not read from cluster peers.");
+    }
+
+    /**
+     * Returns whether a class, or the component class of an array class, is
+     * one of the classes that are always resolved.
+     */
+    private static boolean isAllowed(String name)
+    {
+        int dimensions = 0;
+        while (dimensions < name.length() && name.charAt(dimensions) == '[')
+            dimensions++;
+        if (dimensions > 0)
+        {
+            // Primitive component types are a single character.
+            if (name.length() == dimensions + 1)
+                return true;
+            if (name.charAt(dimensions) != 'L' || !name.endsWith(";"))
+                return false;
+            name = name.substring(dimensions + 1, name.length() - 1);
+        }
+        return ALLOWED_CLASSES.matcher(name).matches();
+    }
+
+    private static InvalidClassException notAllowed(String name)
+    {
+        return new InvalidClassException(name, "Class is not allowed to be read from a cluster peer.");
+    }
+}
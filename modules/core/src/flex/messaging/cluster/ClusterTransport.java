@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.cluster;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ *
+ * Moves frames between the nodes of a <code>TcpCluster</code>. Nodes are
+ * identified by address strings. Delivery is best effort: frames for a node
+ * that cannot be reached are dropped, and the cluster detects the failure
+ * through missing heartbeats. Frames sent from one node to another are
+ * delivered in the order they were sent.
+ */
+public interface ClusterTransport
+{
+    /**
+     * Starts accepting frames for a local address.
+     *
+     * @param localAddress The address of the local node.
+     * @param receiver The receiver to pass incoming frames to.
+     * @throws IOException If the transport cannot listen on the address.
+     */
+    void start(String localAddress, Receiver receiver) throws IOException;
+
+    /**
+     * Sends a frame to a node without waiting for it to be delivered.
+     *
+     * @param address The address of the node.
+     * @param frame The frame; must not be modified after the call.
+     */
+    void send(String address, byte[] frame);
+
+    /**
+     * Stops the transport and releases its resources.
+     */
+    void stop();
+
+    /**
+     * Receives the frames that arrive at a transport. Implementations must
+     * return quickly, as they are called on the transport's I/O thread.
+     */
+    interface Receiver
+    {
+        /**
+         * Decides whether a connection from a remote host is accepted. The
+         * connections that are refused are closed before any frame is read.
+         *
+         * @param remoteAddress The address of the remote host.
+         * @return <code>true</code> if frames may be read from the connection.
+         */
+        boolean accept(InetAddress remoteAddress);
+
+        /**
+         * Handles an incoming frame.
+         *
+         * @param frame The frame.
+         * @param remoteAddress The address of the host that sent the frame, or
+         * <code>null</code> if it was sent from the same JVM.
+         */
+        void receive(byte[] frame, InetAddress remoteAddress);
+    }
+}
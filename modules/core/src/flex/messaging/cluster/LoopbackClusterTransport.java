@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.cluster;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * A <code>ClusterTransport</code> that connects the cluster nodes running in the
+ * same JVM, so that several message brokers can be clustered in a single process
+ * for testing and benchmarking. Addresses are arbitrary names shared by all
+ * loopback transports in the class loader; frames are handed straight to the
+ * receiver of the target node, without a remote address.
+ */
+public class LoopbackClusterTransport implements ClusterTransport
+{
+    private static final ConcurrentHashMap<String, LoopbackClusterTransport> transports =
+            new ConcurrentHashMap<String, LoopbackClusterTransport>();
+
+    private String localAddress;
+    private volatile Receiver receiver;
+
+    // Implements flex.messaging.cluster.ClusterTransport.start; inherits javadoc specification.
+    public void start(String localAddress, Receiver receiver) throws IOException
+    {
+        this.localAddress = localAddress;
+        this.receiver = receiver;
+        if (transports.putIfAbsent(localAddress, this) != null)
+            throw new IOException("The loopback address '" + localAddress + "' is already in use.");
+    }
+
+    // Implements flex.messaging.cluster.ClusterTransport.send; inherits javadoc specification.
+    public void send(String address, byte[] frame)
+    {
+        if (receiver == null)
+            return;
+
+        LoopbackClusterTransport target = transports.get(address);
+        if (target == null)
+            return;
+
+        Receiver r = target.receiver;
+        if (r != null)
+            r.receive(frame, null);
+    }
+
+    // Implements flex.messaging.cluster.ClusterTransport.stop; inherits javadoc specification.
+    public void stop()
+    {
+        receiver = null;
+        if (localAddress != null)
+            transports.remove(localAddress, this);
+    }
+}
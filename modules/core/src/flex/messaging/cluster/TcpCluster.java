@@ -0,0 +1,958 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import flex.messaging.MessageBroker;
+import flex.messaging.config.ConfigMap;
+import flex.messaging.log.Log;
+import flex.messaging.util.MethodMatcher;
+
+/**
+ *
+ * A cluster implementation that connects its nodes directly over TCP. Each node
+ * is identified by its <code>bind-address</code>, of the form <code>host:port</code>.
+ * With <code>static</code> membership the nodes are exactly the configured
+ * <code>member</code> addresses; with <code>seed</code> membership the configured
+ * members are contact points, and nodes learn about each other from the member
+ * lists carried by heartbeats. A node that sends no heartbeat within
+ * <code>heartbeat-timeout-millis</code> is removed from the cluster and the
+ * <code>RemoveNodeListener</code>s are notified.
+ * <p>
+ * Peers are authenticated before their frames are deserialized. With
+ * <code>static</code> membership, connections are accepted only from the hosts
+ * of the configured members, and a frame is handled only if its sender is a
+ * configured member whose host sent it. When a <code>shared-secret</code> is
+ * set, every frame carries an HMAC-SHA256 of its content keyed with the secret,
+ * and frames without a valid one are dropped; <code>seed</code> membership
+ * requires a shared secret. Frames are deserialized through a
+ * <code>ClusterObjectInputStream</code>, and only the service operations of
+ * the <code>ClusterManager</code> are invoked.
+ * </p>
+ * <p>
+ * The settings are read from the <code>properties</code> of the cluster
+ * definition, or else from the top-level elements of its properties file:
+ * </p>
+ * <pre>
+ * &lt;cluster-properties&gt;
+ *     &lt;bind-address&gt;node1.example.com:7800&lt;/bind-address&gt;
+ *     &lt;member&gt;node2.example.com:7800&lt;/member&gt;
+ *     &lt;membership&gt;static&lt;/membership&gt;
+ *     &lt;heartbeat-interval-millis&gt;1000&lt;/heartbeat-interval-millis&gt;
+ *     &lt;heartbeat-timeout-millis&gt;5000&lt;/heartbeat-timeout-millis&gt;
+ *     &lt;join-timeout-millis&gt;3000&lt;/join-timeout-millis&gt;
+ *     &lt;shared-secret&gt;change-me&lt;/shared-secret&gt;
+ * &lt;/cluster-properties&gt;
+ * </pre>
+ * <p>
+ * Setting <code>transport</code> to <code>loopback</code> connects the nodes
+ * created in the same JVM instead, for testing and benchmarking.
+ * </p>
+ */
+public class TcpCluster extends Cluster
+{
+    public static final String BIND_ADDRESS = "bind-address";
+    public static final String MEMBER = "member";
+    public static final String MEMBERSHIP = "membership";
+    public static final String MEMBERSHIP_STATIC = "static";
+    public static final String MEMBERSHIP_SEED = "seed";
+    public static final String TRANSPORT = "transport";
+    public static final String TRANSPORT_TCP = "tcp";
+    public static final String TRANSPORT_LOOPBACK = "loopback";
+    public static final String HEARTBEAT_INTERVAL_MILLIS = "heartbeat-interval-millis";
+    public static final String HEARTBEAT_TIMEOUT_MILLIS = "heartbeat-timeout-millis";
+    public static final String JOIN_TIMEOUT_MILLIS = "join-timeout-millis";
+    public static final String SHARED_SECRET = "shared-secret";
+
+    private static final long DEFAULT_HEARTBEAT_INTERVAL_MILLIS = 1000;
+    private static final long DEFAULT_HEARTBEAT_TIMEOUT_MILLIS = 5000;
+    private static final long DEFAULT_JOIN_TIMEOUT_MILLIS = 3000;
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 32;
+
+    /**
+     * The service operations that peers may invoke.
+     */
+    private static final Set<String> OPERATIONS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            ClusterManager.OPERATION_ADD_ENDPOINT_FOR_CHANNEL,
+            ClusterManager.OPERATION_SEND_ENDPOINT_URL,
+            ClusterManager.OPERATION_RECEIVE_ENDPOINT_URL,
+            ClusterManager.OPERATION_PUSH_MESSAGE_FROM_PEER,
+            ClusterManager.OPERATION_PEER_SYNC_AND_PUSH,
+            ClusterManager.OPERATION_REQUEST_ADAPTER_STATE,
+            ClusterManager.OPERATION_RECEIVE_ADAPTER_STATE,
+            ClusterManager.OPERATION_SEND_SUBSCRIPTIONS,
+            ClusterManager.OPERATION_RECEIVE_SUBSCRIPTIONS,
+            ClusterManager.OPERATION_SUBSCRIBE_FROM_PEER,
+            ClusterManager.OPERATION_PUSH_MESSAGE_FROM_PEER_TO_PEER,
+            ClusterManager.OPERATION_PEER_SYNC_AND_PUSH_ONE_TO_PEER,
+            ClusterManager.OPERATION_PUSH_MESSAGES_FROM_PEER,
+            ClusterManager.OPERATION_PUSH_MESSAGES_FROM_PEER_TO_PEER)));
+
+    // Error codes.
+    private static final int BROADCAST_FAILED = 10204;
+    private static final int OPERATION_FAILED = 10205;
+    private static final int NOT_SERIALIZABLE = 10212;
+    private static final int MISSING_BIND_ADDRESS = 10221;
+    private static final int INVALID_SETTING = 10222;
+    private static final int TRANSPORT_START_FAILED = 10223;
+    private static final int MISSING_SHARED_SECRET = 10225;
+
+    private final ClusterManager clusterManager;
+    private final MethodMatcher methodMatcher = new MethodMatcher();
+
+    private String clusterId;
+    private String localAddress;
+    private ClusterNode localNode;
+    private boolean seedMembership;
+    private boolean verifyHosts;
+    private SecretKeySpec sharedSecret;
+    private long heartbeatTimeoutMillis;
+    private ClassLoader classLoader;
+    private ClusterTransport transport;
+    private ExecutorService dispatcher;
+    private ScheduledExecutorService heartbeatService;
+
+    /**
+     * The configured members, excluding the local node.
+     */
+    private final Set<String> configuredMembers = new LinkedHashSet<String>();
+
+    /**
+     * The addresses of the hosts of the configured members, by member. Members
+     * whose host cannot be resolved yet are resolved again on each heartbeat.
+     */
+    private final ConcurrentHashMap<String, InetAddress[]> memberHosts = new ConcurrentHashMap<String, InetAddress[]>();
+
+    /**
+     * The nodes sent heartbeats: the configured members and, with seed
+     * membership, the members learned from other nodes.
+     */
+    private final Set<String> knownMembers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * The live peers and the time their last frame was received.
+     */
+    private final ConcurrentHashMap<String, Long> lastSeen = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * The nodes of the cluster, including the local node, by address.
+     */
+    private final ConcurrentHashMap<String, ClusterNode> nodes = new ConcurrentHashMap<String, ClusterNode>();
+
+    private final Object joinLock = new Object();
+
+    /**
+     * Constructs a cluster for a cluster manager.
+     *
+     * @param clusterManager The cluster manager.
+     */
+    public TcpCluster(ClusterManager clusterManager)
+    {
+        this.clusterManager = clusterManager;
+    }
+
+    /**
+     * Reads the settings, starts the transport and waits up to
+     * <code>join-timeout-millis</code> for the configured members to respond.
+     *
+     * @param id The cluster id.
+     * @param properties The properties of the cluster definition.
+     */
+    @Override public void initialize(String id, ConfigMap properties)
+    {
+        clusterId = id;
+
+        localAddress = getSetting(properties, BIND_ADDRESS);
+        if (localAddress == null)
+        {
+            ClusterException cx = new ClusterException();
+            cx.setMessage(MISSING_BIND_ADDRESS, new Object[] {id});
+            throw cx;
+        }
+
+        String transportType = getSetting(properties, TRANSPORT);
+        if (transportType == null || TRANSPORT_TCP.equals(transportType))
+            transport = new TcpClusterTransport();
+        else if (TRANSPORT_LOOPBACK.equals(transportType))
+            transport = new LoopbackClusterTransport();
+        else
+            throwInvalidSetting(TRANSPORT, transportType);
+
+        String membership = getSetting(properties, MEMBERSHIP);
+        if (membership == null || MEMBERSHIP_STATIC.equals(membership))
+            seedMembership = false;
+        else if (MEMBERSHIP_SEED.equals(membership))
+            seedMembership = true;
+        else
+            throwInvalidSetting(MEMBERSHIP, membership);
+
+        String secret = getSetting(properties, SHARED_SECRET);
+        if (secret != null && secret.length() > 0)
+            sharedSecret = new SecretKeySpec(secret.getBytes(Charset.forName("UTF-8")), MAC_ALGORITHM);
+        else if (seedMembership)
+        {
+            ClusterException cx = new ClusterException();
+            cx.setMessage(MISSING_SHARED_SECRET, new Object[] {id, SHARED_SECRET});
+            throw cx;
+        }
+        else if (transport instanceof TcpClusterTransport)
+        {
+            Log.getLogger(LOG_CATEGORY).warn("Cluster " + id + " has no " + SHARED_SECRET
+                    + ", so its peers are authenticated by their source address only.");
+        }
+
+        for (String member : getSettings(properties, MEMBER))
+        {
+            if (!member.equals(localAddress))
+                configuredMembers.add(member);
+        }
+        knownMembers.addAll(configuredMembers);
+
+        // Loopback frames come from the same JVM and have no remote host to verify.
+        verifyHosts = !seedMembership && !(transport instanceof LoopbackClusterTransport);
+        if (verifyHosts)
+            resolveMemberHosts();
+
+        long heartbeatIntervalMillis = getLongSetting(properties, HEARTBEAT_INTERVAL_MILLIS, DEFAULT_HEARTBEAT_INTERVAL_MILLIS);
+        heartbeatTimeoutMillis = getLongSetting(properties, HEARTBEAT_TIMEOUT_MILLIS, DEFAULT_HEARTBEAT_TIMEOUT_MILLIS);
+        long joinTimeoutMillis = getLongSetting(properties, JOIN_TIMEOUT_MILLIS, DEFAULT_JOIN_TIMEOUT_MILLIS);
+
+        localNode = new ClusterNode(localAddress);
+        nodes.put(localAddress, localNode);
+        classLoader = Thread.currentThread().getContextClassLoader();
+        dispatcher = Executors.newSingleThreadExecutor(new ClusterThreadFactory("dispatcher"));
+        heartbeatService = Executors.newSingleThreadScheduledExecutor(new ClusterThreadFactory("heartbeat"));
+
+        try
+        {
+            transport.start(localAddress, new ClusterTransport.Receiver()
+            {
+                public boolean accept(InetAddress remoteAddress)
+                {
+                    return !verifyHosts || isMemberHost(remoteAddress);
+                }
+
+                public void receive(byte[] frame, InetAddress remoteAddress)
+                {
+                    dispatch(frame, remoteAddress);
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            dispatcher.shutdownNow();
+            heartbeatService.shutdownNow();
+            ClusterException cx = new ClusterException();
+            cx.setMessage(TRANSPORT_START_FAILED, new Object[] {id, localAddress});
+            cx.setRootCause(e);
+            throw cx;
+        }
+
+        heartbeatService.scheduleAtFixedRate(new Runnable()
+        {
+            public void run()
+            {
+                heartbeat();
+            }
+        }, 0, heartbeatIntervalMillis, TimeUnit.MILLISECONDS);
+
+        awaitMembers(joinTimeoutMillis);
+
+        if (Log.isDebug())
+            Log.getLogger(LOG_CATEGORY).debug("Cluster " + id + " started on " + localAddress
+                    + " with members " + lastSeen.keySet() + ".");
+    }
+
+    /**
+     * Notifies the peers that this node is leaving and stops the transport.
+     */
+    @Override public void destroy()
+    {
+        if (transport == null)
+            return;
+
+        Frame leave = new Frame(Frame.LEAVE, localAddress);
+        byte[] bytes = serializeQuietly(leave);
+        if (bytes != null)
+        {
+            for (String member : lastSeen.keySet())
+                transport.send(member, bytes);
+        }
+
+        heartbeatService.shutdownNow();
+        dispatcher.shutdown();
+        transport.stop();
+        lastSeen.clear();
+    }
+
+    // Implements flex.messaging.cluster.Cluster.getAllEndpoints; inherits javadoc specification.
+    @Override public List getAllEndpoints(String serviceType, String destName)
+    {
+        List<Map<String, String>> endpoints = new ArrayList<Map<String, String>>();
+        for (ClusterNode node : nodes.values())
+        {
+            Map<String, Map<String, String>> destKeyToChannelMap = node.getDestKeyToChannelMap();
+            synchronized (destKeyToChannelMap)
+            {
+                Map<String, String> channelEndpoints = destKeyToChannelMap.get(getClusterDestinationKey(serviceType, destName));
+                if (channelEndpoints != null && !channelEndpoints.isEmpty())
+                    endpoints.add(new HashMap<String, String>(channelEndpoints));
+            }
+        }
+        return endpoints;
+    }
+
+    /**
+     * Returns the addresses of the local node and of the live peers.
+     *
+     * @return The <code>host:port</code> addresses of the cluster members.
+     */
+    @Override public List getMemberAddresses()
+    {
+        List<String> addresses = new ArrayList<String>(lastSeen.size() + 1);
+        addresses.add(localAddress);
+        addresses.addAll(lastSeen.keySet());
+        return addresses;
+    }
+
+    // Implements flex.messaging.cluster.Cluster.getLocalAddress; inherits javadoc specification.
+    @Override public Object getLocalAddress()
+    {
+        return localAddress;
+    }
+
+    // Implements flex.messaging.cluster.Cluster.broadcastServiceOperation; inherits javadoc specification.
+    @Override public void broadcastServiceOperation(String serviceOperation, Object[] params)
+    {
+        if (lastSeen.isEmpty())
+            return;
+
+        Frame frame = new Frame(Frame.OPERATION, localAddress);
+        frame.operation = serviceOperation;
+        frame.params = params;
+        byte[] bytes = serializeOperation(frame);
+        for (String member : lastSeen.keySet())
+            transport.send(member, bytes);
+    }
+
+    // Implements flex.messaging.cluster.Cluster.sendPointToPointServiceOperation; inherits javadoc specification.
+    @Override public void sendPointToPointServiceOperation(String serviceOperation, Object[] params, Object targetAddress)
+    {
+        Frame frame = new Frame(Frame.OPERATION, localAddress);
+        frame.operation = serviceOperation;
+        frame.params = params;
+        frame.pointToPoint = true;
+        transport.send(String.valueOf(targetAddress), serializeOperation(frame));
+    }
+
+    // Implements flex.messaging.cluster.Cluster.addLocalEndpointForChannel; inherits javadoc specification.
+    @Override public void addLocalEndpointForChannel(String serviceType, String destName,
+                                                     String channelId, String endpointUrl, int endpointPort)
+    {
+        if (localNode.containsEndpoint(serviceType, destName, channelId, endpointUrl))
+            return;
+
+        localNode.addEndpoint(serviceType, destName, channelId, endpointUrl);
+        byte[] bytes = serializeQuietly(createEndpointsFrame());
+        if (bytes != null)
+        {
+            for (String member : lastSeen.keySet())
+                transport.send(member, bytes);
+        }
+    }
+
+    /**
+     * Returns the transport of this node.
+     *
+     * @return The transport.
+     */
+    ClusterTransport getTransport()
+    {
+        return transport;
+    }
+
+    /**
+     * Called by the transport for each incoming frame. Frames without a valid
+     * MAC are dropped; the others are decoded and handled in order on the
+     * dispatcher thread.
+     */
+    private void dispatch(byte[] frame, final InetAddress remoteAddress)
+    {
+        final byte[] bytes = verify(frame);
+        if (bytes == null)
+        {
+            if (Log.isDebug())
+                Log.getLogger(LOG_CATEGORY).debug("Cluster " + clusterId + " dropped a frame from "
+                        + remoteAddress + " without a valid MAC.");
+            return;
+        }
+
+        try
+        {
+            dispatcher.execute(new Runnable()
+            {
+                public void run()
+                {
+                    Thread thread = Thread.currentThread();
+                    ClassLoader previous = thread.getContextClassLoader();
+                    thread.setContextClassLoader(classLoader);
+                    try
+                    {
+                        handle(deserialize(bytes), remoteAddress);
+                    }
+                    catch (Throwable t)
+                    {
+                        Log.getLogger(LOG_CATEGORY).error("Unable to process a frame received by cluster "
+                                + clusterId + ".", t);
+                    }
+                    finally
+                    {
+                        thread.setContextClassLoader(previous);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            // The cluster has been destroyed.
+        }
+    }
+
+    private void handle(Frame frame, InetAddress remoteAddress)
+    {
+        String sender = frame.sender;
+        if (!seedMembership && !configuredMembers.contains(sender))
+        {
+            if (Log.isDebug())
+                Log.getLogger(LOG_CATEGORY).debug("Cluster " + clusterId + " ignored a frame from "
+                        + sender + ", which is not a configured member.");
+            return;
+        }
+        if (verifyHosts && !isHostOf(sender, remoteAddress))
+        {
+            if (Log.isDebug())
+                Log.getLogger(LOG_CATEGORY).debug("Cluster " + clusterId + " ignored a frame from "
+                        + remoteAddress + ", which claims to be sent by member " + sender + ".");
+            return;
+        }
+
+        if (frame.type == Frame.LEAVE)
+        {
+            if (lastSeen.remove(sender) != null)
+                memberRemoved(sender);
+            return;
+        }
+
+        if (lastSeen.put(sender, Long.valueOf(System.currentTimeMillis())) == null)
+            memberJoined(sender);
+
+        switch (frame.type)
+        {
+            case Frame.HEARTBEAT:
+                if (seedMembership && frame.members != null)
+                {
+                    for (String member : frame.members)
+                    {
+                        if (!member.equals(localAddress))
+                            knownMembers.add(member);
+                    }
+                }
+                break;
+            case Frame.ENDPOINTS:
+                Map<String, Map<String, String>> destKeyToChannelMap = nodes.get(sender).getDestKeyToChannelMap();
+                synchronized (destKeyToChannelMap)
+                {
+                    destKeyToChannelMap.clear();
+                    destKeyToChannelMap.putAll(frame.endpoints);
+                }
+                break;
+            case Frame.OPERATION:
+                invoke(frame);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Invokes an operation on the service or endpoint named by its first parameter.
+     * The sender address is appended to the arguments of point-to-point operations.
+     * Operations that are not service operations of the cluster manager are ignored.
+     */
+    private void invoke(Frame frame)
+    {
+        if (!OPERATIONS.contains(frame.operation))
+        {
+            Log.getLogger(LOG_CATEGORY).warn("Cluster " + clusterId + " ignored operation "
+                    + frame.operation + " sent by " + frame.sender + ", which is not a cluster service operation.");
+            return;
+        }
+
+        try
+        {
+            Object[] params = frame.params;
+            MessageBroker broker = clusterManager.getMessageBroker();
+            String name = (String)params[0];
+            Object target = broker.getServiceByType(name);
+            if (target == null)
+                target = broker.getEndpoint(name);
+            if (target == null)
+            {
+                if (Log.isDebug())
+                    Log.getLogger(LOG_CATEGORY).debug("Cluster " + clusterId + " ignored operation "
+                            + frame.operation + " for " + name + ", which does not exist on this node.");
+                return;
+            }
+
+            List<Object> args = new ArrayList<Object>(params.length - 1);
+            for (int i = 2; i < params.length; i++)
+                args.add(params[i]);
+            if (frame.pointToPoint)
+                args.add(frame.sender);
+
+            Method method = methodMatcher.getMethod(target.getClass(), frame.operation, args);
+            methodMatcher.invoke(method, target, args);
+        }
+        catch (Throwable t)
+        {
+            ClusterException cx = new ClusterException();
+            cx.setMessage(OPERATION_FAILED, new Object[] {clusterId});
+            cx.setRootCause(t);
+            Log.getLogger(LOG_CATEGORY).error(cx.getMessage() + " Operation: " + frame.operation, t);
+        }
+    }
+
+    private void memberJoined(String address)
+    {
+        nodes.putIfAbsent(address, new ClusterNode(address));
+        knownMembers.add(address);
+
+        // Tell the new member about the local endpoints.
+        byte[] bytes = serializeQuietly(createEndpointsFrame());
+        if (bytes != null)
+            transport.send(address, bytes);
+
+        if (Log.isDebug())
+            Log.getLogger(LOG_CATEGORY).debug("Node " + address + " joined cluster " + clusterId + ".");
+
+        synchronized (joinLock)
+        {
+            joinLock.notifyAll();
+        }
+    }
+
+    private void memberRemoved(String address)
+    {
+        nodes.remove(address);
+        if (!configuredMembers.contains(address))
+            knownMembers.remove(address);
+
+        if (Log.isDebug())
+            Log.getLogger(LOG_CATEGORY).debug("Node " + address + " left cluster " + clusterId + ".");
+
+        sendRemoveNodeListener(address);
+    }
+
+    /**
+     * Sends a heartbeat to the known members and schedules the removal of the
+     * peers that have timed out.
+     */
+    private void heartbeat()
+    {
+        try
+        {
+            if (verifyHosts && memberHosts.size() < configuredMembers.size())
+                resolveMemberHosts();
+
+            Frame frame = new Frame(Frame.HEARTBEAT, localAddress);
+            if (seedMembership)
+                frame.members = lastSeen.keySet().toArray(new String[0]);
+            byte[] bytes = serialize(frame);
+            for (String member : knownMembers)
+                transport.send(member, bytes);
+
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, Long> entry : lastSeen.entrySet())
+            {
+                final String address = entry.getKey();
+                final Long seenAt = entry.getValue();
+                if (now - seenAt.longValue() <= heartbeatTimeoutMillis)
+                    continue;
+
+                dispatcher.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        // Only remove the member if no frame arrived since the check.
+                        if (lastSeen.remove(address, seenAt))
+                            memberRemoved(address);
+                    }
+                });
+            }
+        }
+        catch (RejectedExecutionException e)
+        {
+            // The cluster has been destroyed.
+        }
+        catch (Throwable t)
+        {
+            Log.getLogger(LOG_CATEGORY).error("Unable to send the heartbeat of cluster " + clusterId + ".", t);
+        }
+    }
+
+    /**
+     * Waits until all configured members have been heard from or the timeout expires.
+     */
+    private void awaitMembers(long timeoutMillis)
+    {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (joinLock)
+        {
+            while (!lastSeen.keySet().containsAll(configuredMembers))
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    break;
+                try
+                {
+                    joinLock.wait(remaining);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    private Frame createEndpointsFrame()
+    {
+        Frame frame = new Frame(Frame.ENDPOINTS, localAddress);
+        frame.endpoints = new HashMap<String, Map<String, String>>();
+        Map<String, Map<String, String>> destKeyToChannelMap = localNode.getDestKeyToChannelMap();
+        synchronized (destKeyToChannelMap)
+        {
+            for (Map.Entry<String, Map<String, String>> entry : destKeyToChannelMap.entrySet())
+                frame.endpoints.put(entry.getKey(), new HashMap<String, String>(entry.getValue()));
+        }
+        return frame;
+    }
+
+    private byte[] serializeOperation(Frame frame)
+    {
+        try
+        {
+            return serialize(frame);
+        }
+        catch (NotSerializableException e)
+        {
+            ClusterException cx = new ClusterException();
+            cx.setMessage(NOT_SERIALIZABLE, new Object[] {clusterId, e.getMessage()});
+            cx.setRootCause(e);
+            throw cx;
+        }
+        catch (IOException e)
+        {
+            ClusterException cx = new ClusterException();
+            cx.setMessage(BROADCAST_FAILED, new Object[] {clusterId});
+            cx.setRootCause(e);
+            throw cx;
+        }
+    }
+
+    private byte[] serializeQuietly(Frame frame)
+    {
+        try
+        {
+            return serialize(frame);
+        }
+        catch (IOException e)
+        {
+            Log.getLogger(LOG_CATEGORY).error("Unable to serialize a frame of cluster " + clusterId + ".", e);
+            return null;
+        }
+    }
+
+    /**
+     * Serializes a frame, preceded by its MAC if a shared secret is set.
+     */
+    private byte[] serialize(Frame frame) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        if (sharedSecret != null)
+            bytes.write(new byte[MAC_LENGTH]);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(frame);
+        out.close();
+
+        byte[] result = bytes.toByteArray();
+        if (sharedSecret != null)
+        {
+            try
+            {
+                Mac mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(sharedSecret);
+                mac.update(result, MAC_LENGTH, result.length - MAC_LENGTH);
+                mac.doFinal(result, 0);
+            }
+            catch (GeneralSecurityException e)
+            {
+                throw new IOException("Unable to sign a frame of cluster " + clusterId + ".", e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the serialized frame of a received frame, or <code>null</code>
+     * if a shared secret is set and the MAC of the frame is not valid.
+     */
+    private byte[] verify(byte[] frame)
+    {
+        if (sharedSecret == null)
+            return frame;
+        if (frame.length < MAC_LENGTH)
+            return null;
+
+        try
+        {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(sharedSecret);
+            mac.update(frame, MAC_LENGTH, frame.length - MAC_LENGTH);
+            if (!MessageDigest.isEqual(mac.doFinal(), Arrays.copyOf(frame, MAC_LENGTH)))
+                return null;
+        }
+        catch (GeneralSecurityException e)
+        {
+            Log.getLogger(LOG_CATEGORY).error("Unable to verify a frame received by cluster " + clusterId + ".", e);
+            return null;
+        }
+        return Arrays.copyOfRange(frame, MAC_LENGTH, frame.length);
+    }
+
+    private Frame deserialize(byte[] bytes) throws IOException, ClassNotFoundException
+    {
+        ObjectInputStream in = new ClusterObjectInputStream(new ByteArrayInputStream(bytes),
+                clusterManager.getMessageBroker().getDeserializationValidator());
+        try
+        {
+            Object frame = in.readObject();
+            if (!(frame instanceof Frame))
+                throw new IOException("Expected a cluster frame but read " + frame + ".");
+            return (Frame)frame;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Resolves the hosts of the configured members that have not been resolved yet.
+     */
+    private void resolveMemberHosts()
+    {
+        for (String member : configuredMembers)
+        {
+            if (memberHosts.containsKey(member))
+                continue;
+            try
+            {
+                String host = TcpClusterTransport.toSocketAddress(member).getHostString();
+                memberHosts.put(member, InetAddress.getAllByName(host));
+            }
+            catch (IOException e)
+            {
+                Log.getLogger(LOG_CATEGORY).warn("Cluster " + clusterId + " cannot resolve the host of member "
+                        + member + "; connections from it are refused until it can be resolved. " + e);
+            }
+        }
+    }
+
+    /**
+     * Returns whether an address belongs to the host of a configured member.
+     */
+    private boolean isMemberHost(InetAddress remoteAddress)
+    {
+        for (String member : memberHosts.keySet())
+        {
+            if (isHostOf(member, remoteAddress))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean isHostOf(String member, InetAddress remoteAddress)
+    {
+        InetAddress[] addresses = memberHosts.get(member);
+        if (addresses == null || remoteAddress == null)
+            return false;
+        for (InetAddress address : addresses)
+        {
+            if (address.equals(remoteAddress))
+                return true;
+        }
+        return false;
+    }
+
+    private void throwInvalidSetting(String name, String value)
+    {
+        ClusterException cx = new ClusterException();
+        cx.setMessage(INVALID_SETTING, new Object[] {clusterId, name, value});
+        throw cx;
+    }
+
+    private long getLongSetting(ConfigMap properties, String name, long defaultValue)
+    {
+        String value = getSetting(properties, name);
+        if (value == null)
+            return defaultValue;
+        try
+        {
+            return Long.parseLong(value);
+        }
+        catch (NumberFormatException e)
+        {
+            throwInvalidSetting(name, value);
+            return defaultValue;
+        }
+    }
+
+    private String getSetting(ConfigMap properties, String name)
+    {
+        List<String> values = getSettings(properties, name);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Returns the values of a setting from the cluster properties or, if it is
+     * not set there, from the elements of the cluster properties file.
+     */
+    private List<String> getSettings(ConfigMap properties, String name)
+    {
+        List<String> values = new ArrayList<String>();
+        if (properties != null)
+        {
+            List list = properties.getPropertyAsList(name, null);
+            if (list != null)
+            {
+                for (Object value : list)
+                    values.add(value.toString().trim());
+                return values;
+            }
+        }
+
+        Element propertiesFile = clusterPropertiesFile();
+        if (propertiesFile != null)
+        {
+            NodeList children = propertiesFile.getChildNodes();
+            for (int i = 0; i < children.getLength(); i++)
+            {
+                Node child = children.item(i);
+                if (child.getNodeType() == Node.ELEMENT_NODE && name.equals(child.getNodeName()))
+                    values.add(child.getTextContent().trim());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The unit of communication between the nodes.
+     */
+    private static class Frame implements Serializable
+    {
+        static final long serialVersionUID = 4571539018221625130L;
+
+        static final int HEARTBEAT = 0;
+        static final int OPERATION = 1;
+        static final int ENDPOINTS = 2;
+        static final int LEAVE = 3;
+
+        final int type;
+        final String sender;
+        String operation;
+        Object[] params;
+        boolean pointToPoint;
+        String[] members;
+        HashMap<String, Map<String, String>> endpoints;
+
+        Frame(int type, String sender)
+        {
+            this.type = type;
+            this.sender = sender;
+        }
+    }
+
+    /**
+     * Creates the daemon threads of the cluster.
+     */
+    private final class ClusterThreadFactory implements ThreadFactory
+    {
+        private final String role;
+
+        ClusterThreadFactory(String role)
+        {
+            this.role = role;
+        }
+
+        public Thread newThread(Runnable r)
+        {
+            Thread t = new Thread(r);
+            t.setName("TcpCluster-" + clusterId + "-" + role);
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
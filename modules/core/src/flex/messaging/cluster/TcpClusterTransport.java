@@ -0,0 +1,490 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.cluster;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import flex.messaging.log.Log;
+
+/**
+ *
+ * A <code>ClusterTransport</code> on non-blocking sockets. Addresses have the
+ * form <code>host:port</code>. A single thread accepts connections from the
+ * peers and performs all reads and writes; each peer is sent frames over one
+ * outbound connection, which is opened on the first send and reopened after
+ * a failure. Frames are written with a four byte length prefix.
+ */
+public class TcpClusterTransport implements ClusterTransport
+{
+    /**
+     * The largest frame accepted from a peer; a connection that announces a
+     * larger frame is closed. Larger frames are not sent.
+     */
+    public static final int MAX_FRAME_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The number of frames that can be queued for a peer before further frames
+     * for it are dropped.
+     */
+    public static final int MAX_QUEUED_FRAMES = 10000;
+
+    private static final int MAX_SEND_ATTEMPTS = 3;
+
+    private final ConcurrentHashMap<String, Connection> outbound = new ConcurrentHashMap<String, Connection>();
+    private final ConcurrentLinkedQueue<Connection> changes = new ConcurrentLinkedQueue<Connection>();
+
+    private volatile boolean running;
+    private Receiver receiver;
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread ioThread;
+
+    // Implements flex.messaging.cluster.ClusterTransport.start; inherits javadoc specification.
+    public void start(String localAddress, Receiver receiver) throws IOException
+    {
+        this.receiver = receiver;
+        selector = Selector.open();
+        try
+        {
+            server = ServerSocketChannel.open();
+            server.configureBlocking(false);
+            server.socket().setReuseAddress(true);
+            server.socket().bind(toSocketAddress(localAddress));
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        }
+        catch (IOException e)
+        {
+            if (server != null)
+                server.close();
+            selector.close();
+            throw e;
+        }
+
+        running = true;
+        ioThread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                select();
+            }
+        }, "TcpClusterTransport-" + localAddress);
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    // Implements flex.messaging.cluster.ClusterTransport.send; inherits javadoc specification.
+    public void send(String address, byte[] frame)
+    {
+        if (!running)
+            return;
+
+        if (frame.length > MAX_FRAME_SIZE)
+        {
+            Log.getLogger(Cluster.LOG_CATEGORY).error("Dropped a frame of " + frame.length + " bytes for cluster node "
+                    + address + " because it is larger than " + MAX_FRAME_SIZE + " bytes.");
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + frame.length);
+        buffer.putInt(frame.length);
+        buffer.put(frame);
+        buffer.flip();
+
+        // A connection closed by the I/O thread while the frame was being queued
+        // no longer accepts frames, so the frame is queued on a new connection.
+        for (int attempt = 0; attempt < MAX_SEND_ATTEMPTS; attempt++)
+        {
+            Connection connection = outbound.get(address);
+            if (connection == null)
+            {
+                connection = new Connection(address);
+                Connection existing = outbound.putIfAbsent(address, connection);
+                if (existing != null)
+                    connection = existing;
+            }
+
+            if (connection.queued.incrementAndGet() > MAX_QUEUED_FRAMES)
+            {
+                connection.queued.decrementAndGet();
+                if (Log.isDebug())
+                    Log.getLogger(Cluster.LOG_CATEGORY).debug("Dropped a frame for cluster node " + address
+                            + " because " + MAX_QUEUED_FRAMES + " frames are already queued for it.");
+                return;
+            }
+
+            connection.queue.add(buffer);
+            if (connection.closed && connection.queue.remove(buffer))
+            {
+                connection.queued.decrementAndGet();
+                outbound.remove(address, connection);
+                continue;
+            }
+
+            if (connection.writeScheduled.compareAndSet(false, true))
+            {
+                changes.add(connection);
+                selector.wakeup();
+            }
+            return;
+        }
+
+        if (Log.isDebug())
+            Log.getLogger(Cluster.LOG_CATEGORY).debug("Dropped a frame for cluster node " + address
+                    + " because its connection was closed " + MAX_SEND_ATTEMPTS + " times while sending.");
+    }
+
+    // Implements flex.messaging.cluster.ClusterTransport.stop; inherits javadoc specification.
+    public void stop()
+    {
+        if (!running)
+            return;
+
+        running = false;
+        selector.wakeup();
+        try
+        {
+            ioThread.join(5000);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The loop of the I/O thread. Closes all channels when the transport stops.
+     */
+    private void select()
+    {
+        try
+        {
+            while (running)
+            {
+                selector.select();
+                processChanges();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+
+                    if (key.isAcceptable())
+                    {
+                        accept();
+                        continue;
+                    }
+
+                    Connection connection = (Connection)key.attachment();
+                    try
+                    {
+                        if (key.isConnectable())
+                            finishConnect(connection);
+                        if (key.isValid() && key.isReadable())
+                            read(connection);
+                        if (key.isValid() && key.isWritable())
+                            write(connection);
+                    }
+                    catch (IOException e)
+                    {
+                        if (Log.isDebug())
+                            Log.getLogger(Cluster.LOG_CATEGORY).debug("Closing the connection to cluster node "
+                                    + connection.address + ": " + e);
+                        close(connection);
+                    }
+                }
+            }
+        }
+        catch (Throwable t)
+        {
+            Log.getLogger(Cluster.LOG_CATEGORY).error("The cluster transport stopped unexpectedly.", t);
+        }
+        finally
+        {
+            running = false;
+            flushQuietly();
+            for (SelectionKey key : selector.keys())
+                closeQuietly(key);
+            try
+            {
+                selector.close();
+            }
+            catch (IOException e)
+            {
+                // Ignore.
+            }
+            outbound.clear();
+            changes.clear();
+        }
+    }
+
+    /**
+     * Opens the outbound connections and enables the writes requested by
+     * <code>send</code> since the last select.
+     */
+    private void processChanges()
+    {
+        Connection connection;
+        while ((connection = changes.poll()) != null)
+        {
+            try
+            {
+                if (connection.channel == null)
+                    connect(connection);
+                else if (connection.connected)
+                    connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+            catch (IOException e)
+            {
+                if (Log.isDebug())
+                    Log.getLogger(Cluster.LOG_CATEGORY).debug("Unable to connect to cluster node "
+                            + connection.address + ": " + e);
+                close(connection);
+            }
+        }
+    }
+
+    /**
+     * Writes what the open outbound connections accept without blocking, so that
+     * the frames sent just before <code>stop</code>, such as a leave notice, reach
+     * the connected peers.
+     */
+    private void flushQuietly()
+    {
+        changes.clear();
+        for (Connection connection : outbound.values())
+        {
+            if (!connection.connected)
+                continue;
+            try
+            {
+                write(connection);
+            }
+            catch (Exception e)
+            {
+                // Ignore; the transport is stopping.
+            }
+        }
+    }
+
+    private void accept() throws IOException
+    {
+        SocketChannel channel = server.accept();
+        if (channel == null)
+            return;
+
+        InetAddress remoteAddress = channel.socket().getInetAddress();
+        if (!receiver.accept(remoteAddress))
+        {
+            if (Log.isDebug())
+                Log.getLogger(Cluster.LOG_CATEGORY).debug("Refused a cluster connection from " + remoteAddress + ".");
+            channel.close();
+            return;
+        }
+
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(null);
+        connection.channel = channel;
+        connection.connected = true;
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    private void connect(Connection connection) throws IOException
+    {
+        SocketChannel channel = SocketChannel.open();
+        connection.channel = channel;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        if (channel.connect(toSocketAddress(connection.address)))
+        {
+            connection.connected = true;
+            connection.key = channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, connection);
+        }
+        else
+        {
+            connection.key = channel.register(selector, SelectionKey.OP_CONNECT, connection);
+        }
+    }
+
+    private void finishConnect(Connection connection) throws IOException
+    {
+        if (!connection.channel.finishConnect())
+            return;
+
+        connection.connected = true;
+        // Writes stay scheduled while connecting, so enable them for the frames queued meanwhile.
+        connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    private void read(Connection connection) throws IOException
+    {
+        SocketChannel channel = connection.channel;
+        while (true)
+        {
+            if (connection.body == null)
+            {
+                if (channel.read(connection.header) < 0)
+                    throw new IOException("Connection closed by peer.");
+                if (connection.header.hasRemaining())
+                    return;
+
+                connection.header.flip();
+                int length = connection.header.getInt();
+                connection.header.clear();
+                if (length < 0 || length > MAX_FRAME_SIZE)
+                    throw new IOException("Invalid frame length " + length + ".");
+                connection.body = ByteBuffer.allocate(length);
+            }
+
+            if (connection.body.hasRemaining() && channel.read(connection.body) < 0)
+                throw new IOException("Connection closed by peer.");
+            if (connection.body.hasRemaining())
+                return;
+
+            byte[] frame = connection.body.array();
+            connection.body = null;
+            receiver.receive(frame, channel.socket().getInetAddress());
+        }
+    }
+
+    private void write(Connection connection) throws IOException
+    {
+        SocketChannel channel = connection.channel;
+        while (true)
+        {
+            if (connection.current == null)
+            {
+                connection.current = connection.queue.poll();
+                if (connection.current == null)
+                    break;
+                connection.queued.decrementAndGet();
+            }
+
+            channel.write(connection.current);
+            if (connection.current.hasRemaining())
+                return; // The socket buffer is full; wait for the next OP_WRITE.
+            connection.current = null;
+        }
+
+        connection.key.interestOps(SelectionKey.OP_READ);
+        connection.writeScheduled.set(false);
+        // A frame queued after the poll above found the write still scheduled.
+        if (!connection.queue.isEmpty() && connection.writeScheduled.compareAndSet(false, true))
+            connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Closes a connection and drops the frames queued on it. The next frame sent
+     * to the peer opens a new connection.
+     */
+    private void close(Connection connection)
+    {
+        connection.closed = true;
+        if (connection.address != null)
+            outbound.remove(connection.address, connection);
+        if (connection.key != null)
+            closeQuietly(connection.key);
+        else if (connection.channel != null)
+        {
+            try
+            {
+                connection.channel.close();
+            }
+            catch (IOException e)
+            {
+                // Ignore.
+            }
+        }
+        int dropped = 0;
+        while (connection.queue.poll() != null)
+            dropped++;
+        if (dropped > 0 && Log.isDebug())
+            Log.getLogger(Cluster.LOG_CATEGORY).debug("Dropped " + dropped + " frames queued for cluster node "
+                    + connection.address + " because its connection was closed.");
+    }
+
+    private static void closeQuietly(SelectionKey key)
+    {
+        key.cancel();
+        try
+        {
+            key.channel().close();
+        }
+        catch (IOException e)
+        {
+            // Ignore.
+        }
+    }
+
+    /**
+     * Converts a <code>host:port</code> address to a socket address.
+     */
+    static InetSocketAddress toSocketAddress(String address) throws IOException
+    {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0)
+            throw new IOException("The cluster address '" + address + "' is not of the form host:port.");
+        try
+        {
+            return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IOException("The cluster address '" + address + "' is not of the form host:port.");
+        }
+    }
+
+    /**
+     * A connection to or from a peer. Only the queue, its counters and the
+     * closed flag are accessed outside the I/O thread.
+     */
+    private static final class Connection
+    {
+        final String address;
+        final ConcurrentLinkedQueue<ByteBuffer> queue = new ConcurrentLinkedQueue<ByteBuffer>();
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicBoolean writeScheduled = new AtomicBoolean();
+        volatile boolean closed;
+
+        SocketChannel channel;
+        SelectionKey key;
+        boolean connected;
+        ByteBuffer current;
+        final ByteBuffer header = ByteBuffer.allocate(4);
+        ByteBuffer body;
+
+        Connection(String address)
+        {
+            this.address = address;
+        }
+    }
+}
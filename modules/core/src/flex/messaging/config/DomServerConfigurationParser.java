@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Walks the DOM representation of a messaging configuration file directly
+ * instead of compiling and evaluating XPath expressions for every lookup.
+ * <p>
+ * Only the location paths that the configuration parsers use are supported:
+ * steps separated by <code>/</code>, where a leading <code>/</code> selects
+ * the document element and each step is an element name, <code>*</code>,
+ * <code>@*</code>, <code>@</code> followed by an attribute name,
+ * <code>.</code> or <code>text()</code>. Any other expression is reported
+ * as an internal parser error.
+ * </p>
+ */
+public class DomServerConfigurationParser extends ServerConfigurationParser
+{
+    private static final String ANY_ELEMENT = "*";
+    private static final String ANY_ATTRIBUTE = "@*";
+    private static final String SELF = ".";
+    private static final String TEXT = "text()";
+
+    protected void initializeExpressionQuery()
+    {
+        // Nothing to compile; expressions are evaluated by walking the DOM.
+    }
+
+    protected Node selectSingleNode(Node source, String expression)
+    {
+        List nodes = select(source, expression, true);
+        return nodes.isEmpty() ? null : (Node)nodes.get(0);
+    }
+
+    protected NodeList selectNodeList(Node source, String expression)
+    {
+        return new ListNodeList(select(source, expression, false));
+    }
+
+    protected Object evaluateExpression(Node source, String expression)
+    {
+        Node node = selectSingleNode(source, expression);
+        if (node == null)
+            return "";
+
+        String value = node.getNodeType() == Node.ELEMENT_NODE || node.getNodeType() == Node.DOCUMENT_NODE
+                ? stringValue(node) : node.getNodeValue();
+        return value != null ? value : "";
+    }
+
+    /**
+     * Evaluates each step of the path against the nodes selected by the
+     * previous step. When only the first match is wanted the last step stops
+     * at it.
+     */
+    private List select(Node source, String expression, boolean first)
+    {
+        List context = new ArrayList(1);
+        int start = 0;
+        if (expression.startsWith("/"))
+        {
+            Document document = source.getNodeType() == Node.DOCUMENT_NODE
+                    ? (Document)source : source.getOwnerDocument();
+            context.add(document);
+            start = 1;
+        }
+        else
+        {
+            context.add(source);
+        }
+
+        while (start <= expression.length() && !context.isEmpty())
+        {
+            int end = expression.indexOf('/', start);
+            if (end == -1)
+                end = expression.length();
+
+            String step = expression.substring(start, end);
+            boolean last = end == expression.length();
+            List selected = new ArrayList();
+            for (int i = 0; i < context.size(); i++)
+            {
+                step((Node)context.get(i), step, selected, first && last);
+                if (first && last && !selected.isEmpty())
+                    break;
+            }
+            context = selected;
+            start = end + 1;
+        }
+        return context;
+    }
+
+    private void step(Node node, String step, List selected, boolean first)
+    {
+        if (step.length() == 0)
+            throw wrapException(step);
+
+        if (SELF.equals(step))
+        {
+            selected.add(node);
+        }
+        else if (step.charAt(0) == '@')
+        {
+            NamedNodeMap attributes = node.getAttributes();
+            if (attributes == null)
+                return;
+
+            if (ANY_ATTRIBUTE.equals(step))
+            {
+                for (int i = 0; i < attributes.getLength(); i++)
+                    selected.add(attributes.item(i));
+            }
+            else
+            {
+                Node attribute = attributes.getNamedItem(step.substring(1));
+                if (attribute != null)
+                    selected.add(attribute);
+            }
+        }
+        else
+        {
+            boolean text = TEXT.equals(step);
+            boolean anyElement = ANY_ELEMENT.equals(step);
+            if (!text && !anyElement && !isName(step))
+                throw wrapException(step);
+
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling())
+            {
+                short type = child.getNodeType();
+                boolean matches = text
+                        ? type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE
+                        : type == Node.ELEMENT_NODE && (anyElement || step.equals(child.getNodeName()));
+                if (matches)
+                {
+                    selected.add(child);
+                    if (first)
+                        return;
+                }
+            }
+        }
+    }
+
+    private static boolean isName(String step)
+    {
+        for (int i = 0; i < step.length(); i++)
+        {
+            char c = step.charAt(i);
+            if (c == '[' || c == '(' || c == ':' || c == '|' || c == '*' || c == '@' || Character.isWhitespace(c))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * The XPath string-value of an element: the concatenation of all of its
+     * descendant text, in document order.
+     */
+    private static String stringValue(Node node)
+    {
+        Node child = node.getFirstChild();
+        if (child == null)
+            return "";
+
+        // Most configuration values are a single text node.
+        if (child.getNextSibling() == null
+                && (child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE))
+            return child.getNodeValue();
+
+        StringBuffer buffer = new StringBuffer();
+        appendText(node, buffer);
+        return buffer.toString();
+    }
+
+    private static void appendText(Node node, StringBuffer buffer)
+    {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling())
+        {
+            short type = child.getNodeType();
+            if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE)
+                buffer.append(child.getNodeValue());
+            else if (type == Node.ELEMENT_NODE)
+                appendText(child, buffer);
+        }
+    }
+
+    private ConfigurationException wrapException(String step)
+    {
+        ConfigurationException result = new ConfigurationException();
+        result.setDetails(PARSER_INTERNAL_ERROR);
+        result.setRootCause(new IllegalArgumentException("Unsupported expression step: '" + step + "'"));
+        return result;
+    }
+
+    /**
+     * A <code>NodeList</code> over the nodes selected by an expression.
+     */
+    private static final class ListNodeList implements NodeList
+    {
+        private final List nodes;
+
+        ListNodeList(List nodes)
+        {
+            this.nodes = nodes;
+        }
+
+        public Node item(int index)
+        {
+            return index >= 0 && index < nodes.size() ? (Node)nodes.get(index) : null;
+        }
+
+        public int getLength()
+        {
+            return nodes.size();
+        }
+    }
+}
@@ -116,7 +116,26 @@ public class FlexConfigurationManager implements ConfigurationManager
             }
         }
 
-        // Always try Sun JRE 1.4 / Apache Xalan Based Implementation first to
+        // Walk the DOM directly by default, which avoids evaluating an XPath
+        // expression for every lookup in large configuration files
+        if (parser == null)
+        {
+            try
+            {
+                className = "flex.messaging.config.DomServerConfigurationParser";
+                parserClass = ClassUtil.createClass(className);
+                parser = (ConfigurationParser)parserClass.newInstance();
+            }
+            catch (Throwable t)
+            {
+                if (Trace.config)
+                {
+                    Trace.trace("Could not load configuration parser as: " + className);
+                }
+            }
+        }
+
+        // Then try Sun JRE 1.4 / Apache Xalan Based Implementation to
         // avoid performance problems with Sun JRE 1.5 Based Implementation
         if (parser == null)
         {
@@ -263,7 +263,10 @@ public class MessagingConfiguration implements ServicesConfiguration
         }
 
         if (loginCommandSettings != null)
+        {
             loginManager.setPerClientAuthentication(loginCommandSettings.isPerClientAuthentication());
+            loginManager.setAuthorizationCacheTtlMillis(loginCommandSettings.getAuthorizationCacheTtlMillis());
+        }
 
         broker.setLoginManager(loginManager);
     }
@@ -213,6 +213,28 @@ public abstract class ServerConfigurationParser extends AbstractConfigurationPar
             boolean isPerClientAuth = Boolean.valueOf(getAttributeOrChildElement(login, PER_CLIENT_AUTH));
             loginCommandSettings.setPerClientAuthentication(isPerClientAuth);
 
+            String authorizationCacheTtl = getAttributeOrChildElement(login, AUTHORIZATION_CACHE_TTL_MILLIS);
+            if (authorizationCacheTtl.length() > 0)
+            {
+                long ttl = -1;
+                try
+                {
+                    ttl = Long.parseLong(authorizationCacheTtl);
+                }
+                catch (NumberFormatException nfe)
+                {
+                    // Handled below.
+                }
+                if (ttl < 0)
+                {
+                    // Invalid <authorization-cache-ttl-millis> value ''{0}'' for the <login-command> element.
+                    ConfigurationException e = new ConfigurationException();
+                    e.setMessage(INVALID_AUTHORIZATION_CACHE_TTL_MILLIS, new Object[]{authorizationCacheTtl});
+                    throw e;
+                }
+                loginCommandSettings.setAuthorizationCacheTtlMillis(ttl);
+            }
+
             ((MessagingConfiguration)config).getSecuritySettings().addLoginCommandSettings(loginCommandSettings);
         }
 
@@ -1714,6 +1736,29 @@ public abstract class ServerConfigurationParser extends AbstractConfigurationPar
                 flexClientSettings.setTimeoutMinutes(0); // Default to 0; in this case FlexClients are invalidated when all associated sessions have been invalidated.
             }
 
+            // Limit on the size of all outbound queues
+            String maxOutboundQueueBytes = getAttributeOrChildElement(flexClient, FLEX_CLIENT_MAX_OUTBOUND_QUEUE_BYTES);
+            if (maxOutboundQueueBytes.length() > 0)
+            {
+                long value = -1;
+                try
+                {
+                    value = Long.parseLong(maxOutboundQueueBytes);
+                }
+                catch (NumberFormatException nfe)
+                {
+                    // Handled below.
+                }
+                if (value <= 0)
+                {
+                    // Invalid max-outbound-queue-bytes value ''{0}'' in the <flex-client> configuration section. Please specify a positive value or leave the element undefined.
+                    ConfigurationException e = new ConfigurationException();
+                    e.setMessage(INVALID_FLEX_CLIENT_MAX_OUTBOUND_QUEUE_BYTES, new Object[]{maxOutboundQueueBytes});
+                    throw e;
+                }
+                flexClientSettings.setMaxOutboundQueueBytes(value);
+            }
+
             // Flex client queue processor
             Node outboundQueueProcessor = selectSingleNode(flexClient, FLEX_CLIENT_OUTBOUND_QUEUE_PROCESSOR_ELEMENT);
             if (outboundQueueProcessor != null)
@@ -33,6 +33,7 @@ public class ServerSettings
     private int priority = -1;
     private String subtopicSeparator;
     private RoutingMode routingMode = RoutingMode.SERVER_TO_SERVER;
+    private long clusterBatchWindowMillis;
     
     public static enum RoutingMode {NONE,BROADCAST,SERVER_TO_SERVER};
 
@@ -107,6 +108,28 @@ public class ServerSettings
         }
     }
 
+    /**
+     * Returns the <code>cluster-batch-window-millis</code> property.
+     *
+     * @return The time in milliseconds messages for cluster peers are held so they can be
+     * sent in batches, or 0 if each message is sent to the peers as it is published.
+     */
+    public long getClusterBatchWindowMillis()
+    {
+        return clusterBatchWindowMillis;
+    }
+
+    /**
+     * Sets the <code>cluster-batch-window-millis</code> property. Default is 0.
+     *
+     * @param value The time in milliseconds messages for cluster peers are held so
+     * they can be sent in batches; 0 or less sends each message as it is published.
+     */
+    public void setClusterBatchWindowMillis(long value)
+    {
+        clusterBatchWindowMillis = value < 0 ? 0 : value;
+    }
+
     /**
      * @deprecated Not used anymore.
      */
@@ -16,6 +16,7 @@
  */
 package flex.messaging.endpoints;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -32,10 +33,14 @@ import flex.messaging.FlexSession;
 import flex.messaging.MessageBroker;
 import flex.messaging.MessageException;
 import flex.messaging.Server;
+import flex.messaging.client.BoundedOutboundQueue;
 import flex.messaging.client.FlexClient;
+import flex.messaging.client.FlexClientManager;
 import flex.messaging.client.FlexClientOutboundQueueProcessor;
 import flex.messaging.client.FlushResult;
+import flex.messaging.client.PartitionedOutboundQueue;
 import flex.messaging.client.PollFlushResult;
+import flex.messaging.client.PriorityOutboundQueue;
 import flex.messaging.client.UserAgentSettings;
 import flex.messaging.config.ChannelSettings;
 import flex.messaging.config.ConfigMap;
@@ -86,6 +91,12 @@ public abstract class AbstractEndpoint extends ManageableComponent
     public static final String HEADER_NAME_EXPIRES = "Expires";
     public static final String HEADER_NAME_PRAGMA = "Pragma";
 
+    /**
+     * The default time a message may wait at its priority level in a priority
+     * ordered outbound queue before it is moved up a level.
+     */
+    public static final long DEFAULT_STARVATION_TIMEOUT_MILLIS = 5000;
+
     // Errors
     private static final int NONSECURE_PROTOCOL = 10066;
     private static final int REQUIRES_FLEXCLIENT_SUPPORT = 10030;
@@ -117,10 +128,19 @@ public abstract class AbstractEndpoint extends ManageableComponent
     private static final String INCLUDE_READ_ONLY = "include-read-only";
     private static final String GLOBAL_INCLUDE_READ_ONLY = "global-include-read-only";
     private static final String FLEX_CLIENT_OUTBOUND_QUEUE_PROCESSOR = "flex-client-outbound-queue-processor";
+    private static final String FLEX_CLIENT_OUTBOUND_QUEUE = "flex-client-outbound-queue";
+    private static final String PRIORITY_ORDERED = "priority-ordered";
+    private static final String PARTITIONED = "partitioned";
+    private static final String STARVATION_TIMEOUT_MILLIS = "starvation-timeout-millis";
+    private static final String MAX_MESSAGES = "max-messages";
+    private static final String MAX_BYTES = "max-bytes";
+    private static final String OVERFLOW_POLICY = "overflow-policy";
     private static final String SHOW_STACKTRACES = "show-stacktraces";
     private static final String MAX_OBJECT_NEST_LEVEL = "max-object-nest-level";
     private static final String MAX_COLLECTION_NEST_LEVEL = "max-collection-nest-level";
     private static final String PREFER_VECTORS = "prefer-vectors";
+    private static final String PRIMITIVE_VECTORS = "primitive-vectors";
+    private static final String MAX_BUFFERED_REQUEST_BYTES = "max-buffered-request-bytes";
 
     // Endpoint properties
     protected Set<String> clientLoadBalancingUrls;
@@ -153,6 +173,14 @@ public abstract class AbstractEndpoint extends ManageableComponent
     protected Class<?> flexClientOutboundQueueProcessClass;
     protected ConfigMap flexClientOutboundQueueProcessorConfig;
 
+    // Outbound queue settings
+    protected boolean priorityOrderedOutboundQueue;
+    protected boolean partitionedOutboundQueue;
+    protected long outboundQueueStarvationTimeoutMillis = DEFAULT_STARVATION_TIMEOUT_MILLIS;
+    protected int outboundQueueMaxMessages;
+    protected long outboundQueueMaxBytes;
+    protected BoundedOutboundQueue.OverflowPolicy outboundQueueOverflowPolicy = BoundedOutboundQueue.OverflowPolicy.DROP_OLDEST;
+
     // Supported messaging version
     protected double messagingVersion = 1.0;
 
@@ -237,6 +265,30 @@ public abstract class AbstractEndpoint extends ManageableComponent
             }
         }
 
+        // Check for FlexClient outbound queue settings.
+        ConfigMap outboundQueue = properties.getPropertyAsMap(FLEX_CLIENT_OUTBOUND_QUEUE, null);
+        if (outboundQueue != null)
+        {
+            priorityOrderedOutboundQueue = outboundQueue.getPropertyAsBoolean(PRIORITY_ORDERED, priorityOrderedOutboundQueue);
+            partitionedOutboundQueue = outboundQueue.getPropertyAsBoolean(PARTITIONED, partitionedOutboundQueue);
+            outboundQueueStarvationTimeoutMillis = outboundQueue.getPropertyAsLong(STARVATION_TIMEOUT_MILLIS,
+                    outboundQueueStarvationTimeoutMillis);
+            outboundQueueMaxMessages = outboundQueue.getPropertyAsInt(MAX_MESSAGES, outboundQueueMaxMessages);
+            outboundQueueMaxBytes = outboundQueue.getPropertyAsLong(MAX_BYTES, outboundQueueMaxBytes);
+            String overflowPolicy = outboundQueue.getPropertyAsString(OVERFLOW_POLICY, null);
+            if (overflowPolicy != null)
+            {
+                outboundQueueOverflowPolicy = BoundedOutboundQueue.OverflowPolicy.forName(overflowPolicy);
+                if (outboundQueueOverflowPolicy == null)
+                {
+                    // Invalid <overflow-policy> value ''{0}'' in the <flex-client-outbound-queue> settings of endpoint ''{1}''.
+                    ConfigurationException ce = new ConfigurationException();
+                    ce.setMessage(ConfigurationConstants.INVALID_OUTBOUND_QUEUE_OVERFLOW_POLICY, new Object[] {overflowPolicy, id});
+                    throw ce;
+                }
+            }
+        }
+
         ConfigMap serialization = properties.getPropertyAsMap(SERIALIZATION, null);
         if (serialization != null)
         {
@@ -284,6 +336,8 @@ public abstract class AbstractEndpoint extends ManageableComponent
             serializationContext.maxObjectNestLevel = (int)serialization.getPropertyAsLong(MAX_OBJECT_NEST_LEVEL, 512);
             serializationContext.maxCollectionNestLevel = (int)serialization.getPropertyAsLong(MAX_COLLECTION_NEST_LEVEL, 15);
             serializationContext.preferVectors = serialization.getPropertyAsBoolean(PREFER_VECTORS, false);
+            serializationContext.primitiveVectors = serialization.getPropertyAsBoolean(PRIMITIVE_VECTORS, false);
+            serializationContext.maxBufferedRequestBytes = (int)serialization.getPropertyAsLong(MAX_BUFFERED_REQUEST_BYTES, 1 << 20);
 
             boolean showStacktraces = serialization.getPropertyAsBoolean(SHOW_STACKTRACES, false);
             if (showStacktraces && Log.isWarn())
@@ -475,6 +529,172 @@ public abstract class AbstractEndpoint extends ManageableComponent
         }
     }
 
+    /**
+     * Returns whether the outbound queues of FlexClients for the endpoint order
+     * messages by their priority header.
+     *
+     * @return <code>true</code> if outbound queues are ordered by priority.
+     */
+    public boolean isPriorityOrderedOutboundQueue()
+    {
+        return priorityOrderedOutboundQueue;
+    }
+
+    /**
+     * Sets whether the outbound queues of FlexClients for the endpoint order
+     * messages by their priority header. Only queues created afterwards are affected.
+     *
+     * @param value <code>true</code> to order outbound queues by priority.
+     */
+    public void setPriorityOrderedOutboundQueue(boolean value)
+    {
+        priorityOrderedOutboundQueue = value;
+    }
+
+    /**
+     * Returns whether the outbound queues of FlexClients for the endpoint keep
+     * the messages of each MessageClient apart.
+     *
+     * @return <code>true</code> if outbound queues are partitioned by MessageClient.
+     */
+    public boolean isPartitionedOutboundQueue()
+    {
+        return partitionedOutboundQueue;
+    }
+
+    /**
+     * Sets whether the outbound queues of FlexClients for the endpoint keep the
+     * messages of each MessageClient apart, which makes flushing the messages of
+     * one MessageClient independent of the messages queued for the others.
+     * It has no effect if outbound queues are priority ordered.
+     * Only queues created afterwards are affected.
+     *
+     * @param value <code>true</code> to partition outbound queues by MessageClient.
+     */
+    public void setPartitionedOutboundQueue(boolean value)
+    {
+        partitionedOutboundQueue = value;
+    }
+
+    /**
+     * Returns the time a message may wait at its priority level in a priority
+     * ordered outbound queue before it is moved up a level.
+     *
+     * @return The starvation timeout in milliseconds.
+     */
+    public long getOutboundQueueStarvationTimeoutMillis()
+    {
+        return outboundQueueStarvationTimeoutMillis;
+    }
+
+    /**
+     * Sets the time a message may wait at its priority level in a priority
+     * ordered outbound queue before it is moved up a level; zero or less
+     * disables this.
+     *
+     * @param value The starvation timeout in milliseconds.
+     */
+    public void setOutboundQueueStarvationTimeoutMillis(long value)
+    {
+        outboundQueueStarvationTimeoutMillis = value;
+    }
+
+    /**
+     * Returns the maximum number of messages in the outbound queue of a FlexClient
+     * for the endpoint.
+     *
+     * @return The maximum number of messages, or zero or less for no limit.
+     */
+    public int getOutboundQueueMaxMessages()
+    {
+        return outboundQueueMaxMessages;
+    }
+
+    /**
+     * Sets the maximum number of messages in the outbound queue of a FlexClient
+     * for the endpoint. Only queues created afterwards are affected.
+     *
+     * @param value The maximum number of messages, or zero or less for no limit.
+     */
+    public void setOutboundQueueMaxMessages(int value)
+    {
+        outboundQueueMaxMessages = value;
+    }
+
+    /**
+     * Returns the maximum estimated size of the messages in the outbound queue
+     * of a FlexClient for the endpoint.
+     *
+     * @return The maximum size in bytes, or zero or less for no limit.
+     */
+    public long getOutboundQueueMaxBytes()
+    {
+        return outboundQueueMaxBytes;
+    }
+
+    /**
+     * Sets the maximum estimated size of the messages in the outbound queue
+     * of a FlexClient for the endpoint. Only queues created afterwards are affected.
+     *
+     * @param value The maximum size in bytes, or zero or less for no limit.
+     */
+    public void setOutboundQueueMaxBytes(long value)
+    {
+        outboundQueueMaxBytes = value;
+    }
+
+    /**
+     * Returns what the outbound queue of a FlexClient for the endpoint does with
+     * a message that does not fit.
+     *
+     * @return The overflow policy.
+     */
+    public BoundedOutboundQueue.OverflowPolicy getOutboundQueueOverflowPolicy()
+    {
+        return outboundQueueOverflowPolicy;
+    }
+
+    /**
+     * Sets what the outbound queue of a FlexClient for the endpoint does with
+     * a message that does not fit. Only queues created afterwards are affected.
+     *
+     * @param value The overflow policy.
+     */
+    public void setOutboundQueueOverflowPolicy(BoundedOutboundQueue.OverflowPolicy value)
+    {
+        outboundQueueOverflowPolicy = value;
+    }
+
+    /**
+     * Creates the list that holds the outbound messages of a FlexClient for
+     * the endpoint, which is priority ordered or partitioned by MessageClient
+     * if the endpoint is configured so. It is wrapped in a
+     * <code>BoundedOutboundQueue</code>, which applies the limits of the endpoint
+     * and reports the size of its messages to the <code>FlexClientManager</code>,
+     * if the endpoint limits outbound queues or there is a manager to report to.
+     *
+     * @return A new outbound queue.
+     */
+    public List<Message> createFlexClientOutboundQueue()
+    {
+        List<Message> queue;
+        if (priorityOrderedOutboundQueue)
+            queue = new PriorityOutboundQueue(outboundQueueStarvationTimeoutMillis);
+        else if (partitionedOutboundQueue)
+            queue = new PartitionedOutboundQueue();
+        else
+            queue = new ArrayList<Message>(); /* Default size of 10 is fine */
+
+        MessageBroker broker = getMessageBroker();
+        FlexClientManager flexClientManager = broker != null ? broker.getFlexClientManager() : null;
+        if (outboundQueueMaxMessages > 0 || outboundQueueMaxBytes > 0 || flexClientManager != null)
+        {
+            queue = new BoundedOutboundQueue(queue, outboundQueueMaxMessages, outboundQueueMaxBytes,
+                    outboundQueueOverflowPolicy, flexClientManager);
+        }
+        return queue;
+    }
+
     /**
      * Retrieves the properties for the <code>FlexClientOutboundQueueProcessor</code> of the endpoint.
      *
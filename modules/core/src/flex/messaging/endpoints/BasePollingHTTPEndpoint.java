@@ -25,11 +25,14 @@ import flex.messaging.client.PollWaitListener;
 import flex.messaging.client.UserAgentSettings;
 import flex.messaging.config.ConfigMap;
 import flex.messaging.config.ConfigurationConstants;
+import flex.messaging.config.ConfigurationException;
 import flex.messaging.log.Log;
 import flex.messaging.messages.CommandMessage;
 import flex.messaging.util.UserAgentManager;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Base class for HTTP-based endpoints that support regular polling and long polling,
@@ -51,6 +54,15 @@ public abstract class BasePollingHTTPEndpoint extends BaseHTTPEndpoint implement
     private static final String MAX_WAITING_POLL_REQUESTS = "max-waiting-poll-requests";
     private static final String WAIT_INTERVAL_MILLIS = "wait-interval-millis";
     private static final String CLIENT_WAIT_INTERVAL_MILLIS = "client-wait-interval-millis";
+    private static final String ADAPTIVE_POLLING_ENABLED = "adaptive-polling-enabled";
+    private static final String MIN_POLLING_INTERVAL_MILLIS = "min-polling-interval-millis";
+    private static final String MAX_POLLING_INTERVAL_MILLIS = "max-polling-interval-millis";
+    private static final String MAX_POLLS_PER_SECOND = "max-polls-per-second";
+    // Defaults for the adaptive polling interval range.
+    private static final int DEFAULT_MIN_POLLING_INTERVAL_MILLIS = 500;
+    private static final int DEFAULT_MAX_POLLING_INTERVAL_MILLIS = 10000;
+    // The window over which the poll rate of the endpoint is measured.
+    private static final long POLL_RATE_WINDOW_MILLIS = 1000;
     // Force clients that exceed the long-poll limit to wait at least this long between poll requests.
     // This matches the default polling interval defined in the client PollingChannel.
     private static final int DEFAULT_WAIT_FOR_EXCESS_POLL_WAIT_CLIENTS = 3000;
@@ -124,6 +136,13 @@ public abstract class BasePollingHTTPEndpoint extends BaseHTTPEndpoint implement
         waitInterval = properties.getPropertyAsLong(WAIT_INTERVAL_MILLIS, 0);
         clientWaitInterval = properties.getPropertyAsInt(CLIENT_WAIT_INTERVAL_MILLIS, 0);
 
+        // Adaptive polling props.
+        adaptivePollingEnabled = properties.getPropertyAsBoolean(ADAPTIVE_POLLING_ENABLED, false);
+        setMinPollingInterval(properties.getPropertyAsInt(MIN_POLLING_INTERVAL_MILLIS, DEFAULT_MIN_POLLING_INTERVAL_MILLIS));
+        setMaxPollingInterval(properties.getPropertyAsInt(MAX_POLLING_INTERVAL_MILLIS, DEFAULT_MAX_POLLING_INTERVAL_MILLIS));
+        maxPollsPerSecond = properties.getPropertyAsInt(MAX_POLLS_PER_SECOND, 0);
+        validateAdaptivePolling();
+
         // User Agent props.
         UserAgentManager.setupUserAgentManager(properties, userAgentManager);
 
@@ -169,12 +188,76 @@ public abstract class BasePollingHTTPEndpoint extends BaseHTTPEndpoint implement
      */
     private ConcurrentHashMap currentWaitedRequests;
 
+    /**
+     * The number of polls in the current poll rate window, and the start of the window.
+     */
+    private final AtomicInteger windowPolls = new AtomicInteger();
+    private final AtomicLong windowStart = new AtomicLong();
+
+    /**
+     * The poll rate measured over the last complete window.
+     */
+    private volatile int pollsPerSecond;
+
+    /**
+     * The moving average of the polling intervals suggested to clients.
+     */
+    private volatile int averagePollingInterval;
+
     //--------------------------------------------------------------------------
     //
     // Properties
     //
     //--------------------------------------------------------------------------
 
+    //----------------------------------
+    //  adaptivePollingEnabled
+    //----------------------------------
+
+    protected boolean adaptivePollingEnabled;
+
+    /**
+     * Retrieves whether poll responses suggest the interval until the next poll of
+     * the client based on the load of the endpoint and the number of messages recent
+     * polls returned to the client.
+     *
+     * @return <code>true</code> if adaptive polling is enabled.
+     */
+    public boolean isAdaptivePollingEnabled()
+    {
+        return adaptivePollingEnabled;
+    }
+
+    /**
+     * Sets whether poll responses suggest the interval until the next poll of the client.
+     * Clients that receive messages in their polls are asked to poll again after the
+     * <code>min-polling-interval-millis</code>; idle clients are asked to wait longer as
+     * the poll rate of the endpoint approaches <code>max-polls-per-second</code>, up to
+     * the <code>max-polling-interval-millis</code>. Adaptive polling requires a positive
+     * <code>max-polls-per-second</code>.
+     *
+     * @param value <code>true</code> to enable adaptive polling.
+     */
+    public void setAdaptivePollingEnabled(boolean value)
+    {
+        adaptivePollingEnabled = value;
+    }
+
+    //----------------------------------
+    //  averagePollingInterval
+    //----------------------------------
+
+    /**
+     * Retrieves the moving average of the polling intervals in milliseconds that
+     * adaptive polling suggested to clients.
+     *
+     * @return The average suggested polling interval, or zero if none was suggested.
+     */
+    public int getAveragePollingInterval()
+    {
+        return averagePollingInterval;
+    }
+
     //----------------------------------
     //  clientWaitInterval
     //----------------------------------
@@ -247,6 +330,90 @@ public abstract class BasePollingHTTPEndpoint extends BaseHTTPEndpoint implement
         }
     }
 
+    //----------------------------------
+    //  maxPollingInterval
+    //----------------------------------
+
+    protected int maxPollingInterval = DEFAULT_MAX_POLLING_INTERVAL_MILLIS;
+
+    /**
+     * Retrieves the longest polling interval in milliseconds that adaptive polling suggests.
+     *
+     * @return The maximum polling interval.
+     */
+    public int getMaxPollingInterval()
+    {
+        return maxPollingInterval;
+    }
+
+    /**
+     * Sets the longest polling interval in milliseconds that adaptive polling suggests.
+     * Values below the minimum polling interval are raised to it.
+     *
+     * @param value The maximum polling interval.
+     */
+    public void setMaxPollingInterval(int value)
+    {
+        maxPollingInterval = Math.max(value, minPollingInterval);
+    }
+
+    //----------------------------------
+    //  maxPollsPerSecond
+    //----------------------------------
+
+    protected int maxPollsPerSecond;
+
+    /**
+     * Retrieves the poll rate at which adaptive polling considers the endpoint fully
+     * loaded and suggests the maximum polling interval to idle clients.
+     *
+     * @return The maximum polls per second, or zero if not set.
+     */
+    public int getMaxPollsPerSecond()
+    {
+        return maxPollsPerSecond;
+    }
+
+    /**
+     * Sets the poll rate at which adaptive polling considers the endpoint fully loaded.
+     * The value must be positive when adaptive polling is enabled.
+     *
+     * @param value The maximum polls per second.
+     */
+    public void setMaxPollsPerSecond(int value)
+    {
+        maxPollsPerSecond = value;
+    }
+
+    //----------------------------------
+    //  minPollingInterval
+    //----------------------------------
+
+    protected int minPollingInterval = DEFAULT_MIN_POLLING_INTERVAL_MILLIS;
+
+    /**
+     * Retrieves the shortest polling interval in milliseconds that adaptive polling suggests.
+     *
+     * @return The minimum polling interval.
+     */
+    public int getMinPollingInterval()
+    {
+        return minPollingInterval;
+    }
+
+    /**
+     * Sets the shortest polling interval in milliseconds that adaptive polling suggests.
+     * The maximum polling interval is raised to this value if it is lower.
+     *
+     * @param value The minimum polling interval; values below 1 are raised to 1.
+     */
+    public void setMinPollingInterval(int value)
+    {
+        minPollingInterval = Math.max(value, 1);
+        if (maxPollingInterval < minPollingInterval)
+            maxPollingInterval = minPollingInterval;
+    }
+
     //----------------------------------
     //  pollingEnabled
     //----------------------------------
@@ -277,6 +444,21 @@ public abstract class BasePollingHTTPEndpoint extends BaseHTTPEndpoint implement
      */
     protected long pollingIntervalMillis = -1;
 
+    //----------------------------------
+    //  pollsPerSecond
+    //----------------------------------
+
+    /**
+     * Retrieves the number of poll requests the endpoint handled per second, measured
+     * while adaptive polling is enabled.
+     *
+     * @return The number of polls per second.
+     */
+    public int getPollsPerSecond()
+    {
+        return pollsPerSecond;
+    }
+
     //----------------------------------
     //  waitInterval
     //----------------------------------
@@ -393,6 +575,8 @@ public abstract class BasePollingHTTPEndpoint extends BaseHTTPEndpoint implement
         if (isStarted())
             return;
 
+        validateAdaptivePolling();
+
         super.start();
 
         currentWaitedRequests = new ConcurrentHashMap();
@@ -461,7 +645,11 @@ public abstract class BasePollingHTTPEndpoint extends BaseHTTPEndpoint implement
     @Override
     protected FlushResult handleFlexClientPoll(FlexClient flexClient, CommandMessage pollCommand)
     {
+        if (adaptivePollingEnabled)
+            recordPoll(System.currentTimeMillis());
+
         FlushResult flushResult = null;
+        boolean waited = false;
         if (canWait && !pollCommand.headerExists(CommandMessage.SUPPRESS_POLL_WAIT_HEADER))
         {
             FlexSession session = FlexContext.getFlexSession();
@@ -539,6 +727,7 @@ public abstract class BasePollingHTTPEndpoint extends BaseHTTPEndpoint implement
 
                 try
                 {
+                    waited = true;
                     flushResult  = flexClient.pollWithWait(getId(), FlexContext.getFlexSession(), this, waitInterval);
                     if (flushResult != null)
                     {
@@ -598,6 +787,76 @@ public abstract class BasePollingHTTPEndpoint extends BaseHTTPEndpoint implement
             }
         }
 
+        // Suggest when the client should poll next unless the poll was serviced with a server wait,
+        // in which case the client wait interval applies. A longer wait set above to avoid busy polling is kept.
+        if (adaptivePollingEnabled && !waited)
+        {
+            if (flushResult == null)
+                flushResult = new FlushResult();
+            int pollingInterval = computePollingInterval(flexClient.getRecentPollDepth(getId()), getLoad());
+            if (pollingInterval > flushResult.getNextFlushWaitTimeMillis())
+                flushResult.setNextFlushWaitTimeMillis(pollingInterval);
+            // The average is only used for monitoring so concurrent updates are allowed to race.
+            averagePollingInterval += (pollingInterval - averagePollingInterval) / 8;
+        }
+
         return flushResult;
     }
+
+    /**
+     * Computes the polling interval to suggest to a client in milliseconds. Clients that
+     * recently received messages in their polls are suggested intervals close to the minimum
+     * polling interval. Idle clients are suggested longer intervals as the load of the endpoint
+     * grows, up to the maximum polling interval.
+     *
+     * @param recentPollDepth The average number of messages recent polls returned to the client.
+     * @param load The load of the endpoint, from 0 for idle to 1 for fully loaded.
+     * @return The polling interval in milliseconds.
+     */
+    protected int computePollingInterval(float recentPollDepth, float load)
+    {
+        float idleness = 1 / (1 + Math.max(recentPollDepth, 0));
+        return minPollingInterval + Math.round((maxPollingInterval - minPollingInterval) * load * idleness);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the poll rate of the endpoint relative to <code>max-polls-per-second</code>.
+     */
+    private float getLoad()
+    {
+        return Math.min(1f, (float)pollsPerSecond / maxPollsPerSecond);
+    }
+
+    /**
+     * Adaptive polling has no meaningful load without a maximum poll rate, so
+     * require one when it is enabled.
+     */
+    private void validateAdaptivePolling()
+    {
+        if (adaptivePollingEnabled && maxPollsPerSecond <= 0)
+        {
+            // Endpoint ''{0}'' enables adaptive-polling-enabled but does not specify a positive max-polls-per-second value.
+            ConfigurationException ce = new ConfigurationException();
+            ce.setMessage(ConfigurationConstants.MISSING_MAX_POLLS_PER_SECOND, new Object[] {getId()});
+            throw ce;
+        }
+    }
+
+    /**
+     * Counts a poll and updates the poll rate once the current window is complete.
+     */
+    private void recordPoll(long now)
+    {
+        windowPolls.incrementAndGet();
+        long start = windowStart.get();
+        long elapsed = now - start;
+        if (elapsed >= POLL_RATE_WINDOW_MILLIS && windowStart.compareAndSet(start, now))
+            pollsPerSecond = (int)(windowPolls.getAndSet(0) * 1000L / elapsed);
+    }
 }
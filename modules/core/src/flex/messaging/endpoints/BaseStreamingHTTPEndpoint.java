@@ -869,6 +869,8 @@ public abstract class BaseStreamingHTTPEndpoint extends BaseHTTPEndpoint
                             messages = notifier.drainMessages();
                         }
                         streamMessages(messages, os, res);
+                        if (messages != null)
+                            notifier.messagesStreamed();
 
                         synchronized (notifier.pushNeeded)
                         {
@@ -902,6 +904,7 @@ public abstract class BaseStreamingHTTPEndpoint extends BaseHTTPEndpoint
                             notifier.updateLastUse();
 
                             streamMessages(messages, os, res);
+                            notifier.messagesStreamed();
                         }
                     }
                     catch (InterruptedException e)
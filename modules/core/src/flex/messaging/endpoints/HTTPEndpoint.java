@@ -156,7 +156,7 @@ public class HTTPEndpoint extends BasePollingHTTPEndpoint
      */
     @Override protected String getDeserializerClassName()
     {
-        return "flex.messaging.io.amfx.AmfxMessageDeserializer";
+        return "flex.messaging.io.amfx.StaxAmfxMessageDeserializer";
     }
 
     /**
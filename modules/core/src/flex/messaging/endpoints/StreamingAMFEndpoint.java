@@ -16,8 +16,6 @@
  */
 package flex.messaging.endpoints;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
@@ -36,6 +34,7 @@ import flex.messaging.endpoints.amf.SessionFilter;
 import flex.messaging.io.MessageIOConstants;
 import flex.messaging.io.TypeMarshallingContext;
 import flex.messaging.io.amf.Amf3Output;
+import flex.messaging.io.amf.AmfByteArrayOutputStream;
 import flex.messaging.log.Log;
 import flex.messaging.log.LogCategories;
 import flex.messaging.messages.Message;
@@ -157,9 +156,8 @@ public class StreamingAMFEndpoint extends BaseStreamingHTTPEndpoint
     @Override protected long getMessageSizeForPerformanceInfo(Message message)
     {
         Amf3Output amfOut = new Amf3Output(serializationContext);
-        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-        DataOutputStream dataOutStream = new DataOutputStream(outStream);
-        amfOut.setOutputStream(dataOutStream);
+        AmfByteArrayOutputStream outStream = new AmfByteArrayOutputStream();
+        amfOut.setOutputStream(outStream);
         try
         {
             amfOut.writeObject(message);
@@ -169,7 +167,7 @@ public class StreamingAMFEndpoint extends BaseStreamingHTTPEndpoint
             if (Log.isDebug())
                 log.debug("MPI exception while retrieving the size of the serialized message: " + e.toString());
         }
-        return dataOutStream.size();
+        return outStream.size();
     }
 
     /**
@@ -230,12 +228,10 @@ public class StreamingAMFEndpoint extends BaseStreamingHTTPEndpoint
                 log.debug("Endpoint with id '" + getId() + "' is streaming message: " + message);
 
             Amf3Output amfOut = new Amf3Output(serializationContext);
-            ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-            DataOutputStream dataOutStream = new DataOutputStream(outStream);
-            amfOut.setOutputStream(dataOutStream);
+            AmfByteArrayOutputStream outStream = new AmfByteArrayOutputStream();
+            amfOut.setOutputStream(outStream);
 
             amfOut.writeObject(message);
-            dataOutStream.flush();
             byte[] messageBytes = outStream.toByteArray();
             streamChunk(messageBytes, os, response);
 
@@ -169,7 +169,7 @@ public class StreamingHTTPEndpoint extends BaseStreamingHTTPEndpoint
      */
     @Override protected String getDeserializerClassName()
     {
-        return "flex.messaging.io.amfx.AmfxMessageDeserializer";
+        return "flex.messaging.io.amfx.StaxAmfxMessageDeserializer";
     }
 
     /**
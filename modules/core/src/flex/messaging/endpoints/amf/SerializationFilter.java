@@ -17,7 +17,6 @@
 package flex.messaging.endpoints.amf;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
@@ -37,6 +36,8 @@ import flex.messaging.io.SerializationException;
 import flex.messaging.io.amf.ASObject;
 import flex.messaging.io.amf.ActionContext;
 import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.AmfByteArrayInputStream;
+import flex.messaging.io.amf.AmfByteArrayOutputStream;
 import flex.messaging.io.amf.AmfTrace;
 import flex.messaging.io.amf.MessageBody;
 import flex.messaging.log.Log;
@@ -141,7 +142,16 @@ public class SerializationFilter extends AMFFilter
                 }
 
                 if (outputStream.size() > 0)
-                    in = new ByteArrayInputStream(outputStream.toByteArray());
+                    in = new AmfByteArrayInputStream(outputStream.toByteArray());
+            }
+            else
+            {
+                // Read bodies up to the configured size into memory so that they
+                // are deserialized directly from a byte array; larger bodies and
+                // bodies of unknown length are streamed.
+                int contentLength = req.getContentLength();
+                if (contentLength > 0 && contentLength <= sc.maxBufferedRequestBytes)
+                    in = AmfByteArrayInputStream.readFrom(in, contentLength, sc.maxBufferedRequestBytes);
             }
 
             deserializer.initialize(sc, in, debugTrace);
@@ -199,7 +209,7 @@ public class SerializationFilter extends AMFFilter
             // serialize output
             if (context.getStatus() != MessageIOConstants.STATUS_NOTAMF)
             {
-                ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+                ByteArrayOutputStream outBuffer = new AmfByteArrayOutputStream();
                 ActionMessage respMesg = context.getResponseMessage();
 
                 // Additional AMF packet tracing is enabled only at the debug logging level
@@ -240,7 +250,7 @@ public class SerializationFilter extends AMFFilter
                             }
 
                             // reserialize the message now that info has been added
-                            outBuffer = new ByteArrayOutputStream();
+                            outBuffer = new AmfByteArrayOutputStream();
                             respMesg = context.getResponseMessage();
                             serializer.initialize(sc, outBuffer, debugTrace);
                             serializer.writeMessage(respMesg);
@@ -416,7 +426,7 @@ public class SerializationFilter extends AMFFilter
             logger.error("Exception occurred during serialization: " + ExceptionUtil.toString(t));
 
         // Serialize the error messages
-        ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+        ByteArrayOutputStream outBuffer = new AmfByteArrayOutputStream();
         AmfTrace debugTrace = Log.isDebug() && logger.hasTarget()? new AmfTrace() : null;
         MessageSerializer serializer = serializationContext.newMessageSerializer();
         serializer.initialize(serializationContext, outBuffer, debugTrace);
@@ -0,0 +1,454 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.factories;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import flex.messaging.config.ConfigMap;
+import flex.messaging.services.ServiceException;
+
+/**
+ * A bounded pool of component instances used by <code>JavaFactoryInstance</code>s
+ * with <code>pooled</code> scope. Instances are borrowed for the duration of a
+ * single operation and returned when the operation completes, so instances are
+ * never used by more than one thread at a time but are not constructed per
+ * request either.
+ * <p>
+ * The pool is configured through a <code>pool</code> element in the destination
+ * properties:
+ * </p>
+ * <pre>
+ * &lt;properties&gt;
+ *     &lt;source&gt;com.acme.ReferenceDataService&lt;/source&gt;
+ *     &lt;scope&gt;pooled&lt;/scope&gt;
+ *     &lt;pool&gt;
+ *         &lt;min-size&gt;2&lt;/min-size&gt;
+ *         &lt;max-size&gt;16&lt;/max-size&gt;
+ *         &lt;idle-timeout-millis&gt;300000&lt;/idle-timeout-millis&gt;
+ *         &lt;max-wait-millis&gt;10000&lt;/max-wait-millis&gt;
+ *     &lt;/pool&gt;
+ * &lt;/properties&gt;
+ * </pre>
+ * <p>
+ * <code>max-size</code> bounds the number of instances, idle or in use. When all
+ * instances are in use a borrower waits up to <code>max-wait-millis</code> for one
+ * to be returned before failing.
+ * </p>
+ * <p>
+ * The pool has no background thread; idle instances that have not been used for
+ * <code>idle-timeout-millis</code> are evicted the next time an instance is
+ * borrowed or returned, so a pool that is not used at all keeps its idle
+ * instances. <code>min-size</code> is the number of idle instances that eviction
+ * retains; the pool does not create instances up front to reach it.
+ * </p>
+ */
+public class InstancePool
+{
+    /** Pool configuration element. */
+    public static final String POOL_ELEMENT = "pool";
+    private static final String MIN_SIZE = "min-size";
+    private static final String MAX_SIZE = "max-size";
+    private static final String IDLE_TIMEOUT_MILLIS = "idle-timeout-millis";
+    private static final String MAX_WAIT_MILLIS = "max-wait-millis";
+
+    /** Default maximum number of instances. */
+    public static final int DEFAULT_MAX_SIZE = 16;
+    /** Default idle timeout; five minutes. */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 300000;
+    /** Default time to wait for an instance when the pool is exhausted. */
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 10000;
+
+    private static final int POOL_EXHAUSTED = 10662;
+
+    private final JavaFactoryInstance factoryInstance;
+
+    /** Idle instances, most recently returned first. */
+    private final ArrayDeque<IdleInstance> idle = new ArrayDeque<IdleInstance>();
+    /** Borrowed instances, mapped to the generation they were created in. */
+    private final Map<Object, Integer> borrowed = new IdentityHashMap<Object, Integer>();
+    private int activeCount;
+    /** Bumped by <code>clear()</code>; returned instances of older generations are discarded. */
+    private int generation;
+
+    private int minSize;
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+    private long maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+
+    // Statistics.
+    private long borrowCount;
+    private long createdCount;
+    private long evictedCount;
+    private long waitTimeoutCount;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructs a pool for the given factory instance.
+     *
+     * @param factoryInstance The factory instance used to create pooled instances.
+     */
+    public InstancePool(JavaFactoryInstance factoryInstance)
+    {
+        this.factoryInstance = factoryInstance;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Applies the settings of a <code>pool</code> configuration element.
+     *
+     * @param properties The pool settings; may be <code>null</code>.
+     */
+    public void initialize(ConfigMap properties)
+    {
+        if (properties == null)
+            return;
+
+        setMinSize(properties.getPropertyAsInt(MIN_SIZE, minSize));
+        setMaxSize(properties.getPropertyAsInt(MAX_SIZE, maxSize));
+        setIdleTimeoutMillis(properties.getPropertyAsLong(IDLE_TIMEOUT_MILLIS, idleTimeoutMillis));
+        setMaxWaitMillis(properties.getPropertyAsLong(MAX_WAIT_MILLIS, maxWaitMillis));
+    }
+
+    /**
+     * Borrows an instance from the pool, creating one if no idle instance is
+     * available and the pool is not at its maximum size. If the pool is exhausted
+     * this waits up to <code>maxWaitMillis</code> for an instance to be returned.
+     *
+     * @return A pooled instance.
+     */
+    public Object borrowInstance()
+    {
+        int createGeneration;
+        synchronized (this)
+        {
+            evictIdleInstances();
+
+            long deadline = 0;
+            while (idle.isEmpty() && activeCount >= maxSize)
+            {
+                long now = System.currentTimeMillis();
+                if (deadline == 0)
+                    deadline = now + maxWaitMillis;
+                long remaining = deadline - now;
+                if (maxWaitMillis <= 0 || remaining <= 0)
+                {
+                    waitTimeoutCount++;
+                    ServiceException e = new ServiceException();
+                    e.setMessage(POOL_EXHAUSTED, new Object[] {factoryInstance.getId(), new Integer(maxSize)});
+                    e.setCode("Server.Processing");
+                    throw e;
+                }
+                try
+                {
+                    wait(remaining);
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                    deadline = now; // Give up on the next check.
+                }
+            }
+
+            activeCount++;
+            borrowCount++;
+            if (!idle.isEmpty())
+            {
+                Object instance = idle.pollFirst().instance;
+                borrowed.put(instance, generation);
+                return instance;
+            }
+            createGeneration = generation;
+        }
+
+        // Construct outside of the lock as constructors can be expensive; the slot
+        // has already been reserved by incrementing the active count.
+        try
+        {
+            Object instance = factoryInstance.createInstance();
+            synchronized (this)
+            {
+                createdCount++;
+                borrowed.put(instance, createGeneration);
+            }
+            return instance;
+        }
+        catch (RuntimeException e)
+        {
+            releaseSlot();
+            throw e;
+        }
+        catch (Error e)
+        {
+            releaseSlot();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a previously borrowed instance to the pool. Instances borrowed
+     * before the pool was last cleared are discarded instead. Instances that
+     * were not borrowed from this pool, or were already returned, are ignored.
+     *
+     * @param instance The instance.
+     */
+    public synchronized void returnInstance(Object instance)
+    {
+        Integer borrowedGeneration = borrowed.remove(instance);
+        if (borrowedGeneration == null)
+            return;
+
+        activeCount--;
+        if (borrowedGeneration.intValue() == generation)
+            idle.addFirst(new IdleInstance(instance, System.currentTimeMillis()));
+        else
+            evictedCount++;
+        evictIdleInstances();
+        notify();
+    }
+
+    /**
+     * Discards all idle instances. Instances currently in use are discarded
+     * when they are returned.
+     */
+    public synchronized void clear()
+    {
+        evictedCount += idle.size();
+        idle.clear();
+        generation++;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Properties
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the number of instances currently borrowed from the pool.
+     *
+     * @return The number of active instances.
+     */
+    public synchronized int getActiveCount()
+    {
+        return activeCount;
+    }
+
+    /**
+     * Returns the number of idle instances held by the pool.
+     *
+     * @return The number of idle instances.
+     */
+    public synchronized int getIdleCount()
+    {
+        return idle.size();
+    }
+
+    /**
+     * Returns the total number of instances borrowed from the pool.
+     *
+     * @return The borrow count.
+     */
+    public synchronized long getBorrowCount()
+    {
+        return borrowCount;
+    }
+
+    /**
+     * Returns the total number of instances the pool has created.
+     *
+     * @return The created count.
+     */
+    public synchronized long getCreatedCount()
+    {
+        return createdCount;
+    }
+
+    /**
+     * Returns the total number of idle instances the pool has evicted.
+     *
+     * @return The evicted count.
+     */
+    public synchronized long getEvictedCount()
+    {
+        return evictedCount;
+    }
+
+    /**
+     * Returns the number of borrow attempts that failed because the pool was
+     * exhausted for longer than <code>maxWaitMillis</code>.
+     *
+     * @return The wait timeout count.
+     */
+    public synchronized long getWaitTimeoutCount()
+    {
+        return waitTimeoutCount;
+    }
+
+    /**
+     * Returns the number of idle instances retained regardless of idle timeout.
+     *
+     * @return The minimum size.
+     */
+    public synchronized int getMinSize()
+    {
+        return minSize;
+    }
+
+    /**
+     * Sets the number of idle instances retained regardless of idle timeout.
+     * Instances are not created to reach this number.
+     *
+     * @param value The minimum size.
+     */
+    public synchronized void setMinSize(int value)
+    {
+        minSize = value < 0 ? 0 : value;
+    }
+
+    /**
+     * Returns the maximum number of instances, idle or in use.
+     *
+     * @return The maximum size.
+     */
+    public synchronized int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum number of instances, idle or in use.
+     *
+     * @param value The maximum size.
+     */
+    public synchronized void setMaxSize(int value)
+    {
+        maxSize = value < 1 ? 1 : value;
+        notifyAll();
+    }
+
+    /**
+     * Returns the time in milliseconds after which an unused idle instance is evicted.
+     *
+     * @return The idle timeout.
+     */
+    public synchronized long getIdleTimeoutMillis()
+    {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Sets the time in milliseconds after which an unused idle instance is evicted.
+     * A value of 0 or less disables eviction.
+     *
+     * @param value The idle timeout.
+     */
+    public synchronized void setIdleTimeoutMillis(long value)
+    {
+        idleTimeoutMillis = value;
+    }
+
+    /**
+     * Returns the time in milliseconds to wait for an instance when the pool is exhausted.
+     *
+     * @return The maximum wait.
+     */
+    public synchronized long getMaxWaitMillis()
+    {
+        return maxWaitMillis;
+    }
+
+    /**
+     * Sets the time in milliseconds to wait for an instance when the pool is exhausted.
+     * A value of 0 or less fails immediately.
+     *
+     * @param value The maximum wait.
+     */
+    public synchronized void setMaxWaitMillis(long value)
+    {
+        maxWaitMillis = value;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Releases a slot reserved for an instance that could not be created.
+     */
+    private synchronized void releaseSlot()
+    {
+        activeCount--;
+        notify();
+    }
+
+    /**
+     * Drops idle instances beyond the maximum size and instances that have been
+     * idle longer than the idle timeout, retaining at least <code>minSize</code>
+     * idle instances. Must be called while holding the pool lock.
+     */
+    private void evictIdleInstances()
+    {
+        while (!idle.isEmpty() && idle.size() + activeCount > maxSize)
+        {
+            idle.pollLast();
+            evictedCount++;
+        }
+
+        if (idleTimeoutMillis <= 0)
+            return;
+
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        for (Iterator<IdleInstance> iter = idle.descendingIterator(); iter.hasNext() && idle.size() > minSize;)
+        {
+            IdleInstance oldest = iter.next();
+            if (oldest.lastUse > cutoff)
+                break;
+            iter.remove();
+            evictedCount++;
+        }
+    }
+
+    /**
+     * An idle instance and the time it was returned to the pool.
+     */
+    private static final class IdleInstance
+    {
+        final Object instance;
+        final long lastUse;
+
+        IdleInstance(Object instance, long lastUse)
+        {
+            this.instance = instance;
+            this.lastUse = lastUse;
+        }
+    }
+}
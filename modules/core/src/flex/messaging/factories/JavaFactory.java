@@ -38,7 +38,9 @@ import javax.servlet.ServletContext;
  * This class implements the FlexFactory interface to constructs Flex messaging
  * components.  The JavaFactory uses the class name, specified as the source
  * attribute to determine the class for instances.   The scope attribute can be one of
- * session, application or request to determine its lifecycle.  If you
+ * session, application, request or pooled to determine its lifecycle.  Pooled
+ * components are borrowed from an <code>InstancePool</code> for each request and
+ * returned to it when the operation completes.  If you
  * use application or session, you can specify the optional attribute-id
  * parameter to control the name of the key for storing the component.  Two destinations
  * using the same attribute-id will use the same component.  The component is stored
@@ -96,7 +98,12 @@ public class JavaFactory implements FlexFactory, DestructibleFlexFactory
             instance.setAttributeId(properties.getPropertyAsString(ATTRIBUTE_ID, id));
         }
 
-        if (instance.getScope().equalsIgnoreCase(SCOPE_APPLICATION))
+        if (instance.getScope().equalsIgnoreCase(SCOPE_POOLED))
+        {
+            if (properties != null)
+                instance.getInstancePool().initialize(properties.getPropertyAsMap(InstancePool.POOL_ELEMENT, null));
+        }
+        else if (instance.getScope().equalsIgnoreCase(SCOPE_APPLICATION))
         {
             try
             {
@@ -181,6 +188,10 @@ public class JavaFactory implements FlexFactory, DestructibleFlexFactory
         {
             instance = factoryInstance.applicationInstance;
         }
+        else if (factoryInstance.getScope().equalsIgnoreCase(SCOPE_POOLED))
+        {
+            instance = factoryInstance.getInstancePool().borrowInstance();
+        }
         else if (factoryInstance.getScope().equalsIgnoreCase(SCOPE_SESSION))
         {
             // See if an instance already exists in this http session first
@@ -265,6 +276,10 @@ public class JavaFactory implements FlexFactory, DestructibleFlexFactory
                     }
                 }
             }
+            else if (FlexFactory.SCOPE_POOLED.equals(factoryInstance.getScope()))
+            {
+                factoryInstance.getInstancePool().clear();
+            }
             else if (FlexFactory.SCOPE_SESSION.equals(factoryInstance.getScope()))
             {
                 FlexSession session = FlexContext.getFlexSession();
@@ -38,6 +38,7 @@ import flex.messaging.util.ClassUtil;
 public class JavaFactoryInstance extends FactoryInstance
 {
     Object applicationInstance = null;
+    InstancePool instancePool = null;
     Class javaClass = null;
     String attributeId;
 
@@ -75,14 +76,38 @@ public class JavaFactoryInstance extends FactoryInstance
     }
 
     /**
-     * Sets the instance class to null, in addition to updating the
-     * <code>source</code> property.
+     * Returns the pool of instances for a <code>JavaFactoryInstance</code> with
+     * <code>pooled</code> scope.
+     *
+     * @return The instance pool, or <code>null</code> if the scope is not pooled.
+     */
+    public InstancePool getInstancePool()
+    {
+        return instancePool;
+    }
+
+    /**
+     * Creates the instance pool when the scope is set to <code>pooled</code>,
+     * in addition to updating the <code>scope</code> property.
+     */
+    @Override public void setScope(String scope)
+    {
+        super.setScope(scope);
+        if (FlexFactory.SCOPE_POOLED.equals(scope) && instancePool == null)
+            instancePool = new InstancePool(this);
+    }
+
+    /**
+     * Sets the instance class to null and discards any pooled instances, in
+     * addition to updating the <code>source</code> property.
      */
     @Override public void setSource(String source)
     {
         super.setSource(source);
         if (javaClass != null)
             javaClass = null;
+        if (instancePool != null)
+            instancePool.clear();
     }
 
     /**
@@ -125,10 +150,16 @@ public class JavaFactoryInstance extends FactoryInstance
     /**
      * Updates the session so that these values get replicated to other nodes
      * in the cluster.  Possibly we should make this configurable?
+     * For pooled components, returns the instance to the pool.
      */
     @Override public void operationComplete(Object instance)
     {
-        if (getScope().equalsIgnoreCase(FlexFactory.SCOPE_SESSION))
+        if (getScope().equalsIgnoreCase(FlexFactory.SCOPE_POOLED))
+        {
+            if (instancePool != null)
+                instancePool.returnInstance(instance);
+        }
+        else if (getScope().equalsIgnoreCase(FlexFactory.SCOPE_SESSION))
         {
             FlexSession session = FlexContext.getFlexSession();
             if (session != null && session.isValid())
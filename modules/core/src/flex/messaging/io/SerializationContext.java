@@ -90,6 +90,19 @@ public class SerializationContext implements Serializable, Cloneable
      */
     public boolean preferVectors = false;
 
+    /**
+     * In client-to-server deserialization, determines whether Flash int, uint and
+     * Number Vectors should be deserialized as Java int[], long[] and double[]
+     * arrays, rather than as arrays or Lists of Integer, Long and Double.
+     */
+    public boolean primitiveVectors = false;
+
+    /**
+     * The largest AMF request body, in bytes, that is read into memory before
+     * it is deserialized. Larger requests are deserialized from the request stream.
+     */
+    public int maxBufferedRequestBytes = 1 << 20;
+
     private Class deserializer;
     private Class serializer;
     private DeserializationValidator deserializationValidator;
@@ -231,6 +244,8 @@ public class SerializationContext implements Serializable, Cloneable
             context.allowXmlDoctypeDeclaration = allowXmlDoctypeDeclaration;
             context.allowXmlExternalEntityExpansion = allowXmlExternalEntityExpansion;
             context.preferVectors = preferVectors;
+            context.primitiveVectors = primitiveVectors;
+            context.maxBufferedRequestBytes = maxBufferedRequestBytes;
             return context;
         }
 
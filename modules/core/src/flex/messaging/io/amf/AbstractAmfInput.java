@@ -17,6 +17,7 @@
 package flex.messaging.io.amf;
 
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -53,6 +54,13 @@ public abstract class AbstractAmfInput extends AmfIO implements ActionMessageInp
 
     protected BeanProxy beanProxy = new BeanProxy();
     protected DataInputStream in = null;
+
+    /**
+     * The input stream when it is an <code>AmfByteArrayInputStream</code>,
+     * which is then read from directly rather than through <code>in</code>;
+     * otherwise <code>null</code>.
+     */
+    protected AmfByteArrayInputStream buffer;
     protected int maxStringBytes = DEFAULT_MAX_STRING_BYTES;
 
     /**
@@ -72,6 +80,7 @@ public abstract class AbstractAmfInput extends AmfIO implements ActionMessageInp
      */
     public void setInputStream(InputStream in)
     {
+        buffer = in instanceof AmfByteArrayInputStream ? (AmfByteArrayInputStream)in : null;
         this.in = new DataInputStream(in);
     }
 
@@ -280,13 +289,13 @@ public abstract class AbstractAmfInput extends AmfIO implements ActionMessageInp
     /** {@inheritDoc} */
     public boolean readBoolean() throws IOException
     {
-        return in.readBoolean();
+        return buffer != null ? buffer.readByte() != 0 : in.readBoolean();
     }
 
     /** {@inheritDoc} */
     public byte readByte() throws IOException
     {
-        return in.readByte();
+        return buffer != null ? buffer.readByte() : in.readByte();
     }
 
     /** {@inheritDoc} */
@@ -298,7 +307,7 @@ public abstract class AbstractAmfInput extends AmfIO implements ActionMessageInp
     /** {@inheritDoc} */
     public double readDouble() throws IOException
     {
-        return in.readDouble();
+        return buffer != null ? buffer.readDouble() : in.readDouble();
     }
 
     /** {@inheritDoc} */
@@ -316,13 +325,22 @@ public abstract class AbstractAmfInput extends AmfIO implements ActionMessageInp
     /** {@inheritDoc} */
     public void readFully(byte[] bytes, int offset, int length) throws IOException
     {
-        in.readFully(bytes, offset, length);
+        if (buffer != null)
+        {
+            if (length < 0 || buffer.available() < length)
+                throw new EOFException();
+            buffer.read(bytes, offset, length);
+        }
+        else
+        {
+            in.readFully(bytes, offset, length);
+        }
     }
 
     /** {@inheritDoc} */
     public int readInt() throws IOException
     {
-        return in.readInt();
+        return buffer != null ? buffer.readInt() : in.readInt();
     }
 
     /**
@@ -349,13 +367,13 @@ public abstract class AbstractAmfInput extends AmfIO implements ActionMessageInp
     /** {@inheritDoc} */
     public int readUnsignedByte() throws IOException
     {
-        return in.readUnsignedByte();
+        return buffer != null ? buffer.readByte() & 0xFF : in.readUnsignedByte();
     }
 
     /** {@inheritDoc} */
     public int readUnsignedShort() throws IOException
     {
-        return in.readUnsignedShort();
+        return buffer != null ? buffer.readUnsignedShort() : in.readUnsignedShort();
     }
 
     /** {@inheritDoc} */
@@ -38,6 +38,13 @@ public abstract class AbstractAmfOutput extends AmfIO implements ActionMessageOu
      */
     protected DataOutputStream out;
 
+    /**
+     * The output stream when it is an <code>AmfByteArrayOutputStream</code>,
+     * which is then written to directly rather than through <code>out</code>;
+     * otherwise <code>null</code>.
+     */
+    protected AmfByteArrayOutputStream buffer;
+
     /**
      * Construct a serializer without connecting it to an output stream.
      * @param context serialization parameters
@@ -54,6 +61,7 @@ public abstract class AbstractAmfOutput extends AmfIO implements ActionMessageOu
      */
     public void setOutputStream(OutputStream out)
     {
+        buffer = out instanceof AmfByteArrayOutputStream ? (AmfByteArrayOutputStream)out : null;
         if (out instanceof DataOutputStream)
         {
             this.out = (DataOutputStream) out;
@@ -89,7 +97,10 @@ public abstract class AbstractAmfOutput extends AmfIO implements ActionMessageOu
     /** {@inheritDoc} */
     public void write(int b) throws IOException
     {
-        out.write(b);
+        if (buffer != null)
+            buffer.write(b);
+        else
+            out.write(b);
     }
 
     /** {@inheritDoc} */
@@ -101,7 +112,10 @@ public abstract class AbstractAmfOutput extends AmfIO implements ActionMessageOu
     /** {@inheritDoc} */
     public void write(byte bytes[], int offset, int length) throws IOException
     {
-        out.write(bytes, offset, length);
+        if (buffer != null)
+            buffer.write(bytes, offset, length);
+        else
+            out.write(bytes, offset, length);
     }
 
 
@@ -112,13 +126,19 @@ public abstract class AbstractAmfOutput extends AmfIO implements ActionMessageOu
     /** {@inheritDoc} */
     public void writeBoolean(boolean v) throws IOException
     {
-        out.writeBoolean(v);
+        if (buffer != null)
+            buffer.write(v ? 1 : 0);
+        else
+            out.writeBoolean(v);
     }
 
     /** {@inheritDoc} */
     public void writeByte(int v) throws IOException
     {
-        out.writeByte(v);
+        if (buffer != null)
+            buffer.write(v);
+        else
+            out.writeByte(v);
     }
 
     /** {@inheritDoc} */
@@ -142,7 +162,10 @@ public abstract class AbstractAmfOutput extends AmfIO implements ActionMessageOu
     /** {@inheritDoc} */
     public void writeDouble(double v) throws IOException
     {
-        out.writeDouble(v);
+        if (buffer != null)
+            buffer.writeDouble(v);
+        else
+            out.writeDouble(v);
     }
 
     /** {@inheritDoc} */
@@ -154,7 +177,10 @@ public abstract class AbstractAmfOutput extends AmfIO implements ActionMessageOu
     /** {@inheritDoc} */
     public void writeInt(int v) throws IOException
     {
-        out.writeInt(v);
+        if (buffer != null)
+            buffer.writeInt(v);
+        else
+            out.writeInt(v);
     }
 
     /** {@inheritDoc} */
@@ -166,7 +192,10 @@ public abstract class AbstractAmfOutput extends AmfIO implements ActionMessageOu
     /** {@inheritDoc} */
     public void writeShort(int v) throws IOException
     {
-        out.writeShort(v);
+        if (buffer != null)
+            buffer.writeShort(v);
+        else
+            out.writeShort(v);
     }
 
     /** {@inheritDoc} */
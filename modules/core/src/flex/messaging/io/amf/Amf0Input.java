@@ -117,7 +117,7 @@ public class Amf0Input extends AbstractAmfInput implements AmfTypes
                 {
                     avmPlusInput = new Amf3Input(context);
                     avmPlusInput.setDebugTrace(trace);
-                    avmPlusInput.setInputStream(in);
+                    avmPlusInput.setInputStream(buffer != null ? buffer : in);
                 }
                 value = avmPlusInput.readObject();
                 break;
@@ -125,7 +125,7 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
     protected void createAMF3Output()
     {
         avmPlusOutput = new Amf3Output(context);
-        avmPlusOutput.setOutputStream(out);
+        avmPlusOutput.setOutputStream(buffer != null ? buffer : out);
         avmPlusOutput.setDebugTrace(trace);
     }
 
@@ -200,9 +200,14 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
                     createAMF3Output();
                 }
 
-                out.writeByte(kAvmPlusObjectType);
+                writeByte(kAvmPlusObjectType);
                 avmPlusOutput.writeObject(o);
             }
+            else if (o instanceof SelfContainedAmf3Value)
+            {
+                // AMF 3 bytes cannot be passed through to an AMF 0 stream.
+                writeObject(((SelfContainedAmf3Value)o).toObject(context));
+            }
             else
             {
                 Class cls = o.getClass();
@@ -224,7 +229,7 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
                 }
                 else if (o instanceof org.w3c.dom.Document)
                 {
-                    out.write(kXMLObjectType);
+                    write(kXMLObjectType);
                     String xml = documentToString(o);
                     if (isDebug)
                         trace.write(xml);
@@ -263,11 +268,11 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
 
         if (className == null || className.length() == 0)
         {
-            out.write(kObjectType);
+            write(kObjectType);
         }
         else
         {
-            out.write(kTypedObjectType);
+            write(kTypedObjectType);
             out.writeUTF(className);
         }
     }
@@ -291,7 +296,7 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
      */
     public void writeObjectEnd() throws IOException
     {
-        out.write(OBJECT_END_MARKER, 0, OBJECT_END_MARKER.length);
+        write(OBJECT_END_MARKER, 0, OBJECT_END_MARKER.length);
 
         if (isDebug)
             trace.endAMFObject();
@@ -310,9 +315,9 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
         if (isDebug)
             trace.write(b);
 
-        out.write(kBooleanType);
+        write(kBooleanType);
 
-        out.writeBoolean(b);
+        writeBoolean(b);
     }
 
     /**
@@ -323,9 +328,9 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
         if (isDebug)
             trace.write(d);
 
-        out.write(kNumberType);
+        write(kNumberType);
 
-        out.writeDouble(d);
+        writeDouble(d);
     }
 
     /**
@@ -336,11 +341,11 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
         if (isDebug)
             trace.write(d);
 
-        out.write(kDateType);
+        write(kDateType);
         // Write the time as 64bit value in ms
-        out.writeDouble((double)d.getTime());
+        writeDouble((double)d.getTime());
         int nCurrentTimezoneOffset = TimeZone.getDefault().getRawOffset();
-        out.writeShort(nCurrentTimezoneOffset / 60000);
+        writeShort(nCurrentTimezoneOffset / 60000);
     }
 
     /**
@@ -509,8 +514,8 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
             if (isDebug)
                 trace.startECMAArray(serializedObjectCount - 1);
 
-            out.write(kECMAArrayType);
-            out.writeInt(0);
+            write(kECMAArrayType);
+            writeInt(0);
 
             Iterator it = m.keySet().iterator();
             while (it.hasNext())
@@ -532,7 +537,7 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
         if (isDebug)
             trace.writeNull();
 
-        out.write(kNullType);
+        write(kNullType);
     }
 
     /**
@@ -556,8 +561,8 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
             if (isDebug)
                 trace.startAMFArray(serializedObjectCount - 1);
 
-            out.write(kStrictArrayType);
-            out.writeInt(values.length);
+            write(kStrictArrayType);
+            writeInt(values.length);
             for (int i = 0; i < values.length; ++i)
             {
                 if (isDebug)
@@ -598,8 +603,8 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
             if (isDebug)
                 trace.startAMFArray(serializedObjectCount - 1);
 
-            out.write(kStrictArrayType);
-            out.writeInt(c.size());
+            write(kStrictArrayType);
+            writeInt(c.size());
             Iterator it = c.iterator();
             int i = 0;
             while (it.hasNext())
@@ -650,10 +655,10 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
         {
             if (aType.equals(Boolean.TYPE))
             {
-                out.write(kStrictArrayType);
+                write(kStrictArrayType);
 
                 boolean[] b = (boolean[])obj;
-                out.writeInt(b.length);
+                writeInt(b.length);
 
                 if (isDebug)
                 {
@@ -679,10 +684,10 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
             {
                 //We have a primitive number, either a double, float, long, int, short or byte.
                 //We write all of these as doubles...
-                out.write(kStrictArrayType);
+                write(kStrictArrayType);
 
                 int length = Array.getLength(obj);
-                out.writeInt(length);
+                writeInt(length);
 
                 if (isDebug)
                 {
@@ -813,7 +818,7 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
                 bytearr[count++] = (byte)(0x80 | ((c) & 0x3F));
             }
         }
-        out.write(bytearr, 0, count);
+        write(bytearr, 0, count);
     }
 
     /**
@@ -844,8 +849,8 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
             try
             {
                 int refNum = ((Integer)ref).intValue();
-                out.write(kReferenceType);
-                out.writeShort(refNum);
+                write(kReferenceType);
+                writeShort(refNum);
 
                 if (isDebug)
                     trace.writeRef(refNum);
@@ -868,7 +873,7 @@ public class Amf0Output extends AbstractAmfOutput implements AmfTypes
         if (isDebug)
             trace.write("UNSUPPORTED");
 
-        out.write(kUnsupportedType);
+        write(kUnsupportedType);
     }
     */
 }
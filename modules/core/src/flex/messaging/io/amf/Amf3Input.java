@@ -17,10 +17,12 @@
 package flex.messaging.io.amf;
 
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Dictionary;
 import java.util.HashMap;
@@ -62,6 +64,11 @@ public class Amf3Input extends AbstractAmfInput implements Amf3Types
      */
     protected List traitsTable;
 
+    /**
+     * Scratch buffer used to read the elements of primitive Vectors in bulk.
+     */
+    private byte[] vectorBuffer;
+
     public Amf3Input(SerializationContext context)
     {
         super(context);
@@ -128,7 +135,7 @@ public class Amf3Input extends AbstractAmfInput implements Amf3Types
      */
     public Object readObject() throws ClassNotFoundException, IOException
     {
-        int type = in.readByte();
+        int type = readByte();
         Object value = readObjectValue(type);
         return value;
     }
@@ -281,7 +288,7 @@ public class Amf3Input extends AbstractAmfInput implements Amf3Types
         if ((ref & 1) == 0) // This is a reference
             return (Date)getObjectReference(ref >> 1);
 
-        long time = (long)in.readDouble();
+        long time = (long)super.readDouble();
 
         Date d = new Date(time);
 
@@ -364,6 +371,9 @@ public class Amf3Input extends AbstractAmfInput implements Amf3Types
     @SuppressWarnings("unchecked")
     protected Object readTypedIntVector(int len, boolean fixed) throws IOException
     {
+        if (context.primitiveVectors)
+            return readIntVectorAsArray(len);
+
         // Don't instantiate Array right away with the supplied size if it is more
         // than INITIAL_ARRAY_CAPACITY in case the supplied size has been tampered.
         boolean useListTemporarily = false;
@@ -430,6 +440,9 @@ public class Amf3Input extends AbstractAmfInput implements Amf3Types
     @SuppressWarnings("unchecked")
     protected Object readTypedUintVector(int len, boolean fixed) throws IOException
     {
+        if (context.primitiveVectors)
+            return readUintVectorAsArray(len);
+
         // Don't instantiate Array right away with the supplied size if it is more
         // than INITIAL_ARRAY_CAPACITY in case the supplied size has been tampered.
         boolean useListTemporarily = false;
@@ -468,10 +481,10 @@ public class Amf3Input extends AbstractAmfInput implements Amf3Types
 
             ClassUtil.validateCreation(Long.class);
 
-            long value = (long) (in.readByte() & 0xFF) << 24L;
-            value += (long) (in.readByte() & 0xFF) << 16L;
-            value += (long) (in.readByte() & 0xFF) << 8L;
-            value += (in.readByte() & 0xFF);
+            long value = (long) (readByte() & 0xFF) << 24L;
+            value += (long) (readByte() & 0xFF) << 16L;
+            value += (long) (readByte() & 0xFF) << 8L;
+            value += (readByte() & 0xFF);
 
             if (isDebug)
                 trace.write(value);
@@ -500,6 +513,9 @@ public class Amf3Input extends AbstractAmfInput implements Amf3Types
     @SuppressWarnings("unchecked")
     protected Object readTypedDoubleVector(int len, boolean fixed) throws IOException
     {
+        if (context.primitiveVectors)
+            return readDoubleVectorAsArray(len);
+
         // Don't instantiate Array right away with the supplied size if it is more
         // than INITIAL_ARRAY_CAPACITY in case the supplied size has been tampered.
         boolean useListTemporarily = false;
@@ -557,6 +573,162 @@ public class Amf3Input extends AbstractAmfInput implements Amf3Types
         return vector;
     }
 
+    /**
+     * Reads the elements of an int Vector into an <code>int[]</code>. Used when
+     * the <code>primitiveVectors</code> serialization option is enabled.
+     *
+     * @param len the number of elements.
+     * @return the elements.
+     * @throws IOException if the read failed.
+     */
+    protected int[] readIntVectorAsArray(int len) throws IOException
+    {
+        ClassUtil.validateCreation(int[].class);
+
+        // Grow the array as elements are read in case the supplied size has been tampered.
+        int[] vector = new int[len < INITIAL_COLLECTION_CAPACITY? len : INITIAL_COLLECTION_CAPACITY];
+        int objectId = rememberObject(vector);
+
+        if (isDebug)
+            trace.startAMFVector(objectTable.size() - 1, VectorType.INT);
+
+        byte[] buffer = getVectorBuffer();
+        int i = 0;
+        while (i < len)
+        {
+            int count = Math.min(len - i, buffer.length >> 2);
+            readFully(buffer, 0, count << 2);
+            if (i + count > vector.length)
+                vector = Arrays.copyOf(vector, newVectorCapacity(vector.length, i + count, len));
+
+            for (int j = 0, b = 0; j < count; j++, b += 4)
+            {
+                int value = (buffer[b] << 24) | ((buffer[b + 1] & 0xFF) << 16)
+                        | ((buffer[b + 2] & 0xFF) << 8) | (buffer[b + 3] & 0xFF);
+                if (isDebug)
+                {
+                    trace.arrayElement(i + j);
+                    trace.write(value);
+                }
+                vector[i + j] = value;
+            }
+            i += count;
+        }
+
+        if (objectTable.get(objectId) != vector)
+            objectTable.set(objectId, vector);
+
+        if (isDebug)
+            trace.endAMFVector();
+
+        return vector;
+    }
+
+    /**
+     * Reads the elements of a uint Vector into a <code>long[]</code>. Used when
+     * the <code>primitiveVectors</code> serialization option is enabled.
+     *
+     * @param len the number of elements.
+     * @return the elements.
+     * @throws IOException if the read failed.
+     */
+    protected long[] readUintVectorAsArray(int len) throws IOException
+    {
+        ClassUtil.validateCreation(long[].class);
+
+        // Grow the array as elements are read in case the supplied size has been tampered.
+        long[] vector = new long[len < INITIAL_COLLECTION_CAPACITY? len : INITIAL_COLLECTION_CAPACITY];
+        int objectId = rememberObject(vector);
+
+        if (isDebug)
+            trace.startAMFVector(objectTable.size() - 1, VectorType.UINT);
+
+        byte[] buffer = getVectorBuffer();
+        int i = 0;
+        while (i < len)
+        {
+            int count = Math.min(len - i, buffer.length >> 2);
+            readFully(buffer, 0, count << 2);
+            if (i + count > vector.length)
+                vector = Arrays.copyOf(vector, newVectorCapacity(vector.length, i + count, len));
+
+            for (int j = 0, b = 0; j < count; j++, b += 4)
+            {
+                long value = ((long)(buffer[b] & 0xFF) << 24) | ((buffer[b + 1] & 0xFF) << 16)
+                        | ((buffer[b + 2] & 0xFF) << 8) | (buffer[b + 3] & 0xFF);
+                if (isDebug)
+                {
+                    trace.arrayElement(i + j);
+                    trace.write(value);
+                }
+                vector[i + j] = value;
+            }
+            i += count;
+        }
+
+        if (objectTable.get(objectId) != vector)
+            objectTable.set(objectId, vector);
+
+        if (isDebug)
+            trace.endAMFVector();
+
+        return vector;
+    }
+
+    /**
+     * Reads the elements of a Number Vector into a <code>double[]</code>. Used
+     * when the <code>primitiveVectors</code> serialization option is enabled.
+     *
+     * @param len the number of elements.
+     * @return the elements.
+     * @throws IOException if the read failed.
+     */
+    protected double[] readDoubleVectorAsArray(int len) throws IOException
+    {
+        ClassUtil.validateCreation(double[].class);
+
+        // Grow the array as elements are read in case the supplied size has been tampered.
+        double[] vector = new double[len < INITIAL_COLLECTION_CAPACITY? len : INITIAL_COLLECTION_CAPACITY];
+        int objectId = rememberObject(vector);
+
+        if (isDebug)
+            trace.startAMFVector(objectTable.size() - 1, VectorType.DOUBLE);
+
+        byte[] buffer = getVectorBuffer();
+        int i = 0;
+        while (i < len)
+        {
+            int count = Math.min(len - i, buffer.length >> 3);
+            readFully(buffer, 0, count << 3);
+            if (i + count > vector.length)
+                vector = Arrays.copyOf(vector, newVectorCapacity(vector.length, i + count, len));
+
+            for (int j = 0, b = 0; j < count; j++, b += 8)
+            {
+                int high = (buffer[b] << 24) | ((buffer[b + 1] & 0xFF) << 16)
+                        | ((buffer[b + 2] & 0xFF) << 8) | (buffer[b + 3] & 0xFF);
+                int low = (buffer[b + 4] << 24) | ((buffer[b + 5] & 0xFF) << 16)
+                        | ((buffer[b + 6] & 0xFF) << 8) | (buffer[b + 7] & 0xFF);
+                double value = Double.longBitsToDouble(((long)high << 32) | (low & 0xFFFFFFFFL));
+                if (isDebug)
+                {
+                    trace.arrayElement(i + j);
+                    trace.write(value);
+                }
+                vector[i + j] = value;
+            }
+            i += count;
+        }
+
+        if (objectTable.get(objectId) != vector)
+            objectTable.set(objectId, vector);
+
+        if (isDebug)
+            trace.endAMFVector();
+
+        return vector;
+    }
+
     @SuppressWarnings("unchecked")
     protected Object readTypedObjectVector(int len, boolean fixed) throws IOException, ClassNotFoundException
     {
@@ -848,6 +1020,21 @@ public class Amf3Input extends AbstractAmfInput implements Amf3Types
             return (byte[])getObjectReference(ref >> 1);
 
         int len = (ref >> 1);
+        if (buffer != null)
+        {
+            // Check the length before allocating in case it has been tampered.
+            if (buffer.available() < len)
+                throw new EOFException();
+            byte[] ba = new byte[len];
+            buffer.read(ba, 0, len);
+            objectTable.add(ba);
+
+            if (isDebug)
+                trace.startByteArray(objectTable.size() - 1, len);
+
+            return ba;
+        }
+
         int initialCapacity = len < INITIAL_COLLECTION_CAPACITY? len : INITIAL_COLLECTION_CAPACITY;
         ByteArrayOutputStream outStream = new ByteArrayOutputStream(initialCapacity);
         for (int i = 0; i < len; i++)
@@ -895,10 +1082,13 @@ public class Amf3Input extends AbstractAmfInput implements Amf3Types
     protected String readUTF(int utflen) throws IOException
     {
         checkUTFLength(utflen);
+        if (buffer != null)
+            return buffer.readUTF8(utflen);
+
         // We should just read the bytes into a buffer
         byte[] bytearr = new byte[utflen];
 
-        in.readFully(bytearr, 0, utflen);
+        readFully(bytearr, 0, utflen);
         // It is UTF-8 encoding, directly use new String(bytes, "utf-8");
         String s = new String(bytearr, "utf-8");
         return s;
@@ -923,28 +1113,31 @@ public class Amf3Input extends AbstractAmfInput implements Amf3Types
      */
     protected int readUInt29() throws IOException
     {
+        if (buffer != null)
+            return buffer.readUInt29();
+
         int value;
 
         // Each byte must be treated as unsigned
-        int b = in.readByte() & 0xFF;
+        int b = readByte() & 0xFF;
 
         if (b < 128)
             return b;
 
         value = (b & 0x7F) << 7;
-        b = in.readByte() & 0xFF;
+        b = readByte() & 0xFF;
 
         if (b < 128)
             return (value | b);
 
         value = (value | (b & 0x7F)) << 7;
-        b = in.readByte() & 0xFF;
+        b = readByte() & 0xFF;
 
         if (b < 128)
             return (value | b);
 
         value = (value | (b & 0x7F)) << 8;
-        b = in.readByte() & 0xFF;
+        b = readByte() & 0xFF;
 
         return (value | b);
     }
@@ -985,6 +1178,28 @@ public class Amf3Input extends AbstractAmfInput implements Amf3Types
         return stringToDocument(xml);
     }
 
+    /**
+     * Returns the scratch buffer used to read primitive Vectors in bulk.
+     */
+    private byte[] getVectorBuffer()
+    {
+        if (vectorBuffer == null)
+            vectorBuffer = new byte[8192];
+        return vectorBuffer;
+    }
+
+    /**
+     * Returns the capacity to grow a primitive Vector array to so that it holds
+     * at least <code>required</code> of its <code>len</code> elements.
+     */
+    private static int newVectorCapacity(int capacity, int required, int len)
+    {
+        int newCapacity = capacity < (Integer.MAX_VALUE >> 1)? capacity << 1 : len;
+        if (newCapacity < required)
+            newCapacity = required;
+        return newCapacity < len? newCapacity : len;
+    }
+
     /**
      *
      */
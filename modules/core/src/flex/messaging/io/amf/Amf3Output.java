@@ -74,6 +74,21 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
      */
     protected HashMap<String, Integer> stringTable;
 
+    /**
+     * Number of object, string and traits reference table entries that were
+     * created by pass-through <code>SelfContainedAmf3Value</code>s. These entries
+     * exist in the reader's tables but are never referenced by this output, so
+     * they only advance the reference indices.
+     */
+    protected int serializedObjectCount;
+    protected int serializedStringCount;
+    protected int serializedTraitsCount;
+
+    /**
+     * Scratch buffer used to write the elements of primitive Vectors in bulk.
+     */
+    private byte[] vectorBuffer;
+
     public Amf3Output(SerializationContext context)
     {
         super(context);
@@ -89,6 +104,9 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
             traitsTable.clear();
         if (stringTable != null)
             stringTable.clear();
+        serializedObjectCount = 0;
+        serializedStringCount = 0;
+        serializedTraitsCount = 0;
     }
 
     //
@@ -108,7 +126,11 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
             return;
         }
         
-        if (!context.legacyExternalizable && o instanceof Externalizable)
+        if (o instanceof SelfContainedAmf3Value)
+        {
+            writeSelfContainedValue((SelfContainedAmf3Value)o);
+        }
+        else if (!context.legacyExternalizable && o instanceof Externalizable)
         {
             writeCustomObject(o);
         }
@@ -154,9 +176,9 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
         else if (o instanceof Document)
         {
             if (context.legacyXMLDocument)
-                out.write(kXMLType); // Legacy flash.xml.XMLDocument Type
+                write(kXMLType); // Legacy flash.xml.XMLDocument Type
             else
-                out.write(kAvmPlusXmlType); // New E4X XML Type
+                write(kAvmPlusXmlType); // New E4X XML Type
             if (!byReference(o))
             {
                 String xml = documentToString(o);
@@ -294,9 +316,9 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
             trace.write(b);
 
         if (b)
-            out.write(kTrueType);
+            write(kTrueType);
         else
-            out.write(kFalseType);
+            write(kFalseType);
     }
 
     /**
@@ -304,7 +326,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
      */
     protected void writeAMFDate(Date d) throws IOException
     {
-        out.write(kDateType);
+        write(kDateType);
 
         if (!byReference(d))
         {
@@ -315,7 +337,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
             writeUInt29(1);
 
             // Write the time as 64bit value in ms
-            out.writeDouble((double)d.getTime());
+            writeDouble((double)d.getTime());
         }
     }
 
@@ -327,8 +349,8 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
         if (isDebug)
             trace.write(d);
 
-        out.write(kDoubleType);
-        out.writeDouble(d);
+        write(kDoubleType);
+        writeDouble(d);
     }
 
     /**
@@ -346,7 +368,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
             // similar care when reading an integer.
             //i = ((i >> 3) & UINT29_MASK);
             i = i & UINT29_MASK; // Mask is 2^29 - 1
-            out.write(kIntegerType);
+            write(kIntegerType);
             writeUInt29(i);
         }
         else
@@ -358,7 +380,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
 
     protected void writeDictionary(Dictionary dictionary) throws IOException
     {
-        out.write(kDictionaryType);
+        write(kDictionaryType);
 
         if (byReference(dictionary))
             return;
@@ -396,6 +418,8 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
                 vecType = kTypedVectorInt;
             else if (double.class.equals(componentType))
                 vecType = kTypedVectorDouble;
+            else if (long.class.equals(componentType) && isUintRange((long[])array))
+                vecType = kTypedVectorUint;
         }
         else
         {
@@ -405,7 +429,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
                 vecType = kTypedVectorDouble;
         }
 
-        out.write(vecType);
+        write(vecType);
 
         if (byReference(array))
             return;
@@ -420,6 +444,12 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
                 if (isDebug)
                     trace.startAMFVector(objectTable.size() - 1, VectorType.INT);
 
+                if (array instanceof int[])
+                {
+                    writeIntVectorElements((int[])array);
+                    break;
+                }
+
                 for (int i = 0; i < length; i++)
                 {
                     if (isDebug)
@@ -434,10 +464,22 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
                     writeInt(value);
                 }
                 break;
+            case kTypedVectorUint:
+                if (isDebug)
+                    trace.startAMFVector(objectTable.size() - 1, VectorType.UINT);
+
+                writeUintVectorElements((long[])array);
+                break;
             case kTypedVectorDouble:
                 if (isDebug)
                     trace.startAMFVector(objectTable.size() - 1, VectorType.DOUBLE);
 
+                if (array instanceof double[])
+                {
+                    writeDoubleVectorElements((double[])array);
+                    break;
+                }
+
                 for (int i = 0; i < length; i++)
                 {
                     if (isDebug)
@@ -460,6 +502,21 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
                 String className = componentType.getName();
                 writeStringWithoutType(className);
 
+                if (array instanceof long[])
+                {
+                    // Values outside the uint range are written as Numbers, as
+                    // writeObject does for boxed Longs.
+                    long[] values = (long[])array;
+                    for (int i = 0; i < length; i++)
+                    {
+                        if (isDebug)
+                            trace.arrayElement(i);
+
+                        writeAMFDouble(values[i]);
+                    }
+                    break;
+                }
+
                 for (int i = 0; i < length; i++)
                 {
                     if (isDebug)
@@ -479,6 +536,132 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
             trace.endAMFVector();
     }
 
+    /**
+     * Writes the elements of an int Vector from an <code>int[]</code> in bulk.
+     *
+     * @param values the elements.
+     * @throws IOException if the write failed.
+     */
+    protected void writeIntVectorElements(int[] values) throws IOException
+    {
+        byte[] buffer = getVectorBuffer();
+        int b = 0;
+        for (int i = 0; i < values.length; i++)
+        {
+            int value = values[i];
+            if (isDebug)
+            {
+                trace.arrayElement(i);
+                trace.write(value);
+            }
+
+            if (b == buffer.length)
+            {
+                write(buffer, 0, b);
+                b = 0;
+            }
+            buffer[b++] = (byte)(value >>> 24);
+            buffer[b++] = (byte)(value >>> 16);
+            buffer[b++] = (byte)(value >>> 8);
+            buffer[b++] = (byte)value;
+        }
+        write(buffer, 0, b);
+    }
+
+    /**
+     * Writes the elements of a uint Vector from a <code>long[]</code> in bulk.
+     * All values must be in the uint range.
+     *
+     * @param values the elements.
+     * @throws IOException if the write failed.
+     */
+    protected void writeUintVectorElements(long[] values) throws IOException
+    {
+        byte[] buffer = getVectorBuffer();
+        int b = 0;
+        for (int i = 0; i < values.length; i++)
+        {
+            long value = values[i];
+            if (isDebug)
+            {
+                trace.arrayElement(i);
+                trace.write(value);
+            }
+
+            if (b == buffer.length)
+            {
+                write(buffer, 0, b);
+                b = 0;
+            }
+            buffer[b++] = (byte)(value >>> 24);
+            buffer[b++] = (byte)(value >>> 16);
+            buffer[b++] = (byte)(value >>> 8);
+            buffer[b++] = (byte)value;
+        }
+        write(buffer, 0, b);
+    }
+
+    /**
+     * Returns whether all values fit in a uint, so that the array can be
+     * written as a uint Vector and read back as a <code>long[]</code>.
+     */
+    private static boolean isUintRange(long[] values)
+    {
+        for (int i = 0; i < values.length; i++)
+        {
+            if ((values[i] & 0xFFFFFFFF00000000L) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the elements of a Number Vector from a <code>double[]</code> in bulk.
+     *
+     * @param values the elements.
+     * @throws IOException if the write failed.
+     */
+    protected void writeDoubleVectorElements(double[] values) throws IOException
+    {
+        byte[] buffer = getVectorBuffer();
+        int b = 0;
+        for (int i = 0; i < values.length; i++)
+        {
+            double value = values[i];
+            if (isDebug)
+            {
+                trace.arrayElement(i);
+                trace.write(value);
+            }
+
+            if (b == buffer.length)
+            {
+                write(buffer, 0, b);
+                b = 0;
+            }
+            long bits = Double.doubleToLongBits(value);
+            buffer[b++] = (byte)(bits >>> 56);
+            buffer[b++] = (byte)(bits >>> 48);
+            buffer[b++] = (byte)(bits >>> 40);
+            buffer[b++] = (byte)(bits >>> 32);
+            buffer[b++] = (byte)(bits >>> 24);
+            buffer[b++] = (byte)(bits >>> 16);
+            buffer[b++] = (byte)(bits >>> 8);
+            buffer[b++] = (byte)bits;
+        }
+        write(buffer, 0, b);
+    }
+
+    /**
+     * Returns the scratch buffer used to write primitive Vectors in bulk.
+     */
+    private byte[] getVectorBuffer()
+    {
+        if (vectorBuffer == null)
+            vectorBuffer = new byte[8192];
+        return vectorBuffer;
+    }
+
     protected void writeListAsTypedVector(List list) throws IOException
     {
         // Peek at the first three elements of the list to figure out what type
@@ -515,7 +698,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
 
         }
 
-        out.write(vecType);
+        write(vecType);
 
         if (byReference(list))
             return;
@@ -594,7 +777,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
      */
     protected void writeMapAsECMAArray(Map map) throws IOException
     {
-        out.write(kArrayType);
+        write(kArrayType);
 
         if (!byReference(map))
         {
@@ -636,7 +819,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
         if (isDebug)
             trace.writeNull();
 
-        out.write(kNullType);
+        write(kNullType);
     }
 
     /**
@@ -644,7 +827,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
      */
     protected void writeAMFString(String s) throws IOException
     {
-        out.write(kStringType);
+        write(kStringType);
         writeStringWithoutType(s);
 
         if (isDebug)
@@ -702,7 +885,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
      */
     protected void writeArrayCollection(Collection col, SerializationDescriptor desc) throws IOException
     {
-        out.write(kObjectType);
+        write(kObjectType);
 
         if (!byReference(col))
         {
@@ -771,7 +954,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
             }
         }
 
-        out.write(kObjectType);
+        write(kObjectType);
 
         if (!byReference(o))
         {
@@ -884,7 +1067,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
         }
         else
         {
-            out.write(kArrayType);
+            write(kArrayType);
 
             if (!byReference(obj))
             {
@@ -993,7 +1176,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
      */
     protected void writeAMFByteArray(byte[] ba) throws IOException
     {
-        out.write(kByteArrayType);
+        write(kByteArrayType);
 
         if (!byReference(ba))
         {
@@ -1007,7 +1190,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
                 trace.startByteArray(getObjectTableSize(), length);
             }
 
-            out.write(ba, 0, length);
+            write(ba, 0, length);
         }
     }
 
@@ -1016,7 +1199,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
      */
     protected void writeAMFByteArray(Byte[] ba) throws IOException
     {
-        out.write(kByteArrayType);
+        write(kByteArrayType);
 
         if (!byReference(ba))
         {
@@ -1034,9 +1217,9 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
             {
                 Byte b = ba[i];
                 if (b == null)
-                    out.write(0);
+                    write(0);
                 else
-                    out.write(b.byteValue());
+                    write(b.byteValue());
             }
         }
     }
@@ -1074,7 +1257,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
      */
     protected void writeObjectArray(Object[] values, SerializationDescriptor descriptor) throws IOException
     {
-        out.write(kArrayType);
+        write(kArrayType);
 
         if (!byReference(values))
         {
@@ -1117,7 +1300,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
      */
     protected void writeCollection(Collection c, SerializationDescriptor descriptor) throws IOException
     {
-        out.write(kArrayType);
+        write(kArrayType);
 
         // Note: We process Collections independently of Object[]
         // as we want the reference to be based on the actual
@@ -1178,7 +1361,11 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
         // 0x00004000 - 0x001FFFFF : 1xxxxxxx 1xxxxxxx 0xxxxxxx
         // 0x00200000 - 0x3FFFFFFF : 1xxxxxxx 1xxxxxxx 1xxxxxxx xxxxxxxx
         // 0x40000000 - 0xFFFFFFFF : throw range exception
-        if (ref < 0x80)
+        if (buffer != null && ref >= 0 && ref < 0x40000000)
+        {
+            buffer.writeUInt29(ref);
+        }
+        else if (ref < 0x80)
         {
             // 0x00000000 - 0x0000007F : 0xxxxxxx
             out.writeByte(ref);
@@ -1219,6 +1406,12 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
      */
     public void writeAMFUTF(String s) throws IOException
     {
+        if (buffer != null)
+        {
+            buffer.writeAMFUTF(s);
+            return;
+        }
+
         int strlen = s.length();
         int utflen = 0;
         int c, count = 0;
@@ -1266,7 +1459,29 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
                 bytearr[count++] = (byte)(0x80 | ((c >> 0) & 0x3F));
             }
         }
-        out.write(bytearr, 0, utflen);
+        write(bytearr, 0, utflen);
+    }
+
+    /**
+     * Writes the already serialized AMF 3 bytes of a <code>SelfContainedAmf3Value</code>
+     * as is, and advances the reference tables by the number of entries the
+     * reader creates while reading them so that subsequent references written
+     * by this output remain valid.
+     *
+     * @param value the serialized value to write
+     * @throws IOException if the write failed
+     */
+    protected void writeSelfContainedValue(SelfContainedAmf3Value value) throws IOException
+    {
+        byte[] bytes = value.getBytes();
+        write(bytes, 0, bytes.length);
+
+        if (isDebug)
+            trace.write("<serialized value of " + bytes.length + " bytes>");
+
+        serializedObjectCount += value.getObjectReferenceCount();
+        serializedStringCount += value.getStringReferenceCount();
+        serializedTraitsCount += value.getTraitsReferenceCount();
     }
 
     /**
@@ -1301,7 +1516,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
 
         if (objectTable == null)
             objectTable = new IdentityHashMap<Object, Integer>(64);
-        objectTable.put(o, Integer.valueOf(objectTable.size()));
+        objectTable.put(o, Integer.valueOf(objectTable.size() + serializedObjectCount));
         return false;
     }
 
@@ -1337,7 +1552,7 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
         }
         if (stringTable == null)
             stringTable = new HashMap<String, Integer>(64);
-        stringTable.put(s, Integer.valueOf(stringTable.size()));
+        stringTable.put(s, Integer.valueOf(stringTable.size() + serializedStringCount));
         return false;
     }
 
@@ -1365,12 +1580,12 @@ public class Amf3Output extends AbstractAmfOutput implements Amf3Types
         }
         if (traitsTable == null)
             traitsTable = new HashMap<TraitsInfo, Integer>(10);
-        traitsTable.put(ti, Integer.valueOf(traitsTable.size()));
+        traitsTable.put(ti, Integer.valueOf(traitsTable.size() + serializedTraitsCount));
         return false;
     }
 
     protected int getObjectTableSize()
     {
-        return objectTable != null? objectTable.size() - 1 : 0;
+        return objectTable != null? objectTable.size() + serializedObjectCount - 1 : 0;
     }
 }
@@ -0,0 +1,316 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.io.amf;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * An unsynchronized <code>ByteArrayInputStream</code> that AMF inputs read from
+ * directly. When an <code>AbstractAmfInput</code> is given one of these as its
+ * input stream, markers, integers, doubles and strings are decoded straight
+ * from the backing array rather than through a <code>DataInputStream</code>.
+ * The array is not copied, so a request body that is already held in memory
+ * can be deserialized in place.
+ * <p>
+ * Instances are not thread safe.
+ * </p>
+ */
+public class AmfByteArrayInputStream extends ByteArrayInputStream
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    /** The largest array size the VM reliably allocates. */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Creates a stream that reads the whole array.
+     *
+     * @param buf the bytes to read; not copied.
+     */
+    public AmfByteArrayInputStream(byte[] buf)
+    {
+        super(buf);
+    }
+
+    /**
+     * Creates a stream that reads <code>length</code> bytes of the array
+     * starting at <code>offset</code>.
+     *
+     * @param buf the bytes to read; not copied.
+     * @param offset the offset of the first byte to read.
+     * @param length the number of bytes to read.
+     */
+    public AmfByteArrayInputStream(byte[] buf, int offset, int length)
+    {
+        super(buf, offset, length);
+    }
+
+    /**
+     * Reads an input stream to its end into a new <code>AmfByteArrayInputStream</code>.
+     * The length hint, typically the content length of a request, sizes the
+     * initial array but is not trusted beyond that; the array only grows as
+     * bytes actually arrive.
+     *
+     * @param in the stream to read.
+     * @param lengthHint the expected number of bytes, or a negative value if unknown.
+     * @return a stream over the bytes read.
+     * @throws IOException if the read failed or the stream holds more bytes
+     * than an array can.
+     */
+    public static AmfByteArrayInputStream readFrom(InputStream in, int lengthHint) throws IOException
+    {
+        InputStream result = readFrom(in, lengthHint, MAX_ARRAY_SIZE);
+        if (!(result instanceof AmfByteArrayInputStream))
+            throw new IOException("Stream exceeds the maximum array size.");
+        return (AmfByteArrayInputStream)result;
+    }
+
+    /**
+     * Reads an input stream into memory, buffering at most <code>maxLength</code>
+     * bytes. If the stream ends within the limit the result is an
+     * <code>AmfByteArrayInputStream</code>; otherwise the result reads the
+     * buffered bytes followed by the rest of the stream, so no more than
+     * <code>maxLength</code> bytes are ever held in memory.
+     *
+     * @param in the stream to read.
+     * @param lengthHint the expected number of bytes, or a negative value if unknown.
+     * @param maxLength the maximum number of bytes to buffer.
+     * @return a stream over the bytes of <code>in</code>.
+     * @throws IOException if the read failed.
+     */
+    public static InputStream readFrom(InputStream in, int lengthHint, int maxLength) throws IOException
+    {
+        if (maxLength > MAX_ARRAY_SIZE)
+            maxLength = MAX_ARRAY_SIZE;
+        if (maxLength <= 0)
+            return in;
+
+        byte[] bytes = new byte[Math.min(lengthHint > 0 ? Math.min(lengthHint, 1 << 20) : 8192, maxLength)];
+        int count = 0;
+        while (true)
+        {
+            if (count == bytes.length)
+            {
+                if (count == maxLength)
+                    return new SequenceInputStream(new AmfByteArrayInputStream(bytes, 0, count), in);
+
+                // Probe before growing so an exact length hint needs no copy.
+                int b = in.read();
+                if (b == -1)
+                    break;
+                bytes = Arrays.copyOf(bytes, (int)Math.min((long)bytes.length << 1, maxLength));
+                bytes[count++] = (byte)b;
+            }
+            int n = in.read(bytes, count, bytes.length - count);
+            if (n == -1)
+                break;
+            count += n;
+        }
+        return new AmfByteArrayInputStream(bytes, 0, count);
+    }
+
+    /** {@inheritDoc} */
+    @Override public int read()
+    {
+        return pos < count ? (buf[pos++] & 0xFF) : -1;
+    }
+
+    /** {@inheritDoc} */
+    @Override public int read(byte[] b, int off, int len)
+    {
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        if (pos >= count)
+            return -1;
+
+        int available = count - pos;
+        if (len > available)
+            len = available;
+        if (len <= 0)
+            return 0;
+        System.arraycopy(buf, pos, b, off, len);
+        pos += len;
+        return len;
+    }
+
+    /** {@inheritDoc} */
+    @Override public long skip(long n)
+    {
+        long k = count - pos;
+        if (n < k)
+            k = n < 0 ? 0 : n;
+        pos += (int)k;
+        return k;
+    }
+
+    /** {@inheritDoc} */
+    @Override public int available()
+    {
+        return count - pos;
+    }
+
+    /**
+     * Reads a signed byte.
+     *
+     * @return the byte.
+     * @throws EOFException if the stream is exhausted.
+     */
+    public byte readByte() throws EOFException
+    {
+        if (pos >= count)
+            throw new EOFException();
+        return buf[pos++];
+    }
+
+    /**
+     * Reads an AMF 3 variable length unsigned 29-bit integer.
+     *
+     * @return the value.
+     * @throws EOFException if the stream ends within the value.
+     */
+    public int readUInt29() throws EOFException
+    {
+        byte[] b = buf;
+        int p = pos;
+        if (count - p >= 4)
+        {
+            // Enough bytes for the longest encoding; no per-byte bounds checks.
+            int v = b[p++] & 0xFF;
+            if (v >= 128)
+            {
+                int value = (v & 0x7F) << 7;
+                v = b[p++] & 0xFF;
+                if (v < 128)
+                {
+                    v = value | v;
+                }
+                else
+                {
+                    value = (value | (v & 0x7F)) << 7;
+                    v = b[p++] & 0xFF;
+                    if (v < 128)
+                        v = value | v;
+                    else
+                        v = ((value | (v & 0x7F)) << 8) | (b[p++] & 0xFF);
+                }
+            }
+            pos = p;
+            return v;
+        }
+
+        int v = readByte() & 0xFF;
+        if (v < 128)
+            return v;
+        int value = (v & 0x7F) << 7;
+        v = readByte() & 0xFF;
+        if (v < 128)
+            return value | v;
+        value = (value | (v & 0x7F)) << 7;
+        v = readByte() & 0xFF;
+        if (v < 128)
+            return value | v;
+        value = (value | (v & 0x7F)) << 8;
+        return value | (readByte() & 0xFF);
+    }
+
+    /**
+     * Reads a big-endian unsigned 16-bit value.
+     *
+     * @return the value.
+     * @throws EOFException if the stream ends within the value.
+     */
+    public int readUnsignedShort() throws EOFException
+    {
+        require(2);
+        int v = ((buf[pos] & 0xFF) << 8) | (buf[pos + 1] & 0xFF);
+        pos += 2;
+        return v;
+    }
+
+    /**
+     * Reads a big-endian 32-bit integer.
+     *
+     * @return the value.
+     * @throws EOFException if the stream ends within the value.
+     */
+    public int readInt() throws EOFException
+    {
+        require(4);
+        byte[] b = buf;
+        int p = pos;
+        int v = (b[p] << 24) | ((b[p + 1] & 0xFF) << 16) | ((b[p + 2] & 0xFF) << 8) | (b[p + 3] & 0xFF);
+        pos = p + 4;
+        return v;
+    }
+
+    /**
+     * Reads a big-endian IEEE 754 double.
+     *
+     * @return the value.
+     * @throws EOFException if the stream ends within the value.
+     */
+    public double readDouble() throws EOFException
+    {
+        require(8);
+        byte[] b = buf;
+        int p = pos;
+        int high = (b[p] << 24) | ((b[p + 1] & 0xFF) << 16) | ((b[p + 2] & 0xFF) << 8) | (b[p + 3] & 0xFF);
+        int low = (b[p + 4] << 24) | ((b[p + 5] & 0xFF) << 16) | ((b[p + 6] & 0xFF) << 8) | (b[p + 7] & 0xFF);
+        pos = p + 8;
+        return Double.longBitsToDouble(((long)high << 32) | (low & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Decodes <code>utflen</code> bytes of UTF-8 in place.
+     *
+     * @param utflen the number of bytes.
+     * @return the string.
+     * @throws EOFException if fewer than <code>utflen</code> bytes remain.
+     */
+    public String readUTF8(int utflen) throws EOFException
+    {
+        require(utflen);
+        byte[] b = buf;
+        int p = pos;
+        int end = p + utflen;
+
+        // ASCII strings decode as Latin-1, which needs no validation.
+        int i = p;
+        while (i < end && b[i] >= 0)
+            i++;
+
+        String s = new String(b, p, utflen, i == end ? ISO_8859_1 : UTF_8);
+        pos = end;
+        return s;
+    }
+
+    private void require(int n) throws EOFException
+    {
+        if (n < 0 || count - pos < n)
+        {
+            pos = count;
+            throw new EOFException();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.io.amf;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * An unsynchronized <code>ByteArrayOutputStream</code> that AMF outputs write
+ * to directly. When an <code>AbstractAmfOutput</code> is given one of these as
+ * its output stream, markers, integers, doubles and strings are encoded straight
+ * into the backing array rather than through a <code>DataOutputStream</code>.
+ * <p>
+ * Instances are not thread safe.
+ * </p>
+ */
+public class AmfByteArrayOutputStream extends ByteArrayOutputStream
+{
+    /**
+     * Creates a stream with the default initial capacity.
+     */
+    public AmfByteArrayOutputStream()
+    {
+        this(256);
+    }
+
+    /**
+     * Creates a stream with the given initial capacity.
+     *
+     * @param size the initial capacity in bytes.
+     */
+    public AmfByteArrayOutputStream(int size)
+    {
+        super(size);
+    }
+
+    /** {@inheritDoc} */
+    @Override public void write(int b)
+    {
+        ensureCapacity(1);
+        buf[count++] = (byte)b;
+    }
+
+    /** {@inheritDoc} */
+    @Override public void write(byte[] b, int off, int len)
+    {
+        if (off < 0 || len < 0 || off + len > b.length || off + len < 0)
+            throw new IndexOutOfBoundsException();
+
+        ensureCapacity(len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * Writes an AMF 3 variable length unsigned 29-bit integer. The value must be
+     * less than <code>0x40000000</code>.
+     *
+     * @param ref the value.
+     */
+    public void writeUInt29(int ref)
+    {
+        ensureCapacity(4);
+        byte[] b = buf;
+        int c = count;
+        if (ref < 0x80)
+        {
+            b[c++] = (byte)ref;
+        }
+        else if (ref < 0x4000)
+        {
+            b[c++] = (byte)(((ref >> 7) & 0x7F) | 0x80);
+            b[c++] = (byte)(ref & 0x7F);
+        }
+        else if (ref < 0x200000)
+        {
+            b[c++] = (byte)(((ref >> 14) & 0x7F) | 0x80);
+            b[c++] = (byte)(((ref >> 7) & 0x7F) | 0x80);
+            b[c++] = (byte)(ref & 0x7F);
+        }
+        else
+        {
+            b[c++] = (byte)(((ref >> 22) & 0x7F) | 0x80);
+            b[c++] = (byte)(((ref >> 15) & 0x7F) | 0x80);
+            b[c++] = (byte)(((ref >> 8) & 0x7F) | 0x80);
+            b[c++] = (byte)(ref & 0xFF);
+        }
+        count = c;
+    }
+
+    /**
+     * Writes a big-endian 16-bit value.
+     *
+     * @param v the value.
+     */
+    public void writeShort(int v)
+    {
+        ensureCapacity(2);
+        buf[count++] = (byte)(v >>> 8);
+        buf[count++] = (byte)v;
+    }
+
+    /**
+     * Writes a big-endian 32-bit integer.
+     *
+     * @param v the value.
+     */
+    public void writeInt(int v)
+    {
+        ensureCapacity(4);
+        byte[] b = buf;
+        int c = count;
+        b[c++] = (byte)(v >>> 24);
+        b[c++] = (byte)(v >>> 16);
+        b[c++] = (byte)(v >>> 8);
+        b[c++] = (byte)v;
+        count = c;
+    }
+
+    /**
+     * Writes a big-endian IEEE 754 double.
+     *
+     * @param v the value.
+     */
+    public void writeDouble(double v)
+    {
+        long bits = Double.doubleToLongBits(v);
+        ensureCapacity(8);
+        byte[] b = buf;
+        int c = count;
+        b[c++] = (byte)(bits >>> 56);
+        b[c++] = (byte)(bits >>> 48);
+        b[c++] = (byte)(bits >>> 40);
+        b[c++] = (byte)(bits >>> 32);
+        b[c++] = (byte)(bits >>> 24);
+        b[c++] = (byte)(bits >>> 16);
+        b[c++] = (byte)(bits >>> 8);
+        b[c++] = (byte)bits;
+        count = c;
+    }
+
+    /**
+     * Writes an AMF 3 inline string: the UTF-8 byte length as a 29-bit integer
+     * shifted left one bit with the low bit set, followed by the UTF-8 bytes.
+     * Characters are encoded individually, so surrogate pairs are written as
+     * two three byte sequences, as <code>Amf3Output.writeAMFUTF</code> does.
+     *
+     * @param s the string.
+     */
+    public void writeAMFUTF(String s)
+    {
+        int strlen = s.length();
+        int utflen = strlen;
+        for (int i = 0; i < strlen; i++)
+        {
+            char c = s.charAt(i);
+            if (c > 0x007F)
+                utflen += c > 0x07FF ? 2 : 1;
+        }
+
+        writeUInt29((utflen << 1) | 1);
+        ensureCapacity(utflen);
+
+        byte[] b = buf;
+        int c = count;
+        int i = 0;
+        // Fast path for leading ASCII characters.
+        for (; i < strlen; i++)
+        {
+            char ch = s.charAt(i);
+            if (ch > 0x007F)
+                break;
+            b[c++] = (byte)ch;
+        }
+        for (; i < strlen; i++)
+        {
+            char ch = s.charAt(i);
+            if (ch <= 0x007F)
+            {
+                b[c++] = (byte)ch;
+            }
+            else if (ch > 0x07FF)
+            {
+                b[c++] = (byte)(0xE0 | ((ch >> 12) & 0x0F));
+                b[c++] = (byte)(0x80 | ((ch >> 6) & 0x3F));
+                b[c++] = (byte)(0x80 | (ch & 0x3F));
+            }
+            else
+            {
+                b[c++] = (byte)(0xC0 | ((ch >> 6) & 0x1F));
+                b[c++] = (byte)(0x80 | (ch & 0x3F));
+            }
+        }
+        count = c;
+    }
+
+    /**
+     * Grows the backing array, if necessary, so that at least <code>n</code>
+     * more bytes can be written.
+     */
+    private void ensureCapacity(int n)
+    {
+        int required = count + n;
+        if (required - buf.length > 0)
+        {
+            int newCapacity = buf.length << 1;
+            if (newCapacity - required < 0)
+                newCapacity = required;
+            if (newCapacity < 0)
+                throw new OutOfMemoryError();
+            buf = Arrays.copyOf(buf, newCapacity);
+        }
+    }
+}
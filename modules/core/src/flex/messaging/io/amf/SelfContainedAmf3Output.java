@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.io.amf;
+
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.SerializationException;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+
+/**
+ * An AMF 3 output that never writes references, so that the bytes it
+ * produces can later be written as is into any other AMF 3 stream as a
+ * <code>SelfContainedAmf3Value</code>. Strings and traits are always written
+ * inline. Objects that occur more than once in the value, whether shared or
+ * circular, cannot be written without references and cause a
+ * <code>SerializationException</code>.
+ *
+ *
+ */
+public class SelfContainedAmf3Output extends Amf3Output
+{
+    private int stringCount;
+    private int traitsCount;
+
+    /**
+     * Constructs an output for the given serialization context.
+     *
+     * @param context the serialization context.
+     */
+    public SelfContainedAmf3Output(SerializationContext context)
+    {
+        super(context);
+    }
+
+    /**
+     * Serializes a value into a <code>SelfContainedAmf3Value</code> that can be
+     * passed through to an <code>Amf3Output</code>.
+     *
+     * @param value the value to serialize.
+     * @param context the serialization context.
+     * @return the serialized value.
+     * @throws IOException if the write failed.
+     * @throws SerializationException if the value contains shared or circular references.
+     */
+    public static SelfContainedAmf3Value serialize(Object value, SerializationContext context) throws IOException
+    {
+        AmfByteArrayOutputStream bytes = new AmfByteArrayOutputStream();
+        SelfContainedAmf3Output output = new SelfContainedAmf3Output(context);
+        output.setOutputStream(bytes);
+        output.writeObject(value);
+        output.flush();
+
+        int objectCount = output.objectTable != null? output.objectTable.size() : 0;
+        return new SelfContainedAmf3Value(bytes.toByteArray(),
+                objectCount + output.serializedObjectCount,
+                output.stringCount + output.serializedStringCount,
+                output.traitsCount + output.serializedTraitsCount);
+    }
+
+    /** {@inheritDoc} */
+    @Override public void reset()
+    {
+        super.reset();
+        stringCount = 0;
+        traitsCount = 0;
+    }
+
+    /**
+     * Records the object without ever writing it as a reference.
+     *
+     * @throws SerializationException if the object has already been written.
+     */
+    @Override protected boolean byReference(Object o) throws IOException
+    {
+        if (objectTable == null)
+            objectTable = new IdentityHashMap<Object, Integer>(64);
+
+        if (objectTable.containsKey(o))
+        {
+            SerializationException ex = new SerializationException();
+            ex.setMessage("An instance of " + o.getClass().getName()
+                    + " occurs more than once and cannot be serialized without references.");
+            throw ex;
+        }
+
+        objectTable.put(o, Integer.valueOf(objectTable.size() + serializedObjectCount));
+        return false;
+    }
+
+    /**
+     * Counts the string; strings are always written inline.
+     */
+    @Override protected boolean byReference(String s) throws IOException
+    {
+        stringCount++;
+        return false;
+    }
+
+    /**
+     * Counts the traits; traits are always written inline.
+     */
+    @Override protected boolean byReference(TraitsInfo ti) throws IOException
+    {
+        traitsCount++;
+        return false;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.io.amf;
+
+import flex.messaging.io.SerializationContext;
+
+import java.io.IOException;
+
+/**
+ * A value already serialized by <code>SelfContainedAmf3Output</code>, whose
+ * AMF 3 bytes <code>Amf3Output</code> writes as is.
+ *
+ * <p>As the reader adds the objects, strings and traits it reads to its
+ * reference tables, the value records the number of table entries its bytes
+ * create so that the output can keep its own reference indices in step.
+ * Outputs that cannot pass AMF 3 bytes through, such as AMF 0 and AMFX,
+ * deserialize the value and write the result instead.</p>
+ *
+ *
+ */
+public final class SelfContainedAmf3Value
+{
+    private final byte[] bytes;
+    private final int objectReferenceCount;
+    private final int stringReferenceCount;
+    private final int traitsReferenceCount;
+
+    /**
+     * Constructs a value from the bytes written by a <code>SelfContainedAmf3Output</code>.
+     *
+     * @param bytes the AMF 3 bytes of the value.
+     * @param objectReferenceCount the number of object reference table entries.
+     * @param stringReferenceCount the number of string reference table entries.
+     * @param traitsReferenceCount the number of traits reference table entries.
+     */
+    SelfContainedAmf3Value(byte[] bytes, int objectReferenceCount, int stringReferenceCount,
+            int traitsReferenceCount)
+    {
+        this.bytes = bytes;
+        this.objectReferenceCount = objectReferenceCount;
+        this.stringReferenceCount = stringReferenceCount;
+        this.traitsReferenceCount = traitsReferenceCount;
+    }
+
+    /**
+     * Get the AMF 3 bytes of the value. The array must not be modified.
+     * @return the bytes.
+     */
+    public byte[] getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * Get the number of object reference table entries created by reading the bytes.
+     * @return the object reference count.
+     */
+    public int getObjectReferenceCount()
+    {
+        return objectReferenceCount;
+    }
+
+    /**
+     * Get the number of string reference table entries created by reading the bytes.
+     * @return the string reference count.
+     */
+    public int getStringReferenceCount()
+    {
+        return stringReferenceCount;
+    }
+
+    /**
+     * Get the number of traits reference table entries created by reading the bytes.
+     * @return the traits reference count.
+     */
+    public int getTraitsReferenceCount()
+    {
+        return traitsReferenceCount;
+    }
+
+    /**
+     * Deserializes the AMF 3 bytes.
+     * @param context the serialization context to read with.
+     * @return the deserialized value.
+     * @throws IOException if the read failed
+     */
+    public Object toObject(SerializationContext context) throws IOException
+    {
+        Amf3Input input = new Amf3Input(context);
+        input.setInputStream(new AmfByteArrayInputStream(bytes, 0, bytes.length));
+        try
+        {
+            return input.readObject();
+        }
+        catch (ClassNotFoundException e)
+        {
+            IOException ioe = new IOException(e.getMessage());
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+}
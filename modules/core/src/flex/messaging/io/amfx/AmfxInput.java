@@ -79,7 +79,7 @@ public class AmfxInput
     private final ArrayList stringTable;
     private final ArrayList traitsTable;
 
-    private StringBuffer text;
+    private StringBuilder text;
 
     private ActionMessage message;
     private MessageHeader currentHeader;
@@ -122,7 +122,7 @@ public class AmfxInput
         ecmaArrayIndexStack = new Stack();
         traitsStack = new Stack();
 
-        text = new StringBuffer(32);
+        text = new StringBuilder(32);
     }
 
     /**
@@ -189,6 +189,18 @@ public class AmfxInput
         text.append(s);
     }
 
+    /**
+     * Append characters to text.
+     *
+     * @param ch the char array holding the characters
+     * @param start the start position in the char array
+     * @param length the number of characters to append
+     */
+    public void text(char[] ch, int start, int length)
+    {
+        text.append(ch, start, length);
+    }
+
 
     //
     // AMFX Message Structure
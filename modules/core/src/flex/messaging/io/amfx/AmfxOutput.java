@@ -29,9 +29,9 @@ import flex.messaging.io.SerializationDescriptor;
 import flex.messaging.io.StatusInfoProxy;
 import flex.messaging.io.amf.TraitsInfo;
 import flex.messaging.io.amf.Amf3Output;
+import flex.messaging.io.amf.SelfContainedAmf3Value;
 import flex.messaging.io.ArrayCollection;
 import flex.messaging.io.BeanProxy;
-import flex.messaging.util.Hex;
 import flex.messaging.util.Trace;
 
 import org.w3c.dom.Document;
@@ -74,6 +74,26 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     protected HashMap traitsTable;
     protected HashMap stringTable;
 
+    /**
+     * The size of the buffer in which XML is encoded as UTF-8 before it is
+     * written to the output stream.
+     */
+    private static final int ENCODE_BUFFER_SIZE = 4096;
+
+    private static final byte[] HEX_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    private static final byte[] BYTE_ARRAY_HEX_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    private final byte[] encodeBuffer = new byte[ENCODE_BUFFER_SIZE];
+    private int encodeCount;
+    // The number of writeObject calls in progress; the buffer is written to
+    // the output stream when the outermost one returns.
+    private int depth;
+
     public AmfxOutput(SerializationContext context)
     {
         super(context);
@@ -89,6 +109,8 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
         objectTable.clear();
         traitsTable.clear();
         stringTable.clear();
+        encodeCount = 0;
+        depth = 0;
     }
 
     /**
@@ -106,6 +128,20 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     //
 
     public void writeObject(Object o) throws IOException
+    {
+        depth++;
+        try
+        {
+            writeObjectValue(o);
+        }
+        finally
+        {
+            if (--depth == 0)
+                flushEncodeBuffer();
+        }
+    }
+
+    private void writeObjectValue(Object o) throws IOException
     {
         if (o == null)
         {
@@ -113,7 +149,12 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
             return;
         }
 
-        if (!context.legacyExternalizable && o instanceof Externalizable)
+        if (o instanceof SelfContainedAmf3Value)
+        {
+            // AMF 3 bytes cannot be passed through to an AMFX stream.
+            writeObject(((SelfContainedAmf3Value)o).toObject(context));
+        }
+        else if (!context.legacyExternalizable && o instanceof Externalizable)
         {
             writeCustomObject(o);
         }
@@ -160,14 +201,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
         {
             String xml = documentToString(o);
 
-            int len = xml.length() + 15; // <xml>...</xml>
-
-            StringBuffer sb = new StringBuffer(len);
-            sb.append(XML_OPEN_TAG);
-            writeEscapedString(sb, xml);
-            sb.append(XML_CLOSE_TAG);
-
-            writeUTF(sb);
+            append(XML_OPEN_TAG);
+            appendEscaped(xml);
+            append(XML_CLOSE_TAG);
 
             if (isDebug)
                 trace.writeString(xml);
@@ -226,17 +262,15 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
 
         if (className == null || className.length() == 0)
         {
-            writeUTF(OBJECT_OPEN_TAG);
+            append(OBJECT_OPEN_TAG);
         }
         else
         {
-            int len = 127; // <object type="...">
-            StringBuffer sb = new StringBuffer(len);
-            sb.append("<").append(OBJECT_TYPE).append(" type=\"");
-            sb.append(className);
-            sb.append("\">");
-
-            writeUTF(sb);
+            append("<");
+            append(OBJECT_TYPE);
+            append(" type=\"");
+            append(className);
+            append("\">");
         }
 
         if (isDebug)
@@ -246,7 +280,7 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
         // of <traits/> and thus do not serialize by reference.
         if (ti.length() == 0 && className == null)
         {
-            writeUTF(EMPTY_TRAITS_TAG);
+            append(EMPTY_TRAITS_TAG);
         }
         else if (!byReference(ti))
         {
@@ -254,7 +288,7 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
             //boolean dynamic = ti.isDynamic();
             if (ti.isExternalizable())
             {
-                writeUTF(TRAITS_EXTERNALIZALBE_TAG);
+                append(TRAITS_EXTERNALIZALBE_TAG);
             }
             else
             {
@@ -262,11 +296,11 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
 
                 if (count <= 0)
                 {
-                    writeUTF(EMPTY_TRAITS_TAG);
+                    append(EMPTY_TRAITS_TAG);
                 }
                 else
                 {
-                    writeUTF(TRAITS_OPEN_TAG);
+                    append(TRAITS_OPEN_TAG);
 
                     for (int i = 0; i < count; i++)
                     {
@@ -274,7 +308,7 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
                         writeString(propName, true);
                     }
 
-                    writeUTF(TRAITS_CLOSE_TAG);
+                    append(TRAITS_CLOSE_TAG);
                 }
             }
         }
@@ -291,7 +325,7 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
 
     public void writeObjectEnd() throws IOException
     {
-        writeUTF(OBJECT_CLOSE_TAG);
+        append(OBJECT_CLOSE_TAG);
 
         if (isDebug)
             trace.endAMFObject();
@@ -303,8 +337,99 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
 
     public void writeUTF(String s) throws IOException
     {
-        byte[] bytes = s.getBytes(UTF_8);
-        out.write(bytes);
+        append(s);
+        if (depth == 0)
+            flushEncodeBuffer();
+    }
+
+    public void write(int b) throws IOException
+    {
+        flushEncodeBuffer();
+        super.write(b);
+    }
+
+    public void write(byte bytes[]) throws IOException
+    {
+        flushEncodeBuffer();
+        super.write(bytes);
+    }
+
+    public void write(byte bytes[], int offset, int length) throws IOException
+    {
+        flushEncodeBuffer();
+        super.write(bytes, offset, length);
+    }
+
+    public void writeBoolean(boolean v) throws IOException
+    {
+        flushEncodeBuffer();
+        super.writeBoolean(v);
+    }
+
+    public void writeByte(int v) throws IOException
+    {
+        flushEncodeBuffer();
+        super.writeByte(v);
+    }
+
+    public void writeBytes(String s) throws IOException
+    {
+        flushEncodeBuffer();
+        super.writeBytes(s);
+    }
+
+    public void writeChar(int v) throws IOException
+    {
+        flushEncodeBuffer();
+        super.writeChar(v);
+    }
+
+    public void writeChars(String s) throws IOException
+    {
+        flushEncodeBuffer();
+        super.writeChars(s);
+    }
+
+    public void writeDouble(double v) throws IOException
+    {
+        flushEncodeBuffer();
+        super.writeDouble(v);
+    }
+
+    public void writeFloat(float v) throws IOException
+    {
+        flushEncodeBuffer();
+        super.writeFloat(v);
+    }
+
+    public void writeInt(int v) throws IOException
+    {
+        flushEncodeBuffer();
+        super.writeInt(v);
+    }
+
+    public void writeLong(long v) throws IOException
+    {
+        flushEncodeBuffer();
+        super.writeLong(v);
+    }
+
+    public void writeShort(int v) throws IOException
+    {
+        flushEncodeBuffer();
+        super.writeShort(v);
+    }
+
+    public void flush() throws IOException
+    {
+        flushEncodeBuffer();
+        super.flush();
+    }
+
+    public void close() throws IOException
+    {
+        flushEncodeBuffer();
+        super.close();
     }
 
     //
@@ -317,9 +442,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     protected void writeAMFBoolean(boolean b) throws IOException
     {
         if (b)
-            writeUTF(TRUE_TAG); // <true/>
+            append(TRUE_TAG); // <true/>
         else
-            writeUTF(FALSE_TAG); // <false/>
+            append(FALSE_TAG); // <false/>
 
         if (isDebug)
             trace.write(b);
@@ -330,13 +455,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
      */
     protected void writeAMFDouble(double d) throws IOException
     {
-        int buflen = 40; // <double>...</double>
-        StringBuffer sb = new StringBuffer(buflen);
-        sb.append(DOUBLE_OPEN_TAG);
-        sb.append(d);
-        sb.append(DOUBLE_CLOSE_TAG);
-
-        writeUTF(sb);
+        append(DOUBLE_OPEN_TAG);
+        append(d);
+        append(DOUBLE_CLOSE_TAG);
 
         if (isDebug)
             trace.write(d);
@@ -349,13 +470,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     {
         if (i >= Amf3Types.INT28_MIN_VALUE && i <= Amf3Types.INT28_MAX_VALUE)
         {
-            int buflen = 25; // <int>...</int>
-            StringBuffer sb = new StringBuffer(buflen);
-            sb.append(INTEGER_OPEN_TAG);
-            sb.append(i);
-            sb.append(INTEGER_CLOSE_TAG);
-
-            writeUTF(sb);
+            append(INTEGER_OPEN_TAG);
+            append(i);
+            append(INTEGER_CLOSE_TAG);
 
             if (isDebug)
                 trace.write(i);
@@ -373,19 +490,17 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
      */
     protected void writeByteArray(byte[] ba) throws IOException
     {
-        int length = ba.length * 2;
+        append(BYTE_ARRAY_OPEN_TAG);
 
-        int len = 23 + length; // <bytearray>number of bytes * 2 for encoding</bytearray>
-        StringBuffer sb = new StringBuffer(len);
-        sb.append(BYTE_ARRAY_OPEN_TAG);
-        writeUTF(sb);
-
-        Hex.Encoder encoder = new Hex.Encoder(ba.length * 2);
-        encoder.encode(ba);
-        String encoded = encoder.drain();
-        writeUTF(encoded);
+        for (int i = 0; i < ba.length; i++)
+        {
+            if (encodeCount + 2 > encodeBuffer.length)
+                flushEncodeBuffer();
+            encodeBuffer[encodeCount++] = BYTE_ARRAY_HEX_DIGITS[(ba[i] & 0xF0) >>> 4];
+            encodeBuffer[encodeCount++] = BYTE_ARRAY_HEX_DIGITS[ba[i] & 0x0F];
+        }
 
-        writeUTF(BYTE_ARRAY_CLOSE_TAG);
+        append(BYTE_ARRAY_CLOSE_TAG);
 
         if (isDebug)
             trace.startByteArray(objectTable.size() - 1, ba.length);
@@ -416,8 +531,7 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
      */
     public void writeUTF(StringBuffer sb) throws IOException
     {
-        byte[] bytes = sb.toString().getBytes(UTF_8);
-        out.write(bytes);
+        writeUTF(sb.toString());
     }
 
     /**
@@ -427,14 +541,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     {
         if (!byReference(d))
         {
-            int buflen = 30; // <date>...</date>
-            long time = d.getTime();
-            StringBuffer sb = new StringBuffer(buflen);
-            sb.append(DATE_OPEN_TAG);
-            sb.append(time);
-            sb.append(DATE_CLOSE_TAG);
-
-            writeUTF(sb);
+            append(DATE_OPEN_TAG);
+            append(d.getTime());
+            append(DATE_CLOSE_TAG);
 
             if (isDebug)
                 trace.write(d);
@@ -443,11 +552,11 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
 
     protected void writeDictionary(Dictionary dictionary) throws IOException
     {
-        StringBuffer sb = new StringBuffer(25);
-        sb.append("<").append(DICTIONARY_TYPE).append(" length=\"");
-        sb.append(dictionary.size());
-        sb.append("\">");
-        writeUTF(sb);
+        append("<");
+        append(DICTIONARY_TYPE);
+        append(" length=\"");
+        append(dictionary.size());
+        append("\">");
 
         if (isDebug) trace.startAMFDictionary(objectTable.size() - 1);
 
@@ -462,7 +571,7 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
             writeObject(value);
         }
 
-        writeUTF(DICTIONARY_CLOSE_TAG);
+        append(DICTIONARY_CLOSE_TAG);
 
         if (isDebug)
             trace.endAMFDictionary();
@@ -473,11 +582,9 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
      */
     protected void writeMapAsECMAArray(Map map) throws IOException
     {
-        int len = 20; // <array ecma="true">
-
-        StringBuffer sb = new StringBuffer(len);
-        sb.append("<").append(ARRAY_TYPE).append(" ecma=\"true\">");
-        writeUTF(sb);
+        append("<");
+        append(ARRAY_TYPE);
+        append(" ecma=\"true\">");
 
         if (isDebug)
             trace.startAMFArray(objectTable.size() - 1);
@@ -489,22 +596,24 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
             if (key != null)
             {
                 String propName = key.toString();
-                sb = new StringBuffer();
 
                 // For now, all keys will be named items
-                sb.append("<").append(ITEM_TYPE).append(" name=\"").append(propName).append("\">");
-                writeUTF(sb);
+                append("<");
+                append(ITEM_TYPE);
+                append(" name=\"");
+                append(propName);
+                append("\">");
 
                 if (isDebug)
                     trace.namedElement(propName);
 
                 writeObject(map.get(key));
 
-                writeUTF(ITEM_CLOSE_TAG);
+                append(ITEM_CLOSE_TAG);
             }
         }
 
-        writeUTF(ARRAY_CLOSE_TAG);
+        append(ARRAY_CLOSE_TAG);
 
         if (isDebug)
             trace.endAMFArray();
@@ -515,7 +624,7 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
      */
     protected void writeAMFNull() throws IOException
     {
-        writeUTF(NULL_TAG);
+        append(NULL_TAG);
 
         if (isDebug)
             trace.writeNull();
@@ -715,24 +824,19 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
     {
         if (s.length() == 0)
         {
-            writeUTF(EMPTY_STRING_TAG);
+            append(EMPTY_STRING_TAG);
         }
         else if (!byReference(s))
         {
-            int len = s.length() + 35; // <string>...</string> + <![CDATA[ ]]>
-
-            StringBuffer sb = new StringBuffer(len);
-            sb.append(STRING_OPEN_TAG);
+            append(STRING_OPEN_TAG);
 
             // Traits won't contain chars that need escaping
             if (!isTrait)
-                writeEscapedString(sb, s);
+                appendEscaped(s);
             else
-                sb.append(s);
+                append(s);
 
-            sb.append(STRING_CLOSE_TAG);
-
-            writeUTF(sb);
+            append(STRING_CLOSE_TAG);
         }
     }
 
@@ -848,13 +952,11 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
      */
     protected void writeObjectArrayDirectly(Object[] values, SerializationDescriptor descriptor) throws IOException
     {
-        int len = 25; // <array length="...">
-
-        StringBuffer sb = new StringBuffer(len);
-        sb.append("<").append(ARRAY_TYPE).append(" length=\"");
-        sb.append(values.length);
-        sb.append("\">");
-        writeUTF(sb);
+        append("<");
+        append(ARRAY_TYPE);
+        append(" length=\"");
+        append(values.length);
+        append("\">");
 
         if (isDebug)
             trace.startAMFArray(objectTable.size() - 1);
@@ -867,7 +969,7 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
             writeObject(values[i]);
         }
 
-        writeUTF(ARRAY_CLOSE_TAG);
+        append(ARRAY_CLOSE_TAG);
 
         if (isDebug)
             trace.endAMFArray();
@@ -902,12 +1004,11 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
         {
             int length = Array.getLength(obj);
 
-            int buflen = 25; // <array length="...">
-            StringBuffer sb = new StringBuffer(buflen);
-            sb.append("<").append(ARRAY_TYPE).append(" length=\"");
-            sb.append(length);
-            sb.append("\">");
-            writeUTF(sb);
+            append("<");
+            append(ARRAY_TYPE);
+            append(" length=\"");
+            append(length);
+            append("\">");
 
             if (isDebug)
                 trace.startAMFArray(objectTable.size() - 1);
@@ -951,7 +1052,7 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
                 }
             }
 
-            writeUTF(ARRAY_CLOSE_TAG);
+            append(ARRAY_CLOSE_TAG);
 
             if (isDebug)
                 trace.endAMFArray();
@@ -978,14 +1079,11 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
             {
                 int refNum = ((Integer)ref).intValue();
 
-                int len = 20; // <ref id="..."/>
-
-                StringBuffer sb = new StringBuffer(len);
-                sb.append("<").append(REF_TYPE).append(" id=\"");
-                sb.append(refNum);
-                sb.append("\"/>");
-
-                writeUTF(sb);
+                append("<");
+                append(REF_TYPE);
+                append(" id=\"");
+                append(refNum);
+                append("\"/>");
 
                 if (isDebug)
                     trace.writeRef(refNum);
@@ -1016,14 +1114,11 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
             {
                 int refNum = ((Integer)ref).intValue();
 
-                int len = 20; // <string id="..."/>
-
-                StringBuffer sb = new StringBuffer(len);
-                sb.append("<").append(STRING_TYPE).append(" id=\"");
-                sb.append(refNum);
-                sb.append("\"/>");
-
-                writeUTF(sb);
+                append("<");
+                append(STRING_TYPE);
+                append(" id=\"");
+                append(refNum);
+                append("\"/>");
 
                 if (Trace.amf && isDebug)
                     trace.writeStringRef(refNum);
@@ -1059,14 +1154,11 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
             {
                 int refNum = ((Integer)ref).intValue();
 
-                int len = 20; // <traits id="..."/>
-
-                StringBuffer sb = new StringBuffer(len);
-                sb.append("<").append(TRAITS_TYPE).append(" id=\"");
-                sb.append(refNum);
-                sb.append("\"/>");
-
-                writeUTF(sb);
+                append("<");
+                append(TRAITS_TYPE);
+                append(" id=\"");
+                append(refNum);
+                append("\"/>");
 
                 if (Trace.amf && isDebug)
                     trace.writeTraitsInfoRef(refNum);
@@ -1083,4 +1175,221 @@ public class AmfxOutput extends AbstractAmfOutput implements AmfxTypes
 
         return (ref != null);
     }
+
+    //
+    // UTF-8 ENCODING
+    //
+
+    /**
+     * Writes the encoded bytes to the output stream.
+     */
+    private void flushEncodeBuffer() throws IOException
+    {
+        if (encodeCount > 0)
+        {
+            out.write(encodeBuffer, 0, encodeCount);
+            encodeCount = 0;
+        }
+    }
+
+    /**
+     * Encodes a String as UTF-8 without escaping it, replacing unpaired
+     * surrogates with '?' as <code>String.getBytes</code> does.
+     */
+    private void append(String s) throws IOException
+    {
+        int length = s.length();
+        for (int i = 0; i < length; i++)
+        {
+            if (encodeCount + 4 > encodeBuffer.length)
+                flushEncodeBuffer();
+
+            char c = s.charAt(i);
+            if (c < 0x80)
+            {
+                encodeBuffer[encodeCount++] = (byte)c;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1)))
+            {
+                appendCodePoint(Character.toCodePoint(c, s.charAt(++i)));
+            }
+            else if (Character.isSurrogate(c))
+            {
+                encodeBuffer[encodeCount++] = '?';
+            }
+            else
+            {
+                appendCodePoint(c);
+            }
+        }
+    }
+
+    /**
+     * Encodes a String as UTF-8, escaping '&amp;' and '&lt;' and the
+     * characters that are not valid in XML in the same pass. See
+     * <code>writeEscapedString</code> for the characters that are escaped.
+     */
+    private void appendEscaped(String s) throws IOException
+    {
+        int length = s.length();
+        for (int i = 0; i < length; i++)
+        {
+            // The longest escape is &#xffff;
+            if (encodeCount + 8 > encodeBuffer.length)
+                flushEncodeBuffer();
+
+            char c = s.charAt(i);
+            if (c >= 0x0020)
+            {
+                if (c == '&')
+                {
+                    appendAscii("&amp;");
+                }
+                else if (c == '<')
+                {
+                    appendAscii("&lt;");
+                }
+                else if (c < 0x80)
+                {
+                    encodeBuffer[encodeCount++] = (byte)c;
+                }
+                else if (c > 0xD7FF && (c < 0xE000 || c > 0xFFFD))
+                {
+                    appendCharacterReference(c);
+                }
+                else
+                {
+                    appendCodePoint(c);
+                }
+            }
+            else if (c == 0x0009 || c == 0x000A || c == 0x000D)
+            {
+                encodeBuffer[encodeCount++] = (byte)c;
+            }
+            else
+            {
+                appendCharacterReference(c);
+            }
+        }
+    }
+
+    private void append(int i) throws IOException
+    {
+        append((long)i);
+    }
+
+    private void append(long l) throws IOException
+    {
+        // Long.MIN_VALUE has 20 characters.
+        if (encodeCount + 20 > encodeBuffer.length)
+            flushEncodeBuffer();
+
+        if (l == Long.MIN_VALUE)
+        {
+            appendAscii("-9223372036854775808");
+            return;
+        }
+
+        if (l < 0)
+        {
+            encodeBuffer[encodeCount++] = '-';
+            l = -l;
+        }
+
+        int start = encodeCount;
+        do
+        {
+            encodeBuffer[encodeCount++] = (byte)('0' + (l % 10));
+            l /= 10;
+        }
+        while (l != 0);
+
+        // The digits were written from the least significant one.
+        for (int i = start, j = encodeCount - 1; i < j; i++, j--)
+        {
+            byte b = encodeBuffer[i];
+            encodeBuffer[i] = encodeBuffer[j];
+            encodeBuffer[j] = b;
+        }
+    }
+
+    /**
+     * Writes a double as <code>Double.toString</code> does, without creating
+     * a String for whole numbers below 10^7.
+     */
+    private void append(double d) throws IOException
+    {
+        long l = (long)d;
+        if (l == d && l > -10000000L && l < 10000000L && (l != 0 || 1 / d > 0))
+        {
+            append(l);
+            appendAscii(".0");
+        }
+        else
+        {
+            appendAscii(Double.toString(d));
+        }
+    }
+
+    private void appendAscii(String s) throws IOException
+    {
+        int length = s.length();
+        if (encodeCount + length > encodeBuffer.length)
+            flushEncodeBuffer();
+
+        for (int i = 0; i < length; i++)
+            encodeBuffer[encodeCount++] = (byte)s.charAt(i);
+    }
+
+    /**
+     * Writes a numeric character reference in hexadecimal form, as in
+     * <code>&amp;#xffff;</code>.
+     */
+    private void appendCharacterReference(char c)
+    {
+        encodeBuffer[encodeCount++] = '&';
+        encodeBuffer[encodeCount++] = '#';
+        encodeBuffer[encodeCount++] = 'x';
+        boolean leading = true;
+        for (int shift = 12; shift >= 0; shift -= 4)
+        {
+            int digit = (c >>> shift) & 0xF;
+            if (digit != 0 || !leading || shift == 0)
+            {
+                encodeBuffer[encodeCount++] = HEX_DIGITS[digit];
+                leading = false;
+            }
+        }
+        encodeBuffer[encodeCount++] = ';';
+    }
+
+    /**
+     * Writes the UTF-8 encoding of a code point; the caller ensures there is
+     * room for four bytes.
+     */
+    private void appendCodePoint(int cp)
+    {
+        if (cp < 0x80)
+        {
+            encodeBuffer[encodeCount++] = (byte)cp;
+        }
+        else if (cp < 0x800)
+        {
+            encodeBuffer[encodeCount++] = (byte)(0xC0 | (cp >> 6));
+            encodeBuffer[encodeCount++] = (byte)(0x80 | (cp & 0x3F));
+        }
+        else if (cp < 0x10000)
+        {
+            encodeBuffer[encodeCount++] = (byte)(0xE0 | (cp >> 12));
+            encodeBuffer[encodeCount++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+            encodeBuffer[encodeCount++] = (byte)(0x80 | (cp & 0x3F));
+        }
+        else
+        {
+            encodeBuffer[encodeCount++] = (byte)(0xF0 | (cp >> 18));
+            encodeBuffer[encodeCount++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+            encodeBuffer[encodeCount++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+            encodeBuffer[encodeCount++] = (byte)(0x80 | (cp & 0x3F));
+        }
+    }
 }
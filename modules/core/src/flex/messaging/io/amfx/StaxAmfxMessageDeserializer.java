@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.io.amfx;
+
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.Attributes;
+
+import flex.messaging.MessageException;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.AmfTrace;
+
+/**
+ * StAX based AMFX Parser. Pulls the events of the request from a stream
+ * reader created by a factory that is configured once per thread, and
+ * dispatches them to the same <code>AmfxInput</code> handlers as the SAX
+ * based <code>AmfxMessageDeserializer</code> through a table of handler
+ * methods that is built once.
+ *
+ * A document type declaration is rejected unless the
+ * <code>allowXmlDoctypeDeclaration</code> property of the
+ * <code>SerializationContext</code> is set, and external entities are
+ * never resolved.
+ */
+public class StaxAmfxMessageDeserializer extends AmfxMessageDeserializer
+{
+    private static final Map<String, Method> startHandlers = new HashMap<String, Method>();
+    private static final Map<String, Method> endHandlers = new HashMap<String, Method>();
+
+    static
+    {
+        Method[] methods = AmfxInput.class.getMethods();
+        for (int i = 0; i < methods.length; i++)
+        {
+            Method method = methods[i];
+            String name = method.getName();
+            Class[] parameterTypes = method.getParameterTypes();
+            if (name.startsWith("start_") && parameterTypes.length == 1 && parameterTypes[0] == Attributes.class)
+                startHandlers.put(name.substring("start_".length()), method);
+            else if (name.startsWith("end_") && parameterTypes.length == 0)
+                endHandlers.put(name.substring("end_".length()), method);
+        }
+    }
+
+    private static final ThreadLocal<XMLInputFactory> factories = new ThreadLocal<XMLInputFactory>()
+    {
+        protected XMLInputFactory initialValue()
+        {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+            factory.setProperty(XMLInputFactory.IS_VALIDATING, Boolean.FALSE);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            try
+            {
+                factory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Not supported by this StAX implementation; the resolver
+                // below still rejects external entities.
+            }
+            factory.setXMLResolver(new XMLResolver()
+            {
+                public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace)
+                {
+                    throw new MessageException("External entities are not allowed");
+                }
+            });
+            return factory;
+        }
+    };
+
+    private SerializationContext context;
+
+    /**
+     * Constructor.
+     * Create a new StaxAmfxMessageDeserializer object
+     *
+     */
+    public StaxAmfxMessageDeserializer()
+    {
+    }
+
+    /** {@inheritDoc} */
+    public void initialize(SerializationContext context, InputStream in, AmfTrace trace)
+    {
+        super.initialize(context, in, trace);
+        this.context = context;
+    }
+
+    /** {@inheritDoc} */
+    public void setSerializationContext(SerializationContext context)
+    {
+        super.setSerializationContext(context);
+        this.context = context;
+    }
+
+    protected void parse(ActionMessage m)
+    {
+        XMLStreamReader reader = null;
+        try
+        {
+            reader = factories.get().createXMLStreamReader(in);
+            StreamAttributes attributes = new StreamAttributes(reader);
+            while (reader.hasNext())
+            {
+                switch (reader.next())
+                {
+                    case XMLStreamConstants.START_ELEMENT:
+                        invoke(startHandlers, "Unknown type: ", reader.getLocalName(), attributes);
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        invoke(endHandlers, "Unfinished type: ", reader.getLocalName(), null);
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        int length = reader.getTextLength();
+                        if (length > 0)
+                            amfxIn.text(reader.getTextCharacters(), reader.getTextStart(), length);
+                        break;
+                    case XMLStreamConstants.DTD:
+                        if (context == null || !context.allowXmlDoctypeDeclaration)
+                            throw new MessageException("DOCTYPE declarations are not allowed");
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        catch (MessageException ex)
+        {
+            clientMessageEncodingException(m, ex);
+        }
+        catch (XMLStreamException e)
+        {
+            if (e.getNestedException() != null)
+            {
+                clientMessageEncodingException(m, e.getNestedException());
+            }
+            else
+            {
+                clientMessageEncodingException(m, e);
+            }
+        }
+        catch (Exception ex)
+        {
+            clientMessageEncodingException(m, ex);
+        }
+        finally
+        {
+            if (reader != null)
+            {
+                try
+                {
+                    reader.close();
+                }
+                catch (XMLStreamException ex)
+                {
+                    // Ignore.
+                }
+            }
+        }
+    }
+
+    private void invoke(Map<String, Method> handlers, String unknown, String localName, Attributes attributes)
+            throws Exception
+    {
+        Method method = handlers.get(localName);
+        if (method == null)
+            throw new MessageException(unknown + localName);
+
+        try
+        {
+            if (attributes != null)
+                method.invoke(amfxIn, attributes);
+            else
+                method.invoke(amfxIn);
+        }
+        catch (InvocationTargetException e)
+        {
+            Throwable t = e.getTargetException();
+            if (t instanceof Exception)
+                throw (Exception)t;
+            else if (t instanceof Error)
+                throw (Error)t;
+            throw e;
+        }
+    }
+
+    /**
+     * Exposes the attributes of the current element of a stream reader as
+     * SAX <code>Attributes</code>, without copying them.
+     */
+    private static final class StreamAttributes implements Attributes
+    {
+        private final XMLStreamReader reader;
+
+        StreamAttributes(XMLStreamReader reader)
+        {
+            this.reader = reader;
+        }
+
+        public int getLength()
+        {
+            return reader.getAttributeCount();
+        }
+
+        public String getURI(int index)
+        {
+            if (index < 0 || index >= reader.getAttributeCount())
+                return null;
+            String uri = reader.getAttributeNamespace(index);
+            return uri != null ? uri : "";
+        }
+
+        public String getLocalName(int index)
+        {
+            if (index < 0 || index >= reader.getAttributeCount())
+                return null;
+            return reader.getAttributeLocalName(index);
+        }
+
+        public String getQName(int index)
+        {
+            if (index < 0 || index >= reader.getAttributeCount())
+                return null;
+            String prefix = reader.getAttributePrefix(index);
+            String localName = reader.getAttributeLocalName(index);
+            return prefix != null && prefix.length() > 0 ? prefix + ":" + localName : localName;
+        }
+
+        public String getType(int index)
+        {
+            if (index < 0 || index >= reader.getAttributeCount())
+                return null;
+            return reader.getAttributeType(index);
+        }
+
+        public String getValue(int index)
+        {
+            if (index < 0 || index >= reader.getAttributeCount())
+                return null;
+            return reader.getAttributeValue(index);
+        }
+
+        public int getIndex(String uri, String localName)
+        {
+            for (int i = 0; i < reader.getAttributeCount(); i++)
+            {
+                if (localName.equals(reader.getAttributeLocalName(i)) && uri.equals(getURI(i)))
+                    return i;
+            }
+            return -1;
+        }
+
+        public int getIndex(String qName)
+        {
+            for (int i = 0; i < reader.getAttributeCount(); i++)
+            {
+                if (qName.equals(getQName(i)))
+                    return i;
+            }
+            return -1;
+        }
+
+        public String getType(String uri, String localName)
+        {
+            return getType(getIndex(uri, localName));
+        }
+
+        public String getType(String qName)
+        {
+            return getType(getIndex(qName));
+        }
+
+        public String getValue(String uri, String localName)
+        {
+            return getValue(getIndex(uri, localName));
+        }
+
+        public String getValue(String qName)
+        {
+            return getValue(getIndex(qName));
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.security;
+
+import java.security.Principal;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import flex.messaging.FlexSession;
+import flex.messaging.FlexSessionListener;
+import flex.messaging.config.SecurityConstraint;
+
+/**
+ * Remembers the authorization decisions of the <code>LoginManager</code> for
+ * each principal and security constraint for a limited time. Principals are
+ * compared by identity, so a principal that is authenticated again gets new
+ * decisions. The decisions for a principal are forgotten when it logs out or
+ * when a FlexSession that it used is invalidated, and expired decisions are
+ * swept out every so often as new ones are added.
+ */
+final class AuthorizationCache implements FlexSessionListener
+{
+    /**
+     * The number of decisions added between sweeps for expired ones.
+     */
+    private static final int SWEEP_INTERVAL = 1024;
+
+    private final ConcurrentMap<PrincipalKey, Map<SecurityConstraint, Long>> decisions =
+            new ConcurrentHashMap<PrincipalKey, Map<SecurityConstraint, Long>>();
+
+    private final AtomicInteger addsSinceSweep = new AtomicInteger();
+
+    /**
+     * Returns the decision for the principal and constraint, or null if there
+     * is none that has not expired.
+     */
+    Boolean get(Principal principal, SecurityConstraint constraint, long now)
+    {
+        Map<SecurityConstraint, Long> byConstraint = decisions.get(new PrincipalKey(principal));
+        Long decision = byConstraint != null ? byConstraint.get(constraint) : null;
+        if (decision == null)
+            return null;
+
+        // A decision is stored as its expiry time, negated if access was denied.
+        long expiresAt = Math.abs(decision.longValue());
+        if (now >= expiresAt)
+        {
+            byConstraint.remove(constraint);
+            return null;
+        }
+        return decision.longValue() > 0 ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    /**
+     * Stores a decision that expires at the given time, and has the decisions
+     * for the principal forgotten when the session is invalidated.
+     */
+    void put(Principal principal, SecurityConstraint constraint, boolean authorized, long expiresAt, FlexSession session)
+    {
+        PrincipalKey key = new PrincipalKey(principal);
+        Map<SecurityConstraint, Long> byConstraint = decisions.get(key);
+        if (byConstraint == null)
+        {
+            byConstraint = new ConcurrentHashMap<SecurityConstraint, Long>();
+            Map<SecurityConstraint, Long> existing = decisions.putIfAbsent(key, byConstraint);
+            if (existing != null)
+                byConstraint = existing;
+        }
+        byConstraint.put(constraint, authorized ? expiresAt : -expiresAt);
+
+        if (session != null && session.isValid())
+            session.addSessionDestroyedListener(this);
+
+        if (addsSinceSweep.incrementAndGet() >= SWEEP_INTERVAL)
+        {
+            addsSinceSweep.set(0);
+            sweep(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Forgets the decisions for the principal.
+     */
+    void remove(Principal principal)
+    {
+        if (principal != null)
+            decisions.remove(new PrincipalKey(principal));
+    }
+
+    /**
+     * Forgets all decisions.
+     */
+    void clear()
+    {
+        decisions.clear();
+    }
+
+    /**
+     * Forgets the decisions that have expired.
+     */
+    void sweep(long now)
+    {
+        for (Iterator<Map<SecurityConstraint, Long>> principals = decisions.values().iterator(); principals.hasNext();)
+        {
+            Map<SecurityConstraint, Long> byConstraint = principals.next();
+            for (Iterator<Long> iter = byConstraint.values().iterator(); iter.hasNext();)
+            {
+                if (now >= Math.abs(iter.next().longValue()))
+                    iter.remove();
+            }
+            if (byConstraint.isEmpty())
+                principals.remove();
+        }
+    }
+
+    /**
+     * Returns the number of principals with decisions.
+     */
+    int size()
+    {
+        return decisions.size();
+    }
+
+    /** {@inheritDoc} */
+    public void sessionCreated(FlexSession session)
+    {
+        // No-op.
+    }
+
+    /**
+     * Forgets the decisions for the principal of the session being invalidated.
+     *
+     * @param session The FlexSession being invalidated.
+     */
+    public void sessionDestroyed(FlexSession session)
+    {
+        remove(session.getUserPrincipal());
+    }
+
+    /**
+     * Compares principals by identity.
+     */
+    private static final class PrincipalKey
+    {
+        private final Principal principal;
+
+        PrincipalKey(Principal principal)
+        {
+            this.principal = principal;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof PrincipalKey && ((PrincipalKey)o).principal == principal;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return System.identityHashCode(principal);
+        }
+    }
+}
@@ -62,6 +62,8 @@ public class LoginManager implements FlexComponent
 
     private LoginCommand loginCommand;
     private boolean perClientAuthentication;
+    private volatile long authorizationCacheTtlMillis;
+    private final AuthorizationCache authorizationCache = new AuthorizationCache();
 
     private boolean started;
 
@@ -141,6 +143,7 @@ public class LoginManager implements FlexComponent
         if (loginCommand != null)
             loginCommand.stop();
 
+        authorizationCache.clear();
         started = false;
     }
 
@@ -172,6 +175,34 @@ public class LoginManager implements FlexComponent
         this.perClientAuthentication = perClientAuthentication;
     }
 
+    /**
+     * Returns how long an authorization decision for a principal and a security
+     * constraint is reused before the login command is asked again.
+     *
+     * @return The time to live of authorization decisions in milliseconds;
+     * zero if they are not cached.
+     */
+    public long getAuthorizationCacheTtlMillis()
+    {
+        return authorizationCacheTtlMillis;
+    }
+
+    /**
+     * Sets how long an authorization decision for a principal and a security
+     * constraint is reused before the login command is asked again. Decisions
+     * are also forgotten when the principal logs out or its FlexSession is
+     * invalidated. Caching is disabled by default, as a change to the roles of
+     * a principal in the realm then only applies once its decisions expire.
+     *
+     * @param value The time to live of authorization decisions in milliseconds;
+     * zero or less to not cache them.
+     */
+    public void setAuthorizationCacheTtlMillis(long value)
+    {
+        authorizationCacheTtlMillis = value < 0 ? 0 : value;
+        authorizationCache.clear();
+    }
+
     /**
      * Implements FlexComponent.isStarted.
      * Returns whether the LoginManager is started or not.
@@ -204,6 +235,7 @@ public class LoginManager implements FlexComponent
             return;
 
         loginCommand = value;
+        authorizationCache.clear();
         if (started)
             loginCommand.start(FlexContext.getServletConfig());
     }
@@ -288,7 +320,9 @@ public class LoginManager implements FlexComponent
         }
 
         // Always invoke the command's logout hook.
-        loginCommand.logout(getCurrentPrincipal());
+        Principal principal = getCurrentPrincipal();
+        authorizationCache.remove(principal);
+        loginCommand.logout(principal);
 
         if (FlexContext.isPerClientAuthentication())
         {
@@ -319,7 +353,7 @@ public class LoginManager implements FlexComponent
         if (currentPrincipal != null)
         {
             List roles = constraint.getRoles();
-            boolean authorized = roles == null || checkRoles(currentPrincipal, roles);
+            boolean authorized = roles == null || checkRoles(currentPrincipal, constraint, roles);
 
             if (!authorized)
             {
@@ -386,6 +420,26 @@ public class LoginManager implements FlexComponent
     //
     //--------------------------------------------------------------------------
 
+    /**
+     * Checks the roles of the principal for the constraint, reusing a cached
+     * decision if authorization decisions are cached.
+     */
+    private boolean checkRoles(Principal principal, SecurityConstraint constraint, List roles)
+    {
+        long ttl = authorizationCacheTtlMillis;
+        if (ttl <= 0 || loginCommand == null)
+            return checkRoles(principal, roles);
+
+        long now = System.currentTimeMillis();
+        Boolean cached = authorizationCache.get(principal, constraint, now);
+        if (cached != null)
+            return cached.booleanValue();
+
+        boolean authorized = checkRoles(principal, roles);
+        authorizationCache.put(principal, constraint, authorized, now + ttl, FlexContext.getFlexSession());
+        return authorized;
+    }
+
     private Principal getCurrentPrincipal()
     {
         return FlexContext.getUserPrincipal();
@@ -51,6 +51,8 @@ import flex.messaging.messages.CommandMessage;
 import flex.messaging.messages.Message;
 import flex.messaging.messages.MessagePerformanceUtils;
 import flex.messaging.services.messaging.MessagingConstants;
+import flex.messaging.services.messaging.PeerMessageBatch;
+import flex.messaging.services.messaging.PeerMessageBatcher;
 import flex.messaging.services.messaging.RemoteSubscriptionManager;
 import flex.messaging.services.messaging.SubscriptionManager;
 import flex.messaging.services.messaging.Subtopic;
@@ -84,6 +86,8 @@ public class MessageService extends AbstractService implements MessagingConstant
 
     private ReadWriteLock subscribeLock = new ReentrantReadWriteLock();
 
+    private PeerMessageBatcher peerMessageBatcher;
+
     //--------------------------------------------------------------------------
     //
     // Constructor
@@ -121,6 +125,13 @@ public class MessageService extends AbstractService implements MessagingConstant
         String serviceType = getClass().getName();
         ClusterManager clm = getMessageBroker().getClusterManager();
 
+        // A batcher stopped with the service rejects messages; use a new one.
+        synchronized (this)
+        {
+            if (peerMessageBatcher != null && peerMessageBatcher.isStopped())
+                peerMessageBatcher = null;
+        }
+
         super.start();
 
         /*
@@ -418,13 +429,17 @@ public class MessageService extends AbstractService implements MessagingConstant
             return;
         
         ClusterManager clm = getMessageBroker().getClusterManager();
+        long batchWindowMillis = destination.getServerSettings().getClusterBatchWindowMillis();
         if (destination.getServerSettings().isBroadcastRoutingMode())
         {
             if (debug)
                 Log.getLogger(LOG_CATEGORY).debug("Broadcasting message to peer servers: " + message + " evalSelector: " + evalSelector);
             // tell the message service on other nodes to push the message
-            clm.invokeServiceOperation(getClass().getName(), message.getDestination(),
-                    ClusterManager.OPERATION_PUSH_MESSAGE_FROM_PEER, new Object[] { message, evalSelector});
+            if (batchWindowMillis > 0)
+                getPeerMessageBatcher().send(message.getDestination(), message, evalSelector, null, batchWindowMillis);
+            else
+                clm.invokeServiceOperation(getClass().getName(), message.getDestination(),
+                        ClusterManager.OPERATION_PUSH_MESSAGE_FROM_PEER, new Object[] { message, evalSelector});
         }
         else
         {
@@ -434,6 +449,12 @@ public class MessageService extends AbstractService implements MessagingConstant
             if (debug)
                 Log.getLogger(LOG_CATEGORY).debug("Sending message to peer servers: " + serverAddresses + StringUtils.NEWLINE + " message: " + message + StringUtils.NEWLINE + " evalSelector: " + evalSelector);
 
+            if (batchWindowMillis > 0)
+            {
+                getPeerMessageBatcher().send(message.getDestination(), message, evalSelector, serverAddresses, batchWindowMillis);
+                return;
+            }
+
             for (Object remoteAddress : serverAddresses)
             {
                 clm.invokePeerToPeerOperation(getClass().getName(), message.getDestination(),
@@ -442,6 +463,40 @@ public class MessageService extends AbstractService implements MessagingConstant
         }
     }
 
+    /**
+     *
+     * This method is provided for a batch of messages sent from a single remote node with
+     * <code>invokePeerToPeerOperation</code>, which adds the remote node's address as a parameter.
+     */
+    public void pushMessagesFromPeerToPeer(PeerMessageBatch batch, Object address)
+    {
+        pushMessagesFromPeer(batch);
+    }
+
+    /**
+     *
+     * This method is provided for a batch of messages broadcast by a cluster peer, it is not
+     * intended to be invoked locally. The messages are pushed in order as if each had been
+     * received through <code>pushMessageFromPeer</code>.
+     */
+    public void pushMessagesFromPeer(PeerMessageBatch batch)
+    {
+        for (int i = 0, n = batch.size(); i < n; i++)
+        {
+            AsyncMessage message;
+            try
+            {
+                message = (AsyncMessage)batch.getMessage(i, getMessageBroker().getDeserializationValidator());
+            }
+            catch (Exception e)
+            {
+                Log.getLogger(LOG_CATEGORY).error("Unable to read a message received from a peer server; the message is ignored.", e);
+                continue;
+            }
+            pushMessageFromPeer(message, Boolean.valueOf(batch.isEvalSelector(i)));
+        }
+    }
+
     /**
      *
      * This method is provided for a cluster peer broadcast from a single remote node.  Because the
@@ -1241,6 +1296,27 @@ public class MessageService extends AbstractService implements MessagingConstant
         {
             subscribeLock.readLock().unlock();
         }
+
+        PeerMessageBatcher batcher;
+        synchronized (this)
+        {
+            batcher = peerMessageBatcher;
+        }
+        if (batcher != null)
+            batcher.stop();
+    }
+
+    /**
+     * Returns the batcher that coalesces the messages pushed to cluster peers for
+     * destinations with a <code>cluster-batch-window-millis</code>.
+     *
+     * @return The <code>PeerMessageBatcher</code> of this service.
+     */
+    protected synchronized PeerMessageBatcher getPeerMessageBatcher()
+    {
+        if (peerMessageBatcher == null)
+            peerMessageBatcher = new PeerMessageBatcher(this);
+        return peerMessageBatcher;
     }
 
 }
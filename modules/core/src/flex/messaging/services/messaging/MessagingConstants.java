@@ -56,4 +56,8 @@ public interface MessagingConstants
      * Constant for the cluster message routing element.
      */
     String CLUSTER_MESSAGE_ROUTING = "cluster-message-routing";
+    /**
+     * Constant for the cluster batch window element.
+     */
+    String CLUSTER_BATCH_WINDOW_MILLIS = "cluster-batch-window-millis";
 }
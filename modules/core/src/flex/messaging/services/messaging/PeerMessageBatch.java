@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.services.messaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.List;
+
+import flex.messaging.cluster.ClusterObjectInputStream;
+import flex.messaging.messages.Message;
+import flex.messaging.validators.DeserializationValidator;
+
+/**
+ * A batch of messages pushed from one cluster node to a peer in a single
+ * service operation. Each message is held in its Java serialized form, so a
+ * message sent to several peers is serialized only once and the batch itself
+ * serializes as a plain copy of those bytes.
+ */
+public class PeerMessageBatch implements Serializable
+{
+    static final long serialVersionUID = -5406241795624541542L;
+
+    private final byte[][] messages;
+    private final boolean[] evalSelectors;
+
+    /**
+     * Constructs a batch of serialized messages.
+     *
+     * @param messages The serialized messages, as returned by <code>serialize</code>.
+     * @param evalSelectors Whether the receiving node should evaluate its subscribers'
+     * selectors for the message at the same index.
+     */
+    public PeerMessageBatch(byte[][] messages, boolean[] evalSelectors)
+    {
+        this.messages = messages;
+        this.evalSelectors = evalSelectors;
+    }
+
+    /**
+     * Constructs a batch from lists of serialized messages and selector flags.
+     *
+     * @param messages The serialized messages.
+     * @param evalSelectors The selector flags of the messages.
+     */
+    PeerMessageBatch(List<byte[]> messages, List<Boolean> evalSelectors)
+    {
+        int n = messages.size();
+        this.messages = messages.toArray(new byte[n][]);
+        this.evalSelectors = new boolean[n];
+        for (int i = 0; i < n; i++)
+            this.evalSelectors[i] = evalSelectors.get(i).booleanValue();
+    }
+
+    /**
+     * Returns the number of messages in the batch.
+     *
+     * @return The number of messages.
+     */
+    public int size()
+    {
+        return messages.length;
+    }
+
+    /**
+     * Deserializes the message at an index. Only the classes resolved by a
+     * <code>ClusterObjectInputStream</code> without a validator are read.
+     *
+     * @param index The index of the message.
+     * @return The message.
+     * @throws IOException If the message could not be read.
+     * @throws ClassNotFoundException If a class of the message could not be loaded.
+     */
+    public Message getMessage(int index) throws IOException, ClassNotFoundException
+    {
+        return getMessage(index, null);
+    }
+
+    /**
+     * Deserializes the message at an index. Only the classes resolved by a
+     * <code>ClusterObjectInputStream</code> are read.
+     *
+     * @param index The index of the message.
+     * @param validator The validator deciding which application types may be
+     * read; may be <code>null</code>.
+     * @return The message.
+     * @throws IOException If the message could not be read or is not a message.
+     * @throws ClassNotFoundException If a class of the message could not be loaded.
+     */
+    public Message getMessage(int index, DeserializationValidator validator) throws IOException, ClassNotFoundException
+    {
+        ObjectInputStream in = new ClusterObjectInputStream(new ByteArrayInputStream(messages[index]), validator);
+        try
+        {
+            Object message = in.readObject();
+            if (!(message instanceof Message))
+                throw new IOException("The batch holds a " + (message == null ? "null" : message.getClass().getName())
+                        + " instead of a message.");
+            return (Message)message;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns whether subscribers' selectors are evaluated for the message at an index.
+     *
+     * @param index The index of the message.
+     * @return <code>true</code> if the selectors are evaluated.
+     */
+    public boolean isEvalSelector(int index)
+    {
+        return evalSelectors[index];
+    }
+
+    /**
+     * Serializes a message for inclusion in a batch.
+     *
+     * @param message The message.
+     * @return The serialized message.
+     * @throws IOException If the message could not be serialized.
+     */
+    public static byte[] serialize(Message message) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(message);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,445 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.services.messaging;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import flex.messaging.cluster.ClusterException;
+import flex.messaging.cluster.ClusterManager;
+import flex.messaging.log.Log;
+import flex.messaging.messages.Message;
+import flex.messaging.services.MessageService;
+
+/**
+ * Coalesces the messages a <code>MessageService</code> pushes to its cluster peers.
+ * Each message is serialized once, however many peers it goes to, and is held for
+ * the <code>cluster-batch-window-millis</code> of its destination. All messages
+ * pending for a peer and destination are then sent as a single
+ * <code>pushMessagesFromPeer</code> or <code>pushMessagesFromPeerToPeer</code>
+ * operation, in the order they were sent. Batches for the same peer and
+ * destination are sent one at a time, oldest first, whichever thread sends them.
+ */
+public class PeerMessageBatcher
+{
+    /**
+     * The number of pending messages at which a batch is sent without waiting
+     * for its window to close.
+     */
+    public static final int MAX_BATCH_SIZE = 500;
+
+    /**
+     * The total size in bytes of the serialized messages at which a batch is sent
+     * without waiting for its window to close. A message that would take a batch
+     * past it starts a new batch. This keeps a batch, together with the operation
+     * that carries it, well within the frames of the TCP cluster transport (see
+     * <code>TcpClusterTransport.MAX_FRAME_SIZE</code>).
+     */
+    public static final int MAX_BATCH_BYTES = 1024 * 1024;
+
+    private static final int UNSERIALIZABLE_MESSAGE = 10220;
+    private static final int BATCHER_STOPPED = 10224;
+
+    private final MessageService service;
+    private final String serviceType;
+
+    // Pending batches by destination and peer. Guarded by this.
+    private final Map<BatchKey, PendingBatch> pending = new HashMap<BatchKey, PendingBatch>();
+    // Batches taken from pending and not sent yet, by destination and peer. Guarded by this.
+    private final Map<BatchKey, SendQueue> sendQueues = new HashMap<BatchKey, SendQueue>();
+    private ScheduledThreadPoolExecutor flushService;
+    private boolean stopped;
+
+    /**
+     * Constructs a batcher for a message service.
+     *
+     * @param service The message service whose messages are batched.
+     */
+    public PeerMessageBatcher(MessageService service)
+    {
+        this.service = service;
+        serviceType = service.getClass().getName();
+    }
+
+    /**
+     * Queues a message for the peers of a destination.
+     *
+     * @param destinationId The id of the destination the message was sent to.
+     * @param message The message.
+     * @param evalSelector Whether the peers evaluate their subscribers' selectors.
+     * @param peerAddresses The addresses of the peers to send the message to, or
+     * <code>null</code> to broadcast the message to all peers.
+     * @param windowMillis The time in milliseconds to wait for more messages before
+     * a batch is sent.
+     * @throws ClusterException If the message cannot be serialized or the batcher
+     * has been stopped.
+     */
+    public void send(String destinationId, Message message, boolean evalSelector,
+                     Collection<?> peerAddresses, long windowMillis)
+    {
+        if (peerAddresses != null && peerAddresses.isEmpty())
+            return;
+
+        byte[] bytes;
+        try
+        {
+            bytes = PeerMessageBatch.serialize(message);
+        }
+        catch (IOException e)
+        {
+            ClusterException ce = new ClusterException();
+            ce.setMessage(UNSERIALIZABLE_MESSAGE, new Object[] {message.getMessageId(), destinationId});
+            ce.setRootCause(e);
+            throw ce;
+        }
+
+        List<SendQueue> ready = null;
+        synchronized (this)
+        {
+            if (stopped)
+            {
+                ClusterException ce = new ClusterException();
+                ce.setMessage(BATCHER_STOPPED, new Object[] {message.getMessageId(), destinationId});
+                throw ce;
+            }
+
+            if (peerAddresses == null)
+            {
+                ready = add(new BatchKey(destinationId, null), bytes, evalSelector, windowMillis, ready);
+            }
+            else
+            {
+                for (Object address : peerAddresses)
+                    ready = add(new BatchKey(destinationId, address), bytes, evalSelector, windowMillis, ready);
+            }
+        }
+
+        if (ready != null)
+        {
+            for (SendQueue queue : ready)
+                drain(queue);
+        }
+    }
+
+    /**
+     * Sends all pending batches immediately.
+     */
+    public void flush()
+    {
+        List<SendQueue> ready = new ArrayList<SendQueue>();
+        synchronized (this)
+        {
+            for (PendingBatch batch : pending.values())
+            {
+                SendQueue queue = enqueue(batch);
+                if (queue != null)
+                    ready.add(queue);
+            }
+            pending.clear();
+        }
+        for (SendQueue queue : ready)
+            drain(queue);
+    }
+
+    /**
+     * Sends all pending batches and stops the thread that sends batches when
+     * their window closes. Messages sent to a stopped batcher are rejected.
+     */
+    public void stop()
+    {
+        ScheduledThreadPoolExecutor executor;
+        synchronized (this)
+        {
+            stopped = true;
+            executor = flushService;
+            flushService = null;
+        }
+        if (executor != null)
+            executor.shutdownNow();
+        flush();
+    }
+
+    /**
+     * Returns whether the batcher has been stopped.
+     *
+     * @return <code>true</code> if the batcher has been stopped.
+     */
+    public synchronized boolean isStopped()
+    {
+        return stopped;
+    }
+
+    /**
+     * Returns the number of batches waiting to be sent.
+     *
+     * @return The number of pending batches.
+     */
+    public synchronized int getPendingBatchCount()
+    {
+        return pending.size();
+    }
+
+    /**
+     * Adds a message to the pending batch for a key, creating and scheduling the
+     * batch if needed. A batch that the message does not fit in, or that becomes
+     * full, is queued for sending, and its send queue is added to <code>ready</code>
+     * if the caller has to drain it. Must be called while holding the lock on this
+     * batcher.
+     */
+    private List<SendQueue> add(BatchKey key, byte[] bytes, boolean evalSelector,
+                                long windowMillis, List<SendQueue> ready)
+    {
+        PendingBatch batch = pending.get(key);
+        if (batch != null && batch.byteCount + bytes.length > MAX_BATCH_BYTES)
+        {
+            pending.remove(key);
+            ready = enqueue(batch, ready);
+            batch = null;
+        }
+        if (batch == null)
+        {
+            batch = new PendingBatch(key);
+            pending.put(key, batch);
+            getFlushService().schedule(new FlushTask(batch), windowMillis, TimeUnit.MILLISECONDS);
+        }
+        batch.messages.add(bytes);
+        batch.evalSelectors.add(Boolean.valueOf(evalSelector));
+        batch.byteCount += bytes.length;
+
+        if (batch.messages.size() >= MAX_BATCH_SIZE || batch.byteCount >= MAX_BATCH_BYTES)
+        {
+            pending.remove(key);
+            ready = enqueue(batch, ready);
+        }
+        return ready;
+    }
+
+    /**
+     * Queues a batch that has been removed from the pending batches for sending,
+     * adding its send queue to <code>ready</code> if the caller has to drain it.
+     * Must be called while holding the lock on this batcher.
+     */
+    private List<SendQueue> enqueue(PendingBatch batch, List<SendQueue> ready)
+    {
+        SendQueue queue = enqueue(batch);
+        if (queue != null)
+        {
+            if (ready == null)
+                ready = new ArrayList<SendQueue>();
+            ready.add(queue);
+        }
+        return ready;
+    }
+
+    /**
+     * Queues a batch that has been removed from the pending batches for sending.
+     * Must be called while holding the lock on this batcher.
+     *
+     * @return The send queue, if the caller has to drain it, or <code>null</code>
+     * if another thread is already draining it and will send the batch.
+     */
+    private SendQueue enqueue(PendingBatch batch)
+    {
+        SendQueue queue = sendQueues.get(batch.key);
+        if (queue == null)
+        {
+            queue = new SendQueue(batch.key);
+            sendQueues.put(batch.key, queue);
+        }
+        queue.batches.add(batch);
+        if (queue.draining)
+            return null;
+        queue.draining = true;
+        return queue;
+    }
+
+    /**
+     * Sends the batches of a send queue in order until it is empty. Only one
+     * thread drains a queue at a time, so batches for the same peer and
+     * destination are never sent concurrently or out of order.
+     */
+    private void drain(SendQueue queue)
+    {
+        while (true)
+        {
+            PendingBatch batch;
+            synchronized (this)
+            {
+                batch = queue.batches.poll();
+                if (batch == null)
+                {
+                    queue.draining = false;
+                    sendQueues.remove(queue.key);
+                    return;
+                }
+            }
+
+            try
+            {
+                send(batch);
+            }
+            catch (Throwable t)
+            {
+                Log.getLogger(MessageService.LOG_CATEGORY).error("Failed to send " + batch.messages.size()
+                        + " message(s) of destination '" + batch.key.destinationId + "' to the cluster.", t);
+            }
+        }
+    }
+
+    private ScheduledThreadPoolExecutor getFlushService()
+    {
+        if (flushService == null)
+        {
+            flushService = new ScheduledThreadPoolExecutor(1, new FlushThreadFactory());
+            flushService.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        }
+        return flushService;
+    }
+
+    /**
+     * Sends a batch that has been removed from the pending batches.
+     */
+    private void send(PendingBatch batch)
+    {
+        PeerMessageBatch messages = new PeerMessageBatch(batch.messages, batch.evalSelectors);
+        ClusterManager clm = service.getMessageBroker().getClusterManager();
+        BatchKey key = batch.key;
+        if (key.address == null)
+        {
+            clm.invokeServiceOperation(serviceType, key.destinationId,
+                    ClusterManager.OPERATION_PUSH_MESSAGES_FROM_PEER, new Object[] {messages});
+        }
+        else
+        {
+            clm.invokePeerToPeerOperation(serviceType, key.destinationId,
+                    ClusterManager.OPERATION_PUSH_MESSAGES_FROM_PEER_TO_PEER, new Object[] {messages}, key.address);
+        }
+    }
+
+    /**
+     * Identifies the batch of a destination and peer; a <code>null</code> address
+     * identifies the batch broadcast to all peers.
+     */
+    private static final class BatchKey
+    {
+        final String destinationId;
+        final Object address;
+
+        BatchKey(String destinationId, Object address)
+        {
+            this.destinationId = destinationId;
+            this.address = address;
+        }
+
+        @Override public int hashCode()
+        {
+            return 31 * destinationId.hashCode() + (address == null ? 0 : address.hashCode());
+        }
+
+        @Override public boolean equals(Object o)
+        {
+            if (!(o instanceof BatchKey))
+                return false;
+            BatchKey other = (BatchKey)o;
+            return destinationId.equals(other.destinationId)
+                    && (address == null ? other.address == null : address.equals(other.address));
+        }
+    }
+
+    /**
+     * The messages waiting to be sent for a destination and peer.
+     */
+    private static final class PendingBatch
+    {
+        final BatchKey key;
+        final List<byte[]> messages = new ArrayList<byte[]>();
+        final List<Boolean> evalSelectors = new ArrayList<Boolean>();
+        // The total size of the serialized messages.
+        int byteCount;
+
+        PendingBatch(BatchKey key)
+        {
+            this.key = key;
+        }
+    }
+
+    /**
+     * The batches of a destination and peer waiting to be sent, oldest first.
+     */
+    private static final class SendQueue
+    {
+        final BatchKey key;
+        final ArrayDeque<PendingBatch> batches = new ArrayDeque<PendingBatch>();
+        // Whether a thread is sending the batches. Guarded by the batcher.
+        boolean draining;
+
+        SendQueue(BatchKey key)
+        {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Sends a batch when its window closes, unless it has already been sent.
+     */
+    private final class FlushTask implements Runnable
+    {
+        private final PendingBatch batch;
+
+        FlushTask(PendingBatch batch)
+        {
+            this.batch = batch;
+        }
+
+        public void run()
+        {
+            SendQueue queue;
+            synchronized (PeerMessageBatcher.this)
+            {
+                if (pending.get(batch.key) != batch)
+                    return;
+                pending.remove(batch.key);
+                queue = enqueue(batch);
+            }
+
+            if (queue != null)
+                drain(queue);
+        }
+    }
+
+    /**
+     * Creates the daemon thread that sends batches when their window closes.
+     */
+    private final class FlushThreadFactory implements ThreadFactory
+    {
+        public Thread newThread(Runnable r)
+        {
+            Thread t = new Thread(r);
+            t.setName("PeerMessageBatcher-" + service.getId());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
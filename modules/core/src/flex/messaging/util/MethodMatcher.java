@@ -23,7 +23,13 @@ import flex.messaging.MessageException;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 
 /**
  * A utility class used to find a suitable method based on matching
@@ -34,14 +40,60 @@ import java.lang.reflect.Method;
  * when several overloaded methods match very closely through the use
  * of various combinations of generic types.
  *
+ * Once a method has been matched it can be invoked through
+ * <code>invoke</code>, which binds a <code>MethodHandle</code>
+ * for the method and caches it alongside the match so that subsequent
+ * invocations avoid reflective dispatch and argument array copies.
+ *
  *
  */
 public class MethodMatcher
 {
     private final Map<MethodKey, Method> methodCache = new HashMap<MethodKey, Method>();
+    private final Map<Method, MethodHandle> methodHandleCache = new ConcurrentHashMap<Method, MethodHandle>();
     private static final int ARGUMENT_CONVERSION_ERROR = 10006;
     private static final int CANNOT_INVOKE_METHOD = 10007;
 
+    /**
+     * Invoker type for bound method handles; takes the target instance and
+     * the list of (already converted) parameters.
+     */
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, List.class);
+
+    /**
+     * Handle for <code>List.get(int)</code>, used to pull individual
+     * arguments out of the parameter list without copying it to an array.
+     */
+    private static final MethodHandle LIST_GET;
+
+    /**
+     * Handle for the <code>InvocationTargetException(Throwable)</code>
+     * constructor, used to wrap exceptions thrown by the bound method itself
+     * so they can be told apart from failures adapting the arguments.
+     */
+    private static final MethodHandle NEW_INVOCATION_TARGET_EXCEPTION;
+    static
+    {
+        try
+        {
+            LIST_GET = MethodHandles.publicLookup().findVirtual(List.class, "get",
+                    MethodType.methodType(Object.class, int.class));
+            NEW_INVOCATION_TARGET_EXCEPTION = MethodHandles.publicLookup().findConstructor(InvocationTargetException.class,
+                    MethodType.methodType(void.class, Throwable.class));
+        }
+        catch (Exception e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Marker cached for methods that cannot be bound to a handle, for
+     * example public methods declared by non-public classes. Such methods
+     * are always invoked reflectively. The marker itself is never invoked.
+     */
+    private static final MethodHandle UNBOUND = MethodHandles.identity(Object.class);
+
     /**
      * Default constructor.
      */
@@ -188,6 +240,117 @@ public class MethodMatcher
     }
 
 
+    /**
+     * Invokes a method previously returned by <code>getMethod</code> on the given
+     * instance. The parameters must already have been converted by
+     * <code>getMethod</code>.
+     *
+     * @param method The method to invoke.
+     * @param instance The target instance; ignored for static methods.
+     * @param parameters The converted parameters.
+     * @return The result of the invocation, or <code>null</code> for void methods.
+     * @throws IllegalAccessException If the method is not accessible.
+     * @throws InvocationTargetException If the invoked method throws an exception.
+     * @throws IllegalArgumentException If the instance or the parameters do not
+     * match the method signature.
+     */
+    public Object invoke(Method method, Object instance, List parameters)
+            throws IllegalAccessException, InvocationTargetException
+    {
+        MethodHandle handle = getMethodHandle(method);
+        if (handle == UNBOUND)
+            return method.invoke(instance, parameters.toArray());
+
+        if (parameters.size() != method.getParameterTypes().length)
+            throw new IllegalArgumentException("wrong number of arguments");
+
+        if (instance == null && !Modifier.isStatic(method.getModifiers()))
+            throw new NullPointerException();
+
+        try
+        {
+            return (Object)handle.invokeExact(instance, parameters);
+        }
+        catch (InvocationTargetException e)
+        {
+            throw e;
+        }
+        catch (Error e)
+        {
+            throw e;
+        }
+        catch (Throwable t)
+        {
+            // Only exceptions thrown by the method itself are wrapped in an
+            // InvocationTargetException by the handle; anything else failed
+            // while casting or unboxing the arguments, as Method.invoke reports.
+            throw new IllegalArgumentException("argument type mismatch", t);
+        }
+    }
+
+    /**
+     * Returns the cached invoker handle for the method, binding one on first use.
+     *
+     * @param method The method.
+     * @return The invoker handle, or <code>UNBOUND</code> if the method cannot be bound.
+     */
+    private MethodHandle getMethodHandle(Method method)
+    {
+        MethodHandle handle = methodHandleCache.get(method);
+        if (handle == null)
+        {
+            handle = bindMethodHandle(method);
+            methodHandleCache.put(method, handle);
+        }
+        return handle;
+    }
+
+    /**
+     * Adapts the method to an invoker of type <code>(Object, List)Object</code>.
+     * Each argument is read from the parameter list by index and unboxed as
+     * required by the method signature, so no argument array is allocated.
+     *
+     * @param method The method.
+     * @return The invoker handle, or <code>UNBOUND</code> if the method cannot be bound.
+     */
+    private static MethodHandle bindMethodHandle(Method method)
+    {
+        MethodHandle handle;
+        try
+        {
+            handle = MethodHandles.publicLookup().unreflect(method);
+        }
+        catch (IllegalAccessException e)
+        {
+            return UNBOUND;
+        }
+
+        // Wrap whatever the method throws before any argument adaptation is
+        // added, so adaptation failures are not mistaken for method failures.
+        MethodHandle wrap = MethodHandles.filterArguments(
+                MethodHandles.throwException(handle.type().returnType(), InvocationTargetException.class),
+                0, NEW_INVOCATION_TARGET_EXCEPTION);
+        handle = MethodHandles.catchException(handle, Throwable.class,
+                MethodHandles.dropArguments(wrap, 1, handle.type().parameterList()));
+
+        int paramCount = method.getParameterTypes().length;
+        if (Modifier.isStatic(method.getModifiers()))
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+
+        // (Object, Object...)Object, boxing the return value; void returns null.
+        handle = handle.asType(MethodType.genericMethodType(paramCount + 1));
+
+        // Read argument i from the list for each parameter position, then fold
+        // all list arguments into the single list parameter of the invoker.
+        int[] reorder = new int[paramCount + 1];
+        for (int i = 0; i < paramCount; i++)
+        {
+            handle = MethodHandles.filterArguments(handle, i + 1, MethodHandles.insertArguments(LIST_GET, 1, i));
+            reorder[i + 1] = 1;
+        }
+        return MethodHandles.permuteArguments(handle, INVOKER_TYPE, reorder);
+    }
+
     /**
      * Utility method to convert a collection of parameters to desired types. We keep track
      * of the progress of the conversion to allow callers to gauge the success of the conversion.
@@ -27,7 +27,7 @@ import java.util.concurrent.Future;
  */
 public abstract class TimeoutAbstractObject implements TimeoutCapable
 {
-    private long lastUse;
+    private volatile long lastUse;
     private volatile boolean timeoutCanceled;
     private TimeoutManager timeoutManager;
     private Runnable timeoutTask;
@@ -56,10 +56,7 @@ public abstract class TimeoutAbstractObject implements TimeoutCapable
     /** {@inheritDoc} */
     public long getLastUse()
     {
-        synchronized (lock)
-        {
-            return lastUse;
-        }
+        return lastUse;
     }
 
     /**
@@ -68,21 +65,18 @@ public abstract class TimeoutAbstractObject implements TimeoutCapable
      */
     public void setLastUse(long lastUse)
     {
-        synchronized (lock)
-        {
-            this.lastUse = lastUse;
-        }
+        this.lastUse = lastUse;
     }
 
     /**
      * Updates the time this object was last used to be the current time.
+     * The timestamp is volatile rather than guarded by the lock so that
+     * frequent calls, such as the ones made by every FlexClient attribute
+     * access, do not contend.
      */
     public void updateLastUse()
     {
-        synchronized (lock)
-        {
-            this.lastUse = System.currentTimeMillis();
-        }
+        this.lastUse = System.currentTimeMillis();
     }
 
     /**
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks the maximum of the values recorded within a sliding time window
+ * without locking. The window is divided into slots; each slot holds the
+ * maximum recorded during one slot interval together with the index of that
+ * interval, so slots left over from earlier windows are recognized and reused.
+ * The window therefore slides in steps of one slot interval.
+ */
+public final class SlidingWindowMax
+{
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructs a tracker for a window of the given length.
+     *
+     * @param windowMillis The length of the window in milliseconds.
+     * @param slots The number of slots the window is divided into.
+     */
+    public SlidingWindowMax(long windowMillis, int slots)
+    {
+        this.slotMillis = Math.max(windowMillis / slots, 1);
+        this.slots = new AtomicLongArray(slots);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Variables
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * The slots, each holding the index of its interval in the upper 32 bits
+     * and the maximum recorded during the interval in the lower 32 bits.
+     */
+    private final AtomicLongArray slots;
+
+    private final long slotMillis;
+
+    //--------------------------------------------------------------------------
+    //
+    // Public Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Records a value at the given time.
+     *
+     * @param value The value.
+     * @param now The current time in milliseconds.
+     */
+    public void record(int value, long now)
+    {
+        int interval = (int)(now / slotMillis);
+        int i = (interval & Integer.MAX_VALUE) % slots.length();
+        while (true)
+        {
+            long slot = slots.get(i);
+            int slotInterval = (int)(slot >>> 32);
+            int slotMax = (int)slot;
+            int newMax;
+            if (slotInterval == interval)
+            {
+                if (slotMax >= value)
+                    return;
+                newMax = value;
+            }
+            else if (slotInterval - interval > 0)
+            {
+                return; // A later interval already owns the slot.
+            }
+            else
+            {
+                newMax = value;
+            }
+            if (slots.compareAndSet(i, slot, pack(interval, newMax)))
+                return;
+        }
+    }
+
+    /**
+     * Returns the maximum of the values recorded within the window that ends
+     * at the given time.
+     *
+     * @param now The current time in milliseconds.
+     * @return The maximum, or <code>Integer.MIN_VALUE</code> if no value was
+     *         recorded within the window.
+     */
+    public int getMax(long now)
+    {
+        int interval = (int)(now / slotMillis);
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < slots.length(); i++)
+        {
+            long slot = slots.get(i);
+            int age = interval - (int)(slot >>> 32);
+            if (slot != 0 && age >= 0 && age < slots.length() && (int)slot > max)
+                max = (int)slot;
+        }
+        return max;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private Methods
+    //
+    //--------------------------------------------------------------------------
+
+    private static long pack(int interval, int value)
+    {
+        return ((long)interval << 32) | (value & 0xFFFFFFFFL);
+    }
+}
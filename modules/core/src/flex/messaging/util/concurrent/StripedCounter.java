@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that spreads concurrent updates over several stripes, chosen by
+ * the updating thread, so that threads updating it at the same time rarely
+ * contend for the same memory. Reading the count sums the stripes; the sum is
+ * exact when no updates are in progress.
+ */
+public final class StripedCounter
+{
+    //--------------------------------------------------------------------------
+    //
+    // Private Static Constants
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * The distance between stripes in array elements, keeping each stripe on
+     * its own cache line.
+     */
+    private static final int PADDING = 8;
+
+    private static final int MAX_STRIPES = 64;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructs a counter with a stripe count suited to the number of processors.
+     */
+    public StripedCounter()
+    {
+        int stripes = 1;
+        while (stripes < 2 * Runtime.getRuntime().availableProcessors() && stripes < MAX_STRIPES)
+            stripes <<= 1;
+        mask = stripes - 1;
+        cells = new AtomicLongArray(stripes * PADDING);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Variables
+    //
+    //--------------------------------------------------------------------------
+
+    private final AtomicLongArray cells;
+
+    private final int mask;
+
+    //--------------------------------------------------------------------------
+    //
+    // Public Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Adds to the count.
+     *
+     * @param delta The amount to add; may be negative.
+     */
+    public void add(long delta)
+    {
+        cells.addAndGet(((int)Thread.currentThread().getId() & mask) * PADDING, delta);
+    }
+
+    /**
+     * Adds one to the count.
+     */
+    public void increment()
+    {
+        add(1);
+    }
+
+    /**
+     * Subtracts one from the count.
+     */
+    public void decrement()
+    {
+        add(-1);
+    }
+
+    /**
+     * Returns the count.
+     *
+     * @return The sum of the stripes.
+     */
+    public long sum()
+    {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PADDING)
+            sum += cells.get(i);
+        return sum;
+    }
+}
@@ -19,6 +19,7 @@ package flex.management.runtime.messaging.services.http;
 import flex.management.BaseControl;
 import flex.management.runtime.messaging.services.ServiceAdapterControl;
 import flex.messaging.services.http.HTTPProxyAdapter;
+import flex.messaging.services.http.proxy.ResponseCache;
 
 /**
  *
@@ -52,4 +53,65 @@ public class HTTPProxyAdapterControl extends ServiceAdapterControl implements
     {
         return TYPE;
     }
+
+    /**
+     *
+     *  (non-Javadoc)
+     * @see flex.management.runtime.messaging.services.http.HTTPProxyAdapterControlMBean#getCacheHitCount()
+     */
+    public Long getCacheHitCount()
+    {
+        ResponseCache cache = getResponseCache();
+        return Long.valueOf(cache != null ? cache.getHitCount() : 0);
+    }
+
+    /**
+     *
+     *  (non-Javadoc)
+     * @see flex.management.runtime.messaging.services.http.HTTPProxyAdapterControlMBean#getCacheMissCount()
+     */
+    public Long getCacheMissCount()
+    {
+        ResponseCache cache = getResponseCache();
+        return Long.valueOf(cache != null ? cache.getMissCount() : 0);
+    }
+
+    /**
+     *
+     *  (non-Javadoc)
+     * @see flex.management.runtime.messaging.services.http.HTTPProxyAdapterControlMBean#getCacheRevalidationCount()
+     */
+    public Long getCacheRevalidationCount()
+    {
+        ResponseCache cache = getResponseCache();
+        return Long.valueOf(cache != null ? cache.getRevalidationCount() : 0);
+    }
+
+    /**
+     *
+     *  (non-Javadoc)
+     * @see flex.management.runtime.messaging.services.http.HTTPProxyAdapterControlMBean#getCacheEntryCount()
+     */
+    public Integer getCacheEntryCount()
+    {
+        ResponseCache cache = getResponseCache();
+        return Integer.valueOf(cache != null ? cache.getEntryCount() : 0);
+    }
+
+    /**
+     *
+     *  (non-Javadoc)
+     * @see flex.management.runtime.messaging.services.http.HTTPProxyAdapterControlMBean#resetCacheCounts()
+     */
+    public void resetCacheCounts()
+    {
+        ResponseCache cache = getResponseCache();
+        if (cache != null)
+            cache.resetCounts();
+    }
+
+    private ResponseCache getResponseCache()
+    {
+        return ((HTTPProxyAdapter)serviceAdapter).getResponseCache();
+    }
 }
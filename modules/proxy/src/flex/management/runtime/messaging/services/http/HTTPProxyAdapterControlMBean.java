@@ -16,6 +16,8 @@
  */
 package flex.management.runtime.messaging.services.http;
 
+import java.io.IOException;
+
 import flex.management.runtime.messaging.services.ServiceAdapterControlMBean;
 
 /**
@@ -25,5 +27,45 @@ import flex.management.runtime.messaging.services.ServiceAdapterControlMBean;
 public interface HTTPProxyAdapterControlMBean extends
         ServiceAdapterControlMBean
 {
-    // Empty for now.
+    /**
+     * Returns the number of requests answered from the response cache without
+     * contacting the upstream server.
+     *
+     * @return The number of cache hits; 0 if responses are not cached.
+     * @throws IOException Throws IOException.
+     */
+    Long getCacheHitCount() throws IOException;
+
+    /**
+     * Returns the number of cacheable requests the upstream server answered
+     * with a full response.
+     *
+     * @return The number of cache misses; 0 if responses are not cached.
+     * @throws IOException Throws IOException.
+     */
+    Long getCacheMissCount() throws IOException;
+
+    /**
+     * Returns the number of requests answered from the response cache after
+     * the upstream server confirmed a stale response was still valid.
+     *
+     * @return The number of cache revalidations; 0 if responses are not cached.
+     * @throws IOException Throws IOException.
+     */
+    Long getCacheRevalidationCount() throws IOException;
+
+    /**
+     * Returns the number of responses in the response cache.
+     *
+     * @return The number of cached responses; 0 if responses are not cached.
+     * @throws IOException Throws IOException.
+     */
+    Integer getCacheEntryCount() throws IOException;
+
+    /**
+     * Resets the cache hit, miss and revalidation counts.
+     *
+     * @throws IOException Throws IOException.
+     */
+    void resetCacheCounts() throws IOException;
 }
@@ -0,0 +1,647 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.services.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.apache.commons.httpclient.HttpMethodBase;
+
+import flex.messaging.FlexContext;
+import flex.messaging.MessageBroker;
+import flex.messaging.MessageException;
+import flex.messaging.client.FlexClient;
+import flex.messaging.FlexSession;
+import flex.messaging.config.ConfigMap;
+import flex.messaging.endpoints.Endpoint;
+import flex.messaging.messages.AcknowledgeMessage;
+import flex.messaging.messages.HTTPMessage;
+import flex.messaging.messages.Message;
+import flex.messaging.messages.SOAPMessage;
+import flex.messaging.services.http.proxy.ProxyContext;
+import flex.messaging.services.http.proxy.ProxyException;
+
+/**
+ * An <code>HTTPProxyAdapter</code> that bounds the number of upstream requests
+ * in progress and the time a request thread waits for one. Requests go through
+ * the same filter chain as with <code>HTTPProxyAdapter</code>, and are sent with
+ * the same blocking HTTP client from a pool of <code>upstream-threads</code>
+ * threads.
+ * <p>
+ * This does not save threads: <code>invoke</code> holds both the request thread,
+ * as endpoints answer a message on the thread that received it, and an upstream
+ * thread while the request is in progress. What it bounds is the time the
+ * request thread is held: after <code>request-timeout-millis</code> the upstream
+ * request is aborted and the message fails with status 504. When
+ * <code>upstream-threads</code> requests are in progress and
+ * <code>max-pending-requests</code> more are waiting, further requests fail
+ * immediately with status 503 rather than tying up more request threads on a
+ * slow upstream server.
+ * </p>
+ * <p>
+ * <code>invokeAsync</code> returns as soon as the request is queued and reports
+ * the response to a <code>ProxyResponseListener</code>, from the upstream thread
+ * that sent the request. No endpoint calls it; it is meant for server-side code
+ * that proxies requests without a request thread to answer on.
+ * </p>
+ * <p>
+ * The filters run on the upstream thread against a copy of the headers, cookies
+ * and URL of the client request taken when the request is queued, since the
+ * container may recycle the client request once the request thread is done.
+ * </p>
+ * <pre>
+ * &lt;properties&gt;
+ *     &lt;upstream-threads&gt;50&lt;/upstream-threads&gt;
+ *     &lt;max-pending-requests&gt;500&lt;/max-pending-requests&gt;
+ *     &lt;request-timeout-millis&gt;30000&lt;/request-timeout-millis&gt;
+ * &lt;/properties&gt;
+ * </pre>
+ * <p>
+ * Cookies and headers from the upstream response are copied to the client
+ * response by <code>invoke</code> once the request completes, and are not
+ * copied by <code>invokeAsync</code>, whose request thread may already be done.
+ * </p>
+ */
+public class BoundedHTTPProxyAdapter extends HTTPProxyAdapter
+{
+    public static final String UPSTREAM_THREADS = "upstream-threads";
+    public static final String MAX_PENDING_REQUESTS = "max-pending-requests";
+    public static final String REQUEST_TIMEOUT_MILLIS = "request-timeout-millis";
+
+    public static final int DEFAULT_UPSTREAM_THREADS = 50;
+    public static final int DEFAULT_MAX_PENDING_REQUESTS = 500;
+    public static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 30000;
+
+    private static final int REQUEST_TIMED_OUT = 10720;
+    private static final int TOO_MANY_PENDING_REQUESTS = 10721;
+
+    private int upstreamThreads = DEFAULT_UPSTREAM_THREADS;
+    private int maxPendingRequests = DEFAULT_MAX_PENDING_REQUESTS;
+    private long requestTimeoutMillis = DEFAULT_REQUEST_TIMEOUT_MILLIS;
+
+    private ThreadPoolExecutor executor;
+
+    //--------------------------------------------------------------------------
+    //
+    // Constructor
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructs an unmanaged <code>BoundedHTTPProxyAdapter</code> instance.
+     */
+    public BoundedHTTPProxyAdapter()
+    {
+        this(false);
+    }
+
+    /**
+     * Constructs an <code>BoundedHTTPProxyAdapter</code> instance.
+     *
+     * @param enableManagement <code>true</code> if the <code>BoundedHTTPProxyAdapter</code> has a
+     *                         corresponding MBean control for management; otherwise <code>false</code>.
+     */
+    public BoundedHTTPProxyAdapter(boolean enableManagement)
+    {
+        super(enableManagement);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Initialize, validate, start, and stop methods.
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Initializes the <code>BoundedHTTPProxyAdapter</code> with the properties of
+     * <code>HTTPProxyAdapter</code> and <code>upstream-threads</code>,
+     * <code>max-pending-requests</code> and <code>request-timeout-millis</code>.
+     *
+     * @param id The id of the adapter.
+     * @param properties Properties for the adapter.
+     */
+    @Override public void initialize(String id, ConfigMap properties)
+    {
+        super.initialize(id, properties);
+
+        if (properties == null || properties.size() == 0)
+            return;
+
+        if (properties.getProperty(UPSTREAM_THREADS) != null)
+            setUpstreamThreads(properties.getPropertyAsInt(UPSTREAM_THREADS, DEFAULT_UPSTREAM_THREADS));
+
+        if (properties.getProperty(MAX_PENDING_REQUESTS) != null)
+            setMaxPendingRequests(properties.getPropertyAsInt(MAX_PENDING_REQUESTS, DEFAULT_MAX_PENDING_REQUESTS));
+
+        if (properties.getProperty(REQUEST_TIMEOUT_MILLIS) != null)
+            setRequestTimeoutMillis(properties.getPropertyAsLong(REQUEST_TIMEOUT_MILLIS, DEFAULT_REQUEST_TIMEOUT_MILLIS));
+    }
+
+    /**
+     * Stops the adapter and the threads that send upstream requests.
+     */
+    @Override public void stop()
+    {
+        super.stop();
+
+        ThreadPoolExecutor e;
+        synchronized (this)
+        {
+            e = executor;
+            executor = null;
+        }
+        if (e != null)
+            e.shutdownNow();
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Public Getters and Setters for Destination properties
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the number of threads that send upstream requests.
+     *
+     * @return The number of upstream threads.
+     */
+    public int getUpstreamThreads()
+    {
+        return upstreamThreads;
+    }
+
+    /**
+     * Sets the number of threads that send upstream requests. Takes effect
+     * when the first request is proxied.
+     *
+     * @param upstreamThreads The number of upstream threads; values below 1 are ignored.
+     */
+    public void setUpstreamThreads(int upstreamThreads)
+    {
+        if (upstreamThreads > 0)
+            this.upstreamThreads = upstreamThreads;
+    }
+
+    /**
+     * Returns the number of requests that can wait for an upstream thread.
+     *
+     * @return The maximum number of pending requests.
+     */
+    public int getMaxPendingRequests()
+    {
+        return maxPendingRequests;
+    }
+
+    /**
+     * Sets the number of requests that can wait for an upstream thread. Takes
+     * effect when the first request is proxied.
+     *
+     * @param maxPendingRequests The maximum number of pending requests; negative values are ignored.
+     */
+    public void setMaxPendingRequests(int maxPendingRequests)
+    {
+        if (maxPendingRequests >= 0)
+            this.maxPendingRequests = maxPendingRequests;
+    }
+
+    /**
+     * Returns the time <code>invoke</code> waits for the upstream response.
+     *
+     * @return The request timeout in milliseconds.
+     */
+    public long getRequestTimeoutMillis()
+    {
+        return requestTimeoutMillis;
+    }
+
+    /**
+     * Sets the time <code>invoke</code> waits for the upstream response.
+     *
+     * @param requestTimeoutMillis The request timeout in milliseconds; values below 1 are ignored.
+     */
+    public void setRequestTimeoutMillis(long requestTimeoutMillis)
+    {
+        if (requestTimeoutMillis > 0)
+            this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Other public APIs
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Proxies the request on an upstream thread and waits for at most
+     * <code>request-timeout-millis</code> for the response.
+     *
+     * @param msg The <code>HTTPMessage</code> to proxy.
+     * @return The acknowledgement carrying the response.
+     */
+    @Override public Object invoke(Message msg)
+    {
+        HTTPMessage message = (HTTPMessage)msg;
+        HttpServletResponse clientResponse = FlexContext.getHttpResponse();
+        BufferedResponse bufferedResponse = clientResponse != null ? new BufferedResponse(clientResponse) : null;
+        WaitingListener listener = new WaitingListener();
+        ProxyTask task = submit(message, listener, bufferedResponse);
+
+        boolean completed;
+        try
+        {
+            completed = listener.latch.await(requestTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            completed = false;
+        }
+
+        if (!completed)
+        {
+            // Unblock the upstream thread; its outcome is ignored.
+            task.cancel();
+
+            ProxyException pe = new ProxyException();
+            pe.setMessage(REQUEST_TIMED_OUT, new Object[] {message.getUrl(), Long.valueOf(requestTimeoutMillis)});
+            pe.setStatusCode(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+            throw pe;
+        }
+
+        if (listener.exception != null)
+            throw listener.exception;
+
+        if (bufferedResponse != null)
+            bufferedResponse.replay();
+        return listener.response;
+    }
+
+    /**
+     * Queues a request for an upstream thread and returns without waiting for
+     * the response. The listener is called once the response has been through
+     * the filter chain, or once the request has failed.
+     *
+     * @param msg The <code>HTTPMessage</code> to proxy.
+     * @param listener The listener to report the outcome to.
+     * @throws ProxyException With status 503 if too many requests are pending.
+     */
+    public void invokeAsync(Message msg, ProxyResponseListener listener)
+    {
+        submit((HTTPMessage)msg, listener, null);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Protected/private APIs
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Sets up the context on the calling thread, where the client request is
+     * available, and queues the filter chain for an upstream thread.
+     */
+    private ProxyTask submit(HTTPMessage message, ProxyResponseListener listener, HttpServletResponse clientResponse)
+    {
+        ProxyContext context = new ProxyContext();
+        context.setSoapRequest(message instanceof SOAPMessage);
+        setupContext(context, message);
+        // A coalesced request must not wait for a shared response longer than invoke waits for it.
+        context.setCoalesceWaitMillis(Math.min(context.getCoalesceWaitMillis(), requestTimeoutMillis));
+
+        ProxyTask task = new ProxyTask(context, listener, clientResponse);
+        try
+        {
+            getExecutor().execute(task);
+        }
+        catch (RejectedExecutionException e)
+        {
+            ProxyException pe = new ProxyException();
+            pe.setMessage(TOO_MANY_PENDING_REQUESTS, new Object[] {message.getUrl()});
+            pe.setStatusCode(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            throw pe;
+        }
+        return task;
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor()
+    {
+        if (executor == null)
+        {
+            BlockingQueue<Runnable> queue = maxPendingRequests > 0 ?
+                    new LinkedBlockingQueue<Runnable>(maxPendingRequests) : new SynchronousQueue<Runnable>();
+            executor = new ThreadPoolExecutor(upstreamThreads, upstreamThreads, 60, TimeUnit.SECONDS,
+                    queue, new UpstreamThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Runs the filter chain on an upstream thread with the Flex context of the
+     * request that queued it, and a snapshot of its client request.
+     */
+    private final class ProxyTask implements Runnable
+    {
+        private final ProxyContext context;
+        private final ProxyResponseListener listener;
+        private final HttpServletResponse clientResponse;
+        private final FlexClient flexClient;
+        private final FlexSession flexSession;
+        private final MessageBroker broker;
+        private final HttpServletRequest clientRequest;
+        private final ServletConfig servletConfig;
+        private final Endpoint endpoint;
+        private volatile boolean cancelled;
+
+        ProxyTask(ProxyContext context, ProxyResponseListener listener, HttpServletResponse clientResponse)
+        {
+            this.context = context;
+            this.listener = listener;
+            this.clientResponse = clientResponse;
+            flexClient = FlexContext.getFlexClient();
+            flexSession = FlexContext.getFlexSession();
+            broker = FlexContext.getMessageBroker();
+            HttpServletRequest request = FlexContext.getHttpRequest();
+            clientRequest = request != null ? new RequestSnapshot(request) : null;
+            servletConfig = FlexContext.getServletConfig();
+            endpoint = FlexContext.getEndpoint();
+        }
+
+        /**
+         * Skips the request if it is still queued, or aborts it if it is in progress.
+         */
+        void cancel()
+        {
+            cancelled = true;
+            HttpMethodBase httpMethod = context.getHttpMethod();
+            if (httpMethod != null)
+                httpMethod.abort();
+        }
+
+        public void run()
+        {
+            if (cancelled)
+                return;
+
+            FlexContext.setThreadLocalObjects(flexClient, flexSession, broker, clientRequest, clientResponse, servletConfig);
+            FlexContext.setThreadLocalEndpoint(endpoint);
+            try
+            {
+                AcknowledgeMessage response;
+                try
+                {
+                    filterChain.invoke(context);
+                    response = createAcknowledgeMessage(context);
+                }
+                catch (MessageException e)
+                {
+                    listener.requestFailed(e);
+                    return;
+                }
+                catch (Throwable t)
+                {
+                    listener.requestFailed(new MessageException(t));
+                    return;
+                }
+                listener.responseReceived(response);
+            }
+            finally
+            {
+                FlexContext.clearThreadLocalObjects();
+            }
+        }
+    }
+
+    /**
+     * Holds the outcome of a request for <code>invoke</code>.
+     */
+    private static final class WaitingListener implements ProxyResponseListener
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        AcknowledgeMessage response;
+        MessageException exception;
+
+        public void responseReceived(AcknowledgeMessage response)
+        {
+            this.response = response;
+            latch.countDown();
+        }
+
+        public void requestFailed(MessageException exception)
+        {
+            this.exception = exception;
+            latch.countDown();
+        }
+    }
+
+    /**
+     * A copy of the parts of a client request the filters read: its headers,
+     * cookies and URL. Other methods read the client request itself, and must
+     * not be called from an upstream thread.
+     */
+    private static final class RequestSnapshot extends HttpServletRequestWrapper
+    {
+        private final List<String> headerNames = new ArrayList<String>();
+        private final Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        private final Cookie[] cookies;
+        private final String requestURL;
+        private final String scheme;
+        private final String serverName;
+        private final int serverPort;
+        private final boolean secure;
+
+        RequestSnapshot(HttpServletRequest request)
+        {
+            super(request);
+
+            Enumeration names = request.getHeaderNames();
+            while (names != null && names.hasMoreElements())
+            {
+                String name = (String)names.nextElement();
+                if (headers.containsKey(name))
+                    continue;
+                List<String> values = new ArrayList<String>();
+                Enumeration e = request.getHeaders(name);
+                while (e != null && e.hasMoreElements())
+                    values.add((String)e.nextElement());
+                headerNames.add(name);
+                headers.put(name, values);
+            }
+
+            Cookie[] requestCookies = request.getCookies();
+            if (requestCookies != null)
+            {
+                cookies = new Cookie[requestCookies.length];
+                for (int i = 0; i < requestCookies.length; i++)
+                    cookies[i] = (Cookie)requestCookies[i].clone();
+            }
+            else
+            {
+                cookies = null;
+            }
+
+            StringBuffer url = request.getRequestURL();
+            requestURL = url != null ? url.toString() : null;
+            scheme = request.getScheme();
+            serverName = request.getServerName();
+            serverPort = request.getServerPort();
+            secure = request.isSecure();
+        }
+
+        @Override public String getHeader(String name)
+        {
+            List<String> values = headers.get(name);
+            return values != null && !values.isEmpty() ? values.get(0) : null;
+        }
+
+        @Override public Enumeration getHeaders(String name)
+        {
+            List<String> values = headers.get(name);
+            return Collections.enumeration(values != null ? values : Collections.<String>emptyList());
+        }
+
+        @Override public Enumeration getHeaderNames()
+        {
+            return Collections.enumeration(headerNames);
+        }
+
+        @Override public Cookie[] getCookies()
+        {
+            return cookies;
+        }
+
+        @Override public StringBuffer getRequestURL()
+        {
+            return requestURL != null ? new StringBuffer(requestURL) : null;
+        }
+
+        @Override public String getScheme()
+        {
+            return scheme;
+        }
+
+        @Override public String getServerName()
+        {
+            return serverName;
+        }
+
+        @Override public int getServerPort()
+        {
+            return serverPort;
+        }
+
+        @Override public boolean isSecure()
+        {
+            return secure;
+        }
+    }
+
+    /**
+     * Collects the status, cookies and headers the filter chain sets on the
+     * client response, so that the request thread can copy them once the
+     * upstream request has completed in time.
+     */
+    private static final class BufferedResponse extends HttpServletResponseWrapper
+    {
+        private final List<Cookie> cookies = new ArrayList<Cookie>();
+        private final List<String[]> headers = new ArrayList<String[]>();
+        private int status;
+
+        BufferedResponse(HttpServletResponse response)
+        {
+            super(response);
+        }
+
+        @Override public void addCookie(Cookie cookie)
+        {
+            cookies.add(cookie);
+        }
+
+        @Override public void addHeader(String name, String value)
+        {
+            headers.add(new String[] {"add", name, value});
+        }
+
+        @Override public void setHeader(String name, String value)
+        {
+            headers.add(new String[] {"set", name, value});
+        }
+
+        @Override public void setStatus(int status)
+        {
+            this.status = status;
+        }
+
+        @Override public ServletOutputStream getOutputStream() throws IOException
+        {
+            throw new IOException("Responses cannot be streamed to the client from an upstream thread.");
+        }
+
+        void replay()
+        {
+            HttpServletResponse response = (HttpServletResponse)getResponse();
+            if (status != 0)
+                response.setStatus(status);
+            for (Cookie cookie : cookies)
+                response.addCookie(cookie);
+            for (String[] header : headers)
+            {
+                if ("set".equals(header[0]))
+                    response.setHeader(header[1], header[2]);
+                else
+                    response.addHeader(header[1], header[2]);
+            }
+        }
+    }
+
+    /**
+     * Creates the daemon threads that send upstream requests.
+     */
+    private final class UpstreamThreadFactory implements ThreadFactory
+    {
+        private int count;
+
+        public synchronized Thread newThread(Runnable r)
+        {
+            Thread t = new Thread(r);
+            t.setName("BoundedHTTPProxyAdapter-" + getId() + "-" + (++count));
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -27,11 +27,14 @@ import flex.messaging.messages.Message;
 import flex.messaging.messages.SOAPMessage;
 import flex.messaging.services.ServiceAdapter;
 import flex.messaging.services.http.proxy.AccessFilter;
+import flex.messaging.services.http.proxy.CacheFilter;
+import flex.messaging.services.http.proxy.CoalescingFilter;
 import flex.messaging.services.http.proxy.ErrorFilter;
 import flex.messaging.services.http.proxy.ProxyContext;
 import flex.messaging.services.http.proxy.ProxyContextFilter;
 import flex.messaging.services.http.proxy.ProxyFilter;
 import flex.messaging.services.http.proxy.RequestFilter;
+import flex.messaging.services.http.proxy.ResponseCache;
 import flex.messaging.services.http.proxy.ResponseFilter;
 import flex.messaging.services.http.proxy.SecurityFilter;
 import flex.messaging.services.http.proxy.Target;
@@ -68,27 +71,37 @@ public class HTTPProxyAdapter extends ServiceAdapter
     public static final String CONTENT_TYPE_FORM = "application/x-www-form-urlencoded";
 
     public static final int DEFAULT_COOKIE_LIMIT = 200;
+    public static final long DEFAULT_COALESCE_WAIT_MILLIS = 30000;
 
     private static final String COOKIE_LIMIT = "cookie-limit";
     private static final String ALLOW_LAX_SSL = "allow-lax-ssl";
     private static final String CONTENT_CHUNKED = "content-chunked";
+    private static final String COALESCE_REQUESTS = "coalesce-requests";
+    private static final String COALESCE_WAIT_MILLIS = "coalesce-wait-millis";
+    private static final String BINARY_RESPONSE = "binary-response";
     private static final String ID = "id";
     private static final String CLASS = "class";
     private static final String PROPERTIES = "properties";
     private static final String REQUEST_HEADERS = "requestHeaders";
     private static final String RESPONSE_HEADERS = "responseHeaders";
+    private static final String RESPONSE_CHARSET = "responseCharset";
 
     // HTTPProxyAdapter's properties
     protected boolean allowLaxSSL = false;
     protected boolean contentChunked = false;
+    protected boolean coalesceRequests = false;
+    protected long coalesceWaitMillis = DEFAULT_COALESCE_WAIT_MILLIS;
+    protected boolean binaryResponse = false;
     protected int cookieLimit = DEFAULT_COOKIE_LIMIT;
     protected ExternalProxySettings externalProxy;
     protected HTTPConnectionManagerSettings connectionManagerSettings;
+    protected ResponseCacheSettings responseCacheSettings;
 
     // HTTPProxyAdapter internal
     protected HttpConnectionManager connectionManager;
     protected HttpConnectionManagerParams connectionParams;
     protected ProxyFilter filterChain;
+    protected ResponseCache responseCache;
     protected UsernamePasswordCredentials proxyCredentials;
 
     private HTTPProxyAdapterControl controller;
@@ -162,6 +175,9 @@ public class HTTPProxyAdapter extends ServiceAdapter
      *  &lt;cookie-limit&gt;200&lt;/cookie-limit&gt;
      *  &lt;allow-lax-ssl&gt;false&lt;/allow-lax-ssl&gt;
      *  &lt;content-chunked&gt;false&lt;/content-chunked&gt;
+     *  &lt;coalesce-requests&gt;false&lt;/coalesce-requests&gt;
+     *  &lt;coalesce-wait-millis&gt;30000&lt;/coalesce-wait-millis&gt;
+     *  &lt;binary-response&gt;false&lt;/binary-response&gt;
      *  &lt;external-proxy&gt;
      *      &lt;server&gt;...&lt;/server&gt;
      *      &lt;port&gt;80&lt;/port&gt;
@@ -169,6 +185,12 @@ public class HTTPProxyAdapter extends ServiceAdapter
      *      &lt;username&gt;...&lt;/username&gt;
      *      &lt;password&gt;...&lt;/password&gt;
      *  &lt;/external-proxy&gt;
+     *  &lt;cache&gt;
+     *      &lt;max-memory-size&gt;16777216&lt;/max-memory-size&gt;
+     *      &lt;max-entry-size&gt;1048576&lt;/max-entry-size&gt;
+     *      &lt;disk-directory&gt;...&lt;/disk-directory&gt;
+     *      &lt;max-disk-size&gt;268435456&lt;/max-disk-size&gt;
+     *  &lt;/cache&gt;
      *  </pre>
      *
      * @param id         The id of the destination.
@@ -373,6 +395,27 @@ public class HTTPProxyAdapter extends ServiceAdapter
             setContentChunked(ch);
         }
 
+        // Coalesce Requests
+        if (properties.getProperty(COALESCE_REQUESTS) != null)
+        {
+            boolean coalesce = properties.getPropertyAsBoolean(COALESCE_REQUESTS, false);
+            setCoalesceRequests(coalesce);
+        }
+
+        // Coalesce Wait
+        if (properties.getProperty(COALESCE_WAIT_MILLIS) != null)
+        {
+            long wait = properties.getPropertyAsLong(COALESCE_WAIT_MILLIS, DEFAULT_COALESCE_WAIT_MILLIS);
+            setCoalesceWaitMillis(wait);
+        }
+
+        // Binary Response
+        if (properties.getProperty(BINARY_RESPONSE) != null)
+        {
+            boolean binary = properties.getPropertyAsBoolean(BINARY_RESPONSE, false);
+            setBinaryResponse(binary);
+        }
+
         // External Proxy
         ConfigMap extern = properties.getPropertyAsMap(ExternalProxySettings.EXTERNAL_PROXY, null);
         if (extern != null)
@@ -392,6 +435,41 @@ public class HTTPProxyAdapter extends ServiceAdapter
 
             setExternalProxySettings(proxy);
         }
+
+        // Response Cache
+        ConfigMap cache = properties.getPropertyAsMap(ResponseCacheSettings.CACHE, null);
+        if (cache != null)
+        {
+            ResponseCacheSettings cacheSettings = new ResponseCacheSettings();
+
+            long maxMemorySize = cache.getPropertyAsLong(ResponseCacheSettings.MAX_MEMORY_SIZE,
+                    ResponseCacheSettings.DEFAULT_MAX_MEMORY_SIZE);
+            if (maxMemorySize >= 0)
+                cacheSettings.setMaxMemorySize(maxMemorySize);
+            int maxEntrySize = cache.getPropertyAsInt(ResponseCacheSettings.MAX_ENTRY_SIZE,
+                    ResponseCacheSettings.DEFAULT_MAX_ENTRY_SIZE);
+            if (maxEntrySize >= 0)
+                cacheSettings.setMaxEntrySize(maxEntrySize);
+            cacheSettings.setDiskDirectory(cache.getPropertyAsString(ResponseCacheSettings.DISK_DIRECTORY, null));
+            long maxDiskSize = cache.getPropertyAsLong(ResponseCacheSettings.MAX_DISK_SIZE,
+                    ResponseCacheSettings.DEFAULT_MAX_DISK_SIZE);
+            if (maxDiskSize >= 0)
+                cacheSettings.setMaxDiskSize(maxDiskSize);
+
+            setResponseCacheSettings(cacheSettings);
+        }
+    }
+
+    /**
+     * Stops the <code>HTTPProxyAdapter</code> and removes the responses from
+     * its cache.
+     */
+    public void stop()
+    {
+        super.stop();
+
+        if (responseCache != null)
+            responseCache.clear();
     }
 
     //--------------------------------------------------------------------------
@@ -444,6 +522,78 @@ public class HTTPProxyAdapter extends ServiceAdapter
         this.contentChunked = contentChunked;
     }
 
+    /**
+     * Returns the <code>coalesce-requests</code> property.
+     *
+     * @return <code>true</code> if <code>coalesce-requests</code> property is
+     *         <code>true</code>; otherwise <code>false</code>.
+     */
+    public boolean isCoalesceRequests()
+    {
+        return coalesceRequests;
+    }
+
+    /**
+     * Sets the <code>coalesce-requests</code> property which determines if
+     * concurrent identical GET requests without credentials or cookies share
+     * one upstream request. Default <code>false</code>.
+     *
+     * @param coalesceRequests Whether identical concurrent requests should be coalesced.
+     */
+    public void setCoalesceRequests(boolean coalesceRequests)
+    {
+        this.coalesceRequests = coalesceRequests;
+    }
+
+    /**
+     * Returns the <code>coalesce-wait-millis</code> property.
+     *
+     * @return The time in milliseconds a coalesced request waits for the shared response.
+     */
+    public long getCoalesceWaitMillis()
+    {
+        return coalesceWaitMillis;
+    }
+
+    /**
+     * Sets the <code>coalesce-wait-millis</code> property, the time a request
+     * coalesced with a concurrent one waits for the shared response before it
+     * sends its own upstream request. Default 30000.
+     *
+     * @param coalesceWaitMillis The wait in milliseconds; negative values are ignored.
+     */
+    public void setCoalesceWaitMillis(long coalesceWaitMillis)
+    {
+        if (coalesceWaitMillis >= 0)
+            this.coalesceWaitMillis = coalesceWaitMillis;
+    }
+
+    /**
+     * Returns the <code>binary-response</code> property.
+     *
+     * @return <code>true</code> if <code>binary-response</code> property is
+     *         <code>true</code>; otherwise <code>false</code>.
+     */
+    public boolean isBinaryResponse()
+    {
+        return binaryResponse;
+    }
+
+    /**
+     * Sets the <code>binary-response</code> property which determines if
+     * response bodies are returned to the client as the bytes received from
+     * the target instead of a decoded string. A byte order mark is removed
+     * from the bytes and the charset of the body is returned in the
+     * <code>responseCharset</code> header of the acknowledgement so that
+     * the client can decode it. Default <code>false</code>.
+     *
+     * @param binaryResponse Whether response bodies should be returned as bytes.
+     */
+    public void setBinaryResponse(boolean binaryResponse)
+    {
+        this.binaryResponse = binaryResponse;
+    }
+
     /**
      * Returns the <code>cookie-limit</code> property.
      *
@@ -519,6 +669,44 @@ public class HTTPProxyAdapter extends ServiceAdapter
         connectionManager.setParams(connectionParams);
     }
 
+    /**
+     * Returns <code>ResponseCacheSettings</code>.
+     *
+     * @return the <code>ResponseCacheSettings</code>, or <code>null</code> if
+     * responses are not cached
+     */
+    public ResponseCacheSettings getResponseCacheSettings()
+    {
+        return responseCacheSettings;
+    }
+
+    /**
+     * Sets <code>ResponseCacheSettings</code> and creates the cache shared by
+     * the requests of the adapter. Responses are not cached by default.
+     *
+     * @param responseCacheSettings The response cache settings, or <code>null</code>
+     * to stop caching responses.
+     */
+    public void setResponseCacheSettings(ResponseCacheSettings responseCacheSettings)
+    {
+        if (responseCache != null)
+            responseCache.clear();
+
+        this.responseCacheSettings = responseCacheSettings;
+        responseCache = responseCacheSettings != null ? new ResponseCache(responseCacheSettings) : null;
+    }
+
+    /**
+     * Returns the cache shared by the requests of the adapter.
+     *
+     * @return the <code>ResponseCache</code>, or <code>null</code> if responses
+     * are not cached
+     */
+    public ResponseCache getResponseCache()
+    {
+        return responseCache;
+    }
+
     //--------------------------------------------------------------------------
     //
     // Other public APIs
@@ -548,18 +736,7 @@ public class HTTPProxyAdapter extends ServiceAdapter
 
             //TODO: Do we want a return type that encapsulates the response data?
 
-            // OUTPUT
-            AcknowledgeMessage ack = new AcknowledgeMessage();
-            ack.setBody(context.getResponse());
-            ack.setHeader(Message.STATUS_CODE_HEADER, context.getStatusCode());
-
-            if (context.getRecordHeaders())
-            {
-                ack.setHeader(REQUEST_HEADERS, context.getRequestHeaders());
-                ack.setHeader(RESPONSE_HEADERS, context.getResponseHeaders());
-            }
-
-            return ack;
+            return createAcknowledgeMessage(context);
         }
         catch (MessageException ex)
         {
@@ -587,8 +764,12 @@ public class HTTPProxyAdapter extends ServiceAdapter
         context.setExternalProxySettings(externalProxy);
         context.setProxyCredentials(proxyCredentials);
         context.setConnectionManager(connectionManager);
+        context.setResponseCache(responseCache);
         context.setAllowLaxSSL(allowLaxSSL);
         context.setContentChunked(contentChunked);
+        context.setCoalesceRequests(coalesceRequests);
+        context.setCoalesceWaitMillis(coalesceWaitMillis);
+        context.setBinaryResponse(binaryResponse);
         context.setRecordHeaders(message.getRecordHeaders());
         context.setCookieLimit(cookieLimit);
         context.setHttpRequest(FlexContext.getHttpRequest() != null);
@@ -624,6 +805,31 @@ public class HTTPProxyAdapter extends ServiceAdapter
         }
     }
 
+    /**
+     * Creates the acknowledgement returned to the client from a context that
+     * has been through the filter chain.
+     *
+     * @param context The proxy context.
+     * @return The acknowledgement carrying the response and its status code.
+     */
+    protected AcknowledgeMessage createAcknowledgeMessage(ProxyContext context)
+    {
+        // OUTPUT
+        AcknowledgeMessage ack = new AcknowledgeMessage();
+        ack.setBody(context.getResponse());
+        ack.setHeader(Message.STATUS_CODE_HEADER, context.getStatusCode());
+        if (context.getResponseCharset() != null)
+            ack.setHeader(RESPONSE_CHARSET, context.getResponseCharset());
+
+        if (context.getRecordHeaders())
+        {
+            ack.setHeader(REQUEST_HEADERS, context.getRequestHeaders());
+            ack.setHeader(RESPONSE_HEADERS, context.getResponseHeaders());
+        }
+
+        return ack;
+    }
+
     /**
      * Invoked automatically to allow the <code>HTTPProxyAdapter</code> to setup its corresponding
      * MBean control.
@@ -654,6 +860,10 @@ public class HTTPProxyAdapter extends ServiceAdapter
             ResponseFilter responseFilter = new ResponseFilter();
             // deals with credentials
             SecurityFilter securityFilter = new SecurityFilter();
+            // answers from or stores in the response cache
+            CacheFilter cacheFilter = new CacheFilter();
+            // shares one upstream request between identical concurrent requests
+            CoalescingFilter coalescingFilter = new CoalescingFilter();
             // sends out the request
             RequestFilter requestFilter = new RequestFilter();
 
@@ -661,7 +871,9 @@ public class HTTPProxyAdapter extends ServiceAdapter
             accessFilter.setNext(contextFilter);
             contextFilter.setNext(responseFilter);
             responseFilter.setNext(securityFilter);
-            securityFilter.setNext(requestFilter);
+            securityFilter.setNext(cacheFilter);
+            cacheFilter.setNext(coalescingFilter);
+            coalescingFilter.setNext(requestFilter);
 
             filterChain = errorFilter;
         }
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.services.http;
+
+import flex.messaging.MessageException;
+import flex.messaging.messages.AcknowledgeMessage;
+
+/**
+ * Receives the outcome of a request proxied with
+ * <code>BoundedHTTPProxyAdapter.invokeAsync</code>. Exactly one of the methods
+ * is called, on a thread of the adapter.
+ */
+public interface ProxyResponseListener
+{
+    /**
+     * Called when the upstream server has replied and the response has been
+     * through the filter chain.
+     *
+     * @param response The acknowledgement carrying the response, as returned
+     * by <code>HTTPProxyAdapter.invoke</code>.
+     */
+    void responseReceived(AcknowledgeMessage response);
+
+    /**
+     * Called when the request could not be proxied.
+     *
+     * @param exception The exception describing the failure.
+     */
+    void requestFailed(MessageException exception);
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.services.http;
+
+/**
+ * Establishes the settings of the response cache shared by the requests of a
+ * proxy adapter.
+ */
+public class ResponseCacheSettings
+{
+    public static final String CACHE = "cache";
+
+    public static final String MAX_MEMORY_SIZE = "max-memory-size";
+
+    public static final String MAX_ENTRY_SIZE = "max-entry-size";
+
+    public static final String DISK_DIRECTORY = "disk-directory";
+
+    public static final String MAX_DISK_SIZE = "max-disk-size";
+
+    /** The default number of bytes of responses kept in memory. */
+    public static final long DEFAULT_MAX_MEMORY_SIZE = 16 * 1024 * 1024;
+
+    /** The default size in bytes of the largest response body that is cached. */
+    public static final int DEFAULT_MAX_ENTRY_SIZE = 1024 * 1024;
+
+    /** The default number of bytes of responses kept on disk. */
+    public static final long DEFAULT_MAX_DISK_SIZE = 256 * 1024 * 1024;
+
+    private long maxMemorySize = DEFAULT_MAX_MEMORY_SIZE;
+    private int maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+    private String diskDirectory;
+    private long maxDiskSize = DEFAULT_MAX_DISK_SIZE;
+
+    /**
+     * Creates a default <code>ResponseCacheSettings</code> instance.
+     */
+    public ResponseCacheSettings()
+    {
+    }
+
+    /**
+     * Returns the number of bytes of responses kept in memory.
+     *
+     * @return The maximum memory size in bytes.
+     */
+    public long getMaxMemorySize()
+    {
+        return maxMemorySize;
+    }
+
+    /**
+     * Sets the number of bytes of responses kept in memory. The least recently
+     * used responses are moved to disk, or dropped when there is no disk
+     * directory, once the limit is reached. Default 16MB.
+     *
+     * @param maxMemorySize The maximum memory size in bytes.
+     */
+    public void setMaxMemorySize(long maxMemorySize)
+    {
+        this.maxMemorySize = maxMemorySize;
+    }
+
+    /**
+     * Returns the size of the largest response body that is cached.
+     *
+     * @return The maximum entry size in bytes.
+     */
+    public int getMaxEntrySize()
+    {
+        return maxEntrySize;
+    }
+
+    /**
+     * Sets the size of the largest response body that is cached. Default 1MB.
+     *
+     * @param maxEntrySize The maximum entry size in bytes.
+     */
+    public void setMaxEntrySize(int maxEntrySize)
+    {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * Returns the directory of the disk tier.
+     *
+     * @return The disk directory, or <code>null</code> if responses are only
+     * kept in memory.
+     */
+    public String getDiskDirectory()
+    {
+        return diskDirectory;
+    }
+
+    /**
+     * Sets the directory that responses evicted from memory are written to.
+     * Default <code>null</code>, which keeps responses in memory only.
+     *
+     * @param diskDirectory The disk directory.
+     */
+    public void setDiskDirectory(String diskDirectory)
+    {
+        this.diskDirectory = diskDirectory;
+    }
+
+    /**
+     * Returns the number of bytes of responses kept on disk.
+     *
+     * @return The maximum disk size in bytes.
+     */
+    public long getMaxDiskSize()
+    {
+        return maxDiskSize;
+    }
+
+    /**
+     * Sets the number of bytes of responses kept on disk. Default 256MB.
+     *
+     * @param maxDiskSize The maximum disk size in bytes.
+     */
+    public void setMaxDiskSize(long maxDiskSize)
+    {
+        this.maxDiskSize = maxDiskSize;
+    }
+}
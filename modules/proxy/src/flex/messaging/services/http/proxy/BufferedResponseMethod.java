@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.services.http.proxy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Date;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpException;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.StatusLine;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.util.DateUtil;
+
+/**
+ *
+ * A method that has already been executed, whose status, headers and body are
+ * those of a cached response, of a response shared by coalesced requests, or of
+ * an upstream response whose body has been partially read.
+ */
+final class BufferedResponseMethod extends GetMethod
+{
+    private final StatusLine statusLine;
+    private final HttpMethodBase upstreamMethod;
+
+    BufferedResponseMethod(CachedResponse response, long now)
+    {
+        this(response.getStatusLine(), response.getStatusCode(), response.getHeaders(),
+                new ByteArrayInputStream(response.getBody()), null);
+
+        setResponseHeader("Age", String.valueOf(response.getCurrentAge(now) / 1000));
+        setResponseHeader("Content-Length", String.valueOf(response.getBody().length));
+        if (getResponseHeader("Date") == null)
+            setResponseHeader("Date", DateUtil.formatDate(new Date(now)));
+    }
+
+    BufferedResponseMethod(String statusLine, int statusCode, Header[] headers, InputStream body,
+            HttpMethodBase upstreamMethod)
+    {
+        this.statusLine = createStatusLine(statusLine, statusCode);
+        this.upstreamMethod = upstreamMethod;
+        getResponseHeaderGroup().setHeaders(headers);
+        setResponseStream(body);
+    }
+
+    public StatusLine getStatusLine()
+    {
+        return statusLine;
+    }
+
+    public int getStatusCode()
+    {
+        return statusLine.getStatusCode();
+    }
+
+    public String getStatusText()
+    {
+        return statusLine.getReasonPhrase();
+    }
+
+    public void releaseConnection()
+    {
+        try
+        {
+            super.releaseConnection();
+        }
+        finally
+        {
+            if (upstreamMethod != null)
+                upstreamMethod.releaseConnection();
+        }
+    }
+
+    private void setResponseHeader(String name, String value)
+    {
+        Header[] existing = getResponseHeaderGroup().getHeaders(name);
+        for (Header header : existing)
+            getResponseHeaderGroup().removeHeader(header);
+        getResponseHeaderGroup().addHeader(new Header(name, value));
+    }
+
+    /**
+     * Reads a response body, stopping once more than <code>maxSize</code>
+     * bytes have been read.
+     *
+     * @param in The body; may be <code>null</code>.
+     * @param maxSize The largest size of a complete body.
+     * @return The body, or its first bytes if it is larger than <code>maxSize</code>.
+     * @throws IOException If the body cannot be read.
+     */
+    static byte[] read(InputStream in, int maxSize) throws IOException
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (in != null)
+        {
+            byte[] buffer = new byte[ResponseFilter.RESPONSE_CHUNK];
+            int read;
+            while (body.size() <= maxSize && (read = in.read(buffer)) != -1)
+                body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Returns a stream of the bytes already read from a body followed by the
+     * rest of the body.
+     */
+    static InputStream remaining(byte[] read, InputStream in)
+    {
+        return new SequenceInputStream(new ByteArrayInputStream(read), in);
+    }
+
+    private static StatusLine createStatusLine(String statusLine, int statusCode)
+    {
+        try
+        {
+            return new StatusLine(statusLine);
+        }
+        catch (HttpException e)
+        {
+            try
+            {
+                return new StatusLine("HTTP/1.1 " + statusCode);
+            }
+            catch (HttpException ignored)
+            {
+                throw new IllegalStateException(ignored.getMessage());
+            }
+        }
+    }
+}
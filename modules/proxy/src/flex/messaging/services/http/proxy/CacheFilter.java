@@ -0,0 +1,372 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.services.http.proxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpMethodBase;
+
+import flex.messaging.FlexContext;
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.log.Log;
+import flex.messaging.services.HTTPProxyService;
+
+/**
+ *
+ * Answers GET requests from the <code>ResponseCache</code> of the context, as
+ * described in RFC 7234 for shared caches. Fresh responses are returned without
+ * contacting the upstream server; stale responses with an <code>ETag</code> or
+ * <code>Last-Modified</code> header are revalidated with a conditional request.
+ * Requests sent with credentials or with cookies for the target, and responses
+ * that set cookies or are marked private, are never cached. A successful POST, PUT or DELETE removes the
+ * responses cached for its URL.
+ */
+public class CacheFilter extends ProxyFilter
+{
+    private static final int ERROR_READING_RESPONSE = 10722;
+
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String HEADER_PRAGMA = "Pragma";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String KEY_SEPARATOR = "\n";
+
+    /**
+     * Invokes the filter with the context.
+     *
+     * @param context The proxy context.
+     */
+    public void invoke(ProxyContext context)
+    {
+        ResponseCache cache = context.getResponseCache();
+        String method = context.getMethod();
+        if (cache == null || !ProxyConstants.METHOD_GET.equals(method))
+        {
+            invokeNext(context);
+            if (cache != null && isUnsafe(method) && context.getHttpMethod().getStatusCode() < 400)
+                cache.removeAll(urlKey(context));
+            return;
+        }
+
+        Map<String, String> requestDirectives = CachedResponse.directives(requestHeader(context, HEADER_CACHE_CONTROL));
+        String key = context.hasAuthorization() || RequestFilter.sendsCookies(context) ? null : cacheKey(context);
+        if (key == null || requestDirectives.containsKey("no-store")
+                || requestHeader(context, HEADER_IF_NONE_MATCH) != null
+                || requestHeader(context, HEADER_IF_MODIFIED_SINCE) != null)
+        {
+            invokeNext(context);
+            return;
+        }
+
+        CachedResponse cached = null;
+        if (!requestDirectives.containsKey("no-cache")
+                && !CachedResponse.directives(requestHeader(context, HEADER_PRAGMA)).containsKey("no-cache"))
+        {
+            cached = cache.get(key);
+            if (cached != null && !cached.matches(requestHeaders(context, cached.getVaryNames())))
+                cached = null;
+        }
+
+        long now = System.currentTimeMillis();
+        if (cached != null && isFresh(cached, now, requestDirectives))
+        {
+            cache.recordHit();
+            if (Log.isDebug())
+                Log.getLogger(HTTPProxyService.LOG_CATEGORY).debug("-- Response from cache: " + context.getUrl());
+            context.setHttpMethod(new BufferedResponseMethod(cached, now));
+            return;
+        }
+
+        boolean revalidating = cached != null && cached.hasValidator();
+        Map headers = context.getHeaders();
+        if (revalidating)
+            context.setHeaders(conditionalHeaders(headers, cached));
+
+        long requestTime = System.currentTimeMillis();
+        try
+        {
+            invokeNext(context);
+        }
+        finally
+        {
+            context.setHeaders(headers);
+        }
+        long responseTime = System.currentTimeMillis();
+
+        HttpMethodBase httpMethod = context.getHttpMethod();
+        if (revalidating && httpMethod.getStatusCode() == 304)
+        {
+            CachedResponse updated = cached.revalidated(httpMethod.getResponseHeaders(), requestTime, responseTime);
+            httpMethod.releaseConnection();
+            cache.put(key, updated);
+            cache.recordRevalidation();
+            context.setHttpMethod(new BufferedResponseMethod(updated, responseTime));
+            return;
+        }
+
+        cache.recordMiss();
+        store(context, cache, key, requestTime, responseTime);
+    }
+
+    /**
+     * Reads the body of a storable response and stores the response. The
+     * method of the context is replaced so that the filters before this one
+     * read the body from the copy.
+     */
+    protected void store(ProxyContext context, ResponseCache cache, String key, long requestTime, long responseTime)
+    {
+        HttpMethodBase httpMethod = context.getHttpMethod();
+        if (!isStorable(httpMethod) || httpMethod.getResponseContentLength() > cache.getMaxEntrySize())
+        {
+            cache.remove(key);
+            return;
+        }
+
+        String statusLine = httpMethod.getStatusLine().toString();
+        int statusCode = httpMethod.getStatusCode();
+        Header[] headers = httpMethod.getResponseHeaders();
+        try
+        {
+            InputStream in = httpMethod.getResponseBodyAsStream();
+            byte[] body = BufferedResponseMethod.read(in, cache.getMaxEntrySize());
+
+            if (body.length > cache.getMaxEntrySize())
+            {
+                // Too large to cache; pass on what was read followed by the rest of the body.
+                cache.remove(key);
+                context.setHttpMethod(new BufferedResponseMethod(statusLine, statusCode, headers,
+                        BufferedResponseMethod.remaining(body, in), httpMethod));
+                return;
+            }
+
+            String[] varyValues = requestHeaders(context, CachedResponse.fieldNames(responseHeader(httpMethod, "Vary")));
+            CachedResponse response = new CachedResponse(statusLine, statusCode, headers, body,
+                    requestTime, responseTime, varyValues);
+            cache.put(key, response);
+            httpMethod.releaseConnection();
+            context.setHttpMethod(new BufferedResponseMethod(response, responseTime));
+        }
+        catch (IOException e)
+        {
+            ProxyException pe = new ProxyException();
+            pe.setMessage(ERROR_READING_RESPONSE, new Object[] {context.getUrl(), e.getMessage()});
+            throw pe;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if a shared cache may store the response,
+     * per RFC 7234 section 3.
+     */
+    protected boolean isStorable(HttpMethodBase httpMethod)
+    {
+        if (!CachedResponse.isHeuristicallyCacheable(httpMethod.getStatusCode()))
+            return false;
+
+        if (httpMethod.getResponseHeader("Set-Cookie") != null || httpMethod.getResponseHeader("Set-Cookie2") != null)
+            return false;
+
+        Map<String, String> directives = CachedResponse.directives(responseHeader(httpMethod, HEADER_CACHE_CONTROL));
+        if (directives.containsKey("no-store") || directives.containsKey("private"))
+            return false;
+
+        String vary = responseHeader(httpMethod, "Vary");
+        if (vary != null && vary.indexOf('*') != -1)
+            return false;
+
+        return directives.containsKey("max-age") || directives.containsKey("s-maxage")
+                || httpMethod.getResponseHeader("Expires") != null
+                || httpMethod.getResponseHeader("ETag") != null
+                || httpMethod.getResponseHeader("Last-Modified") != null;
+    }
+
+    /**
+     * Returns the values of a response header joined with commas, or
+     * <code>null</code> if the response does not have the header.
+     */
+    static String responseHeader(HttpMethodBase httpMethod, String name)
+    {
+        String value = null;
+        for (Header header : httpMethod.getResponseHeaders(name))
+            value = value == null ? header.getValue() : value + ", " + header.getValue();
+        return value;
+    }
+
+    private void invokeNext(ProxyContext context)
+    {
+        if (next != null)
+        {
+            next.invoke(context);
+        }
+    }
+
+    private static boolean isFresh(CachedResponse cached, long now, Map<String, String> requestDirectives)
+    {
+        long age = cached.getCurrentAge(now);
+        if (age >= cached.getFreshnessLifetime())
+            return false;
+
+        long maxAge = CachedResponse.deltaSeconds(requestDirectives.get("max-age"));
+        return maxAge < 0 || age <= maxAge * 1000;
+    }
+
+    private static boolean isUnsafe(String method)
+    {
+        return MessageIOConstants.METHOD_POST.equals(method) || ProxyConstants.METHOD_PUT.equals(method)
+                || ProxyConstants.METHOD_DELETE.equals(method);
+    }
+
+    /**
+     * Returns the custom headers of the request with the validators of a
+     * cached response added.
+     */
+    private static Map conditionalHeaders(Map headers, CachedResponse cached)
+    {
+        Map conditional = headers != null ? new HashMap(headers) : new HashMap();
+        String eTag = cached.getHeader("ETag");
+        if (eTag != null)
+            conditional.put(HEADER_IF_NONE_MATCH, eTag);
+        String lastModified = cached.getHeader("Last-Modified");
+        if (lastModified != null)
+            conditional.put(HEADER_IF_MODIFIED_SINCE, lastModified);
+        return conditional;
+    }
+
+    /**
+     * Returns the part of the cache key identifying the target URL.
+     */
+    private static String urlKey(ProxyContext context)
+    {
+        return context.getTarget().getUrl().toExternalForm() + KEY_SEPARATOR;
+    }
+
+    /**
+     * Returns the key of a GET request: the target URL and the parameters
+     * that <code>RequestFilter</code> appends to its query string, or
+     * <code>null</code> if the parameters cannot be compared.
+     */
+    static String cacheKey(ProxyContext context)
+    {
+        Object body = context.getBody();
+        if (body == null || body instanceof InputStream || body.getClass().isArray())
+            return urlKey(context);
+        if (!(body instanceof Map))
+            return urlKey(context) + body;
+
+        // Parameters are sorted so that maps with the same entries give the same key.
+        TreeMap<String, String> params = new TreeMap<String, String>();
+        for (Object e : ((Map)body).entrySet())
+        {
+            Map.Entry entry = (Map.Entry)e;
+            if (!(entry.getKey() instanceof String))
+                return null;
+
+            Object value = entry.getValue();
+            StringBuffer values = new StringBuffer();
+            if (value == null || value instanceof String)
+            {
+                values.append(value == null ? "" : value);
+            }
+            else if (value instanceof List)
+            {
+                for (Object o : (List)value)
+                    values.append(o).append('&');
+            }
+            else if (value.getClass().isArray())
+            {
+                for (int i = 0; i < Array.getLength(value); i++)
+                    values.append(Array.get(value, i)).append('&');
+            }
+            else
+            {
+                return null;
+            }
+            params.put((String)entry.getKey(), values.toString());
+        }
+        return urlKey(context) + params;
+    }
+
+    /**
+     * Returns the values the upstream request will have for the given headers.
+     */
+    static String[] requestHeaders(ProxyContext context, String[] names)
+    {
+        String[] values = new String[names.length];
+        for (int i = 0; i < names.length; i++)
+            values[i] = requestHeader(context, names[i]);
+        return values;
+    }
+
+    /**
+     * Returns the value the upstream request will have for a header, from the
+     * custom headers of the message, its content type or the headers of the
+     * client request that <code>RequestFilter</code> copies.
+     */
+    static String requestHeader(ProxyContext context, String name)
+    {
+        Map headers = context.getHeaders();
+        if (headers != null)
+        {
+            for (Object e : headers.entrySet())
+            {
+                Map.Entry entry = (Map.Entry)e;
+                if (name.equalsIgnoreCase((String)entry.getKey()))
+                    return headerValue(entry.getValue());
+            }
+        }
+
+        if (ProxyConstants.HEADER_CONTENT_TYPE.equalsIgnoreCase(name) && context.getContentType() != null)
+            return context.getContentType();
+
+        HttpServletRequest clientRequest = FlexContext.getHttpRequest();
+        if (clientRequest != null && ("Cookie".equalsIgnoreCase(name) || !RequestUtil.ignoreHeader(name, context)))
+            return clientRequest.getHeader(name);
+
+        return null;
+    }
+
+    private static String headerValue(Object value)
+    {
+        if (value == null || value instanceof String)
+            return value == null ? "" : (String)value;
+
+        StringBuffer values = new StringBuffer();
+        if (value instanceof List)
+        {
+            for (Object o : (List)value)
+                values.append(values.length() > 0 ? ", " : "").append(o == null ? "" : o);
+        }
+        else if (value.getClass().isArray())
+        {
+            for (int i = 0; i < Array.getLength(value); i++)
+            {
+                Object o = Array.get(value, i);
+                values.append(values.length() > 0 ? ", " : "").append(o == null ? "" : o);
+            }
+        }
+        return values.toString();
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.services.http.proxy;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.util.DateParseException;
+import org.apache.commons.httpclient.util.DateUtil;
+
+/**
+ *
+ * A response stored by <code>ResponseCache</code>, with the times and the
+ * selecting request header values needed to decide, as described in RFC 7234,
+ * whether it can answer a later request.
+ */
+final class CachedResponse implements Serializable
+{
+    private static final long serialVersionUID = 5170542873624906731L;
+
+    private static final List<String> HOP_BY_HOP_HEADERS = Arrays.asList(new String[] {"connection",
+            "keep-alive", "proxy-authenticate", "proxy-authorization", "te", "trailer", "transfer-encoding", "upgrade"});
+
+    private final String statusLine;
+    private final int statusCode;
+    private final String[] headerNames;
+    private final String[] headerValues;
+    private final byte[] body;
+    private final long requestTime;
+    private final long responseTime;
+    private final String[] varyNames;
+    private final String[] varyValues;
+
+    /**
+     * Creates a cached response.
+     *
+     * @param statusLine The status line of the response.
+     * @param statusCode The status code of the response.
+     * @param headers The response headers; hop-by-hop headers are not kept.
+     * @param body The response body.
+     * @param requestTime The time the request was sent.
+     * @param responseTime The time the response was received.
+     * @param varyValues The values of the request headers named by the
+     * <code>Vary</code> header of the response.
+     */
+    CachedResponse(String statusLine, int statusCode, Header[] headers, byte[] body, long requestTime,
+            long responseTime, String[] varyValues)
+    {
+        this.statusLine = statusLine;
+        this.statusCode = statusCode;
+        this.body = body;
+        this.requestTime = requestTime;
+        this.responseTime = responseTime;
+        this.varyValues = varyValues;
+
+        List<String> names = new ArrayList<String>(headers.length);
+        List<String> values = new ArrayList<String>(headers.length);
+        for (Header header : headers)
+        {
+            if (header.getName() == null || header.getValue() == null || isHopByHop(header.getName()))
+                continue;
+            names.add(header.getName());
+            values.add(header.getValue());
+        }
+        headerNames = names.toArray(new String[names.size()]);
+        headerValues = values.toArray(new String[values.size()]);
+        varyNames = fieldNames(getHeader("Vary"));
+    }
+
+    String getStatusLine()
+    {
+        return statusLine;
+    }
+
+    int getStatusCode()
+    {
+        return statusCode;
+    }
+
+    byte[] getBody()
+    {
+        return body;
+    }
+
+    /**
+     * Returns the stored response headers.
+     */
+    Header[] getHeaders()
+    {
+        Header[] headers = new Header[headerNames.length];
+        for (int i = 0; i < headers.length; i++)
+            headers[i] = new Header(headerNames[i], headerValues[i]);
+        return headers;
+    }
+
+    /**
+     * Returns the values of a response header joined with commas, or
+     * <code>null</code> if the response does not have the header.
+     */
+    String getHeader(String name)
+    {
+        String value = null;
+        for (int i = 0; i < headerNames.length; i++)
+        {
+            if (headerNames[i].equalsIgnoreCase(name))
+                value = value == null ? headerValues[i] : value + ", " + headerValues[i];
+        }
+        return value;
+    }
+
+    /**
+     * Returns the lower-case names of the request headers the response varies on.
+     */
+    String[] getVaryNames()
+    {
+        return varyNames;
+    }
+
+    /**
+     * Returns <code>true</code> if the request headers the response varies on
+     * have the values they had when the response was stored.
+     */
+    boolean matches(String[] values)
+    {
+        return Arrays.equals(varyValues, values);
+    }
+
+    /**
+     * Returns <code>true</code> if the response can be revalidated with a
+     * conditional request.
+     */
+    boolean hasValidator()
+    {
+        return getHeader("ETag") != null || getHeader("Last-Modified") != null;
+    }
+
+    /**
+     * Returns the time, in milliseconds, that the response stays fresh after
+     * it was generated, as described in RFC 7234 section 4.2.1.
+     */
+    long getFreshnessLifetime()
+    {
+        Map<String, String> cacheControl = directives(getHeader("Cache-Control"));
+        if (cacheControl.containsKey("no-cache"))
+            return 0;
+        if (cacheControl.isEmpty() && directives(getHeader("Pragma")).containsKey("no-cache"))
+            return 0;
+
+        long seconds = deltaSeconds(cacheControl.get("s-maxage"));
+        if (seconds < 0)
+            seconds = deltaSeconds(cacheControl.get("max-age"));
+        if (seconds >= 0)
+            return seconds * 1000;
+
+        long date = getDate();
+        String expires = getHeader("Expires");
+        if (expires != null)
+        {
+            long expiresTime = parseDate(expires);
+            return expiresTime < 0 ? 0 : Math.max(0, expiresTime - date);
+        }
+
+        // Heuristic freshness of RFC 7234 section 4.2.2.
+        long lastModified = parseDate(getHeader("Last-Modified"));
+        if (lastModified >= 0 && lastModified < date && isHeuristicallyCacheable(statusCode))
+            return (date - lastModified) / 10;
+
+        return 0;
+    }
+
+    /**
+     * Returns the age of the response, in milliseconds, as described in
+     * RFC 7234 section 4.2.3.
+     *
+     * @param now The current time.
+     */
+    long getCurrentAge(long now)
+    {
+        long apparentAge = Math.max(0, responseTime - getDate());
+        long ageValue = Math.max(0, deltaSeconds(getHeader("Age"))) * 1000;
+        long correctedAgeValue = ageValue + (responseTime - requestTime);
+        long correctedInitialAge = Math.max(apparentAge, correctedAgeValue);
+        return correctedInitialAge + Math.max(0, now - responseTime);
+    }
+
+    /**
+     * Returns a copy of the response with the headers of a <code>304</code>
+     * response to a conditional request replacing the stored ones, as described
+     * in RFC 7234 section 4.3.4.
+     */
+    CachedResponse revalidated(Header[] notModifiedHeaders, long requestTime, long responseTime)
+    {
+        List<Header> headers = new ArrayList<Header>(Arrays.asList(getHeaders()));
+        for (Header update : notModifiedHeaders)
+        {
+            String name = update.getName();
+            if (name == null || "Content-Length".equalsIgnoreCase(name))
+                continue;
+            for (int i = headers.size() - 1; i >= 0; i--)
+            {
+                if (headers.get(i).getName().equalsIgnoreCase(name))
+                    headers.remove(i);
+            }
+        }
+        for (Header update : notModifiedHeaders)
+        {
+            if (update.getName() != null && !"Content-Length".equalsIgnoreCase(update.getName()))
+                headers.add(update);
+        }
+        return new CachedResponse(statusLine, statusCode, headers.toArray(new Header[headers.size()]), body,
+                requestTime, responseTime, varyValues);
+    }
+
+    /**
+     * Returns an estimate of the memory taken by the response, in bytes.
+     */
+    int size()
+    {
+        int size = 256 + body.length;
+        for (int i = 0; i < headerNames.length; i++)
+            size += 2 * (headerNames[i].length() + headerValues[i].length());
+        return size;
+    }
+
+    /**
+     * Returns the value of the <code>Date</code> header, or the time the
+     * response was received when it has no valid <code>Date</code> header.
+     */
+    private long getDate()
+    {
+        long date = parseDate(getHeader("Date"));
+        return date < 0 ? responseTime : date;
+    }
+
+    /**
+     * Parses the directives of a <code>Cache-Control</code> or <code>Pragma</code>
+     * header into a map of lower-case names to unquoted values.
+     *
+     * @param value The header value; may be <code>null</code>.
+     * @return The directives; empty if there are none.
+     */
+    static Map<String, String> directives(String value)
+    {
+        Map<String, String> directives = new HashMap<String, String>();
+        if (value == null)
+            return directives;
+
+        // Split on commas outside quoted strings.
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i <= value.length(); i++)
+        {
+            char c = i < value.length() ? value.charAt(i) : ',';
+            if (c == '"')
+            {
+                quoted = !quoted;
+            }
+            else if (c == ',' && !quoted)
+            {
+                String directive = value.substring(start, i).trim();
+                start = i + 1;
+                if (directive.length() == 0)
+                    continue;
+
+                int equals = directive.indexOf('=');
+                if (equals == -1)
+                {
+                    directives.put(directive.toLowerCase(Locale.ENGLISH), null);
+                }
+                else
+                {
+                    String argument = directive.substring(equals + 1).trim();
+                    if (argument.length() > 1 && argument.startsWith("\"") && argument.endsWith("\""))
+                        argument = argument.substring(1, argument.length() - 1);
+                    directives.put(directive.substring(0, equals).trim().toLowerCase(Locale.ENGLISH), argument);
+                }
+            }
+        }
+        return directives;
+    }
+
+    /**
+     * Splits a comma separated list of header names, such as the value of a
+     * <code>Vary</code> header, into lower-case names.
+     */
+    static String[] fieldNames(String value)
+    {
+        if (value == null)
+            return new String[0];
+
+        List<String> names = new ArrayList<String>();
+        for (String name : value.split(","))
+        {
+            name = name.trim();
+            if (name.length() > 0)
+                names.add(name.toLowerCase(Locale.ENGLISH));
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Parses a delta-seconds value, returning -1 if it is missing or invalid.
+     */
+    static long deltaSeconds(String value)
+    {
+        if (value == null)
+            return -1;
+        try
+        {
+            long seconds = Long.parseLong(value.trim());
+            return seconds < 0 ? -1 : seconds;
+        }
+        catch (NumberFormatException e)
+        {
+            // Values too large for a long are treated as the largest delta.
+            return value.trim().matches("[0-9]+") ? Integer.MAX_VALUE : -1;
+        }
+    }
+
+    /**
+     * Parses an HTTP date, returning -1 if it is missing or invalid.
+     */
+    static long parseDate(String value)
+    {
+        if (value == null)
+            return -1;
+        try
+        {
+            return DateUtil.parseDate(value).getTime();
+        }
+        catch (DateParseException e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> for the status codes that can be cached with a
+     * heuristic freshness lifetime, per RFC 7231 section 6.1.
+     */
+    static boolean isHeuristicallyCacheable(int statusCode)
+    {
+        return statusCode == 200 || statusCode == 203 || statusCode == 300 || statusCode == 301 || statusCode == 410;
+    }
+
+    /**
+     * Returns <code>true</code> for the headers that apply to a single
+     * connection and are never stored.
+     */
+    static boolean isHopByHop(String name)
+    {
+        return HOP_BY_HOP_HEADERS.contains(name.toLowerCase(Locale.ENGLISH));
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.services.http.proxy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpMethodBase;
+
+import flex.messaging.log.Log;
+import flex.messaging.services.HTTPProxyService;
+
+/**
+ *
+ * Lets concurrent identical GET requests share one upstream request. The first
+ * request for a key is sent upstream; requests with the same key that arrive
+ * before its response are answered with a copy of that response. Requests
+ * sent with credentials or with cookies for the target are always sent on
+ * their own, and so are the waiting requests when the shared request fails,
+ * its response sets cookies, is marked <code>private</code> or
+ * <code>no-store</code>, has <code>Vary: *</code> or its body is larger than
+ * <code>MAX_SHARED_RESPONSE_SIZE</code>. As in <code>CacheFilter</code>, a
+ * waiting request is given the shared response only if its request headers
+ * named by the <code>Vary</code> header of the response have the values of the
+ * shared request; otherwise it sends its own request. A waiting request also sends its own
+ * request when the shared one has not completed within the
+ * <code>coalesce-wait-millis</code> of the adapter.
+ */
+public class CoalescingFilter extends ProxyFilter
+{
+    /** The size in bytes of the largest response body shared by coalesced requests. */
+    public static final int MAX_SHARED_RESPONSE_SIZE = 1024 * 1024;
+
+    private static final int ERROR_READING_RESPONSE = 10722;
+
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+
+    /**
+     * Invokes the filter with the context.
+     *
+     * @param context The proxy context.
+     */
+    public void invoke(ProxyContext context)
+    {
+        String key = context.isCoalesceRequests() ? coalescingKey(context) : null;
+        if (key == null)
+        {
+            invokeNext(context);
+            return;
+        }
+
+        Flight flight = new Flight();
+        Flight leader = flights.putIfAbsent(key, flight);
+        if (leader != null)
+        {
+            if (await(leader, context.getCoalesceWaitMillis())
+                    && Arrays.equals(leader.varyValues, CacheFilter.requestHeaders(context, leader.varyNames)))
+            {
+                if (Log.isDebug())
+                    Log.getLogger(HTTPProxyService.LOG_CATEGORY).debug("-- Response shared with a concurrent request: " + context.getUrl());
+                context.setHttpMethod(new BufferedResponseMethod(leader.statusLine, leader.statusCode, leader.headers,
+                        new ByteArrayInputStream(leader.body), null));
+                return;
+            }
+            invokeNext(context);
+            return;
+        }
+
+        try
+        {
+            invokeNext(context);
+            share(context, flight);
+        }
+        finally
+        {
+            flights.remove(key, flight);
+            flight.done.countDown();
+        }
+    }
+
+    /**
+     * Reads the body of the response so that it can be copied to the waiting
+     * requests, and replaces the method of the context with one that reads
+     * the copy.
+     */
+    private void share(ProxyContext context, Flight flight)
+    {
+        HttpMethodBase httpMethod = context.getHttpMethod();
+        if (httpMethod.getResponseHeader("Set-Cookie") != null || httpMethod.getResponseHeader("Set-Cookie2") != null
+                || httpMethod.getResponseContentLength() > MAX_SHARED_RESPONSE_SIZE)
+        {
+            return;
+        }
+
+        Map<String, String> directives = CachedResponse.directives(CacheFilter.responseHeader(httpMethod, "Cache-Control"));
+        String vary = CacheFilter.responseHeader(httpMethod, "Vary");
+        if (directives.containsKey("private") || directives.containsKey("no-store")
+                || (vary != null && vary.indexOf('*') != -1))
+        {
+            return;
+        }
+        String[] varyNames = CachedResponse.fieldNames(vary);
+
+        String statusLine = httpMethod.getStatusLine().toString();
+        int statusCode = httpMethod.getStatusCode();
+        Header[] headers = httpMethod.getResponseHeaders();
+        try
+        {
+            InputStream in = httpMethod.getResponseBodyAsStream();
+            byte[] body = BufferedResponseMethod.read(in, MAX_SHARED_RESPONSE_SIZE);
+            if (body.length > MAX_SHARED_RESPONSE_SIZE)
+            {
+                context.setHttpMethod(new BufferedResponseMethod(statusLine, statusCode, headers,
+                        BufferedResponseMethod.remaining(body, in), httpMethod));
+                return;
+            }
+
+            httpMethod.releaseConnection();
+            context.setHttpMethod(new BufferedResponseMethod(statusLine, statusCode, headers,
+                    new ByteArrayInputStream(body), null));
+
+            flight.statusLine = statusLine;
+            flight.statusCode = statusCode;
+            flight.headers = headers;
+            flight.varyNames = varyNames;
+            flight.varyValues = CacheFilter.requestHeaders(context, varyNames);
+            flight.body = body;
+        }
+        catch (IOException e)
+        {
+            ProxyException pe = new ProxyException();
+            pe.setMessage(ERROR_READING_RESPONSE, new Object[] {context.getUrl(), e.getMessage()});
+            throw pe;
+        }
+    }
+
+    private void invokeNext(ProxyContext context)
+    {
+        if (next != null)
+        {
+            next.invoke(context);
+        }
+    }
+
+    /**
+     * Waits for the shared request to complete.
+     *
+     * @return <code>true</code> if it completed in time and its response can be copied.
+     */
+    private static boolean await(Flight flight, long timeoutMillis)
+    {
+        try
+        {
+            if (!flight.done.await(timeoutMillis, TimeUnit.MILLISECONDS))
+            {
+                if (Log.isDebug())
+                    Log.getLogger(HTTPProxyService.LOG_CATEGORY).debug("-- Shared request did not complete within "
+                            + timeoutMillis + " ms; sending the request on its own.");
+                return false;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return flight.body != null;
+    }
+
+    /**
+     * Returns the key identifying the upstream request that
+     * <code>RequestFilter</code> would send, or <code>null</code> if the
+     * request must not share its response.
+     */
+    private static String coalescingKey(ProxyContext context)
+    {
+        if (!ProxyConstants.METHOD_GET.equals(context.getMethod()) || context.hasAuthorization()
+                || RequestFilter.sendsCookies(context))
+        {
+            return null;
+        }
+
+        String key = CacheFilter.cacheKey(context);
+        if (key == null)
+            return null;
+
+        StringBuffer buffer = new StringBuffer(key);
+        buffer.append('\n').append(context.getContentType());
+        if (context.getHeaders() != null)
+        {
+            TreeMap<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+            for (Object e : context.getHeaders().entrySet())
+            {
+                Map.Entry entry = (Map.Entry)e;
+                String name = String.valueOf(entry.getKey());
+                headers.put(name, CacheFilter.requestHeader(context, name));
+            }
+            buffer.append('\n').append(headers);
+        }
+        buffer.append('\n').append(CacheFilter.requestHeader(context, "Accept"));
+        buffer.append('\n').append(CacheFilter.requestHeader(context, "Accept-Language"));
+        return buffer.toString();
+    }
+
+    /**
+     * An upstream request shared by concurrent requests, and its response once
+     * it can be copied.
+     */
+    private static final class Flight
+    {
+        final CountDownLatch done = new CountDownLatch(1);
+        String statusLine;
+        int statusCode;
+        Header[] headers;
+        String[] varyNames;
+        String[] varyValues;
+        byte[] body;
+    }
+}
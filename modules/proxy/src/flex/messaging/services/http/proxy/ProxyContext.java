@@ -36,7 +36,8 @@ import org.apache.commons.httpclient.Cookie;
  */
 public class ProxyContext extends SharedProxyContext
 {
-    private HttpMethodBase httpMethod;
+    // Read by the request thread that aborts a request running on an upstream thread.
+    private volatile HttpMethodBase httpMethod;
     private HttpClient httpClient;
 
     private String contentType;
@@ -49,6 +50,9 @@ public class ProxyContext extends SharedProxyContext
     private int cookieLimit = HTTPProxyAdapter.DEFAULT_COOKIE_LIMIT;
     private boolean allowLaxSSL;
     private boolean contentChunked;
+    private boolean coalesceRequests;
+    private long coalesceWaitMillis = HTTPProxyAdapter.DEFAULT_COALESCE_WAIT_MILLIS;
+    private boolean binaryResponse;
 
     private String credentialsHeader;
     
@@ -56,6 +60,7 @@ public class ProxyContext extends SharedProxyContext
     private UsernamePasswordCredentials proxyCredentials;
     private HttpConnectionManager connectionManager;
     private Protocol protocol;
+    private ResponseCache responseCache;
 
     // the status code from the response
     private int statusCode = 200;
@@ -66,6 +71,7 @@ public class ProxyContext extends SharedProxyContext
     private Map requestHeaders;
     private Map responseHeaders;
     private Object response;
+    private String responseCharset;
     
     // We need to record the request cookies
     
@@ -84,6 +90,16 @@ public class ProxyContext extends SharedProxyContext
         this.connectionManager = connectionManager;
     }
 
+    public ResponseCache getResponseCache()
+    {
+        return responseCache;
+    }
+
+    public void setResponseCache(ResponseCache responseCache)
+    {
+        this.responseCache = responseCache;
+    }
+
     public HttpMethodBase getHttpMethod()
     {
         return httpMethod;
@@ -237,6 +253,36 @@ public class ProxyContext extends SharedProxyContext
         contentChunked = value;
     }
 
+    public boolean isCoalesceRequests()
+    {
+        return coalesceRequests;
+    }
+
+    public void setCoalesceRequests(boolean coalesceRequests)
+    {
+        this.coalesceRequests = coalesceRequests;
+    }
+
+    public long getCoalesceWaitMillis()
+    {
+        return coalesceWaitMillis;
+    }
+
+    public void setCoalesceWaitMillis(long coalesceWaitMillis)
+    {
+        this.coalesceWaitMillis = coalesceWaitMillis;
+    }
+
+    public boolean isBinaryResponse()
+    {
+        return binaryResponse;
+    }
+
+    public void setBinaryResponse(boolean binaryResponse)
+    {
+        this.binaryResponse = binaryResponse;
+    }
+
 
     /*          OUTPUT           */
 
@@ -260,6 +306,16 @@ public class ProxyContext extends SharedProxyContext
         response = r;
     }
 
+    public String getResponseCharset()
+    {
+        return responseCharset;
+    }
+
+    public void setResponseCharset(String responseCharset)
+    {
+        this.responseCharset = responseCharset;
+    }
+
     public boolean streamResponseToClient()
     {
         return streamResponseToClient;
@@ -272,6 +272,32 @@ public class RequestFilter extends ProxyFilter
         }
     }
 
+    /**
+     * Returns <code>true</code> if <code>copyCookiesToEndpoint</code> would send
+     * cookies of the client to the target. The response to such a request may
+     * depend on the cookies, so it is neither cached nor shared.
+     * @param context the context
+     * @return <code>true</code> if the request sends cookies to the target.
+     */
+    public static boolean sendsCookies(ProxyContext context)
+    {
+        HttpServletRequest clientRequest = FlexContext.getHttpRequest();
+        javax.servlet.http.Cookie[] cookies = clientRequest != null ? clientRequest.getCookies() : null;
+        if (cookies == null)
+            return false;
+
+        String host = context.getTarget().getUrl().getHost();
+        String path = context.getTarget().getUrl().getPath();
+        for (javax.servlet.http.Cookie cookie : cookies)
+        {
+            CookieInfo cookieInfo = new CookieInfo(cookie.getName(), cookie.getDomain(), cookie.getName(),
+                    cookie.getValue(), cookie.getPath(), cookie.getMaxAge(), null, cookie.getSecure());
+            if (RequestUtil.createCookie(cookieInfo, context, host, path) != null)
+                return true;
+        }
+        return false;
+    }
+
     /**
      * Copy HTTP request headers to the endpoint.
      * @param context the context
@@ -0,0 +1,451 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.services.http.proxy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import flex.messaging.log.Log;
+import flex.messaging.services.HTTPProxyService;
+import flex.messaging.services.http.ResponseCacheSettings;
+
+/**
+ *
+ * Stores the responses of a proxy adapter for <code>CacheFilter</code>. The
+ * least recently used responses are evicted once the memory limit is reached;
+ * when a disk directory is configured they are written there and read back on
+ * their next use, until the disk limit is reached too. Files in the disk tier
+ * only live as long as the cache and are deleted by <code>clear</code>.
+ */
+public class ResponseCache
+{
+    private static final String FILE_PREFIX = "response";
+    private static final String FILE_SUFFIX = ".cache";
+
+    private final long maxMemorySize;
+    private final int maxEntrySize;
+    private final File diskDirectory;
+    private final long maxDiskSize;
+
+    private final LinkedHashMap<String, CachedResponse> memory = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true);
+    private final LinkedHashMap<String, DiskEntry> disk = new LinkedHashMap<String, DiskEntry>(16, 0.75f, true);
+    private long memorySize;
+    private long diskSize;
+    // Incremented when entries are removed, so that an entry written to disk
+    // concurrently with its removal is not registered afterwards.
+    private long removals;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong revalidationCount = new AtomicLong();
+
+    /**
+     * Creates a cache with the given settings.
+     *
+     * @param settings The cache settings.
+     */
+    public ResponseCache(ResponseCacheSettings settings)
+    {
+        maxMemorySize = settings.getMaxMemorySize();
+        maxEntrySize = settings.getMaxEntrySize();
+        maxDiskSize = settings.getMaxDiskSize();
+
+        File directory = null;
+        if (settings.getDiskDirectory() != null)
+        {
+            directory = new File(settings.getDiskDirectory());
+            if (!directory.isDirectory() && !directory.mkdirs())
+            {
+                if (Log.isWarn())
+                    Log.getLogger(HTTPProxyService.LOG_CATEGORY).warn("Cannot create the response cache directory '"
+                            + directory + "'; responses are kept in memory only.");
+                directory = null;
+            }
+        }
+        diskDirectory = directory;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Statistics
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the number of requests answered from the cache without
+     * contacting the upstream server.
+     *
+     * @return The hit count.
+     */
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of cacheable requests the upstream server answered
+     * with a full response.
+     *
+     * @return The miss count.
+     */
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of requests answered from the cache after the
+     * upstream server confirmed that a stale response was still valid.
+     *
+     * @return The revalidation count.
+     */
+    public long getRevalidationCount()
+    {
+        return revalidationCount.get();
+    }
+
+    /**
+     * Resets the hit, miss and revalidation counts.
+     */
+    public void resetCounts()
+    {
+        hitCount.set(0);
+        missCount.set(0);
+        revalidationCount.set(0);
+    }
+
+    /**
+     * Returns the number of responses in memory and on disk.
+     *
+     * @return The entry count.
+     */
+    public synchronized int getEntryCount()
+    {
+        return memory.size() + disk.size();
+    }
+
+    /**
+     * Returns the estimated number of bytes taken by the responses in memory.
+     *
+     * @return The memory size in bytes.
+     */
+    public synchronized long getMemorySize()
+    {
+        return memorySize;
+    }
+
+    /**
+     * Returns the number of bytes taken by the responses on disk.
+     *
+     * @return The disk size in bytes.
+     */
+    public synchronized long getDiskSize()
+    {
+        return diskSize;
+    }
+
+    /**
+     * Removes all responses from memory and disk.
+     */
+    public void clear()
+    {
+        List<DiskEntry> deleted;
+        synchronized (this)
+        {
+            removals++;
+            memory.clear();
+            memorySize = 0;
+            deleted = new ArrayList<DiskEntry>(disk.values());
+            disk.clear();
+            diskSize = 0;
+        }
+        delete(deleted);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Package private APIs used by CacheFilter
+    //
+    //--------------------------------------------------------------------------
+
+    int getMaxEntrySize()
+    {
+        return maxEntrySize;
+    }
+
+    void recordHit()
+    {
+        hitCount.incrementAndGet();
+    }
+
+    void recordMiss()
+    {
+        missCount.incrementAndGet();
+    }
+
+    void recordRevalidation()
+    {
+        revalidationCount.incrementAndGet();
+    }
+
+    /**
+     * Returns the response stored under a key, reading it back into memory if
+     * it was moved to disk.
+     */
+    CachedResponse get(String key)
+    {
+        DiskEntry entry;
+        synchronized (this)
+        {
+            CachedResponse response = memory.get(key);
+            if (response != null)
+                return response;
+
+            entry = disk.remove(key);
+            if (entry == null)
+                return null;
+            diskSize -= entry.size;
+        }
+
+        CachedResponse response = read(entry);
+        entry.file.delete();
+        if (response != null)
+            put(key, response);
+        return response;
+    }
+
+    /**
+     * Stores a response under a key, replacing any response stored before.
+     */
+    void put(String key, CachedResponse response)
+    {
+        int size = response.size();
+        List<Map.Entry<String, CachedResponse>> evicted = new ArrayList<Map.Entry<String, CachedResponse>>();
+        DiskEntry replaced;
+        long removalsAtEviction;
+        synchronized (this)
+        {
+            CachedResponse previous = memory.put(key, response);
+            if (previous != null)
+                memorySize -= previous.size();
+            memorySize += size;
+
+            replaced = disk.remove(key);
+            if (replaced != null)
+                diskSize -= replaced.size;
+
+            Iterator<Map.Entry<String, CachedResponse>> it = memory.entrySet().iterator();
+            while (memorySize > maxMemorySize && it.hasNext())
+            {
+                Map.Entry<String, CachedResponse> eldest = it.next();
+                it.remove();
+                memorySize -= eldest.getValue().size();
+                evicted.add(eldest);
+            }
+            removalsAtEviction = removals;
+        }
+
+        if (replaced != null)
+            replaced.file.delete();
+
+        if (diskDirectory != null)
+        {
+            for (Map.Entry<String, CachedResponse> eldest : evicted)
+                spill(eldest.getKey(), eldest.getValue(), removalsAtEviction);
+        }
+    }
+
+    /**
+     * Removes the response stored under a key.
+     */
+    void remove(String key)
+    {
+        DiskEntry entry;
+        synchronized (this)
+        {
+            removals++;
+            CachedResponse response = memory.remove(key);
+            if (response != null)
+                memorySize -= response.size();
+            entry = disk.remove(key);
+            if (entry != null)
+                diskSize -= entry.size;
+        }
+        if (entry != null)
+            entry.file.delete();
+    }
+
+    /**
+     * Removes the responses stored under keys that start with a prefix.
+     */
+    void removeAll(String keyPrefix)
+    {
+        List<DiskEntry> deleted = new ArrayList<DiskEntry>();
+        synchronized (this)
+        {
+            removals++;
+            Iterator<Map.Entry<String, CachedResponse>> it = memory.entrySet().iterator();
+            while (it.hasNext())
+            {
+                Map.Entry<String, CachedResponse> entry = it.next();
+                if (entry.getKey().startsWith(keyPrefix))
+                {
+                    it.remove();
+                    memorySize -= entry.getValue().size();
+                }
+            }
+
+            Iterator<Map.Entry<String, DiskEntry>> diskIt = disk.entrySet().iterator();
+            while (diskIt.hasNext())
+            {
+                Map.Entry<String, DiskEntry> entry = diskIt.next();
+                if (entry.getKey().startsWith(keyPrefix))
+                {
+                    diskIt.remove();
+                    diskSize -= entry.getValue().size;
+                    deleted.add(entry.getValue());
+                }
+            }
+        }
+        delete(deleted);
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Disk tier
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Writes a response evicted from memory to disk, then drops the least
+     * recently used responses on disk once the disk limit is reached.
+     */
+    private void spill(String key, CachedResponse response, long removalsAtEviction)
+    {
+        DiskEntry entry = write(response);
+        if (entry == null)
+            return;
+
+        List<DiskEntry> deleted = new ArrayList<DiskEntry>();
+        synchronized (this)
+        {
+            if (removals != removalsAtEviction || memory.containsKey(key) || disk.containsKey(key))
+            {
+                // The response was removed or replaced while it was written.
+                deleted.add(entry);
+            }
+            else
+            {
+                disk.put(key, entry);
+                diskSize += entry.size;
+                Iterator<DiskEntry> it = disk.values().iterator();
+                while (diskSize > maxDiskSize && it.hasNext())
+                {
+                    DiskEntry eldest = it.next();
+                    it.remove();
+                    diskSize -= eldest.size;
+                    deleted.add(eldest);
+                }
+            }
+        }
+        delete(deleted);
+    }
+
+    private DiskEntry write(CachedResponse response)
+    {
+        File file = null;
+        try
+        {
+            file = File.createTempFile(FILE_PREFIX, FILE_SUFFIX, diskDirectory);
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try
+            {
+                out.writeObject(response);
+            }
+            finally
+            {
+                out.close();
+            }
+            return new DiskEntry(file, file.length());
+        }
+        catch (IOException e)
+        {
+            if (Log.isWarn())
+                Log.getLogger(HTTPProxyService.LOG_CATEGORY).warn("Cannot write a cached response to '"
+                        + diskDirectory + "': " + e.getMessage());
+            if (file != null)
+                file.delete();
+            return null;
+        }
+    }
+
+    private CachedResponse read(DiskEntry entry)
+    {
+        try
+        {
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(entry.file)));
+            try
+            {
+                return (CachedResponse)in.readObject();
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (Exception e)
+        {
+            if (Log.isDebug())
+                Log.getLogger(HTTPProxyService.LOG_CATEGORY).debug("Cannot read the cached response in '"
+                        + entry.file + "': " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void delete(List<DiskEntry> entries)
+    {
+        for (DiskEntry entry : entries)
+            entry.file.delete();
+    }
+
+    /**
+     * A response written to disk.
+     */
+    private static final class DiskEntry
+    {
+        final File file;
+        final long size;
+
+        DiskEntry(File file, long size)
+        {
+            this.file = file;
+            this.size = size;
+        }
+    }
+}
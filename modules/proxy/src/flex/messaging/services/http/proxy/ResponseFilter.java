@@ -31,7 +31,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Enumeration;
@@ -53,6 +55,9 @@ public class ResponseFilter extends ProxyFilter
 
     public static int RESPONSE_CHUNK = 4096;
 
+    /** The largest array allocated up front for a body, whatever its announced content length. */
+    private static final int MAX_INITIAL_BODY_SIZE = 1024 * 1024;
+
     private static final int STATUS_ERROR = 10708;
     private static final int NULL_RESPONSE_STREAM = 10709;
     private static final int CANNOT_STREAM_NOT_HTTP = 10710;
@@ -295,6 +300,10 @@ public class ResponseFilter extends ProxyFilter
                     throw new ProxyException(CANNOT_STREAM_NOT_HTTP);
                 }
             }
+            else if (context.isBinaryResponse())
+            {
+                writeResponseAsBytes(in, length, context);
+            }
             else
             {
                 writeResponseAsString(in, length, context);
@@ -423,4 +432,82 @@ public class ResponseFilter extends ProxyFilter
 
         context.setResponse(sb.toString());
     }
+
+    /**
+     * Sets the response to the bytes of the body, without a byte order mark,
+     * and the response charset to the charset named by the byte order mark
+     * or the content type. The body is read into a single array of the
+     * content length when it is known and at most 1 MB; larger bodies grow the
+     * array as they arrive, so that a content length the server does not honor
+     * cannot make the filter allocate more than it reads.
+     */
+    protected void writeResponseAsBytes(InputStream inStream, int length, ProxyContext context)
+            throws IOException
+    {
+        String charset = context.getHttpMethod().getResponseCharSet();
+
+        PushbackInputStream in = new PushbackInputStream(inStream, 4);
+        byte[] head = new byte[4];
+        int headLength = 0;
+        int read;
+        while (headLength < head.length && (read = in.read(head, headLength, head.length - headLength)) >= 0)
+        {
+            headLength += read;
+        }
+
+        int bomLength = 0;
+        if (headLength >= 4 && head[0] == (byte)0xFF && head[1] == (byte)0xFE && head[2] == 0 && head[3] == 0)
+        {
+            bomLength = 4;
+            charset = "UTF-32LE";
+        }
+        else if (headLength >= 4 && head[0] == 0 && head[1] == 0 && head[2] == (byte)0xFE && head[3] == (byte)0xFF)
+        {
+            bomLength = 4;
+            charset = "UTF-32BE";
+        }
+        else if (headLength >= 3 && head[0] == (byte)0xEF && head[1] == (byte)0xBB && head[2] == (byte)0xBF)
+        {
+            bomLength = 3;
+            charset = "UTF-8";
+        }
+        else if (headLength >= 2 && head[0] == (byte)0xFF && head[1] == (byte)0xFE)
+        {
+            bomLength = 2;
+            charset = "UTF-16LE";
+        }
+        else if (headLength >= 2 && head[0] == (byte)0xFE && head[1] == (byte)0xFF)
+        {
+            bomLength = 2;
+            charset = "UTF-16BE";
+        }
+        in.unread(head, bomLength, headLength - bomLength);
+
+        int expected = length < 0 ? -1 : Math.max(length - bomLength, 0);
+        byte[] body = new byte[expected < 0 ? RESPONSE_CHUNK : Math.min(expected, MAX_INITIAL_BODY_SIZE)];
+        int size = 0;
+        while (true)
+        {
+            if (size == body.length)
+            {
+                // Grows when the length is unknown, larger than the initial array or
+                // shorter than the body, but not past the announced length while it is honored.
+                int next = in.read();
+                if (next < 0)
+                    break;
+                int capacity = Math.max(body.length * 2, RESPONSE_CHUNK);
+                if (size < expected && capacity > expected)
+                    capacity = expected;
+                body = Arrays.copyOf(body, capacity);
+                body[size++] = (byte)next;
+            }
+            read = in.read(body, size, body.length - size);
+            if (read < 0)
+                break;
+            size += read;
+        }
+
+        context.setResponse(size == body.length ? body : Arrays.copyOf(body, size));
+        context.setResponseCharset(charset);
+    }
 }
@@ -21,6 +21,9 @@ import java.io.IOException;
 import flex.management.BaseControl;
 import flex.management.runtime.AdminConsoleTypes;
 import flex.management.runtime.messaging.DestinationControl;
+import flex.messaging.FactoryInstance;
+import flex.messaging.factories.InstancePool;
+import flex.messaging.factories.JavaFactoryInstance;
 import flex.messaging.services.remoting.RemotingDestination;
 
 /**
@@ -114,6 +117,48 @@ public class RemotingDestinationControl extends DestinationControl implements
         return Integer.valueOf(averageProcessingTimeMillis);
     }
 
+    /** {@inheritDoc} */
+    public Integer getPooledInstanceActiveCount() throws IOException
+    {
+        InstancePool pool = getInstancePool();
+        return Integer.valueOf(pool != null ? pool.getActiveCount() : 0);
+    }
+
+    /** {@inheritDoc} */
+    public Integer getPooledInstanceIdleCount() throws IOException
+    {
+        InstancePool pool = getInstancePool();
+        return Integer.valueOf(pool != null ? pool.getIdleCount() : 0);
+    }
+
+    /** {@inheritDoc} */
+    public Long getPooledInstanceCreatedCount() throws IOException
+    {
+        InstancePool pool = getInstancePool();
+        return Long.valueOf(pool != null ? pool.getCreatedCount() : 0);
+    }
+
+    /** {@inheritDoc} */
+    public Long getPooledInstanceEvictedCount() throws IOException
+    {
+        InstancePool pool = getInstancePool();
+        return Long.valueOf(pool != null ? pool.getEvictedCount() : 0);
+    }
+
+    /** {@inheritDoc} */
+    public Long getPooledInstanceBorrowCount() throws IOException
+    {
+        InstancePool pool = getInstancePool();
+        return Long.valueOf(pool != null ? pool.getBorrowCount() : 0);
+    }
+
+    /** {@inheritDoc} */
+    public Long getPooledInstanceWaitTimeoutCount() throws IOException
+    {
+        InstancePool pool = getInstancePool();
+        return Long.valueOf(pool != null ? pool.getWaitTimeoutCount() : 0);
+    }
+
     /**
      * Callback used to register properties for display in the admin application.
      */
@@ -123,13 +168,22 @@ public class RemotingDestinationControl extends DestinationControl implements
         String name = this.getObjectName().getCanonicalName();
 
         String[] pollablePerInterval = { "InvocationSuccessCount", "InvocationFaultCount",
-                "AverageInvocationProcessingTimeMillis" };
+                "AverageInvocationProcessingTimeMillis", "PooledInstanceActiveCount", "PooledInstanceIdleCount" };
 
         getRegistrar().registerObjects(
                 new int[] {AdminConsoleTypes.DESTINATION_POLLABLE, AdminConsoleTypes.GRAPH_BY_POLL_INTERVAL},
                 name, pollablePerInterval);
     }
 
+    /**
+     * Helper method to return the instance pool of a destination with <code>pooled</code> scope.
+     */
+    private InstancePool getInstancePool()
+    {
+        FactoryInstance factoryInstance = ((RemotingDestination)destination).getFactoryInstance();
+        return factoryInstance instanceof JavaFactoryInstance ? ((JavaFactoryInstance)factoryInstance).getInstancePool() : null;
+    }
+
     /**
      * Helper method to reset state in the case of errors updating statistics.
      */
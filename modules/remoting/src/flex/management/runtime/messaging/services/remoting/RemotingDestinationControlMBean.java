@@ -50,4 +50,58 @@ public interface RemotingDestinationControlMBean extends
      * @throws IOException Throws IOException.
      */
     Integer getAverageInvocationProcessingTimeMillis() throws IOException;
+
+    /**
+     * Returns the number of pooled instances currently in use for a destination
+     * with <code>pooled</code> scope.
+     *
+     * @return The number of pooled instances in use, or 0 if the destination is not pooled.
+     * @throws IOException Throws IOException.
+     */
+    Integer getPooledInstanceActiveCount() throws IOException;
+
+    /**
+     * Returns the number of idle pooled instances for a destination with
+     * <code>pooled</code> scope.
+     *
+     * @return The number of idle pooled instances, or 0 if the destination is not pooled.
+     * @throws IOException Throws IOException.
+     */
+    Integer getPooledInstanceIdleCount() throws IOException;
+
+    /**
+     * Returns the number of instances created by the pool for a destination with
+     * <code>pooled</code> scope.
+     *
+     * @return The number of pooled instances created, or 0 if the destination is not pooled.
+     * @throws IOException Throws IOException.
+     */
+    Long getPooledInstanceCreatedCount() throws IOException;
+
+    /**
+     * Returns the number of idle instances evicted from the pool for a destination
+     * with <code>pooled</code> scope.
+     *
+     * @return The number of pooled instances evicted, or 0 if the destination is not pooled.
+     * @throws IOException Throws IOException.
+     */
+    Long getPooledInstanceEvictedCount() throws IOException;
+
+    /**
+     * Returns the number of instances borrowed from the pool for a destination
+     * with <code>pooled</code> scope.
+     *
+     * @return The number of pooled instances borrowed, or 0 if the destination is not pooled.
+     * @throws IOException Throws IOException.
+     */
+    Long getPooledInstanceBorrowCount() throws IOException;
+
+    /**
+     * Returns the number of invocations that failed because the pool was exhausted
+     * for a destination with <code>pooled</code> scope.
+     *
+     * @return The number of pool wait timeouts, or 0 if the destination is not pooled.
+     * @throws IOException Throws IOException.
+     */
+    Long getPooledInstanceWaitTimeoutCount() throws IOException;
 }
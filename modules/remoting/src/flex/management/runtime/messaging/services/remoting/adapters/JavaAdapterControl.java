@@ -16,9 +16,12 @@
  */
 package flex.management.runtime.messaging.services.remoting.adapters;
 
+import java.io.IOException;
+
 import flex.management.BaseControl;
 import flex.management.runtime.messaging.services.ServiceAdapterControl;
 import flex.messaging.services.remoting.adapters.JavaAdapter;
+import flex.messaging.services.remoting.adapters.RemotingResultCache;
 
 /**
  * The <code>JavaAdapterControl</code> class is the MBean implemenation
@@ -28,6 +31,8 @@ public class JavaAdapterControl extends ServiceAdapterControl implements
         JavaAdapterControlMBean
 {
     private static final String TYPE = "JavaAdapter";
+
+    private final JavaAdapter javaAdapter;
     
     /**
      * Constructs a <code>JavaAdapterControl</code>, assigning its id, managed
@@ -39,6 +44,7 @@ public class JavaAdapterControl extends ServiceAdapterControl implements
     public JavaAdapterControl(JavaAdapter serviceAdapter, BaseControl parent)
     {
         super(serviceAdapter, parent);
+        javaAdapter = serviceAdapter;
     }
 
     /** {@inheritDoc} */
@@ -46,4 +52,39 @@ public class JavaAdapterControl extends ServiceAdapterControl implements
     {
         return TYPE;
     }
+
+    /** {@inheritDoc} */
+    public Integer getResultCacheEntryCount() throws IOException
+    {
+        return Integer.valueOf(getResultCache().getEntryCount());
+    }
+
+    /** {@inheritDoc} */
+    public Long getResultCacheSizeBytes() throws IOException
+    {
+        return Long.valueOf(getResultCache().getSizeBytes());
+    }
+
+    /** {@inheritDoc} */
+    public Long getResultCacheHitCount() throws IOException
+    {
+        return Long.valueOf(getResultCache().getHitCount());
+    }
+
+    /** {@inheritDoc} */
+    public Long getResultCacheMissCount() throws IOException
+    {
+        return Long.valueOf(getResultCache().getMissCount());
+    }
+
+    /** {@inheritDoc} */
+    public Long getResultCacheEvictedCount() throws IOException
+    {
+        return Long.valueOf(getResultCache().getEvictedCount());
+    }
+
+    private RemotingResultCache getResultCache()
+    {
+        return javaAdapter.getResultCache();
+    }
 }
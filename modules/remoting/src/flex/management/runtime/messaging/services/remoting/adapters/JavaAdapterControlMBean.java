@@ -16,6 +16,8 @@
  */
 package flex.management.runtime.messaging.services.remoting.adapters;
 
+import java.io.IOException;
+
 import flex.management.runtime.messaging.services.ServiceAdapterControlMBean;
 
 /**
@@ -24,5 +26,47 @@ import flex.management.runtime.messaging.services.ServiceAdapterControlMBean;
  */
 public interface JavaAdapterControlMBean extends ServiceAdapterControlMBean
 {
-    // Empty for now.
+    /**
+     * Returns the number of results held in the result cache of the adapter.
+     *
+     * @return The number of cached results.
+     * @throws IOException Throws IOException.
+     */
+    Integer getResultCacheEntryCount() throws IOException;
+
+    /**
+     * Returns the total size in bytes of the results held in the result cache
+     * of the adapter.
+     *
+     * @return The size of the cached results in bytes.
+     * @throws IOException Throws IOException.
+     */
+    Long getResultCacheSizeBytes() throws IOException;
+
+    /**
+     * Returns the number of invocations of cached methods served from the
+     * result cache.
+     *
+     * @return The result cache hit count.
+     * @throws IOException Throws IOException.
+     */
+    Long getResultCacheHitCount() throws IOException;
+
+    /**
+     * Returns the number of invocations of cached methods that were not
+     * served from the result cache.
+     *
+     * @return The result cache miss count.
+     * @throws IOException Throws IOException.
+     */
+    Long getResultCacheMissCount() throws IOException;
+
+    /**
+     * Returns the number of results evicted from the result cache because it
+     * was full.
+     *
+     * @return The result cache eviction count.
+     * @throws IOException Throws IOException.
+     */
+    Long getResultCacheEvictedCount() throws IOException;
 }
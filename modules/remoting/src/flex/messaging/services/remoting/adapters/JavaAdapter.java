@@ -18,6 +18,7 @@ package flex.messaging.services.remoting.adapters;
 
 import flex.management.runtime.messaging.services.remoting.adapters.JavaAdapterControl;
 import flex.messaging.FlexComponent;
+import flex.messaging.FlexContext;
 import flex.messaging.Destination;
 import flex.messaging.FactoryInstance;
 import flex.messaging.FlexFactory;
@@ -26,6 +27,11 @@ import flex.messaging.config.ConfigMap;
 import flex.messaging.config.ConfigurationConstants;
 import flex.messaging.config.ConfigurationException;
 import flex.messaging.config.SecurityConstraint;
+import flex.messaging.endpoints.Endpoint;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.SerializationException;
+import flex.messaging.io.amf.SelfContainedAmf3Output;
+import flex.messaging.io.amf.SelfContainedAmf3Value;
 import flex.messaging.messages.Message;
 import flex.messaging.messages.RemotingMessage;
 import flex.messaging.security.SecurityException;
@@ -39,6 +45,7 @@ import flex.messaging.util.StringUtils;
 import flex.messaging.log.LogCategories;
 import flex.messaging.log.Log;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.security.AccessController;
@@ -59,12 +66,29 @@ public class JavaAdapter extends ServiceAdapter
     private static final int REMOTING_METHOD_NULL_NAME_ERRMSG = 10658;
     private static final int REMOTING_METHOD_REFS_UNDEFINED_CONSTRAINT_ERRMSG = 10659;
     private static final int REMOTING_METHOD_NOT_DEFINED_ERRMSG = 10660;
+    private static final int REMOTING_METHOD_INVOCATION_INVALID_ERRMSG = 10661;
+    private static final int REMOTING_METHOD_CACHE_TTL_INVALID_ERRMSG = 10663;
 
     private static final String PROPERTY_INCLUDE_METHODS = "include-methods";
     private static final String PROPERTY_EXCLUDE_METHODS = "exclude-methods";
+    private static final String PROPERTY_METHOD_INVOCATION = "method-invocation";
+    private static final String PROPERTY_RESULT_CACHE = "result-cache";
+    private static final String TIME_TO_LIVE_MILLIS_ELEMENT = "time-to-live-millis";
     private static final String METHOD_ELEMENT = "method";
     private static final String NAME_ELEMENT = "name";
 
+    /**
+     * Value of the <code>method-invocation</code> property that invokes remote
+     * methods through cached method handles. This is the default.
+     */
+    public static final String METHOD_INVOCATION_METHOD_HANDLE = "method-handle";
+
+    /**
+     * Value of the <code>method-invocation</code> property that invokes remote
+     * methods through <code>java.lang.reflect.Method.invoke</code>.
+     */
+    public static final String METHOD_INVOCATION_REFLECTION = "reflection";
+
     //--------------------------------------------------------------------------
     //
     // Constructor
@@ -123,6 +147,41 @@ public class JavaAdapter extends ServiceAdapter
         super.setDestination(dest);
     }
 
+    //----------------------------------
+    //  methodInvocation
+    //----------------------------------
+
+    private String methodInvocation = METHOD_INVOCATION_METHOD_HANDLE;
+
+    /**
+     * Returns how remote methods are invoked once matched; either
+     * <code>method-handle</code> or <code>reflection</code>.
+     *
+     * @return the method invocation strategy
+     */
+    public String getMethodInvocation()
+    {
+        return methodInvocation;
+    }
+
+    /**
+     * Sets how remote methods are invoked once matched. Valid values are
+     * <code>method-handle</code>, the default, which invokes through method
+     * handles cached alongside the method match, and <code>reflection</code>.
+     *
+     * @param value the method invocation strategy
+     */
+    public void setMethodInvocation(String value)
+    {
+        if (!METHOD_INVOCATION_METHOD_HANDLE.equals(value) && !METHOD_INVOCATION_REFLECTION.equals(value))
+        {
+            ConfigurationException ce = new ConfigurationException();
+            ce.setMessage(REMOTING_METHOD_INVOCATION_INVALID_ERRMSG, new Object[] {value, getDestination().getId()});
+            throw ce;
+        }
+        methodInvocation = value;
+    }
+
     //----------------------------------
     //  excludeMethods
     //----------------------------------
@@ -245,6 +304,91 @@ public class JavaAdapter extends ServiceAdapter
         includeMethods.remove(value.getName());
     }
 
+    //----------------------------------
+    //  cachedMethods
+    //----------------------------------
+
+    private Map cachedMethods;
+    private RemotingResultCache resultCache;
+
+    /**
+     * Returns an <tt>Iterator</tt> over the currently registered cached methods.
+     *
+     * @return an <tt>Iterator</tt> over the currently registered cached methods
+     */
+    public Iterator getCachedMethodIterator()
+    {
+        return cachedMethods == null? Collections.EMPTY_LIST.iterator() : cachedMethods.values().iterator();
+    }
+
+    /**
+     * Adds a method to the list of cached methods for the adapter.
+     * Results of cached methods are kept in serialized form in the result cache
+     * for the method's time to live and are returned to later invocations with
+     * equal arguments without invoking the method. Only idempotent methods whose
+     * results do not depend on the calling user should be cached.
+     *
+     * @param value method to cache
+     */
+    public void addCachedMethod(RemotingMethod value)
+    {
+        String name = value.getName();
+        if (name == null)
+        {
+            ConfigurationException ce = new ConfigurationException();
+            ce.setMessage(REMOTING_METHOD_NULL_NAME_ERRMSG, new Object[] {getDestination().getId()});
+            throw ce;
+        }
+
+        // Validate that a method with this name is defined on the source class.
+        if (!isMethodDefinedBySource(name))
+        {
+            ConfigurationException ce = new ConfigurationException();
+            ce.setMessage(REMOTING_METHOD_NOT_DEFINED_ERRMSG, new Object[] {name, getDestination().getId()});
+            throw ce;
+        }
+
+        if (value.getResultCacheTimeToLiveMillis() <= 0)
+        {
+            ConfigurationException ce = new ConfigurationException();
+            ce.setMessage(REMOTING_METHOD_CACHE_TTL_INVALID_ERRMSG, new Object[] {name, getDestination().getId()});
+            throw ce;
+        }
+
+        if (cachedMethods == null)
+        {
+            cachedMethods = new HashMap();
+            cachedMethods.put(name, value);
+        }
+        else if (!cachedMethods.containsKey(name))
+        {
+            cachedMethods.put(name, value);
+        }
+    }
+
+    /**
+     * Removes a method from the list of cached methods for the adapter.
+     *
+     * @param value method to remove from the cached methods list
+     */
+    public void removeCachedMethod(RemotingMethod value)
+    {
+        if (cachedMethods != null)
+            cachedMethods.remove(value.getName());
+    }
+
+    /**
+     * Returns the cache holding the serialized results of cached methods.
+     *
+     * @return the result cache
+     */
+    public synchronized RemotingResultCache getResultCache()
+    {
+        if (resultCache == null)
+            resultCache = new RemotingResultCache();
+        return resultCache;
+    }
+
     //--------------------------------------------------------------------------
     //
     // Initialize, validate, start, and stop methods.
@@ -254,6 +398,10 @@ public class JavaAdapter extends ServiceAdapter
     /** {@inheritDoc} */
     @Override public void initialize(String id, ConfigMap properties)
     {
+        String invocation = properties.getPropertyAsString(PROPERTY_METHOD_INVOCATION, null);
+        if (invocation != null)
+            setMethodInvocation(invocation);
+
         ConfigMap methodsToInclude = properties.getPropertyAsMap(PROPERTY_INCLUDE_METHODS, null);
         if (methodsToInclude != null)
         {
@@ -324,6 +472,24 @@ public class JavaAdapter extends ServiceAdapter
                 }
             }
         }
+        ConfigMap resultCacheSettings = properties.getPropertyAsMap(PROPERTY_RESULT_CACHE, null);
+        if (resultCacheSettings != null)
+        {
+            List methods = resultCacheSettings.getPropertyAsList(METHOD_ELEMENT, null);
+            if ((methods != null) && !methods.isEmpty())
+            {
+                int n = methods.size();
+                for (int i = 0; i < n; i++)
+                {
+                    ConfigMap methodSettings = (ConfigMap)methods.get(i);
+                    RemotingMethod method = new RemotingMethod();
+                    method.setName(methodSettings.getPropertyAsString(NAME_ELEMENT, null));
+                    method.setResultCacheTimeToLiveMillis(methodSettings.getPropertyAsLong(TIME_TO_LIVE_MILLIS_ELEMENT, 0));
+                    addCachedMethod(method);
+                }
+            }
+            getResultCache().initialize(resultCacheSettings);
+        }
     }
 
     /** {@inheritDoc} */
@@ -365,14 +531,28 @@ public class JavaAdapter extends ServiceAdapter
         String methodName = remotingMessage.getOperation();
         List parameters = remotingMessage.getParameters();
         Object result = null;
+        Object instance = null;
+        boolean invoked = false;
 
         try
         {
             // Test that the target method may be invoked based upon include/exclude method settings.
             validateAgainstMethodFilters(methodName);
 
+            // Serve cached methods from the result cache.
+            RemotingMethod cachedMethod = cachedMethods != null? (RemotingMethod)cachedMethods.get(methodName) : null;
+            RemotingResultCache.Key cacheKey = null;
+            if (cachedMethod != null)
+            {
+                Endpoint endpoint = FlexContext.getEndpoint();
+                cacheKey = getResultCache().createKey(endpoint != null? endpoint.getId() : null, methodName, parameters);
+                SelfContainedAmf3Value cachedResult = resultCache.get(cacheKey);
+                if (cachedResult != null)
+                    return cachedResult;
+            }
+
             // Lookup and invoke.
-            Object instance = createInstance(factoryInstance.getInstanceClass());
+            instance = createInstance(factoryInstance.getInstanceClass());
             if (instance == null)
             {
                 MessageException me = new MessageException("Null instance returned from: " + factoryInstance);
@@ -383,9 +563,14 @@ public class JavaAdapter extends ServiceAdapter
 
             MethodMatcher methodMatcher = remotingDestination.getMethodMatcher();
             Method method = methodMatcher.getMethod(c, methodName, parameters);
-            result = method.invoke(instance, parameters.toArray());
+            if (METHOD_INVOCATION_REFLECTION.equals(methodInvocation))
+                result = method.invoke(instance, parameters.toArray());
+            else
+                result = methodMatcher.invoke(method, instance, parameters);
+            invoked = true;
 
-            saveInstance(instance);
+            if (cacheKey != null)
+                result = cacheResult(cacheKey, result, cachedMethod.getResultCacheTimeToLiveMillis());
         }
         catch (InvocationTargetException ex)
         {
@@ -427,6 +612,13 @@ public class JavaAdapter extends ServiceAdapter
             me.setCode("Server.Processing");
             throw me;
         }
+        finally
+        {
+            // Pooled instances are returned even if the invocation failed;
+            // other scopes are only saved after a successful invocation.
+            if (instance != null && (invoked || FlexFactory.SCOPE_POOLED.equals(factoryInstance.getScope())))
+                saveInstance(instance);
+        }
 
         return result;
     }
@@ -461,6 +653,36 @@ public class JavaAdapter extends ServiceAdapter
             MethodMatcher.methodNotFound(methodName, null, new Match(null));
     }
 
+    /**
+     * Serializes the result of a cached method and adds it to the result cache.
+     * Results that cannot be serialized without references, because they
+     * contain shared or circular objects, are returned as is and not cached.
+     *
+     * @return the serialized result, or the result if it was not cached.
+     */
+    private Object cacheResult(RemotingResultCache.Key key, Object result, long timeToLiveMillis)
+    {
+        try
+        {
+            SelfContainedAmf3Value serialized = SelfContainedAmf3Output.serialize(result, SerializationContext.getSerializationContext());
+            resultCache.put(key, serialized, timeToLiveMillis);
+            return serialized;
+        }
+        catch (SerializationException se)
+        {
+            if (Log.isDebug())
+                Log.getLogger(LOG_CATEGORY).debug("Result of remoting method '" + key.getMethodName() + "' for destination '"
+                        + getDestination().getId() + "' was not cached: " + se.getMessage());
+        }
+        catch (IOException ioe)
+        {
+            if (Log.isDebug())
+                Log.getLogger(LOG_CATEGORY).debug("Result of remoting method '" + key.getMethodName() + "' for destination '"
+                        + getDestination().getId() + "' was not cached: " + ioe.getMessage());
+        }
+        return result;
+    }
+
     /**
      * This method returns the instance of the given class.  You can override this in
      * your subclass to control how the instance is constructed.  Note that you can
@@ -487,6 +709,8 @@ public class JavaAdapter extends ServiceAdapter
 
     /**
      * This method is called by the adapter after the remote method has been invoked.
+     * If the invocation failed it is only called for pooled components, so that
+     * the instance is returned to its pool.
      * For session scoped components, by default FlexFactory provides an
      * operationComplete method to implement this operation.  For the JavaFactory,
      * this sets the attribute in the FlexSession to trigger sesison replication
@@ -19,7 +19,7 @@ package flex.messaging.services.remoting.adapters;
 import flex.messaging.config.SecurityConstraint;
 
 /**
- * Used to define included and excluded methods exposed by the <tt>JavaAdapter</tt>
+ * Used to define included, excluded and cached methods exposed by the <tt>JavaAdapter</tt>
  * for a remoting destination.
  * This class performs no internal synchronization.
  */
@@ -92,4 +92,32 @@ public class RemotingMethod
     {
         constraint = value;
     }
-}
\ No newline at end of file
+
+    //----------------------------------
+    //  resultCacheTimeToLiveMillis
+    //----------------------------------
+
+    private long resultCacheTimeToLiveMillis;
+
+    /**
+     * Returns the time in milliseconds that results of the remoting method
+     * remain in the result cache. A value of 0 means results are not cached.
+     *
+     * @return the time to live of cached results
+     */
+    public long getResultCacheTimeToLiveMillis()
+    {
+        return resultCacheTimeToLiveMillis;
+    }
+
+    /**
+     * Sets the time in milliseconds that results of the remoting method
+     * remain in the result cache. A value of 0 means results are not cached.
+     *
+     * @param value the time to live of cached results
+     */
+    public void setResultCacheTimeToLiveMillis(long value)
+    {
+        resultCacheTimeToLiveMillis = value;
+    }
+}
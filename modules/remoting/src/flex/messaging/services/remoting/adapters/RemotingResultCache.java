@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.services.remoting.adapters;
+
+import flex.messaging.config.ConfigMap;
+import flex.messaging.io.amf.SelfContainedAmf3Value;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the serialized results of idempotent remoting methods for the
+ * <tt>JavaAdapter</tt>. Results are keyed by endpoint, method name and argument
+ * values and are held as AMF 3 bytes in <tt>SelfContainedAmf3Value</tt>s, so a hit
+ * skips both the method invocation and the serialization of the result.
+ * <p>
+ * Entries expire after the time to live of their method and the least recently
+ * used entries are evicted once the cache holds more than <tt>max-entries</tt>
+ * results or more than <tt>max-size-bytes</tt> bytes.
+ * </p>
+ */
+public class RemotingResultCache
+{
+    private static final String MAX_ENTRIES = "max-entries";
+    private static final String MAX_SIZE_BYTES = "max-size-bytes";
+
+    /** Default maximum number of cached results. */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    /** Default maximum total size of cached results; 64 MB. */
+    public static final long DEFAULT_MAX_SIZE_BYTES = 64L * 1024 * 1024;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private long sizeBytes;
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private long maxSizeBytes = DEFAULT_MAX_SIZE_BYTES;
+
+    // Statistics.
+    private long hitCount;
+    private long missCount;
+    private long evictedCount;
+
+    //--------------------------------------------------------------------------
+    //
+    // Public Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Applies the size settings of a <code>result-cache</code> configuration element.
+     *
+     * @param properties The cache settings; may be <code>null</code>.
+     */
+    public void initialize(ConfigMap properties)
+    {
+        if (properties == null)
+            return;
+
+        setMaxEntries(properties.getPropertyAsInt(MAX_ENTRIES, maxEntries));
+        setMaxSizeBytes(properties.getPropertyAsLong(MAX_SIZE_BYTES, maxSizeBytes));
+    }
+
+    /**
+     * Creates the key for an invocation. The argument values are copied so later
+     * changes to the parameter list do not affect the key.
+     *
+     * @param endpointId The id of the endpoint the result is serialized for; may be <code>null</code>.
+     * @param methodName The method name.
+     * @param parameters The method arguments; may be <code>null</code>.
+     * @return The cache key.
+     */
+    public Key createKey(String endpointId, String methodName, List parameters)
+    {
+        Object[] args = parameters == null? new Object[0] : parameters.toArray();
+        return new Key(endpointId, methodName, args);
+    }
+
+    /**
+     * Returns the cached result for a key.
+     *
+     * @param key The key.
+     * @return The serialized result, or <code>null</code> if no unexpired result is cached.
+     */
+    public synchronized SelfContainedAmf3Value get(Key key)
+    {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expires <= System.currentTimeMillis())
+        {
+            remove(key, entry);
+            entry = null;
+        }
+
+        if (entry == null)
+        {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * Caches a serialized result, evicting the least recently used results if
+     * the cache grows beyond its bounds. Results larger than the maximum size of
+     * the cache are not cached.
+     *
+     * @param key The key.
+     * @param value The serialized result.
+     * @param timeToLiveMillis The time in milliseconds the result remains valid.
+     */
+    public synchronized void put(Key key, SelfContainedAmf3Value value, long timeToLiveMillis)
+    {
+        int size = value.getBytes().length;
+        if (size > maxSizeBytes || timeToLiveMillis <= 0)
+            return;
+
+        Entry previous = entries.get(key);
+        if (previous != null)
+            remove(key, previous);
+
+        entries.put(key, new Entry(value, size, System.currentTimeMillis() + timeToLiveMillis));
+        sizeBytes += size;
+        evict();
+    }
+
+    /**
+     * Discards all cached results.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        sizeBytes = 0;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Properties
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the number of cached results.
+     *
+     * @return The number of entries.
+     */
+    public synchronized int getEntryCount()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total size in bytes of the cached results.
+     *
+     * @return The size in bytes.
+     */
+    public synchronized long getSizeBytes()
+    {
+        return sizeBytes;
+    }
+
+    /**
+     * Returns the number of lookups that found a cached result.
+     *
+     * @return The hit count.
+     */
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups that found no cached result.
+     *
+     * @return The miss count.
+     */
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of results evicted because the cache was full.
+     *
+     * @return The evicted count.
+     */
+    public synchronized long getEvictedCount()
+    {
+        return evictedCount;
+    }
+
+    /**
+     * Returns the maximum number of cached results.
+     *
+     * @return The maximum number of entries.
+     */
+    public synchronized int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the maximum number of cached results.
+     *
+     * @param value The maximum number of entries.
+     */
+    public synchronized void setMaxEntries(int value)
+    {
+        maxEntries = value < 1 ? 1 : value;
+        evict();
+    }
+
+    /**
+     * Returns the maximum total size in bytes of the cached results.
+     *
+     * @return The maximum size in bytes.
+     */
+    public synchronized long getMaxSizeBytes()
+    {
+        return maxSizeBytes;
+    }
+
+    /**
+     * Sets the maximum total size in bytes of the cached results.
+     *
+     * @param value The maximum size in bytes.
+     */
+    public synchronized void setMaxSizeBytes(long value)
+    {
+        maxSizeBytes = value < 0 ? 0 : value;
+        evict();
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Private Methods
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Removes least recently used entries until the cache is within its bounds.
+     * Must be called while holding the cache lock.
+     */
+    private void evict()
+    {
+        Iterator<Map.Entry<Key, Entry>> iter = entries.entrySet().iterator();
+        while (iter.hasNext() && (entries.size() > maxEntries || sizeBytes > maxSizeBytes))
+        {
+            Entry eldest = iter.next().getValue();
+            iter.remove();
+            sizeBytes -= eldest.size;
+            evictedCount++;
+        }
+    }
+
+    private void remove(Key key, Entry entry)
+    {
+        entries.remove(key);
+        sizeBytes -= entry.size;
+    }
+
+    //--------------------------------------------------------------------------
+    //
+    // Nested Classes
+    //
+    //--------------------------------------------------------------------------
+
+    /**
+     * Identifies a cached result by endpoint, method name and argument values.
+     */
+    public static final class Key
+    {
+        private final String endpointId;
+        private final String methodName;
+        private final Object[] args;
+        private final int hash;
+
+        Key(String endpointId, String methodName, Object[] args)
+        {
+            this.endpointId = endpointId;
+            this.methodName = methodName;
+            this.args = args;
+
+            int h = methodName == null? 0 : methodName.hashCode();
+            h = 31 * h + (endpointId == null? 0 : endpointId.hashCode());
+            hash = 31 * h + Arrays.deepHashCode(args);
+        }
+
+        /**
+         * Returns the name of the method the result belongs to.
+         *
+         * @return The method name.
+         */
+        public String getMethodName()
+        {
+            return methodName;
+        }
+
+        /** {@inheritDoc} */
+        @Override public int hashCode()
+        {
+            return hash;
+        }
+
+        /** {@inheritDoc} */
+        @Override public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+
+            Key other = (Key)o;
+            return hash == other.hash
+                    && (methodName == null? other.methodName == null : methodName.equals(other.methodName))
+                    && (endpointId == null? other.endpointId == null : endpointId.equals(other.endpointId))
+                    && Arrays.deepEquals(args, other.args);
+        }
+    }
+
+    /**
+     * A cached result and its expiry time.
+     */
+    private static final class Entry
+    {
+        final SelfContainedAmf3Value value;
+        final int size;
+        final long expires;
+
+        Entry(SelfContainedAmf3Value value, int size, long expires)
+        {
+            this.value = value;
+            this.size = size;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit tests for the session counts of flex.messaging.FlexSessionManager
+ */
+public class FlexSessionManagerTest extends TestCase
+{
+    private static final int THREADS = 8;
+    private static final int SESSIONS_PER_THREAD = 1000;
+
+    private FlexSessionManager manager;
+
+    public FlexSessionManagerTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(FlexSessionManagerTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        manager = new FlexSessionManager(new MessageBroker(false));
+    }
+
+    public void testCountsAndMax()
+    {
+        manager.registerFlexSession(null);
+        manager.registerFlexSession(null);
+        manager.registerFlexSession(null);
+        manager.unregisterFlexSession(null);
+        Assert.assertEquals(2, manager.getFlexSessionCount());
+        Assert.assertEquals(3, manager.getMaxFlexSessionsInCurrentHour());
+    }
+
+    public void testConcurrentRegistration() throws Exception
+    {
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < THREADS; i++)
+        {
+            Thread thread = new Thread()
+            {
+                public void run()
+                {
+                    for (int j = 0; j < SESSIONS_PER_THREAD; j++)
+                        manager.registerFlexSession(null);
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        Assert.assertEquals(THREADS * SESSIONS_PER_THREAD, manager.getFlexSessionCount());
+        Assert.assertEquals(THREADS * SESSIONS_PER_THREAD, manager.getMaxFlexSessionsInCurrentHour());
+
+        // Sessions may be unregistered on other threads than they were registered on.
+        for (int i = 0; i < THREADS * SESSIONS_PER_THREAD; i++)
+            manager.unregisterFlexSession(null);
+        Assert.assertEquals(0, manager.getFlexSessionCount());
+        Assert.assertEquals(THREADS * SESSIONS_PER_THREAD, manager.getMaxFlexSessionsInCurrentHour());
+    }
+}
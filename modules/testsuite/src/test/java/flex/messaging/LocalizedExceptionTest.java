@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Locale;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import flex.messaging.client.FlexClientNotSubscribedException;
+import flex.messaging.util.PropertyStringResourceLoader;
+
+public class LocalizedExceptionTest extends TestCase
+{
+    private static final int UNHANDLED_FAILURE = 10000;
+
+    public LocalizedExceptionTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(LocalizedExceptionTest.class);
+    }
+
+    public void testMessageFormattedOnFirstRead()
+    {
+        CountingResourceLoader loader = new CountingResourceLoader();
+        LocalizedException e = new LocalizedException(loader);
+        e.setMessage(UNHANDLED_FAILURE, new Object[] {"abc"});
+        e.setDetails(UNHANDLED_FAILURE);
+        Assert.assertEquals(UNHANDLED_FAILURE, e.getNumber());
+        Assert.assertEquals(0, loader.lookups);
+
+        String message = e.getMessage();
+        Assert.assertEquals("There was an unhandled failure on the server. abc", message);
+        Assert.assertSame(message, e.getMessage());
+        Assert.assertEquals(1, loader.lookups);
+
+        Assert.assertEquals("???10000-details???", e.getDetails());
+        Assert.assertEquals(2, loader.lookups);
+    }
+
+    public void testSetMessageReplacesPendingMessage()
+    {
+        CountingResourceLoader loader = new CountingResourceLoader();
+        LocalizedException e = new LocalizedException(loader);
+        e.setMessage(UNHANDLED_FAILURE);
+        e.setMessage("literal");
+        Assert.assertEquals("literal", e.getMessage());
+        Assert.assertEquals(0, loader.lookups);
+    }
+
+    public void testSharedResourceLoader()
+    {
+        PropertyStringResourceLoader shared = PropertyStringResourceLoader.getSharedInstance();
+        Assert.assertSame(shared, PropertyStringResourceLoader.getSharedInstance());
+        Assert.assertEquals(new PropertyStringResourceLoader().getString("10000", new Object[] {"abc"}),
+                shared.getString("10000", new Object[] {"abc"}));
+
+        LocalizedException e = new LocalizedException();
+        e.setMessage(UNHANDLED_FAILURE, new Object[] {"abc"});
+        Assert.assertEquals("There was an unhandled failure on the server. abc", e.getMessage());
+
+        try
+        {
+            shared.setDefaultLocale(Locale.FRENCH);
+            fail("UnsupportedOperationException expected");
+        }
+        catch (UnsupportedOperationException uoe)
+        {
+            // Expected.
+        }
+    }
+
+    public void testSerializationResolvesMessage() throws Exception
+    {
+        LocalizedException e = new LocalizedException();
+        e.setMessage(UNHANDLED_FAILURE, new Object[] {"abc"});
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(e);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        LocalizedException read = (LocalizedException)in.readObject();
+        Assert.assertEquals("There was an unhandled failure on the server. abc", read.getMessage());
+        Assert.assertEquals(UNHANDLED_FAILURE, read.getNumber());
+    }
+
+    public void testStackTraceCapture()
+    {
+        Assert.assertTrue(new MessageException().getStackTrace().length > 0);
+        Assert.assertTrue(new FlexClientNotSubscribedException().getStackTrace().length > 0);
+        Assert.assertEquals(0, new UncapturedException().getStackTrace().length);
+    }
+
+    public void testStringsKeptApartPerClassLoader() throws Exception
+    {
+        File dir = File.createTempFile("strings", "");
+        dir.delete();
+        File bundleDir = new File(dir, "flex/messaging");
+        bundleDir.mkdirs();
+        File file = new File(bundleDir, "errors.properties");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1");
+        out.write("10000=Replaced {0}\n");
+        out.close();
+
+        PropertyStringResourceLoader loader = new PropertyStringResourceLoader(PropertyStringResourceLoader.PROPERTY_BUNDLE);
+        loader.setDefaultLocale(Locale.ROOT);
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        URLClassLoader replaced = new URLClassLoader(new URL[] {dir.toURI().toURL()}, null);
+        try
+        {
+            Assert.assertEquals("There was an unhandled failure on the server. abc", loader.getString("10000", new Object[] {"abc"}));
+            thread.setContextClassLoader(replaced);
+            Assert.assertEquals("Replaced abc", loader.getString("10000", new Object[] {"abc"}));
+            thread.setContextClassLoader(original);
+            Assert.assertEquals("There was an unhandled failure on the server. abc", loader.getString("10000", new Object[] {"abc"}));
+        }
+        finally
+        {
+            thread.setContextClassLoader(original);
+            file.delete();
+        }
+    }
+
+    public void testSubclassLoadFileOverrideUsed()
+    {
+        PropertyStringResourceLoader loader = new PropertyStringResourceLoader(PropertyStringResourceLoader.PROPERTY_BUNDLE)
+        {
+            protected InputStream loadFile(String filename)
+            {
+                return new ByteArrayInputStream("10000=Overridden".getBytes());
+            }
+        };
+        Assert.assertEquals("Overridden", loader.getString("10000"));
+        Assert.assertEquals("There was an unhandled failure on the server. abc",
+                new PropertyStringResourceLoader().getString("10000", new Object[] {"abc"}));
+    }
+
+    /**
+     * Opts out of capturing its stack trace.
+     */
+    private static class UncapturedException extends LocalizedException
+    {
+        protected boolean isStackTraceCaptured()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Counts the strings looked up through it.
+     */
+    private static class CountingResourceLoader extends PropertyStringResourceLoader
+    {
+        int lookups;
+
+        public String getString(String key, Locale locale, Object[] arguments)
+        {
+            lookups++;
+            return super.getString(key, locale, arguments);
+        }
+    }
+}
@@ -22,6 +22,8 @@ import java.util.Map;
 
 import flex.messaging.config.ConfigurationConstants;
 import flex.messaging.config.ConfigurationException;
+import flex.messaging.endpoints.AMFEndpoint;
+import flex.messaging.endpoints.Endpoint;
 import flex.messaging.factories.JavaFactory;
 import flex.messaging.services.MessageService;
 import flex.messaging.services.Service;
@@ -348,4 +350,60 @@ public class MessageBrokerTest extends TestCase
         List<String> channelIds = broker.getChannelIds();
         Assert.assertNull(channelIds);
     }
+
+    public void testGetEndpointByPath()
+    {
+        Endpoint amf = addEndpoint("my-amf", "http://{server.name}:{server.port}/{context.root}/messagebroker/amf");
+        Endpoint polling = addEndpoint("my-polling-amf", "http://{server.name}:{server.port}/{context.root}/messagebroker/amfpolling");
+
+        Assert.assertSame(amf, broker.getEndpoint("/messagebroker/amf", "/app"));
+        Assert.assertSame(amf, broker.getEndpoint("/MessageBroker/AMF/", "/app"));
+        Assert.assertSame(polling, broker.getEndpoint("/messagebroker/amfpolling", "/app"));
+        Assert.assertSame(polling, broker.getEndpoint("/messagebroker/amfpolling", "/other"));
+    }
+
+    public void testGetEndpointByPathAfterRemove()
+    {
+        addEndpoint("my-amf", "http://{server.name}:{server.port}/{context.root}/messagebroker/amf");
+        broker.getEndpoint("/messagebroker/amf", "/app");
+        broker.removeEndpoint("my-amf");
+        try
+        {
+            broker.getEndpoint("/messagebroker/amf", "/app");
+            fail("MessageException expected");
+        }
+        catch (MessageException me)
+        {
+            Assert.assertEquals(10003, me.getNumber());
+        }
+
+        Endpoint added = addEndpoint("my-streaming-amf", "http://{server.name}:{server.port}/{context.root}/messagebroker/streamingamf");
+        Assert.assertSame(added, broker.getEndpoint("/messagebroker/streamingamf", "/app"));
+    }
+
+    public void testGetRegisteredDestinationAfterRemove()
+    {
+        MessageService service = new MessageService();
+        service.setId("message-service");
+        broker.addService(service);
+        Destination destination = service.createDestination("dest");
+
+        Assert.assertSame(destination, broker.getRegisteredDestination("dest"));
+        service.removeDestination("dest");
+        Assert.assertNull(broker.getRegisteredDestination("dest"));
+
+        Destination recreated = service.createDestination("dest");
+        Assert.assertSame(recreated, broker.getRegisteredDestination("dest"));
+        broker.removeService("message-service");
+        Assert.assertNull(broker.getRegisteredDestination("dest"));
+    }
+
+    private Endpoint addEndpoint(String id, String url)
+    {
+        AMFEndpoint endpoint = new AMFEndpoint();
+        endpoint.setId(id);
+        endpoint.setUrl(url);
+        broker.addEndpoint(endpoint);
+        return endpoint;
+    }
 }
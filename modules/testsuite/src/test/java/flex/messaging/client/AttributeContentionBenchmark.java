@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import flex.messaging.FlexSession;
+import flex.messaging.MessageBroker;
+
+/**
+ * JMH benchmark of reading <code>FlexClient</code> and <code>FlexSession</code>
+ * attributes from several threads while another thread holds the lock of the
+ * FlexClient and the FlexSession the way push and poll processing does.
+ *
+ * Run from the testsuite module after <code>mvn test-compile</code> with
+ * <code>java -cp target/test-classes:&lt;test classpath&gt; org.openjdk.jmh.Main AttributeContentionBenchmark</code>.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributeContentionBenchmark
+{
+    private static final String NAME = "attribute";
+
+    private FlexClient flexClient;
+    private FlexSession session;
+
+    @Setup
+    public void setUp()
+    {
+        MessageBroker broker = new MessageBroker(false);
+        broker.initThreadLocals();
+
+        flexClient = new FlexClient(new FlexClientManager(broker), "benchmark");
+        flexClient.setAttribute(NAME, "value");
+
+        session = new BenchmarkSession();
+        session.setAttribute(NAME, "value");
+    }
+
+    @Benchmark
+    @Group("flexClient")
+    @GroupThreads(3)
+    public Object getFlexClientAttribute()
+    {
+        return flexClient.getAttribute(NAME);
+    }
+
+    @Benchmark
+    @Group("flexClient")
+    @GroupThreads(1)
+    public void holdFlexClientLock()
+    {
+        synchronized (flexClient.lock)
+        {
+            Blackhole.consumeCPU(100);
+        }
+    }
+
+    @Benchmark
+    @Group("flexSession")
+    @GroupThreads(3)
+    public Object getFlexSessionAttribute()
+    {
+        return session.getAttribute(NAME);
+    }
+
+    @Benchmark
+    @Group("flexSession")
+    @GroupThreads(1)
+    public void holdFlexSessionLock()
+    {
+        ((BenchmarkSession)session).holdLock();
+    }
+
+    /**
+     * A FlexSession that lets the benchmark hold its lock.
+     */
+    static final class BenchmarkSession extends FlexSession
+    {
+        public boolean isPushSupported()
+        {
+            return false;
+        }
+
+        public String getId()
+        {
+            return "benchmark";
+        }
+
+        void holdLock()
+        {
+            synchronized (lock)
+            {
+                Blackhole.consumeCPU(100);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.client;
+
+import java.util.Collections;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import flex.messaging.FlexSession;
+import flex.messaging.MessageBroker;
+
+/**
+ * Unit tests for the attributes of flex.messaging.client.FlexClient and flex.messaging.FlexSession
+ */
+public class AttributeTest extends TestCase
+{
+    private FlexClient flexClient;
+    private FlexSession session;
+
+    public AttributeTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(AttributeTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        MessageBroker broker = new MessageBroker(false);
+        broker.initThreadLocals();
+        flexClient = new FlexClient(new FlexClientManager(broker), "client");
+        session = new TestSession();
+    }
+
+    public void testFlexClientNullName()
+    {
+        Assert.assertNull(flexClient.getAttribute(null));
+        flexClient.removeAttribute(null);
+
+        flexClient.setAttribute(null, "value");
+        flexClient.setAttribute("name", "other");
+        Assert.assertEquals("value", flexClient.getAttribute(null));
+        Assert.assertTrue(Collections.list(flexClient.getAttributeNames()).contains(null));
+
+        flexClient.removeAttribute(null);
+        Assert.assertNull(flexClient.getAttribute(null));
+        Assert.assertEquals(Collections.singletonList("name"), Collections.list(flexClient.getAttributeNames()));
+    }
+
+    public void testFlexSessionNullName()
+    {
+        Assert.assertNull(session.getAttribute(null));
+        session.removeAttribute(null);
+
+        session.setAttribute(null, "value");
+        session.setAttribute("name", "other");
+        Assert.assertEquals("value", session.getAttribute(null));
+        Assert.assertTrue(Collections.list(session.getAttributeNames()).contains(null));
+
+        session.setAttribute(null, null);
+        Assert.assertNull(session.getAttribute(null));
+        Assert.assertEquals(Collections.singletonList("name"), Collections.list(session.getAttributeNames()));
+    }
+
+    /**
+     * A FlexSession that is not backed by a transport.
+     */
+    static final class TestSession extends FlexSession
+    {
+        public boolean isPushSupported()
+        {
+            return false;
+        }
+
+        public String getId()
+        {
+            return "session";
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.client;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import flex.messaging.MessageBroker;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.Message;
+
+/**
+ * Unit tests for the flex.messaging.client.BoundedOutboundQueue
+ */
+public class BoundedOutboundQueueTest extends TestCase
+{
+    private FlexClientManager flexClientManager;
+
+    public BoundedOutboundQueueTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(BoundedOutboundQueueTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        MessageBroker broker = new MessageBroker(false);
+        broker.initThreadLocals();
+        flexClientManager = new FlexClientManager(broker);
+    }
+
+    public void testDropOldest()
+    {
+        BoundedOutboundQueue queue = queue(new ArrayList<Message>(), 3, 0, BoundedOutboundQueue.OverflowPolicy.DROP_OLDEST);
+        for (int i = 1; i <= 5; i++)
+            Assert.assertTrue(queue.add(message("a", "m" + i, null)));
+
+        assertOrder(queue, new String[] {"m3", "m4", "m5"});
+        Assert.assertEquals(2, queue.getOverflowCount());
+        Assert.assertEquals(queue.getBytes(), flexClientManager.getOutboundQueueBytes());
+    }
+
+    public void testDropNewestByBytes()
+    {
+        AsyncMessage first = message("a", "m1", null);
+        long maxBytes = 2 * BoundedOutboundQueue.estimateSize(first);
+        BoundedOutboundQueue queue = queue(new ArrayList<Message>(), 0, maxBytes, BoundedOutboundQueue.OverflowPolicy.DROP_NEWEST);
+        Assert.assertTrue(queue.add(first));
+        Assert.assertTrue(queue.add(message("a", "m2", null)));
+        Assert.assertFalse(queue.add(message("a", "m3", null)));
+
+        assertOrder(queue, new String[] {"m1", "m2"});
+        Assert.assertEquals(maxBytes, queue.getBytes());
+    }
+
+    public void testConflate()
+    {
+        BoundedOutboundQueue queue = queue(new PartitionedOutboundQueue(), 2, 0, BoundedOutboundQueue.OverflowPolicy.CONFLATE);
+        queue.add(message("a", "IBM 1", "IBM"));
+        queue.add(message("a", "MSFT 1", "MSFT"));
+        queue.add(message("a", "IBM 2", "IBM"));
+        assertOrder(queue, new String[] {"IBM 2", "MSFT 1"});
+
+        // Without a queued message for the subtopic the oldest one is dropped.
+        queue.add(message("a", "ORCL 1", "ORCL"));
+        assertOrder(queue, new String[] {"MSFT 1", "ORCL 1"});
+        Assert.assertEquals(queue.getBytes(), flexClientManager.getOutboundQueueBytes());
+    }
+
+    public void testDisconnect()
+    {
+        BoundedOutboundQueue queue = queue(new ArrayList<Message>(), 1, 0, BoundedOutboundQueue.OverflowPolicy.DISCONNECT);
+        queue.add(message("a", "m1", null));
+        Assert.assertFalse(queue.checkOverflowed());
+        Assert.assertFalse(queue.add(message("a", "m2", null)));
+        Assert.assertTrue(queue.checkOverflowed());
+        Assert.assertFalse(queue.checkOverflowed());
+        assertOrder(queue, new String[] {"m1"});
+    }
+
+    public void testManagerTotalsQueuesAndRelease()
+    {
+        BoundedOutboundQueue queue1 = queue(new ArrayList<Message>(), 0, 0, BoundedOutboundQueue.OverflowPolicy.DROP_OLDEST);
+        BoundedOutboundQueue queue2 = queue(new PartitionedOutboundQueue(), 2, 0, BoundedOutboundQueue.OverflowPolicy.DROP_OLDEST);
+
+        queue1.add(message("a", "m1", null));
+        queue1.add(message("b", "m2", null));
+        queue2.add(message("a", "m3", null));
+        queue2.add(message("a", "m4", null));
+        // A full queue makes room in itself only.
+        queue2.add(message("a", "m5", null));
+        assertOrder(queue1, new String[] {"m1", "m2"});
+        assertOrder(queue2, new String[] {"m4", "m5"});
+        Assert.assertEquals(queue1.getBytes() + queue2.getBytes(), flexClientManager.getOutboundQueueBytes());
+
+        queue1.clear("b");
+        assertOrder(queue1, new String[] {"m1"});
+        for (Iterator<Message> iter = queue2.iterator("a"); iter.hasNext();)
+        {
+            iter.next();
+            iter.remove();
+        }
+        Assert.assertEquals(queue1.getBytes(), flexClientManager.getOutboundQueueBytes());
+        queue1.clear();
+        Assert.assertEquals(0, flexClientManager.getOutboundQueueBytes());
+        Assert.assertEquals(0, flexClientManager.getNonEmptyOutboundQueueCount());
+    }
+
+    public void testOversizedMessageDroppedAlone()
+    {
+        AsyncMessage first = message("a", "m1", null);
+        long maxBytes = 3 * BoundedOutboundQueue.estimateSize(first);
+        BoundedOutboundQueue queue = queue(new ArrayList<Message>(), 0, maxBytes, BoundedOutboundQueue.OverflowPolicy.DROP_OLDEST);
+        queue.add(first);
+        queue.add(message("a", "m2", null));
+
+        StringBuffer body = new StringBuffer();
+        while (body.length() <= maxBytes)
+            body.append("large");
+        Assert.assertFalse(queue.add(message("a", body.toString(), null)));
+        assertOrder(queue, new String[] {"m1", "m2"});
+        Assert.assertEquals(1, queue.getOverflowCount());
+    }
+
+    public void testLowestPriorityDroppedFirst()
+    {
+        BoundedOutboundQueue queue = queue(new PriorityOutboundQueue(0), 3, 0, BoundedOutboundQueue.OverflowPolicy.DROP_OLDEST);
+        queue.add(message("a", "low 1", null, 1));
+        queue.add(message("a", "high", null, 8));
+        queue.add(message("a", "low 2", null, 1));
+
+        queue.add(message("a", "normal", null, 4));
+        assertOrder(queue, new String[] {"high", "normal", "low 2"});
+        queue.add(message("a", "urgent", null, 9));
+        assertOrder(queue, new String[] {"urgent", "high", "normal"});
+        Assert.assertEquals(queue.getBytes(), flexClientManager.getOutboundQueueBytes());
+    }
+
+    public void testGlobalLimitAppliesAboveFairShare()
+    {
+        AsyncMessage message = message("a", "m1", null);
+        flexClientManager.setMaxOutboundQueueBytes(4 * BoundedOutboundQueue.estimateSize(message));
+        BoundedOutboundQueue stalled = queue(new ArrayList<Message>(), 0, 0, BoundedOutboundQueue.OverflowPolicy.DROP_OLDEST);
+        BoundedOutboundQueue healthy = queue(new ArrayList<Message>(), 0, 0, BoundedOutboundQueue.OverflowPolicy.DROP_OLDEST);
+
+        stalled.add(message);
+        for (int i = 2; i <= 4; i++)
+            stalled.add(message("a", "m" + i, null));
+        // Over the limit, but within its share of half the limit.
+        Assert.assertTrue(healthy.add(message("b", "h1", null)));
+        Assert.assertEquals(5 * BoundedOutboundQueue.estimateSize(message), flexClientManager.getOutboundQueueBytes());
+
+        // The stalled queue gives way until the total is back within the limit.
+        Assert.assertTrue(stalled.add(message("a", "m5", null)));
+        assertOrder(stalled, new String[] {"m3", "m4", "m5"});
+        assertOrder(healthy, new String[] {"h1"});
+        Assert.assertEquals(stalled.getBytes() + healthy.getBytes(), flexClientManager.getOutboundQueueBytes());
+        Assert.assertEquals(2, flexClientManager.getNonEmptyOutboundQueueCount());
+    }
+
+    private BoundedOutboundQueue queue(List<Message> queue, int maxMessages, long maxBytes,
+            BoundedOutboundQueue.OverflowPolicy policy)
+    {
+        return new BoundedOutboundQueue(queue, maxMessages, maxBytes, policy, flexClientManager);
+    }
+
+    private static void assertOrder(List<Message> queue, String[] bodies)
+    {
+        Assert.assertEquals(bodies.length, queue.size());
+        int i = 0;
+        for (Iterator<Message> iter = queue.iterator(); iter.hasNext(); i++)
+            Assert.assertEquals(bodies[i], iter.next().getBody());
+    }
+
+    private static AsyncMessage message(String clientId, String body, String subtopic, int priority)
+    {
+        AsyncMessage message = message(clientId, body, subtopic);
+        message.setHeader(Message.PRIORITY_HEADER, Integer.valueOf(priority));
+        return message;
+    }
+
+    private static AsyncMessage message(String clientId, String body, String subtopic)
+    {
+        AsyncMessage message = new AsyncMessage();
+        message.setClientId(clientId);
+        message.setMessageId("ID");
+        message.setBody(body);
+        if (subtopic != null)
+            message.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, subtopic);
+        return message;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import flex.messaging.MessageBroker;
+import flex.messaging.config.ConfigMap;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.CommandMessage;
+import flex.messaging.messages.Message;
+
+/**
+ * Unit tests for the flex.messaging.client.ConflatingOutboundQueueProcessor
+ */
+public class ConflatingOutboundQueueProcessorTest extends TestCase
+{
+    private ConflatingOutboundQueueProcessor processor;
+    private List<Message> queue;
+
+    public ConflatingOutboundQueueProcessorTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(ConflatingOutboundQueueProcessorTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        MessageBroker broker = new MessageBroker(false);
+        broker.initThreadLocals();
+        FlexClientManager manager = new FlexClientManager(broker);
+
+        processor = new ConflatingOutboundQueueProcessor();
+        processor.setFlexClient(manager.createFlexClient("client"));
+        processor.setEndpointId("my-streaming-amf");
+        processor.initialize(new ConfigMap());
+        queue = new ArrayList<Message>();
+    }
+
+    public void testNewestValuePerKeyInArrivalOrder()
+    {
+        processor.add(queue, message("sub", "IBM", 1));
+        processor.add(queue, message("sub", "MSFT", 2));
+        processor.add(queue, message("sub", "IBM", 3));
+        processor.add(queue, message("sub", "IBM", 4));
+
+        Assert.assertEquals(2, queue.size());
+        Assert.assertEquals(new Integer(4), queue.get(0).getBody());
+        Assert.assertEquals(new Integer(2), queue.get(1).getBody());
+    }
+
+    public void testKeysAreScopedToSubscription()
+    {
+        processor.add(queue, message("sub1", "IBM", 1));
+        processor.add(queue, message("sub2", "IBM", 2));
+        processor.add(queue, message("sub1", "IBM", 3));
+
+        Assert.assertEquals(2, queue.size());
+        Assert.assertEquals(new Integer(3), queue.get(0).getBody());
+        Assert.assertEquals(new Integer(2), queue.get(1).getBody());
+    }
+
+    public void testMessagesWithoutKeyAreQueued()
+    {
+        processor.add(queue, message("sub", null, 1));
+        processor.add(queue, message("sub", null, 2));
+        CommandMessage command = new CommandMessage();
+        command.setClientId("sub");
+        command.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, "IBM");
+        processor.add(queue, command);
+        processor.add(queue, command);
+
+        Assert.assertEquals(4, queue.size());
+    }
+
+    public void testConfiguredKeyHeader()
+    {
+        ConfigMap properties = new ConfigMap();
+        properties.addProperty(ConflatingOutboundQueueProcessor.CONFLATION_KEY_HEADER, "symbol");
+        processor.initialize(properties);
+
+        AsyncMessage first = message("sub", null, 1);
+        first.setHeader("symbol", "IBM");
+        AsyncMessage second = message("sub", "MSFT", 2);
+        second.setHeader("symbol", "IBM");
+        processor.add(queue, first);
+        processor.add(queue, second);
+
+        Assert.assertEquals(1, queue.size());
+        Assert.assertSame(second, queue.get(0));
+    }
+
+    public void testFlushStartsNewConflationWindow()
+    {
+        processor.add(queue, message("sub", "IBM", 1));
+        FlushResult result = processor.flush(queue);
+        Assert.assertEquals(1, result.getMessages().size());
+        Assert.assertTrue(queue.isEmpty());
+
+        processor.add(queue, message("sub", "IBM", 2));
+        processor.add(queue, message("sub", "IBM", 3));
+        Assert.assertEquals(1, queue.size());
+        Assert.assertEquals(new Integer(3), queue.get(0).getBody());
+    }
+
+    public void testMessageRemovedWithoutFlush()
+    {
+        processor.add(queue, message("sub", "IBM", 1));
+        queue.clear();
+
+        processor.add(queue, message("sub", "IBM", 2));
+        Assert.assertEquals(1, queue.size());
+        Assert.assertEquals(new Integer(2), queue.get(0).getBody());
+    }
+
+    public void testMessagesAheadRemovedWithoutFlush()
+    {
+        processor.add(queue, message("sub1", "IBM", 1));
+        processor.add(queue, message("sub2", "IBM", 2));
+        processor.add(queue, message("sub2", "MSFT", 3));
+        queue.remove(0);
+
+        processor.add(queue, message("sub2", "MSFT", 4));
+        Assert.assertEquals(2, queue.size());
+        Assert.assertEquals(new Integer(2), queue.get(0).getBody());
+        Assert.assertEquals(new Integer(4), queue.get(1).getBody());
+    }
+
+    public void testPriorityOrderedQueue()
+    {
+        queue = new PriorityOutboundQueue(0);
+        processor.add(queue, message("sub", "IBM", 1));
+        AsyncMessage urgent = message("sub", "MSFT", 2);
+        urgent.setHeader(Message.PRIORITY_HEADER, Integer.valueOf(9));
+        processor.add(queue, urgent);
+
+        processor.add(queue, message("sub", "IBM", 3));
+        Assert.assertEquals(2, queue.size());
+        Assert.assertSame(urgent, queue.get(0));
+        Assert.assertEquals(new Integer(3), queue.get(1).getBody());
+    }
+
+    private static AsyncMessage message(String clientId, String subtopic, int value)
+    {
+        AsyncMessage message = new AsyncMessage();
+        message.setClientId(clientId);
+        message.setBody(new Integer(value));
+        if (subtopic != null)
+            message.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, subtopic);
+        return message;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.client;
+
+import java.util.ArrayList;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import flex.messaging.MessageBroker;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.Message;
+import flex.messaging.util.TimeoutManager;
+
+/**
+ * Unit tests for the flex.messaging.client.ExpiredMessageSweeper
+ */
+public class ExpiredMessageSweeperTest extends TestCase
+{
+    private FlexClientManager flexClientManager;
+    private ExpiredMessageSweeper sweeper;
+    private long now;
+
+    public ExpiredMessageSweeperTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(ExpiredMessageSweeperTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        MessageBroker broker = new MessageBroker(false);
+        broker.initThreadLocals();
+        flexClientManager = new FlexClientManager(broker);
+        sweeper = new ExpiredMessageSweeper(flexClientManager, null);
+        now = System.currentTimeMillis();
+    }
+
+    public void testSweepsDueBucketsOnly()
+    {
+        FlexClient.EndpointQueue queue = queue("client");
+        add(queue, message("expired", now - 10000, 5000));
+        add(queue, message("live", now, 60000));
+        add(queue, message("forever", now - 10000, 0));
+        Assert.assertEquals(2, sweeper.size());
+        Assert.assertEquals(2, queue.expiryBuckets.size());
+
+        Assert.assertEquals(1, sweeper.sweep(now));
+        Assert.assertEquals(2, queue.messages.size());
+        Assert.assertEquals("live", queue.messages.get(0).getBody());
+        Assert.assertEquals(1, sweeper.size());
+        Assert.assertEquals(1, queue.expiryBuckets.size());
+        Assert.assertEquals(1, flexClientManager.getExpiredMessageCount());
+    }
+
+    public void testSharedBucket()
+    {
+        FlexClient.EndpointQueue queue1 = queue("client1");
+        FlexClient.EndpointQueue queue2 = queue("client2");
+        add(queue1, message("m1", now - 10000, 5000));
+        add(queue1, message("m2", now - 10000, 5000));
+        add(queue2, message("m3", now - 10000, 5000));
+        Assert.assertEquals(1, sweeper.size());
+
+        Assert.assertEquals(3, sweeper.sweep(now));
+        Assert.assertTrue(queue1.messages.isEmpty());
+        Assert.assertTrue(queue2.messages.isEmpty());
+        Assert.assertEquals(0, sweeper.size());
+        Assert.assertEquals(3, flexClientManager.getExpiredMessageCount());
+    }
+
+    public void testInvalidClientSkipped()
+    {
+        FlexClient.EndpointQueue queue = queue("client");
+        add(queue, message("expired", now - 10000, 5000));
+        queue.flexClient.valid = false;
+
+        Assert.assertEquals(0, sweeper.sweep(now));
+        Assert.assertEquals(0, sweeper.size());
+    }
+
+    public void testRemovedQueueUnindexed()
+    {
+        FlexClient.EndpointQueue queue1 = queue("client1");
+        FlexClient.EndpointQueue queue2 = queue("client2");
+        add(queue1, message("m1", now - 10000, 5000));
+        add(queue1, message("m2", now, 60000));
+        add(queue2, message("m3", now - 10000, 5000));
+        Assert.assertEquals(2, sweeper.size());
+
+        synchronized (queue1)
+        {
+            sweeper.remove(queue1);
+        }
+        Assert.assertNull(queue1.expiryBuckets);
+        Assert.assertEquals(1, sweeper.size());
+
+        Assert.assertEquals(1, sweeper.sweep(now));
+        Assert.assertEquals(2, queue1.messages.size());
+        Assert.assertEquals(0, sweeper.size());
+    }
+
+    public void testFlushCountsExpired()
+    {
+        FlexClient.EndpointQueue queue = queue("client");
+        queue.messages.add(message("expired", now - 10000, 5000));
+        queue.processor.flush(queue.messages);
+        Assert.assertTrue(queue.messages.isEmpty());
+        Assert.assertEquals(1, flexClientManager.getExpiredMessageCount());
+    }
+
+    public void testEarlierBucketReschedulesSweep() throws Exception
+    {
+        TimeoutManager timeoutManager = new TimeoutManager();
+        try
+        {
+            sweeper = new ExpiredMessageSweeper(flexClientManager, timeoutManager);
+            FlexClient.EndpointQueue queue = queue("client");
+            add(queue, message("late", now, 60000));
+            add(queue, message("early", now, 500));
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (flexClientManager.getExpiredMessageCount() == 0 && System.currentTimeMillis() < deadline)
+                Thread.sleep(50);
+            Assert.assertEquals(1, flexClientManager.getExpiredMessageCount());
+            synchronized (queue)
+            {
+                Assert.assertEquals(1, queue.messages.size());
+                Assert.assertEquals("late", queue.messages.get(0).getBody());
+            }
+        }
+        finally
+        {
+            timeoutManager.shutdown();
+        }
+    }
+
+    private void add(FlexClient.EndpointQueue queue, Message message)
+    {
+        synchronized (queue)
+        {
+            queue.messages.add(message);
+            sweeper.add(queue, message);
+        }
+    }
+
+    private FlexClient.EndpointQueue queue(String id)
+    {
+        FlexClient.EndpointQueue queue = new FlexClient.EndpointQueue();
+        queue.flexClient = new FlexClient(flexClientManager, id);
+        queue.messages = new ArrayList<Message>();
+        queue.processor = new FlexClientOutboundQueueProcessor();
+        queue.processor.setFlexClient(queue.flexClient);
+        return queue;
+    }
+
+    private static AsyncMessage message(String body, long timestamp, long timeToLive)
+    {
+        AsyncMessage message = new AsyncMessage();
+        message.setClientId("a");
+        message.setMessageId("ID");
+        message.setBody(body);
+        message.setTimestamp(timestamp);
+        message.setTimeToLive(timeToLive);
+        return message;
+    }
+}
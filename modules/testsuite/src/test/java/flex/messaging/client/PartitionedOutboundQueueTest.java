@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.client;
+
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import flex.messaging.MessageBroker;
+import flex.messaging.MessageClient;
+import flex.messaging.MessageDestination;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.Message;
+
+/**
+ * Unit tests for the flex.messaging.client.PartitionedOutboundQueue
+ */
+public class PartitionedOutboundQueueTest extends TestCase
+{
+    private PartitionedOutboundQueue queue;
+
+    public PartitionedOutboundQueueTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(PartitionedOutboundQueueTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        queue = new PartitionedOutboundQueue();
+        queue.add(message("a", "a1"));
+        queue.add(message("b", "b1"));
+        queue.add(message("a", "a2"));
+        queue.add(message("c", "c1"));
+        queue.add(message("b", "b2"));
+    }
+
+    public void testMergedInArrivalOrder()
+    {
+        assertOrder(queue, new String[] {"a1", "b1", "a2", "c1", "b2"});
+        Assert.assertEquals("c1", queue.get(3).getBody());
+        Assert.assertEquals(2, queue.size("a"));
+        Assert.assertEquals(0, queue.size("d"));
+    }
+
+    public void testPositionalAccess()
+    {
+        Assert.assertEquals("a2", queue.set(2, message("a", "a2'")).getBody());
+        Assert.assertEquals("b1", queue.remove(1).getBody());
+        assertOrder(queue, new String[] {"a1", "a2'", "c1", "b2"});
+    }
+
+    public void testMergedIteratorRemove()
+    {
+        for (Iterator<Message> iter = queue.iterator(); iter.hasNext();)
+        {
+            if (!"b".equals(iter.next().getClientId()))
+                iter.remove();
+        }
+        assertOrder(queue, new String[] {"b1", "b2"});
+        Assert.assertEquals(0, queue.size("a"));
+    }
+
+    public void testPartitionIteratorAndClear()
+    {
+        Iterator<Message> iter = queue.iterator("b");
+        Assert.assertEquals("b1", iter.next().getBody());
+        iter.remove();
+        Assert.assertEquals("b2", iter.next().getBody());
+        Assert.assertFalse(iter.hasNext());
+        Assert.assertFalse(queue.iterator("d").hasNext());
+
+        queue.clear("a");
+        assertOrder(queue, new String[] {"c1", "b2"});
+    }
+
+    public void testProcessorFlushesOnePartition()
+    {
+        MessageBroker broker = new MessageBroker(false);
+        broker.initThreadLocals();
+        ConflatingOutboundQueueProcessor processor = new ConflatingOutboundQueueProcessor();
+        processor.setFlexClient(new FlexClientManager(broker).createFlexClient("client"));
+
+        AsyncMessage tick = message("c", "c2");
+        tick.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, "IBM");
+        processor.add(queue, tick);
+        tick = message("c", "c3");
+        tick.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, "IBM");
+        processor.add(queue, tick);
+
+        MessageClient client = new MessageClient("c", new MessageDestination(), "amf", false);
+        List<Message> flushed = processor.flush(client, queue).getMessages();
+        Assert.assertEquals(2, flushed.size());
+        Assert.assertEquals("c1", flushed.get(0).getBody());
+        Assert.assertEquals("c3", flushed.get(1).getBody());
+        assertOrder(queue, new String[] {"a1", "b1", "a2", "b2"});
+    }
+
+    private static void assertOrder(List<Message> queue, String[] bodies)
+    {
+        Assert.assertEquals(bodies.length, queue.size());
+        int i = 0;
+        for (Iterator<Message> iter = queue.iterator(); iter.hasNext(); i++)
+            Assert.assertEquals(bodies[i], iter.next().getBody());
+    }
+
+    private static AsyncMessage message(String clientId, String body)
+    {
+        AsyncMessage message = new AsyncMessage();
+        message.setClientId(clientId);
+        message.setBody(body);
+        return message;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.client;
+
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import flex.messaging.MessageBroker;
+import flex.messaging.config.ConfigMap;
+import flex.messaging.endpoints.AMFEndpoint;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.Message;
+
+/**
+ * Unit tests for the flex.messaging.client.PriorityOutboundQueue
+ */
+public class PriorityOutboundQueueTest extends TestCase
+{
+    public PriorityOutboundQueueTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(PriorityOutboundQueueTest.class);
+    }
+
+    public void testPriorityOrderAndFifoWithinLevel()
+    {
+        PriorityOutboundQueue queue = new PriorityOutboundQueue(0);
+        queue.add(message("bulk1", new Integer(1)));
+        queue.add(message("default", null));
+        queue.add(message("alert1", new Integer(9)));
+        queue.add(message("bulk2", new Integer(1)));
+        queue.add(message("alert2", new Integer(9)));
+
+        assertOrder(queue, new String[] {"alert1", "alert2", "default", "bulk1", "bulk2"});
+        Assert.assertEquals("default", queue.get(2).getBody());
+        Assert.assertEquals("bulk1", queue.remove(3).getBody());
+        assertOrder(queue, new String[] {"alert1", "alert2", "default", "bulk2"});
+    }
+
+    public void testPriorityHeaderValues()
+    {
+        Assert.assertEquals(Message.DEFAULT_PRIORITY, PriorityOutboundQueue.getPriority(message("a", null)));
+        Assert.assertEquals(7, PriorityOutboundQueue.getPriority(message("a", new Double(7))));
+        Assert.assertEquals(3, PriorityOutboundQueue.getPriority(message("a", "3")));
+        Assert.assertEquals(Message.DEFAULT_PRIORITY, PriorityOutboundQueue.getPriority(message("a", "high")));
+        Assert.assertEquals(9, PriorityOutboundQueue.getPriority(message("a", new Integer(42))));
+        Assert.assertEquals(0, PriorityOutboundQueue.getPriority(message("a", new Integer(-1))));
+    }
+
+    public void testIteratorRemove()
+    {
+        PriorityOutboundQueue queue = new PriorityOutboundQueue(0);
+        for (int i = 0; i < 100; i++)
+            queue.add(message("m" + i, new Integer(i % 10)));
+
+        int removed = 0;
+        for (Iterator<Message> iter = queue.iterator(); iter.hasNext();)
+        {
+            Message message = iter.next();
+            if (PriorityOutboundQueue.getPriority(message) % 2 == 0)
+            {
+                iter.remove();
+                removed++;
+            }
+        }
+        Assert.assertEquals(50, removed);
+        Assert.assertEquals(50, queue.size());
+        Assert.assertEquals("m9", queue.get(0).getBody());
+        Assert.assertEquals("m91", queue.get(49).getBody());
+
+        queue.clear();
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertFalse(queue.iterator().hasNext());
+    }
+
+    public void testStarvedMessagesMoveUp() throws InterruptedException
+    {
+        PriorityOutboundQueue queue = new PriorityOutboundQueue(20);
+        queue.add(message("low", new Integer(4)));
+        Thread.sleep(30);
+        queue.add(message("high", new Integer(5)));
+
+        // The low priority message has waited long enough to join the next level.
+        assertOrder(queue, new String[] {"high", "low"});
+        Assert.assertEquals(2, queue.size());
+    }
+
+    public void testProcessorFlushesByPriority()
+    {
+        MessageBroker broker = new MessageBroker(false);
+        broker.initThreadLocals();
+        FlexClientOutboundQueueProcessor processor = new FlexClientOutboundQueueProcessor();
+        processor.setFlexClient(new FlexClientManager(broker).createFlexClient("client"));
+
+        AMFEndpoint endpoint = new AMFEndpoint();
+        endpoint.setUrl("http://localhost/messagebroker/amf");
+        ConfigMap queueSettings = new ConfigMap();
+        queueSettings.addProperty("priority-ordered", "true");
+        ConfigMap properties = new ConfigMap();
+        properties.addProperty("flex-client-outbound-queue", queueSettings);
+        endpoint.initialize("amf", properties);
+
+        List<Message> queue = endpoint.createFlexClientOutboundQueue();
+        Assert.assertTrue(queue instanceof PriorityOutboundQueue);
+        processor.add(queue, message("bulk", new Integer(2)));
+        processor.add(queue, message("alert", new Integer(8)));
+
+        List<Message> flushed = processor.flush(queue).getMessages();
+        Assert.assertEquals("alert", flushed.get(0).getBody());
+        Assert.assertEquals("bulk", flushed.get(1).getBody());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    private static void assertOrder(List<Message> queue, String[] bodies)
+    {
+        Assert.assertEquals(bodies.length, queue.size());
+        int i = 0;
+        for (Iterator<Message> iter = queue.iterator(); iter.hasNext(); i++)
+            Assert.assertEquals(bodies[i], iter.next().getBody());
+    }
+
+    private static AsyncMessage message(String body, Object priority)
+    {
+        AsyncMessage message = new AsyncMessage();
+        message.setClientId("sub");
+        message.setBody(body);
+        if (priority != null)
+            message.setHeader(Message.PRIORITY_HEADER, priority);
+        return message;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import flex.messaging.MessageBroker;
+import flex.messaging.config.ClusterSettings;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.services.MessageService;
+
+/**
+ * JMH benchmark of routing a message from one <code>TcpCluster</code> node to
+ * the <code>MessageService</code> of another node in the same JVM, measuring the
+ * time until the peer has handled the message.
+ *
+ * Run from the testsuite module after <code>mvn test-compile</code> with
+ * <code>java -cp target/test-classes:&lt;test classpath&gt; org.openjdk.jmh.Main ClusterRoutingBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClusterRoutingBenchmark
+{
+    private static final String CLUSTER_ID = "benchmark-cluster";
+    private static final String DESTINATION = "dest";
+    private static final String SERVICE_TYPE = CountingMessageService.class.getName();
+
+    @Param({TcpCluster.TRANSPORT_LOOPBACK, TcpCluster.TRANSPORT_TCP})
+    public String transport;
+
+    private MessageBroker sender;
+    private MessageBroker receiver;
+    private CountingMessageService receiverService;
+    private AsyncMessage message;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        String addressA = TcpCluster.TRANSPORT_TCP.equals(transport) ? "127.0.0.1:" + freePort() : "bench-a";
+        String addressB = TcpCluster.TRANSPORT_TCP.equals(transport) ? "127.0.0.1:" + freePort() : "bench-b";
+        sender = createNode(addressA, addressB);
+        receiver = createNode(addressB, addressA);
+        receiverService = (CountingMessageService)receiver.getServiceByType(SERVICE_TYPE);
+
+        Cluster cluster = sender.getClusterManager().getClusterById(CLUSTER_ID);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cluster.getMemberAddresses().size() < 2 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        message = new AsyncMessage();
+        message.setDestination(DESTINATION);
+        message.setBody("benchmark");
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        sender.getClusterManager().destroyClusters();
+        receiver.getClusterManager().destroyClusters();
+    }
+
+    @Benchmark
+    public long routeMessage()
+    {
+        long expected = receiverService.count.get() + 1;
+        sender.getClusterManager().invokeServiceOperation(SERVICE_TYPE, DESTINATION,
+                ClusterManager.OPERATION_PUSH_MESSAGE_FROM_PEER, new Object[] {message, Boolean.TRUE});
+        long count;
+        while ((count = receiverService.count.get()) < expected)
+            Thread.yield();
+        return count;
+    }
+
+    private MessageBroker createNode(String bindAddress, String member)
+    {
+        MessageBroker broker = new MessageBroker(false);
+        broker.setInternalPathResolver(new MessageBroker.InternalPathResolver()
+        {
+            public InputStream resolve(String filename)
+            {
+                return new ByteArrayInputStream("<cluster-properties/>".getBytes());
+            }
+        });
+
+        CountingMessageService service = new CountingMessageService();
+        service.setId("message-service");
+        broker.addService(service);
+
+        ClusterSettings settings = new ClusterSettings();
+        settings.setClusterName(CLUSTER_ID);
+        settings.setPropsFileName("tcp-cluster.xml");
+        settings.setImplementationClass(ClusterSettings.TCP_CLUSTER);
+        settings.addProperty(TcpCluster.TRANSPORT, transport);
+        settings.addProperty(TcpCluster.BIND_ADDRESS, bindAddress);
+        settings.addProperty(TcpCluster.MEMBER, member);
+        settings.addProperty(TcpCluster.JOIN_TIMEOUT_MILLIS, "0");
+
+        ClusterManager clusterManager = broker.getClusterManager();
+        clusterManager.prepareCluster(settings);
+        clusterManager.clusterDestinationChannel(CLUSTER_ID, SERVICE_TYPE, DESTINATION,
+                "my-amf", "http://" + bindAddress + "/messagebroker/amf", 80, false);
+        return broker;
+    }
+
+    private static int freePort() throws Exception
+    {
+        ServerSocket socket = new ServerSocket(0);
+        try
+        {
+            return socket.getLocalPort();
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    /**
+     * Counts the messages pushed to it by its peers.
+     */
+    public static class CountingMessageService extends MessageService
+    {
+        final AtomicLong count = new AtomicLong();
+
+        public void pushMessageFromPeer(AsyncMessage message, Boolean evalSelector)
+        {
+            count.incrementAndGet();
+        }
+    }
+}
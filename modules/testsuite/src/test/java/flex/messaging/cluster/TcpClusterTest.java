@@ -0,0 +1,430 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import flex.messaging.MessageBroker;
+import flex.messaging.config.ClusterSettings;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.services.MessageService;
+
+public class TcpClusterTest extends TestCase
+{
+    private static final String CLUSTER_ID = "test-cluster";
+    private static final String DESTINATION = "dest";
+    private static final String SERVICE_TYPE = RecordingMessageService.class.getName();
+
+    private final List<Node> nodes = new ArrayList<Node>();
+    private String sharedSecret;
+    private String implementationClass = ClusterSettings.TCP_CLUSTER;
+
+    public TcpClusterTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(TcpClusterTest.class);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        for (Node node : nodes)
+            node.broker.getClusterManager().destroyClusters();
+        nodes.clear();
+        super.tearDown();
+    }
+
+    public void testBroadcastServiceOperation() throws Exception
+    {
+        Node a = createNode("loopback", "static", address("a"), address("b"));
+        Node b = createNode("loopback", "static", address("b"), address("a"));
+        awaitMembers(a, 2);
+
+        a.clusterManager().invokeServiceOperation(SERVICE_TYPE, DESTINATION,
+                ClusterManager.OPERATION_PUSH_MESSAGE_FROM_PEER, new Object[] {createMessage("hello"), Boolean.TRUE});
+
+        AsyncMessage message = b.service.await();
+        Assert.assertEquals("hello", message.getBody());
+        Assert.assertNull(b.service.senders.get(0));
+        Assert.assertTrue(a.service.messages.isEmpty());
+    }
+
+    public void testPointToPointOperationReceivesSenderAddress() throws Exception
+    {
+        Node a = createNode("loopback", "static", address("a"), address("b"));
+        Node b = createNode("loopback", "static", address("b"), address("a"));
+        awaitMembers(a, 2);
+
+        a.clusterManager().invokePeerToPeerOperation(SERVICE_TYPE, DESTINATION,
+                ClusterManager.OPERATION_PUSH_MESSAGE_FROM_PEER_TO_PEER,
+                new Object[] {createMessage("direct"), Boolean.FALSE}, address("b"));
+
+        Assert.assertEquals("direct", b.service.await().getBody());
+        Assert.assertEquals(address("a"), b.service.senders.get(0));
+    }
+
+    public void testEndpointsOfAllNodes() throws Exception
+    {
+        Node a = createNode("loopback", "static", address("a"), address("b"));
+        createNode("loopback", "static", address("b"), address("a"));
+        awaitMembers(a, 2);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        List endpoints = a.clusterManager().getEndpointsForDestination(SERVICE_TYPE, DESTINATION);
+        while (endpoints.size() < 2 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+            endpoints = a.clusterManager().getEndpointsForDestination(SERVICE_TYPE, DESTINATION);
+        }
+
+        List<String> urls = new ArrayList<String>();
+        for (Object endpoint : endpoints)
+            urls.add((String)((Map)endpoint).get("my-amf"));
+        Collections.sort(urls);
+        Assert.assertEquals(2, urls.size());
+        Assert.assertEquals(endpointUrl(address("a")), urls.get(0));
+        Assert.assertEquals(endpointUrl(address("b")), urls.get(1));
+    }
+
+    public void testNodeRemovedWhenItLeaves() throws Exception
+    {
+        Node a = createNode("loopback", "static", address("a"), address("b"));
+        Node b = createNode("loopback", "static", address("b"), address("a"));
+        awaitMembers(a, 2);
+        RecordingRemoveNodeListener listener = new RecordingRemoveNodeListener();
+        a.cluster().addRemoveNodeListener(listener);
+
+        b.broker.getClusterManager().destroyClusters();
+
+        Assert.assertEquals(address("b"), listener.await());
+        Assert.assertEquals(Collections.singletonList(address("a")), a.cluster().getMemberAddresses());
+    }
+
+    public void testNodeRemovedWhenHeartbeatsStop() throws Exception
+    {
+        Node a = createNode("loopback", "static", address("a"), address("b"));
+        Node b = createNode("loopback", "static", address("b"), address("a"));
+        awaitMembers(a, 2);
+        RecordingRemoveNodeListener listener = new RecordingRemoveNodeListener();
+        a.cluster().addRemoveNodeListener(listener);
+
+        // Stop the transport without the leave notice, as if the node had crashed.
+        ((TcpCluster)b.cluster()).getTransport().stop();
+
+        Assert.assertEquals(address("b"), listener.await());
+        Assert.assertEquals(1, a.cluster().getMemberAddresses().size());
+    }
+
+    public void testTcpClusterUsedWhenJGroupsUnavailable() throws Exception
+    {
+        implementationClass = null;
+        Node a = createNode("loopback", "static", address("a"));
+
+        Assert.assertTrue(a.cluster() instanceof TcpCluster);
+    }
+
+    public void testSeedMembership() throws Exception
+    {
+        sharedSecret = "secret";
+        Node seed = createNode("loopback", "seed", address("seed"));
+        Node b = createNode("loopback", "seed", address("b"), address("seed"));
+        Node c = createNode("loopback", "seed", address("c"), address("seed"));
+
+        awaitMembers(seed, 3);
+        awaitMembers(b, 3);
+        awaitMembers(c, 3);
+        Assert.assertTrue(b.cluster().getMemberAddresses().contains(address("c")));
+    }
+
+    public void testSeedMembershipRequiresSharedSecret() throws Exception
+    {
+        try
+        {
+            createNode("loopback", "seed", address("seed"));
+            fail("Expected a ClusterException.");
+        }
+        catch (ClusterException e)
+        {
+            Assert.assertEquals(10225, ((ClusterException)e.getRootCause()).getNumber());
+        }
+    }
+
+    public void testFramesWithInvalidMacDropped() throws Exception
+    {
+        sharedSecret = "secret";
+        Node a = createNode("loopback", "static", address("a"), address("b"), address("c"));
+        createNode("loopback", "static", address("b"), address("a"));
+        sharedSecret = "other";
+        createNode("loopback", "static", address("c"), address("a"));
+
+        awaitMembers(a, 2);
+        Thread.sleep(200);
+        Assert.assertFalse(a.cluster().getMemberAddresses().contains(address("c")));
+    }
+
+    public void testOperationOutsideWhitelistIgnored() throws Exception
+    {
+        Node a = createNode("loopback", "static", address("a"), address("b"));
+        Node b = createNode("loopback", "static", address("b"), address("a"));
+        awaitMembers(a, 2);
+
+        a.clusterManager().invokeServiceOperation(SERVICE_TYPE, DESTINATION,
+                "recordMessage", new Object[] {createMessage("forbidden"), Boolean.TRUE});
+        a.clusterManager().invokeServiceOperation(SERVICE_TYPE, DESTINATION,
+                ClusterManager.OPERATION_PUSH_MESSAGE_FROM_PEER, new Object[] {createMessage("allowed"), Boolean.TRUE});
+
+        // Frames are handled in order, so the first one was ignored if the second arrives alone.
+        Assert.assertEquals("allowed", b.service.await().getBody());
+    }
+
+    public void testDisallowedClassRejected() throws Exception
+    {
+        Node a = createNode("loopback", "static", address("a"), address("b"));
+        Node b = createNode("loopback", "static", address("b"), address("a"));
+        awaitMembers(a, 2);
+
+        AsyncMessage forbidden = createMessage(null);
+        forbidden.setBody(new AtomicInteger());
+        a.clusterManager().invokeServiceOperation(SERVICE_TYPE, DESTINATION,
+                ClusterManager.OPERATION_PUSH_MESSAGE_FROM_PEER, new Object[] {forbidden, Boolean.TRUE});
+        a.clusterManager().invokeServiceOperation(SERVICE_TYPE, DESTINATION,
+                ClusterManager.OPERATION_PUSH_MESSAGE_FROM_PEER, new Object[] {createMessage("allowed"), Boolean.TRUE});
+
+        Assert.assertEquals("allowed", b.service.await().getBody());
+    }
+
+    public void testTcpTransportWithSharedSecret() throws Exception
+    {
+        sharedSecret = "secret";
+        String addressA = "127.0.0.1:" + freePort();
+        String addressB = "127.0.0.1:" + freePort();
+        Node a = createNode("tcp", "static", addressA, addressB);
+        Node b = createNode("tcp", "static", addressB, addressA);
+        awaitMembers(a, 2);
+
+        a.clusterManager().invokeServiceOperation(SERVICE_TYPE, DESTINATION,
+                ClusterManager.OPERATION_PUSH_MESSAGE_FROM_PEER, new Object[] {createMessage("signed"), Boolean.TRUE});
+        Assert.assertEquals("signed", b.service.await().getBody());
+    }
+
+    public void testTcpTransportRefusesUnknownHosts() throws Exception
+    {
+        String addressA = "127.0.0.1:" + freePort();
+        String addressB = "0.0.0.0:" + freePort();
+        // Node b names itself by the wildcard address, which is not the host its connections come from.
+        Node a = createNode("tcp", "static", addressA, addressB);
+        Node b = createNode("tcp", "static", addressB, addressA);
+
+        awaitMembers(b, 2);
+        Thread.sleep(200);
+        Assert.assertEquals(1, a.cluster().getMemberAddresses().size());
+    }
+
+    public void testTcpTransport() throws Exception
+    {
+        String addressA = "127.0.0.1:" + freePort();
+        String addressB = "127.0.0.1:" + freePort();
+        Node a = createNode("tcp", "static", addressA, addressB);
+        Node b = createNode("tcp", "static", addressB, addressA);
+        awaitMembers(a, 2);
+        awaitMembers(b, 2);
+
+        for (int i = 0; i < 100; i++)
+        {
+            a.clusterManager().invokeServiceOperation(SERVICE_TYPE, DESTINATION,
+                    ClusterManager.OPERATION_PUSH_MESSAGE_FROM_PEER, new Object[] {createMessage("m" + i), Boolean.TRUE});
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (b.service.messages.size() < 100 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        Assert.assertEquals(100, b.service.messages.size());
+        for (int i = 0; i < 100; i++)
+            Assert.assertEquals("m" + i, b.service.messages.get(i).getBody());
+    }
+
+    private String address(String name)
+    {
+        return getName() + "-" + name;
+    }
+
+    private Node createNode(String transport, String membership, String bindAddress, String... members)
+    {
+        MessageBroker broker = new MessageBroker(false);
+        broker.setInternalPathResolver(new MessageBroker.InternalPathResolver()
+        {
+            public InputStream resolve(String filename)
+            {
+                return new ByteArrayInputStream("<cluster-properties/>".getBytes());
+            }
+        });
+
+        RecordingMessageService service = new RecordingMessageService();
+        service.setId("message-service");
+        broker.addService(service);
+
+        ClusterSettings settings = new ClusterSettings();
+        settings.setClusterName(CLUSTER_ID);
+        settings.setPropsFileName("tcp-cluster.xml");
+        if (implementationClass != null)
+            settings.setImplementationClass(implementationClass);
+        settings.addProperty(TcpCluster.TRANSPORT, transport);
+        settings.addProperty(TcpCluster.MEMBERSHIP, membership);
+        settings.addProperty(TcpCluster.BIND_ADDRESS, bindAddress);
+        for (String member : members)
+            settings.addProperty(TcpCluster.MEMBER, member);
+        settings.addProperty(TcpCluster.HEARTBEAT_INTERVAL_MILLIS, "50");
+        settings.addProperty(TcpCluster.HEARTBEAT_TIMEOUT_MILLIS, "500");
+        settings.addProperty(TcpCluster.JOIN_TIMEOUT_MILLIS, "0");
+        if (sharedSecret != null)
+            settings.addProperty(TcpCluster.SHARED_SECRET, sharedSecret);
+
+        ClusterManager clusterManager = broker.getClusterManager();
+        clusterManager.prepareCluster(settings);
+        clusterManager.clusterDestinationChannel(CLUSTER_ID, SERVICE_TYPE, DESTINATION,
+                "my-amf", endpointUrl(bindAddress), 80, false);
+
+        Node node = new Node(broker, service);
+        nodes.add(node);
+        return node;
+    }
+
+    private static String endpointUrl(String address)
+    {
+        return "http://" + address + "/messagebroker/amf";
+    }
+
+    private static void awaitMembers(Node node, int count) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (node.cluster().getMemberAddresses().size() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        Assert.assertEquals(count, node.cluster().getMemberAddresses().size());
+    }
+
+    private static int freePort() throws Exception
+    {
+        ServerSocket socket = new ServerSocket(0);
+        try
+        {
+            return socket.getLocalPort();
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    private static AsyncMessage createMessage(String body)
+    {
+        AsyncMessage message = new AsyncMessage();
+        message.setDestination(DESTINATION);
+        message.setBody(body);
+        return message;
+    }
+
+    private static class Node
+    {
+        final MessageBroker broker;
+        final RecordingMessageService service;
+
+        Node(MessageBroker broker, RecordingMessageService service)
+        {
+            this.broker = broker;
+            this.service = service;
+        }
+
+        ClusterManager clusterManager()
+        {
+            return broker.getClusterManager();
+        }
+
+        Cluster cluster()
+        {
+            return broker.getClusterManager().getClusterById(CLUSTER_ID);
+        }
+    }
+
+    /**
+     * Records the messages pushed to it by its peers.
+     */
+    public static class RecordingMessageService extends MessageService
+    {
+        final List<AsyncMessage> messages = Collections.synchronizedList(new ArrayList<AsyncMessage>());
+        final List<Object> senders = Collections.synchronizedList(new ArrayList<Object>());
+
+        public void recordMessage(AsyncMessage message, Boolean evalSelector)
+        {
+            messages.add(message);
+        }
+
+        public void pushMessageFromPeer(AsyncMessage message, Boolean evalSelector)
+        {
+            senders.add(null);
+            messages.add(message);
+        }
+
+        public void pushMessageFromPeerToPeer(AsyncMessage message, Boolean evalSelector, Object address)
+        {
+            senders.add(address);
+            messages.add(message);
+        }
+
+        AsyncMessage await() throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (messages.isEmpty() && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            Assert.assertEquals(1, messages.size());
+            return messages.get(0);
+        }
+    }
+
+    private static class RecordingRemoveNodeListener implements RemoveNodeListener
+    {
+        private volatile Object removed;
+
+        public void removeClusterNode(Object address)
+        {
+            removed = address;
+        }
+
+        Object await() throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (removed == null && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            return removed;
+        }
+    }
+}
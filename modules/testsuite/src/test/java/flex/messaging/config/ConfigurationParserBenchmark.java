@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import flex.messaging.MessageBroker;
+
+/**
+ * JMH benchmark of loading a services configuration file with the XPath
+ * based parsers and with <code>DomServerConfigurationParser</code>. The
+ * generated file has a messaging service with the given number of
+ * destinations, each with its own channels, security constraint and
+ * properties, as startup time grows with the number of destinations.
+ *
+ * Run from the testsuite module after <code>mvn test-compile</code> with
+ * <code>java -cp target/test-classes:&lt;test classpath&gt; org.openjdk.jmh.Main ConfigurationParserBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigurationParserBenchmark
+{
+    @Param({"100", "400"})
+    public int destinations;
+
+    @Param({"apache-xpath", "xpath", "dom"})
+    public String parser;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        new MessageBroker(false).initThreadLocals();
+
+        file = File.createTempFile("services-config", ".xml");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<services-config>\n<services>\n");
+        out.write("<service id=\"message-service\" class=\"flex.messaging.services.MessageService\">\n");
+        out.write("<adapters><adapter-definition id=\"actionscript\""
+                + " class=\"flex.messaging.services.messaging.adapters.ActionScriptAdapter\" default=\"true\"/></adapters>\n");
+        for (int i = 0; i < destinations; i++)
+        {
+            out.write("<destination id=\"destination" + i + "\">\n<properties>\n"
+                    + "<network><subscription-timeout-minutes>30</subscription-timeout-minutes></network>\n"
+                    + "<server><max-cache-size>1000</max-cache-size><durable>false</durable></server>\n"
+                    + "</properties>\n<channels><channel ref=\"amf\"/><channel ref=\"polling-amf\"/></channels>\n"
+                    + "<security><security-constraint ref=\"trusted\"/></security>\n</destination>\n");
+        }
+        out.write("</service>\n</services>\n<security>\n");
+        out.write("<security-constraint id=\"trusted\"><auth-method>Custom</auth-method>"
+                + "<roles><role>users</role></roles></security-constraint>\n</security>\n<channels>\n");
+        out.write("<channel-definition id=\"amf\" class=\"mx.messaging.channels.AMFChannel\">"
+                + "<endpoint url=\"http://{server.name}:{server.port}/{context.root}/messagebroker/amf\""
+                + " class=\"flex.messaging.endpoints.AMFEndpoint\"/></channel-definition>\n");
+        out.write("<channel-definition id=\"polling-amf\" class=\"mx.messaging.channels.AMFChannel\">"
+                + "<endpoint url=\"http://{server.name}:{server.port}/{context.root}/messagebroker/amfpolling\""
+                + " class=\"flex.messaging.endpoints.AMFEndpoint\"/><properties><polling-enabled>true</polling-enabled>"
+                + "<polling-interval-seconds>4</polling-interval-seconds></properties></channel-definition>\n");
+        out.write("</channels>\n</services-config>\n");
+        out.close();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Benchmark
+    public MessagingConfiguration parse()
+    {
+        ConfigurationParser configurationParser;
+        if ("dom".equals(parser))
+            configurationParser = new DomServerConfigurationParser();
+        else if ("xpath".equals(parser))
+            configurationParser = new XPathServerConfigurationParser();
+        else
+            configurationParser = new ApacheXPathServerConfigurationParser();
+
+        MessagingConfiguration config = new MessagingConfiguration();
+        configurationParser.parse(file.getAbsolutePath(), new LocalFileResolver(), config);
+        return config;
+    }
+}
@@ -57,6 +57,11 @@ public class ConfigurationParserTest extends TestCase
     }
 
 
+    protected ConfigurationParser createParser()
+    {
+        return new ApacheXPathServerConfigurationParser();
+    }
+
     /*
      *  TESTS
      */
@@ -126,7 +131,7 @@ public class ConfigurationParserTest extends TestCase
     private void processRequest(String filename, String testName, String resourcePath) throws IOException
     {
         MessagingConfiguration config = new MessagingConfiguration();
-        ConfigurationParser parser = new ApacheXPathServerConfigurationParser();
+        ConfigurationParser parser = createParser();
         try
         {
             parser.parse(filename, new LocalFileResolver(), config);
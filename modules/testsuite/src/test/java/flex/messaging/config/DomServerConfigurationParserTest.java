@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging.config;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import flex.messaging.LocalizedException;
+
+/**
+ * Runs the configuration test cases through the DOM walking parser, and
+ * checks that it builds the same <code>MessagingConfiguration</code>, field
+ * by field, as the XPath based parser for every configuration file in the
+ * testsuite.
+ */
+public class DomServerConfigurationParserTest extends ConfigurationParserTest
+{
+    public DomServerConfigurationParserTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(DomServerConfigurationParserTest.class);
+    }
+
+    protected ConfigurationParser createParser()
+    {
+        return new DomServerConfigurationParser();
+    }
+
+    public void testSameConfigurationAsXPathParser() throws Exception
+    {
+        List files = new ArrayList();
+        File servicesConfig = new File(getClass().getResource("/WEB-INF/flex/services-config.xml").getFile());
+        files.add(servicesConfig);
+        addFiles(new File(getClass().getResource("services").getFile()), files);
+
+        for (int i = 0; i < files.size(); i++)
+        {
+            String filename = files.get(i).toString();
+            Object expected = parse(new ApacheXPathServerConfigurationParser(), filename);
+            Object actual = parse(new DomServerConfigurationParser(), filename);
+            assertEquivalent(filename, expected, actual, new IdentityHashMap());
+        }
+    }
+
+    public void testUnsupportedExpression()
+    {
+        DomServerConfigurationParser parser = new DomServerConfigurationParser();
+        try
+        {
+            parser.selectNodeList(null, "channel[1]");
+            Assert.fail("An unsupported expression should have been rejected.");
+        }
+        catch (ConfigurationException ce)
+        {
+            Assert.assertTrue(ce.getRootCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    private static void addFiles(File dir, List files)
+    {
+        File[] children = dir.listFiles(new XMLFilenameFilter());
+        for (int i = 0; i < children.length; i++)
+        {
+            if (children[i].isDirectory())
+                addFiles(children[i], files);
+            else
+                files.add(children[i]);
+        }
+    }
+
+    /**
+     * Returns the configuration, or the message of the exception for the
+     * files that are expected to fail.
+     */
+    private static Object parse(ConfigurationParser parser, String filename)
+    {
+        MessagingConfiguration config = new MessagingConfiguration();
+        try
+        {
+            parser.parse(filename, new LocalFileResolver(), config);
+            return config;
+        }
+        catch (LocalizedException ex)
+        {
+            return ex.getMessage();
+        }
+    }
+
+    private static void assertEquivalent(String path, Object expected, Object actual, IdentityHashMap seen)
+            throws IllegalAccessException
+    {
+        if (expected == null || actual == null)
+        {
+            Assert.assertSame(path, expected, actual);
+            return;
+        }
+
+        Assert.assertEquals(path, expected.getClass(), actual.getClass());
+        Class type = expected.getClass();
+        if (type.isPrimitive() || type.getName().startsWith("java.lang.") || type == Class.class)
+        {
+            Assert.assertEquals(path, expected, actual);
+            return;
+        }
+
+        if (seen.put(expected, actual) != null)
+            return;
+
+        if (expected instanceof Map)
+        {
+            Map expectedMap = (Map)expected;
+            Map actualMap = (Map)actual;
+            Assert.assertEquals(path, expectedMap.keySet(), actualMap.keySet());
+            for (Iterator it = expectedMap.entrySet().iterator(); it.hasNext();)
+            {
+                Map.Entry entry = (Map.Entry)it.next();
+                assertEquivalent(path + "[" + entry.getKey() + "]", entry.getValue(),
+                        actualMap.get(entry.getKey()), seen);
+            }
+        }
+        else if (expected instanceof Collection)
+        {
+            Object[] expectedItems = ((Collection)expected).toArray();
+            Object[] actualItems = ((Collection)actual).toArray();
+            Assert.assertEquals(path, expectedItems.length, actualItems.length);
+            for (int i = 0; i < expectedItems.length; i++)
+                assertEquivalent(path + "[" + i + "]", expectedItems[i], actualItems[i], seen);
+        }
+        else if (type.isArray())
+        {
+            Assert.assertEquals(path, Array.getLength(expected), Array.getLength(actual));
+            for (int i = 0; i < Array.getLength(expected); i++)
+                assertEquivalent(path + "[" + i + "]", Array.get(expected, i), Array.get(actual, i), seen);
+        }
+        else
+        {
+            for (Class c = type; c != null && c != Object.class; c = c.getSuperclass())
+            {
+                Field[] fields = c.getDeclaredFields();
+                for (int i = 0; i < fields.length; i++)
+                {
+                    Field field = fields[i];
+                    if (Modifier.isStatic(field.getModifiers()))
+                        continue;
+                    field.setAccessible(true);
+                    assertEquivalent(path + "." + field.getName(), field.get(expected), field.get(actual), seen);
+                }
+            }
+        }
+    }
+}
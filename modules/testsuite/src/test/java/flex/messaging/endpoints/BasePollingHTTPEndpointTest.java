@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.endpoints;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import flex.messaging.config.ConfigMap;
+import flex.messaging.config.ConfigurationConstants;
+import flex.messaging.config.ConfigurationException;
+
+/**
+ * Unit tests for the adaptive polling interval of flex.messaging.endpoints.BasePollingHTTPEndpoint
+ */
+public class BasePollingHTTPEndpointTest extends TestCase
+{
+    private AMFEndpoint endpoint;
+
+    public BasePollingHTTPEndpointTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(BasePollingHTTPEndpointTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        ConfigMap properties = new ConfigMap();
+        properties.addProperty("polling-enabled", "true");
+        properties.addProperty("adaptive-polling-enabled", "true");
+        properties.addProperty("min-polling-interval-millis", "1000");
+        properties.addProperty("max-polling-interval-millis", "9000");
+        properties.addProperty("max-polls-per-second", "500");
+
+        endpoint = new AMFEndpoint();
+        endpoint.setUrl("http://localhost:8400/messagebroker/amfpolling");
+        endpoint.initialize("my-polling-amf", properties);
+    }
+
+    public void testConfiguration()
+    {
+        Assert.assertTrue(endpoint.isAdaptivePollingEnabled());
+        Assert.assertEquals(1000, endpoint.getMinPollingInterval());
+        Assert.assertEquals(9000, endpoint.getMaxPollingInterval());
+        Assert.assertEquals(500, endpoint.getMaxPollsPerSecond());
+    }
+
+    public void testMaxPollsPerSecondRequired()
+    {
+        ConfigMap properties = new ConfigMap();
+        properties.addProperty("polling-enabled", "true");
+        properties.addProperty("adaptive-polling-enabled", "true");
+
+        AMFEndpoint unbounded = new AMFEndpoint();
+        unbounded.setUrl("http://localhost:8400/messagebroker/amfpolling");
+        try
+        {
+            unbounded.initialize("my-polling-amf", properties);
+            fail("ConfigurationException expected");
+        }
+        catch (ConfigurationException e)
+        {
+            Assert.assertEquals(ConfigurationConstants.MISSING_MAX_POLLS_PER_SECOND, e.getNumber());
+        }
+    }
+
+    public void testIdleClientsBackOffWithLoad()
+    {
+        Assert.assertEquals(1000, endpoint.computePollingInterval(0, 0));
+        Assert.assertEquals(5000, endpoint.computePollingInterval(0, 0.5f));
+        Assert.assertEquals(9000, endpoint.computePollingInterval(0, 1));
+    }
+
+    public void testBusyClientsPollSooner()
+    {
+        Assert.assertEquals(5000, endpoint.computePollingInterval(1, 1));
+        Assert.assertEquals(3000, endpoint.computePollingInterval(3, 1));
+        Assert.assertEquals(1080, endpoint.computePollingInterval(99, 1));
+    }
+
+    public void testMaximumRaisedToMinimum()
+    {
+        endpoint.setMinPollingInterval(2000);
+        endpoint.setMaxPollingInterval(1500);
+        Assert.assertEquals(2000, endpoint.getMaxPollingInterval());
+        Assert.assertEquals(2000, endpoint.computePollingInterval(0, 1));
+    }
+}
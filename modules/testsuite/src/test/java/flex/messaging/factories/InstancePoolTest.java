@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging.factories;
+
+import flex.messaging.FlexFactory;
+import flex.messaging.config.ConfigMap;
+import flex.messaging.services.ServiceException;
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class InstancePoolTest extends TestCase
+{
+    protected JavaFactory factory;
+    protected JavaFactoryInstance factoryInstance;
+    protected InstancePool pool;
+
+    public InstancePoolTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(InstancePoolTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        ConfigMap poolSettings = new ConfigMap();
+        poolSettings.addProperty("min-size", "1");
+        poolSettings.addProperty("max-size", "2");
+        poolSettings.addProperty("max-wait-millis", "0");
+
+        ConfigMap properties = new ConfigMap();
+        properties.addProperty(FlexFactory.SOURCE, PooledComponent.class.getName());
+        properties.addProperty(FlexFactory.SCOPE, FlexFactory.SCOPE_POOLED);
+        properties.addProperty(InstancePool.POOL_ELEMENT, poolSettings);
+
+        factory = new JavaFactory();
+        factoryInstance = (JavaFactoryInstance)factory.createFactoryInstance("pooled-destination", properties);
+        pool = factoryInstance.getInstancePool();
+    }
+
+    protected void tearDown() throws Exception
+    {
+        super.tearDown();
+    }
+
+    public void testConfiguration()
+    {
+        Assert.assertNotNull(pool);
+        Assert.assertEquals(1, pool.getMinSize());
+        Assert.assertEquals(2, pool.getMaxSize());
+        Assert.assertEquals(0, pool.getMaxWaitMillis());
+    }
+
+    public void testInstanceReused()
+    {
+        Object first = factory.lookup(factoryInstance);
+        factoryInstance.operationComplete(first);
+        Object second = factory.lookup(factoryInstance);
+        factoryInstance.operationComplete(second);
+
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, pool.getCreatedCount());
+        Assert.assertEquals(2, pool.getBorrowCount());
+        Assert.assertEquals(0, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+    }
+
+    public void testConcurrentBorrowsGetDistinctInstances()
+    {
+        Object first = factory.lookup(factoryInstance);
+        Object second = factory.lookup(factoryInstance);
+
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(2, pool.getActiveCount());
+    }
+
+    public void testExhausted()
+    {
+        factory.lookup(factoryInstance);
+        factory.lookup(factoryInstance);
+        try
+        {
+            factory.lookup(factoryInstance);
+            fail("ServiceException expected");
+        }
+        catch (ServiceException se)
+        {
+            Assert.assertEquals(10662, se.getNumber());
+            Assert.assertEquals(1, pool.getWaitTimeoutCount());
+        }
+    }
+
+    public void testWaitForReturnedInstance() throws Exception
+    {
+        pool.setMaxWaitMillis(5000);
+        final Object first = factory.lookup(factoryInstance);
+        factory.lookup(factoryInstance);
+
+        Thread returner = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(100);
+                }
+                catch (InterruptedException e)
+                {
+                    // Ignore.
+                }
+                factoryInstance.operationComplete(first);
+            }
+        };
+        returner.start();
+
+        Object third = factory.lookup(factoryInstance);
+        returner.join();
+        Assert.assertSame(first, third);
+    }
+
+    public void testIdleEviction()
+    {
+        pool.setIdleTimeoutMillis(1);
+        Object first = factory.lookup(factoryInstance);
+        Object second = factory.lookup(factoryInstance);
+        factoryInstance.operationComplete(first);
+        factoryInstance.operationComplete(second);
+        try
+        {
+            Thread.sleep(10);
+        }
+        catch (InterruptedException e)
+        {
+            // Ignore.
+        }
+
+        factory.lookup(factoryInstance);
+        // One idle instance is retained for min-size and then borrowed.
+        Assert.assertEquals(1, pool.getEvictedCount());
+        Assert.assertEquals(0, pool.getIdleCount());
+    }
+
+    public void testClearDiscardsBorrowedInstances()
+    {
+        Object stale = factory.lookup(factoryInstance);
+        pool.clear();
+        factoryInstance.operationComplete(stale);
+        Assert.assertEquals(0, pool.getIdleCount());
+        Assert.assertEquals(0, pool.getActiveCount());
+
+        Object fresh = factory.lookup(factoryInstance);
+        Assert.assertNotSame(stale, fresh);
+        factoryInstance.operationComplete(fresh);
+        Assert.assertEquals(1, pool.getIdleCount());
+    }
+
+    public void testUnknownAndRepeatedReturnsIgnored()
+    {
+        Object instance = factory.lookup(factoryInstance);
+        Object other = factory.lookup(factoryInstance);
+        pool.returnInstance(new PooledComponent());
+        Assert.assertEquals(2, pool.getActiveCount());
+
+        pool.returnInstance(instance);
+        pool.returnInstance(instance);
+        Assert.assertEquals(1, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+
+        pool.returnInstance(other);
+        Assert.assertEquals(0, pool.getActiveCount());
+        Assert.assertEquals(2, pool.getIdleCount());
+    }
+
+    public void testDestroyClearsPool()
+    {
+        Object instance = factory.lookup(factoryInstance);
+        factoryInstance.operationComplete(instance);
+        factory.destroyFactoryInstance(factoryInstance);
+
+        Assert.assertEquals(0, pool.getIdleCount());
+    }
+
+    public static class PooledComponent
+    {
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging.io.amf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.io.SerializationContext;
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class AmfByteArrayStreamTest extends TestCase
+{
+    private SerializationContext context;
+
+    public AmfByteArrayStreamTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(AmfByteArrayStreamTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        context = new SerializationContext();
+        SerializationContext.setSerializationContext(context);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        SerializationContext.clearThreadLocalObjects();
+        super.tearDown();
+    }
+
+    public void testSameBytesAsStream() throws Exception
+    {
+        List values = createValues();
+        byte[] expected = write(values, new ByteArrayOutputStream());
+        byte[] actual = write(values, new AmfByteArrayOutputStream(16));
+        Assert.assertTrue(Arrays.equals(expected, actual));
+    }
+
+    public void testRoundTrip() throws Exception
+    {
+        List values = createValues();
+        byte[] bytes = write(values, new AmfByteArrayOutputStream());
+
+        List expected = read(new ByteArrayInputStream(bytes), values.size());
+        List actual = read(new AmfByteArrayInputStream(bytes), values.size());
+        Assert.assertEquals(values.size(), actual.size());
+        for (int i = 0; i < values.size(); i++)
+        {
+            Object value = values.get(i);
+            if (value instanceof byte[])
+                Assert.assertTrue(Arrays.equals((byte[])value, (byte[])actual.get(i)));
+            else
+                Assert.assertEquals(expected.get(i), actual.get(i));
+        }
+        Assert.assertEquals(values.get(2), actual.get(2));
+        Assert.assertEquals(values.get(12), actual.get(12));
+    }
+
+    public void testMessageRoundTrip() throws Exception
+    {
+        ASObject data = new ASObject();
+        data.put("name", "caf\u00e9");
+        data.put("value", new Double(1.5));
+
+        ActionMessage message = new ActionMessage(MessageIOConstants.AMF3);
+        message.addBody(new MessageBody("target", "/1", new Object[] {data, "second"}));
+
+        AmfMessageSerializer serializer = new AmfMessageSerializer();
+        AmfByteArrayOutputStream out = new AmfByteArrayOutputStream();
+        serializer.initialize(context, out, null);
+        serializer.writeMessage(message);
+
+        AmfMessageDeserializer deserializer = new AmfMessageDeserializer();
+        deserializer.initialize(context, new AmfByteArrayInputStream(out.toByteArray()), null);
+        ActionMessage result = new ActionMessage();
+        deserializer.readMessage(result, new ActionContext());
+
+        Assert.assertEquals(1, result.getBodyCount());
+        Object[] body = (Object[])result.getBody(0).getData();
+        Assert.assertEquals(data, body[0]);
+        Assert.assertEquals("second", body[1]);
+    }
+
+    public void testTruncatedInput() throws Exception
+    {
+        byte[] bytes = write(createValues(), new AmfByteArrayOutputStream());
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 3);
+        try
+        {
+            read(new AmfByteArrayInputStream(truncated), createValues().size());
+            fail("EOFException expected");
+        }
+        catch (EOFException e)
+        {
+            // Expected.
+        }
+    }
+
+    public void testReadFrom() throws Exception
+    {
+        byte[] bytes = new byte[20000];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte)i;
+
+        int[] hints = new int[] {-1, 0, 10, bytes.length, bytes.length * 2};
+        for (int i = 0; i < hints.length; i++)
+        {
+            AmfByteArrayInputStream in = AmfByteArrayInputStream.readFrom(new ByteArrayInputStream(bytes), hints[i]);
+            byte[] read = new byte[in.available()];
+            in.read(read, 0, read.length);
+            Assert.assertTrue(Arrays.equals(bytes, read));
+        }
+    }
+
+    public void testReadFromBeyondLimit() throws Exception
+    {
+        byte[] bytes = new byte[20000];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte)i;
+
+        InputStream in = AmfByteArrayInputStream.readFrom(new ByteArrayInputStream(bytes), bytes.length, 5000);
+        Assert.assertFalse(in instanceof AmfByteArrayInputStream);
+        byte[] read = new byte[bytes.length];
+        new DataInputStream(in).readFully(read);
+        Assert.assertEquals(-1, in.read());
+        Assert.assertTrue(Arrays.equals(bytes, read));
+
+        in = AmfByteArrayInputStream.readFrom(new ByteArrayInputStream(bytes), -1, bytes.length + 1);
+        Assert.assertTrue(in instanceof AmfByteArrayInputStream);
+        Assert.assertEquals(bytes.length, in.available());
+    }
+
+    private List createValues()
+    {
+        StringBuffer longString = new StringBuffer();
+        for (int i = 0; i < 3000; i++)
+            longString.append("ab\u00e9\u4e2d");
+
+        ASObject object = new ASObject();
+        object.put("ascii", "hello");
+        object.put("latin", "caf\u00e9");
+        object.put("cjk", "\u4e2d\u6587");
+        object.put("surrogates", "\ud83d\ude00");
+        object.put("empty", "");
+
+        List values = new ArrayList();
+        values.add("hello");
+        values.add("hello"); // A string reference.
+        values.add(longString.toString());
+        values.add(object);
+        values.add(new Integer(0));
+        values.add(new Integer(0x7F));
+        values.add(new Integer(0x80));
+        values.add(new Integer(0x3FFF));
+        values.add(new Integer(0x4000));
+        values.add(new Integer(0x1FFFFF));
+        values.add(new Integer(0x200000));
+        values.add(new Integer(0x0FFFFFFF));
+        values.add(new Integer(-1));
+        values.add(new Double(Math.PI));
+        values.add(new Double(Double.NaN));
+        values.add(Boolean.TRUE);
+        values.add(new byte[] {1, 2, 3});
+        return values;
+    }
+
+    private byte[] write(List values, ByteArrayOutputStream bytes) throws Exception
+    {
+        Amf3Output out = new Amf3Output(context);
+        out.setOutputStream(bytes);
+        for (int i = 0; i < values.size(); i++)
+            out.writeObject(values.get(i));
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private List read(InputStream bytes, int count) throws Exception
+    {
+        Amf3Input in = new Amf3Input(context);
+        in.setInputStream(bytes);
+        List values = new ArrayList();
+        for (int i = 0; i < count; i++)
+            values.add(in.readObject());
+        return values;
+    }
+}
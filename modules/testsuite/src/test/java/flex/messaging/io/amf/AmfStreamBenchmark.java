@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging.io.amf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import flex.messaging.io.SerializationContext;
+
+/**
+ * JMH benchmark of AMF 3 serialization and deserialization through plain
+ * byte array streams, which the AMF classes wrap in Data streams, and through
+ * <code>AmfByteArrayOutputStream</code>/<code>AmfByteArrayInputStream</code>,
+ * which they encode into and decode from directly. The <code>strings</code>
+ * payload is a list of objects with string properties; the <code>numbers</code>
+ * payload is a list of integers and doubles.
+ *
+ * Run from the testsuite module after <code>mvn test-compile</code> with
+ * <code>java -cp target/test-classes:&lt;test classpath&gt; org.openjdk.jmh.Main AmfStreamBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AmfStreamBenchmark
+{
+    @Param({"strings", "numbers"})
+    public String payload;
+
+    @Param({"stream", "bytes"})
+    public String io;
+
+    private SerializationContext context;
+    private Object value;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        context = new SerializationContext();
+        SerializationContext.setSerializationContext(context);
+
+        List list = new ArrayList();
+        if ("strings".equals(payload))
+        {
+            for (int i = 0; i < 2000; i++)
+            {
+                ASObject row = new ASObject();
+                row.put("id", "row-" + i);
+                row.put("name", "Customer name number " + i);
+                row.put("city", "City " + (i % 97));
+                row.put("comment", "Comment text that is somewhat longer, for row " + i);
+                list.add(row);
+            }
+        }
+        else
+        {
+            for (int i = 0; i < 20000; i++)
+                list.add(i % 2 == 0 ? (Object)new Integer(i * 31) : new Double(i * 0.25));
+        }
+        value = list;
+        bytes = writeValue();
+    }
+
+    @Benchmark
+    public byte[] write() throws Exception
+    {
+        return writeValue();
+    }
+
+    @Benchmark
+    public Object read() throws Exception
+    {
+        Amf3Input in = new Amf3Input(context);
+        in.setInputStream("bytes".equals(io) ? new AmfByteArrayInputStream(bytes) : new ByteArrayInputStream(bytes));
+        return in.readObject();
+    }
+
+    private byte[] writeValue() throws Exception
+    {
+        ByteArrayOutputStream out = "bytes".equals(io) ? new AmfByteArrayOutputStream() : new ByteArrayOutputStream();
+        Amf3Output amfOut = new Amf3Output(context);
+        amfOut.setOutputStream(out);
+        amfOut.writeObject(value);
+        amfOut.flush();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging.io.amf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.SerializationException;
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class SelfContainedAmf3ValueTest extends TestCase
+{
+    private SerializationContext context;
+
+    public SelfContainedAmf3ValueTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(SelfContainedAmf3ValueTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        context = new SerializationContext();
+    }
+
+    public void testRoundTrip() throws Exception
+    {
+        ASObject value = createValue("abc");
+        SelfContainedAmf3Value so = SelfContainedAmf3Output.serialize(value, context);
+
+        // The object, the ArrayCollection wrapping its list and the list itself.
+        Assert.assertEquals(3, so.getObjectReferenceCount());
+        Assert.assertEquals(value, so.toObject(context));
+    }
+
+    public void testReferencesAfterSelfContainedValue() throws Exception
+    {
+        ASObject shared = createValue("abc");
+        SelfContainedAmf3Value so = SelfContainedAmf3Output.serialize(createValue("abc"), context);
+
+        // References written after the serialized bytes must account for the
+        // object, string and traits table entries the bytes create when read.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Amf3Output out = new Amf3Output(context);
+        out.setOutputStream(bytes);
+        out.writeObject("abc");
+        out.writeObject(shared);
+        out.writeObject(so);
+        out.writeObject(so);
+        out.writeObject("name");
+        out.writeObject(shared);
+        out.writeObject(createValue("def"));
+        out.flush();
+
+        Amf3Input in = new Amf3Input(context);
+        in.setInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Assert.assertEquals("abc", in.readObject());
+        Object readShared = in.readObject();
+        Assert.assertEquals(shared, readShared);
+        Assert.assertEquals(createValue("abc"), in.readObject());
+        Assert.assertEquals(createValue("abc"), in.readObject());
+        Assert.assertEquals("name", in.readObject());
+        Assert.assertSame(readShared, in.readObject());
+        Assert.assertEquals(createValue("def"), in.readObject());
+    }
+
+    public void testSerializedObjectWrittenAsExternalizable() throws Exception
+    {
+        // SerializedObject keeps its Externalizable behaviour, which does not
+        // support writing.
+        Amf3Output out = new Amf3Output(context);
+        out.setOutputStream(new ByteArrayOutputStream());
+        try
+        {
+            out.writeObject(new SerializedObject(new byte[] {(byte)Amf3Types.kNullType}));
+            fail("UnsupportedOperationException expected");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // Expected.
+        }
+    }
+
+    public void testSharedReferencesRejected() throws Exception
+    {
+        ASObject shared = createValue("abc");
+        List value = new ArrayList();
+        value.add(shared);
+        value.add(shared);
+        try
+        {
+            SelfContainedAmf3Output.serialize(value, context);
+            fail("SerializationException expected");
+        }
+        catch (SerializationException se)
+        {
+            // Expected.
+        }
+    }
+
+    private ASObject createValue(String name)
+    {
+        List items = new ArrayList();
+        items.add(name);
+        items.add("name");
+        items.add(new Integer(1));
+
+        ASObject value = new ASObject();
+        value.put("name", name);
+        value.put("items", items);
+        return value;
+    }
+}
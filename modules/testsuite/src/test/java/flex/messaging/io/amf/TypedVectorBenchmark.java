@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging.io.amf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import flex.messaging.io.SerializationContext;
+
+/**
+ * JMH benchmark of writing and reading a large Number Vector, comparing
+ * <code>double[]</code> with <code>Double[]</code> on the write side and the
+ * <code>primitiveVectors</code> option on the read side.
+ *
+ * Run from the testsuite module after <code>mvn test-compile</code> with
+ * <code>java -cp target/test-classes:&lt;test classpath&gt; org.openjdk.jmh.Main TypedVectorBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypedVectorBenchmark
+{
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"true", "false"})
+    public boolean primitiveVectors;
+
+    private SerializationContext context;
+    private double[] primitiveValues;
+    private Double[] boxedValues;
+    private byte[] bytes;
+    private ByteArrayOutputStream buffer;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        context = new SerializationContext();
+        context.preferVectors = true;
+        context.primitiveVectors = primitiveVectors;
+        SerializationContext.setSerializationContext(context);
+
+        primitiveValues = new double[size];
+        boxedValues = new Double[size];
+        for (int i = 0; i < size; i++)
+        {
+            primitiveValues[i] = i * 0.5;
+            boxedValues[i] = Double.valueOf(primitiveValues[i]);
+        }
+
+        buffer = new ByteArrayOutputStream(size * 8 + 16);
+        bytes = write(primitiveValues);
+    }
+
+    @Benchmark
+    public byte[] writeVector() throws Exception
+    {
+        return write(primitiveVectors ? (Object)primitiveValues : boxedValues);
+    }
+
+    @Benchmark
+    public Object readVector() throws Exception
+    {
+        Amf3Input in = new Amf3Input(context);
+        in.setInputStream(new ByteArrayInputStream(bytes));
+        return in.readObject();
+    }
+
+    private byte[] write(Object value) throws Exception
+    {
+        buffer.reset();
+        Amf3Output out = new Amf3Output(context);
+        out.setOutputStream(buffer);
+        out.writeObject(value);
+        out.flush();
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging.io.amf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.util.Arrays;
+
+import flex.messaging.io.SerializationContext;
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TypedVectorTest extends TestCase
+{
+    private SerializationContext context;
+
+    public TypedVectorTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(TypedVectorTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        context = new SerializationContext();
+        context.preferVectors = true;
+        SerializationContext.setSerializationContext(context);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        SerializationContext.clearThreadLocalObjects();
+        super.tearDown();
+    }
+
+    public void testIntVector() throws Exception
+    {
+        int[] values = new int[5000]; // Larger than the bulk buffer and initial capacity.
+        for (int i = 0; i < values.length; i++)
+            values[i] = (i - 2500) * 104729;
+
+        context.primitiveVectors = true;
+        Assert.assertTrue(Arrays.equals(values, (int[])roundTrip(values)));
+
+        context.primitiveVectors = false;
+        Object[] boxed = (Object[])roundTrip(values);
+        Assert.assertEquals(values.length, boxed.length);
+        Assert.assertEquals(Integer.valueOf(values[4999]), boxed[4999]);
+    }
+
+    public void testDoubleVector() throws Exception
+    {
+        double[] values = new double[3000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = i / 7.0 - 100;
+        values[1] = Double.NaN;
+        values[2] = Double.NEGATIVE_INFINITY;
+
+        context.primitiveVectors = true;
+        Assert.assertTrue(Arrays.equals(values, (double[])roundTrip(values)));
+
+        context.primitiveVectors = false;
+        Object[] boxed = (Object[])roundTrip(values);
+        Assert.assertEquals(Double.valueOf(values[2999]), boxed[2999]);
+    }
+
+    public void testUintVector() throws Exception
+    {
+        long[] values = new long[3000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = i * 1431655L;
+        values[1] = 0xFFFFFFFFL;
+        values[2] = 0x80000000L;
+
+        context.primitiveVectors = true;
+        Assert.assertTrue(Arrays.equals(values, (long[])roundTrip(values)));
+
+        context.primitiveVectors = false;
+        Object[] boxed = (Object[])roundTrip(values);
+        Assert.assertEquals(Long.valueOf(values[2999]), boxed[2999]);
+    }
+
+    public void testLongArrayOutsideUintRangeWrittenAsNumbers() throws Exception
+    {
+        long[] values = new long[] {1, -2, 1L << 40};
+        Object[] result = (Object[])roundTrip(values);
+        Assert.assertEquals(new Double(1), result[0]);
+        Assert.assertEquals(new Double(-2), result[1]);
+        Assert.assertEquals(new Double(1L << 40), result[2]);
+    }
+
+    public void testVectorReference() throws Exception
+    {
+        int[] values = new int[] {1, 2, 3};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Amf3Output out = new Amf3Output(context);
+        out.setOutputStream(bytes);
+        out.writeObject(values);
+        out.writeObject(values);
+        out.flush();
+
+        context.primitiveVectors = true;
+        Amf3Input in = new Amf3Input(context);
+        in.setInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Object first = in.readObject();
+        Assert.assertSame(first, in.readObject());
+    }
+
+    public void testTamperedLength() throws Exception
+    {
+        // A huge length followed by a few elements must fail on the short
+        // stream rather than allocate an array of the claimed length.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Amf3Output out = new Amf3Output(context);
+        out.setOutputStream(bytes);
+        out.write(Amf3Types.kTypedVectorDouble);
+        out.writeUInt29((0x0FFFFFFF << 1) | 1);
+        out.writeBoolean(true);
+        out.writeDouble(1);
+        out.flush();
+
+        context.primitiveVectors = true;
+        Amf3Input in = new Amf3Input(context);
+        in.setInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        try
+        {
+            in.readObject();
+            fail("EOFException expected");
+        }
+        catch (EOFException e)
+        {
+            // Expected.
+        }
+    }
+
+    private Object roundTrip(Object value) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Amf3Output out = new Amf3Output(context);
+        out.setOutputStream(bytes);
+        out.writeObject(value);
+        out.flush();
+
+        Amf3Input in = new Amf3Input(context);
+        in.setInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        return in.readObject();
+    }
+}
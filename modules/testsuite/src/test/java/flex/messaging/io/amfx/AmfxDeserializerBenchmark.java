@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.io.amfx;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.ASObject;
+import flex.messaging.io.amf.ActionContext;
+import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.MessageBody;
+import flex.messaging.messages.RemotingMessage;
+
+/**
+ * JMH benchmark of AMFX request deserialization through the SAX based
+ * <code>AmfxMessageDeserializer</code> and the StAX based
+ * <code>StaxAmfxMessageDeserializer</code>. The <code>small</code> payload
+ * is a remoting message with a few arguments, as sent by most HTTP channel
+ * requests; the <code>large</code> payload adds a list of objects with
+ * string and number properties.
+ *
+ * Run from the testsuite module after <code>mvn test-compile</code> with
+ * <code>java -cp target/test-classes:&lt;test classpath&gt; org.openjdk.jmh.Main AmfxDeserializerBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AmfxDeserializerBenchmark
+{
+    @Param({"small", "large"})
+    public String payload;
+
+    @Param({"sax", "stax"})
+    public String parser;
+
+    private SerializationContext context;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        context = new SerializationContext();
+        SerializationContext.setSerializationContext(context);
+
+        List rows = new ArrayList();
+        int count = "large".equals(payload) ? 500 : 0;
+        for (int i = 0; i < count; i++)
+        {
+            ASObject row = new ASObject();
+            row.put("id", new Integer(i));
+            row.put("name", "Customer name number " + i);
+            row.put("balance", new Double(i * 0.25));
+            rows.add(row);
+        }
+
+        RemotingMessage message = new RemotingMessage();
+        message.setDestination("customers");
+        message.setOperation("update");
+        message.setBody(new Object[] {"region-1", new Integer(42), rows});
+
+        ActionMessage request = new ActionMessage();
+        request.addBody(new MessageBody(null, "/1", new Object[] {message}));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AmfxMessageSerializer serializer = new AmfxMessageSerializer();
+        serializer.initialize(context, out, null);
+        serializer.writeMessage(request);
+        bytes = out.toByteArray();
+    }
+
+    @Benchmark
+    public ActionMessage read() throws Exception
+    {
+        AmfxMessageDeserializer deserializer = "stax".equals(parser)
+                ? new StaxAmfxMessageDeserializer() : new AmfxMessageDeserializer();
+        deserializer.initialize(context, new ByteArrayInputStream(bytes), null);
+
+        ActionMessage message = new ActionMessage();
+        ActionContext actionContext = new ActionContext();
+        actionContext.setRequestMessage(message);
+        deserializer.readMessage(message, actionContext);
+        return message;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.io.amfx;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import flex.messaging.io.SerializationContext;
+
+/**
+ * Checks the XML that <code>AmfxOutput</code> encodes into UTF-8 for
+ * values that need escaping or that are larger than its encode buffer.
+ */
+public class AmfxOutputTest extends TestCase
+{
+    private SerializationContext context;
+
+    public AmfxOutputTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(AmfxOutputTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        context = new SerializationContext();
+        SerializationContext.setSerializationContext(context);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        SerializationContext.setSerializationContext(null);
+        super.tearDown();
+    }
+
+    public void testStringEscaped() throws IOException
+    {
+        Assert.assertEquals("<string>a&lt;b&amp;c>\t\u00e9\u4e2d&#x1;&#xd83d;&#xde00;&#xfffe;</string>",
+                write("a<b&c>\t\u00e9\u4e2d\u0001\ud83d\ude00\ufffe"));
+    }
+
+    public void testNumbers() throws IOException
+    {
+        Assert.assertEquals("<int>-268435456</int>", write(new Integer(-268435456)));
+        Assert.assertEquals("<double>2.68435456E8</double>", write(new Integer(268435456)));
+        Assert.assertEquals("<double>-0.0</double>", write(new Double(-0.0)));
+        Assert.assertEquals("<double>9999999.0</double>", write(new Double(9999999)));
+        Assert.assertEquals("<double>1.0E7</double>", write(new Double(1e7)));
+        Assert.assertEquals("<double>0.1</double>", write(new Double(0.1)));
+        Assert.assertEquals("<date>-1</date>", write(new Date(-1)));
+    }
+
+    public void testByteArray() throws IOException
+    {
+        Assert.assertEquals("<bytearray>00AB7F</bytearray>", write(new byte[] {0, (byte)0xAB, 0x7F}));
+    }
+
+    public void testValueLargerThanBuffer() throws IOException
+    {
+        StringBuffer s = new StringBuffer();
+        for (int i = 0; i < 10000; i++)
+            s.append(i % 2 == 0 ? "\u4e2d" : "&");
+
+        String xml = write(s.toString());
+        Assert.assertEquals("<string>" + s.toString().replaceAll("&", "&amp;") + "</string>", xml);
+    }
+
+    public void testPrimitiveWritesFollowEncodedXml() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AmfxOutput out = new AmfxOutput(context);
+        out.setOutputStream(bytes);
+        out.writeObjectEnd();
+        out.writeBytes("a");
+        out.writeObjectEnd();
+        out.writeByte('b');
+        out.writeObjectEnd();
+        out.writeInt(0x63646566);
+        out.flush();
+        Assert.assertEquals("</object>a</object>b</object>cdef", new String(bytes.toByteArray(), "UTF-8"));
+    }
+
+    private String write(Object value) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AmfxOutput out = new AmfxOutput(context);
+        out.setOutputStream(bytes);
+        out.writeObject(value);
+        return new String(bytes.toByteArray(), "UTF-8");
+    }
+}
@@ -162,7 +162,7 @@ public class AmfxSerializationTest extends TestCase
 
             ActionMessage requestMessage = new ActionMessage();
             context.setRequestMessage(requestMessage);
-            AmfxMessageDeserializer deserializer = new AmfxMessageDeserializer();
+            AmfxMessageDeserializer deserializer = createDeserializer();
             deserializer.initialize(serializationContext, is, trace);
 
             if (trace != null)
@@ -228,7 +228,7 @@ public class AmfxSerializationTest extends TestCase
 
                 ByteArrayInputStream bis = new ByteArrayInputStream(bout.toByteArray());
 
-                deserializer = new AmfxMessageDeserializer();
+                deserializer = createDeserializer();
                 deserializer.initialize(serializationContext, bis, trace);
 
                 if (trace != null)
@@ -253,6 +253,11 @@ public class AmfxSerializationTest extends TestCase
 
     }
 
+    protected AmfxMessageDeserializer createDeserializer()
+    {
+        return new AmfxMessageDeserializer();
+    }
+
     private DeserializationConfirmation getConfirmation(String resourcePath, String testName) throws IOException
     {
         try
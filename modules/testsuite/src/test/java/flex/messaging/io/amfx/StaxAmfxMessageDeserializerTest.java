@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.io.amfx;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import flex.messaging.MessageException;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.ActionContext;
+import flex.messaging.io.amf.ActionMessage;
+
+/**
+ * Runs the AMFX deserialization test cases through the StAX based
+ * deserializer, and checks that it rejects document type declarations and
+ * external entities as configured by the <code>SerializationContext</code>.
+ */
+public class StaxAmfxMessageDeserializerTest extends AmfxSerializationTest
+{
+    private static final String AMFX_BODY = "<amfx ver=\"3\"><body><string>&greeting;</string></body></amfx>";
+
+    public StaxAmfxMessageDeserializerTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(StaxAmfxMessageDeserializerTest.class);
+    }
+
+    protected AmfxMessageDeserializer createDeserializer()
+    {
+        return new StaxAmfxMessageDeserializer();
+    }
+
+    public void testDoctypeRejected() throws IOException
+    {
+        try
+        {
+            read(new SerializationContext(), "<!DOCTYPE amfx [<!ENTITY greeting \"hello\">]>" + AMFX_BODY);
+            Assert.fail("A DOCTYPE declaration should have been rejected.");
+        }
+        catch (MessageException me)
+        {
+            Assert.assertEquals("Client.Message.Encoding", me.getCode());
+            Assert.assertTrue(me.getMessage().indexOf("DOCTYPE") >= 0);
+        }
+    }
+
+    public void testDoctypeAllowed() throws IOException
+    {
+        SerializationContext context = new SerializationContext();
+        context.allowXmlDoctypeDeclaration = true;
+
+        ActionMessage message = read(context, "<!DOCTYPE amfx [<!ENTITY greeting \"hello\">]>" + AMFX_BODY);
+        Assert.assertEquals("hello", message.getBody(0).getData());
+    }
+
+    public void testExternalEntityRejected() throws Exception
+    {
+        File secret = File.createTempFile("amfx", ".txt");
+        FileOutputStream out = new FileOutputStream(secret);
+        out.write("secret".getBytes("UTF-8"));
+        out.close();
+        try
+        {
+            SerializationContext context = new SerializationContext();
+            context.allowXmlDoctypeDeclaration = true;
+            context.allowXmlExternalEntityExpansion = true;
+
+            ActionMessage message = null;
+            try
+            {
+                message = read(context, "<!DOCTYPE amfx [<!ENTITY greeting SYSTEM \"" + secret.toURI() + "\">]>"
+                        + AMFX_BODY);
+            }
+            catch (MessageException me)
+            {
+                Assert.assertEquals("Client.Message.Encoding", me.getCode());
+            }
+            if (message != null)
+                Assert.assertFalse("secret".equals(message.getBody(0).getData()));
+        }
+        finally
+        {
+            secret.delete();
+        }
+    }
+
+    private ActionMessage read(SerializationContext context, String amfx) throws IOException
+    {
+        SerializationContext.setSerializationContext(context);
+        ActionMessage message = new ActionMessage();
+        ActionContext actionContext = new ActionContext();
+        actionContext.setRequestMessage(message);
+
+        AmfxMessageDeserializer deserializer = createDeserializer();
+        deserializer.initialize(context, new ByteArrayInputStream(amfx.getBytes()), null);
+        deserializer.readMessage(message, actionContext);
+        return message;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.security;
+
+import java.security.Principal;
+import java.util.List;
+
+import javax.servlet.ServletConfig;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import flex.messaging.FlexContext;
+import flex.messaging.FlexSession;
+import flex.messaging.config.SecurityConstraint;
+
+/**
+ * Unit tests for the authorization decision cache of flex.messaging.security.LoginManager
+ */
+public class LoginManagerTest extends TestCase
+{
+    private CountingLoginCommand loginCommand;
+    private LoginManager loginManager;
+    private Principal principal;
+    private SecurityConstraint constraint;
+
+    public LoginManagerTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(LoginManagerTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        loginCommand = new CountingLoginCommand();
+        loginManager = new LoginManager();
+        loginManager.setLoginCommand(loginCommand);
+
+        principal = new TestPrincipal("admin");
+        newSession();
+
+        constraint = new SecurityConstraint("admin-only");
+        constraint.addRole("admins");
+    }
+
+    protected void tearDown() throws Exception
+    {
+        FlexContext.clearThreadLocalObjects();
+        super.tearDown();
+    }
+
+    public void testNotCachedByDefault()
+    {
+        loginManager.checkConstraint(constraint);
+        loginManager.checkConstraint(constraint);
+        Assert.assertEquals(2, loginCommand.authorizations);
+    }
+
+    public void testCachedUntilExpired() throws Exception
+    {
+        loginManager.setAuthorizationCacheTtlMillis(50);
+        loginManager.checkConstraint(constraint);
+        loginManager.checkConstraint(constraint);
+        Assert.assertEquals(1, loginCommand.authorizations);
+
+        // Another constraint is authorized on its own.
+        SecurityConstraint other = new SecurityConstraint("other");
+        other.addRole("admins");
+        loginManager.checkConstraint(other);
+        Assert.assertEquals(2, loginCommand.authorizations);
+
+        Thread.sleep(100);
+        loginManager.checkConstraint(constraint);
+        Assert.assertEquals(3, loginCommand.authorizations);
+    }
+
+    public void testDenialIsCached()
+    {
+        loginManager.setAuthorizationCacheTtlMillis(60000);
+        loginCommand.authorized = false;
+        for (int i = 0; i < 2; i++)
+        {
+            try
+            {
+                loginManager.checkConstraint(constraint);
+                fail("SecurityException expected");
+            }
+            catch (SecurityException e)
+            {
+                Assert.assertEquals(SecurityException.CLIENT_AUTHORIZATION_CODE, e.getCode());
+            }
+        }
+        Assert.assertEquals(1, loginCommand.authorizations);
+    }
+
+    public void testForgottenOnLogout()
+    {
+        loginManager.setAuthorizationCacheTtlMillis(60000);
+        loginManager.checkConstraint(constraint);
+        loginManager.logout();
+        Assert.assertSame(principal, loginCommand.loggedOut);
+
+        newSession();
+        loginManager.checkConstraint(constraint);
+        Assert.assertEquals(2, loginCommand.authorizations);
+    }
+
+    public void testForgottenOnSessionInvalidation()
+    {
+        loginManager.setAuthorizationCacheTtlMillis(60000);
+        loginManager.checkConstraint(constraint);
+        FlexContext.getFlexSession().invalidate();
+
+        newSession();
+        loginManager.checkConstraint(constraint);
+        Assert.assertEquals(2, loginCommand.authorizations);
+    }
+
+    private void newSession()
+    {
+        FlexSession session = new FlexSession()
+        {
+            public boolean isPushSupported()
+            {
+                return false;
+            }
+
+            public String getId()
+            {
+                return "session";
+            }
+        };
+        FlexContext.setThreadLocalSession(session);
+        session.setUserPrincipal(principal);
+    }
+
+    private static final class TestPrincipal implements Principal
+    {
+        private final String name;
+
+        TestPrincipal(String name)
+        {
+            this.name = name;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+    }
+
+    private static final class CountingLoginCommand implements LoginCommand
+    {
+        int authorizations;
+        boolean authorized = true;
+        Principal loggedOut;
+
+        public void start(ServletConfig config)
+        {
+        }
+
+        public void stop()
+        {
+        }
+
+        public Principal doAuthentication(String username, Object credentials)
+        {
+            return new TestPrincipal(username);
+        }
+
+        public boolean doAuthorization(Principal principal, List roles)
+        {
+            authorizations++;
+            return authorized;
+        }
+
+        public boolean logout(Principal principal)
+        {
+            loggedOut = principal;
+            return true;
+        }
+    }
+}
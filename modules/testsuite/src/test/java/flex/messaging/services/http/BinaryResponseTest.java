@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging.services.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.httpclient.methods.GetMethod;
+
+import flex.messaging.messages.AcknowledgeMessage;
+import flex.messaging.messages.HTTPMessage;
+import flex.messaging.services.http.proxy.ProxyContext;
+import flex.messaging.services.http.proxy.ResponseFilter;
+
+public class BinaryResponseTest extends TestCase
+{
+    private static final String TEXT = "héllo";
+    private static final int LARGE_SIZE = 100000;
+    private static final int HUGE_SIZE = 3 * 1024 * 1024;
+
+    private HttpServer server;
+    private HTTPProxyAdapter adapter;
+
+    public BinaryResponseTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(BinaryResponseTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new UpstreamHandler());
+        server.start();
+
+        HTTPProxyDestination destination = new HTTPProxyDestination();
+        destination.setId("proxy");
+        adapter = new HTTPProxyAdapter();
+        adapter.setId("http-proxy");
+        adapter.setDestination(destination);
+        adapter.setConnectionManagerSettings(new HTTPConnectionManagerSettings());
+        adapter.setBinaryResponse(true);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        adapter.stop();
+        server.stop(0);
+        super.tearDown();
+    }
+
+    public void testByteOrderMarkRemoved() throws Exception
+    {
+        AcknowledgeMessage ack = get("/bom");
+        Assert.assertTrue(Arrays.equals(TEXT.getBytes("UTF-8"), (byte[])ack.getBody()));
+        Assert.assertEquals("UTF-8", ack.getHeader("responseCharset"));
+    }
+
+    public void testCharsetFromContentType() throws Exception
+    {
+        AcknowledgeMessage ack = get("/latin");
+        Assert.assertTrue(Arrays.equals(TEXT.getBytes("ISO-8859-1"), (byte[])ack.getBody()));
+        Assert.assertEquals("ISO-8859-1", ack.getHeader("responseCharset"));
+    }
+
+    public void testBodyOfUnknownLength()
+    {
+        byte[] body = (byte[])get("/large").getBody();
+        Assert.assertEquals(LARGE_SIZE, body.length);
+        for (int i = 0; i < body.length; i++)
+            Assert.assertEquals((byte)i, body[i]);
+    }
+
+    public void testBodyLargerThanInitialArray()
+    {
+        byte[] body = (byte[])get("/huge").getBody();
+        Assert.assertEquals(HUGE_SIZE, body.length);
+        for (int i = 0; i < body.length; i++)
+            Assert.assertEquals((byte)i, body[i]);
+    }
+
+    public void testContentLengthNotTrusted() throws Exception
+    {
+        final ProxyContext context = new ProxyContext();
+        context.setHttpMethod(new GetMethod("http://127.0.0.1/"));
+        final byte[] text = TEXT.getBytes("UTF-8");
+        new ResponseFilter()
+        {
+            {
+                // Would allocate 2 GB if the array were sized by the content length.
+                writeResponseAsBytes(new ByteArrayInputStream(text), Integer.MAX_VALUE, context);
+            }
+        };
+
+        Assert.assertTrue(Arrays.equals(text, (byte[])context.getResponse()));
+    }
+
+    public void testStringResponseByDefault()
+    {
+        adapter.setBinaryResponse(false);
+
+        AcknowledgeMessage ack = get("/latin");
+        Assert.assertEquals(TEXT, ack.getBody());
+        Assert.assertNull(ack.getHeader("responseCharset"));
+    }
+
+    private AcknowledgeMessage get(String path)
+    {
+        HTTPMessage message = new HTTPMessage();
+        message.setUrl("http://127.0.0.1:" + server.getAddress().getPort() + path);
+        message.setMethod("GET");
+        message.setContentType(HTTPProxyAdapter.CONTENT_TYPE_FORM);
+        return (AcknowledgeMessage)adapter.invoke(message);
+    }
+
+    /**
+     * Replies with the body selected by the request path.
+     */
+    private static class UpstreamHandler implements HttpHandler
+    {
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            String path = exchange.getRequestURI().getPath();
+            byte[] body;
+            long length;
+            if ("/bom".equals(path))
+            {
+                byte[] text = TEXT.getBytes("UTF-8");
+                body = new byte[text.length + 3];
+                body[0] = (byte)0xEF;
+                body[1] = (byte)0xBB;
+                body[2] = (byte)0xBF;
+                System.arraycopy(text, 0, body, 3, text.length);
+                length = body.length;
+                exchange.getResponseHeaders().set("Content-Type", "text/plain");
+            }
+            else if ("/latin".equals(path))
+            {
+                body = TEXT.getBytes("ISO-8859-1");
+                length = body.length;
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=ISO-8859-1");
+            }
+            else if ("/huge".equals(path))
+            {
+                body = new byte[HUGE_SIZE];
+                for (int i = 0; i < body.length; i++)
+                    body[i] = (byte)i;
+                length = body.length;
+                exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            }
+            else
+            {
+                body = new byte[LARGE_SIZE];
+                for (int i = 0; i < body.length; i++)
+                    body[i] = (byte)i;
+                // Chunked, so that the length is not known in advance.
+                length = 0;
+                exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            }
+
+            exchange.sendResponseHeaders(200, length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging.services.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import flex.messaging.FlexContext;
+import flex.messaging.MessageException;
+import flex.messaging.messages.AcknowledgeMessage;
+import flex.messaging.messages.HTTPMessage;
+
+public class BoundedHTTPProxyAdapterTest extends TestCase
+{
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private CountDownLatch release;
+    private BoundedHTTPProxyAdapter adapter;
+
+    public BoundedHTTPProxyAdapterTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(BoundedHTTPProxyAdapterTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        release = new CountDownLatch(1);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/hello", new BodyHandler("hello", null));
+        server.createContext("/slow", new BodyHandler("slow", release));
+        server.createContext("/echo", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                String value = exchange.getRequestHeaders().getFirst("X-Echo");
+                new BodyHandler(String.valueOf(value), null).handle(exchange);
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        HTTPProxyDestination destination = new HTTPProxyDestination();
+        destination.setId("proxy");
+        adapter = new BoundedHTTPProxyAdapter();
+        adapter.setId("async-proxy");
+        adapter.setDestination(destination);
+        adapter.setConnectionManagerSettings(new HTTPConnectionManagerSettings());
+    }
+
+    protected void tearDown() throws Exception
+    {
+        release.countDown();
+        FlexContext.clearThreadLocalObjects();
+        adapter.stop();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        super.tearDown();
+    }
+
+    public void testInvokeReturnsResponse()
+    {
+        AcknowledgeMessage response = (AcknowledgeMessage)adapter.invoke(createMessage("/hello"));
+        Assert.assertEquals("hello", response.getBody());
+    }
+
+    public void testInvokeAsyncReportsResponse() throws Exception
+    {
+        RecordingListener listener = new RecordingListener();
+        adapter.invokeAsync(createMessage("/hello"), listener);
+
+        Assert.assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+        Assert.assertNull(listener.exception);
+        Assert.assertEquals("hello", listener.response.getBody());
+    }
+
+    public void testInvokeTimesOut()
+    {
+        adapter.setRequestTimeoutMillis(100);
+        try
+        {
+            adapter.invoke(createMessage("/slow"));
+            fail("MessageException expected");
+        }
+        catch (MessageException e)
+        {
+            Assert.assertEquals(504, e.getStatusCode());
+        }
+    }
+
+    public void testRequestsRejectedWhenTooManyPending() throws Exception
+    {
+        adapter.setUpstreamThreads(1);
+        adapter.setMaxPendingRequests(1);
+
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        adapter.invokeAsync(createMessage("/slow"), first);
+        adapter.invokeAsync(createMessage("/slow"), second);
+        try
+        {
+            adapter.invokeAsync(createMessage("/slow"), new RecordingListener());
+            fail("MessageException expected");
+        }
+        catch (MessageException e)
+        {
+            Assert.assertEquals(503, e.getStatusCode());
+        }
+
+        release.countDown();
+        Assert.assertTrue(first.latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(second.latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("slow", second.response.getBody());
+    }
+
+    public void testFiltersReadSnapshotOfClientRequest() throws Exception
+    {
+        adapter.setUpstreamThreads(1);
+        RecyclableRequest request = new RecyclableRequest("X-Echo", "snapshot");
+        FlexContext.setThreadLocalHttpRequest(request.proxy);
+
+        // The echo request waits behind the slow one until the client request has been recycled.
+        RecordingListener slow = new RecordingListener();
+        RecordingListener echo = new RecordingListener();
+        adapter.invokeAsync(createMessage("/slow"), slow);
+        adapter.invokeAsync(createMessage("/echo"), echo);
+        request.recycled = true;
+        release.countDown();
+
+        Assert.assertTrue(echo.latch.await(5, TimeUnit.SECONDS));
+        Assert.assertNull(echo.exception);
+        Assert.assertEquals("snapshot", echo.response.getBody());
+    }
+
+    private HTTPMessage createMessage(String path)
+    {
+        HTTPMessage message = new HTTPMessage();
+        message.setUrl("http://127.0.0.1:" + server.getAddress().getPort() + path);
+        message.setMethod("GET");
+        message.setContentType(HTTPProxyAdapter.CONTENT_TYPE_FORM);
+        return message;
+    }
+
+    /**
+     * Replies with a fixed body, optionally once a latch is released.
+     */
+    private static class BodyHandler implements HttpHandler
+    {
+        private final byte[] body;
+        private final CountDownLatch release;
+
+        BodyHandler(String body, CountDownLatch release)
+        {
+            this.body = body.getBytes();
+            this.release = release;
+        }
+
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            try
+            {
+                if (release != null)
+                    release.await(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+    }
+
+    /**
+     * A client request with one header that fails once the container has recycled it.
+     */
+    private static class RecyclableRequest implements InvocationHandler
+    {
+        final HttpServletRequest proxy;
+        final String header;
+        final String value;
+        volatile boolean recycled;
+
+        RecyclableRequest(String header, String value)
+        {
+            this.header = header;
+            this.value = value;
+            proxy = (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class[] {HttpServletRequest.class}, this);
+        }
+
+        public Object invoke(Object p, Method method, Object[] args)
+        {
+            if (recycled)
+                throw new IllegalStateException("The request has been recycled.");
+
+            String name = method.getName();
+            if ("getHeaderNames".equals(name))
+                return Collections.enumeration(Collections.singletonList(header));
+            if ("getHeaders".equals(name))
+                return Collections.enumeration(header.equalsIgnoreCase((String)args[0])
+                        ? Collections.singletonList(value) : Collections.<String>emptyList());
+            if ("getHeader".equals(name))
+                return header.equalsIgnoreCase((String)args[0]) ? value : null;
+            if ("getRequestURL".equals(name))
+                return new StringBuffer("http://localhost:8400/messagebroker/amf");
+            if ("getScheme".equals(name))
+                return "http";
+            if ("getServerName".equals(name))
+                return "localhost";
+            if ("getServerPort".equals(name))
+                return Integer.valueOf(8400);
+            if ("isSecure".equals(name))
+                return Boolean.FALSE;
+            return null;
+        }
+    }
+
+    private static class RecordingListener implements ProxyResponseListener
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile AcknowledgeMessage response;
+        volatile MessageException exception;
+
+        public void responseReceived(AcknowledgeMessage response)
+        {
+            this.response = response;
+            latch.countDown();
+        }
+
+        public void requestFailed(MessageException exception)
+        {
+            this.exception = exception;
+            latch.countDown();
+        }
+    }
+}
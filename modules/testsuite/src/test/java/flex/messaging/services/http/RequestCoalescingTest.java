@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging.services.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import flex.messaging.messages.AcknowledgeMessage;
+import flex.messaging.messages.HTTPMessage;
+
+public class RequestCoalescingTest extends TestCase
+{
+    private static final int CLIENTS = 5;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final AtomicInteger upstreamRequests = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HTTPProxyAdapter adapter;
+
+    public RequestCoalescingTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(RequestCoalescingTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new SlowHandler());
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        HTTPProxyDestination destination = new HTTPProxyDestination();
+        destination.setId("proxy");
+        adapter = new HTTPProxyAdapter();
+        adapter.setId("http-proxy");
+        adapter.setDestination(destination);
+        HTTPConnectionManagerSettings connectionSettings = new HTTPConnectionManagerSettings();
+        connectionSettings.setDefaultMaxConnectionsPerHost(CLIENTS);
+        adapter.setConnectionManagerSettings(connectionSettings);
+        adapter.setCoalesceRequests(true);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        release.countDown();
+        adapter.stop();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        super.tearDown();
+    }
+
+    public void testConcurrentRequestsShareUpstreamRequest() throws Exception
+    {
+        List<Client> clients = startClients(null, "/shared");
+        awaitUpstreamRequests(1);
+        // Give the other clients time to join the request in flight.
+        Thread.sleep(300);
+        release.countDown();
+
+        for (Client client : clients)
+            Assert.assertEquals("shared", client.await());
+        Assert.assertEquals(1, upstreamRequests.get());
+    }
+
+    public void testPrivateResponseNotShared() throws Exception
+    {
+        assertNotShared("/private");
+    }
+
+    public void testResponseVaryingOnAllHeadersNotShared() throws Exception
+    {
+        assertNotShared("/vary-all");
+    }
+
+    public void testWaitingRequestsSentOnTheirOwnAfterTimeout() throws Exception
+    {
+        adapter.setCoalesceWaitMillis(100);
+        List<Client> clients = startClients(null, "/shared");
+        // The shared request is held until the waiting requests have given up on it.
+        awaitUpstreamRequests(CLIENTS);
+        release.countDown();
+
+        for (Client client : clients)
+            Assert.assertEquals("shared", client.await());
+        Assert.assertEquals(CLIENTS, upstreamRequests.get());
+    }
+
+    public void testRequestsWithCredentialsNotCoalesced() throws Exception
+    {
+        List<Client> clients = startClients("user", "/shared");
+        awaitUpstreamRequests(CLIENTS);
+        release.countDown();
+
+        for (Client client : clients)
+            Assert.assertEquals("shared", client.await());
+        Assert.assertEquals(CLIENTS, upstreamRequests.get());
+    }
+
+    public void testDifferentHeadersNotCoalesced() throws Exception
+    {
+        Client english = new Client(createMessage(null, "en", "/shared"));
+        Client french = new Client(createMessage(null, "fr", "/shared"));
+        english.start();
+        french.start();
+        awaitUpstreamRequests(2);
+        release.countDown();
+
+        Assert.assertEquals("shared", english.await());
+        Assert.assertEquals("shared", french.await());
+        Assert.assertEquals(2, upstreamRequests.get());
+    }
+
+    /**
+     * Asserts that the clients waiting for the first request send their own
+     * requests once its response arrives.
+     */
+    private void assertNotShared(String path) throws Exception
+    {
+        List<Client> clients = startClients(null, path);
+        awaitUpstreamRequests(1);
+        Thread.sleep(300);
+        Assert.assertEquals(1, upstreamRequests.get());
+        release.countDown();
+
+        for (Client client : clients)
+            Assert.assertEquals("shared", client.await());
+        Assert.assertEquals(CLIENTS, upstreamRequests.get());
+    }
+
+    private List<Client> startClients(String username, String path)
+    {
+        List<Client> clients = new ArrayList<Client>();
+        for (int i = 0; i < CLIENTS; i++)
+        {
+            Client client = new Client(createMessage(username, null, path));
+            client.start();
+            clients.add(client);
+        }
+        return clients;
+    }
+
+    private void awaitUpstreamRequests(int count) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (upstreamRequests.get() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        Assert.assertEquals(count, upstreamRequests.get());
+    }
+
+    private HTTPMessage createMessage(String username, String language, String path)
+    {
+        HTTPMessage message = new HTTPMessage();
+        message.setUrl("http://127.0.0.1:" + server.getAddress().getPort() + path);
+        message.setMethod("GET");
+        message.setContentType(HTTPProxyAdapter.CONTENT_TYPE_FORM);
+        if (username != null)
+        {
+            message.setRemoteUsername(username);
+            message.setRemotePassword("password");
+        }
+        if (language != null)
+            message.setHttpHeaders(Collections.singletonMap("X-Language", language));
+        return message;
+    }
+
+    /**
+     * Proxies a message on its own thread.
+     */
+    private class Client extends Thread
+    {
+        private final HTTPMessage message;
+        private volatile Object response;
+        private volatile Throwable failure;
+
+        Client(HTTPMessage message)
+        {
+            this.message = message;
+        }
+
+        public void run()
+        {
+            try
+            {
+                response = ((AcknowledgeMessage)adapter.invoke(message)).getBody();
+            }
+            catch (Throwable t)
+            {
+                failure = t;
+            }
+        }
+
+        Object await() throws InterruptedException
+        {
+            join(5000);
+            if (failure != null)
+                throw new AssertionError(failure);
+            return response;
+        }
+    }
+
+    /**
+     * Replies once the test releases the requests.
+     */
+    private class SlowHandler implements HttpHandler
+    {
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            upstreamRequests.incrementAndGet();
+            try
+            {
+                release.await(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            byte[] body = "shared".getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "text/plain");
+            String path = exchange.getRequestURI().getPath();
+            if ("/private".equals(path))
+                exchange.getResponseHeaders().set("Cache-Control", "private");
+            else if ("/vary-all".equals(path))
+                exchange.getResponseHeaders().set("Vary", "*");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            exchange.close();
+        }
+    }
+}
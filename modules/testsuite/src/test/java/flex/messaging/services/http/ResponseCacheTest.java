@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging.services.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import flex.messaging.FlexContext;
+import flex.messaging.messages.AcknowledgeMessage;
+import flex.messaging.messages.HTTPMessage;
+import flex.messaging.services.http.proxy.ProxyConstants;
+import flex.messaging.services.http.proxy.ResponseCache;
+
+public class ResponseCacheTest extends TestCase
+{
+    private HttpServer server;
+    private final AtomicInteger upstreamRequests = new AtomicInteger();
+    private HTTPProxyAdapter adapter;
+    private File diskDirectory;
+
+    public ResponseCacheTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(ResponseCacheTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new UpstreamHandler());
+        server.start();
+
+        HTTPProxyDestination destination = new HTTPProxyDestination();
+        destination.setId("proxy");
+        adapter = new HTTPProxyAdapter();
+        adapter.setId("http-proxy");
+        adapter.setDestination(destination);
+        adapter.setConnectionManagerSettings(new HTTPConnectionManagerSettings());
+        adapter.setResponseCacheSettings(new ResponseCacheSettings());
+    }
+
+    protected void tearDown() throws Exception
+    {
+        FlexContext.clearThreadLocalObjects();
+        adapter.stop();
+        server.stop(0);
+        if (diskDirectory != null)
+            diskDirectory.delete();
+        super.tearDown();
+    }
+
+    public void testFreshResponseServedFromCache()
+    {
+        Assert.assertEquals("fresh", get("/fresh?maxAge=60"));
+        Assert.assertEquals("fresh", get("/fresh?maxAge=60"));
+
+        ResponseCache cache = adapter.getResponseCache();
+        Assert.assertEquals(1, upstreamRequests.get());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    public void testNoStoreResponseNotCached()
+    {
+        get("/nostore");
+        get("/nostore");
+
+        Assert.assertEquals(2, upstreamRequests.get());
+        Assert.assertEquals(0, adapter.getResponseCache().getEntryCount());
+    }
+
+    public void testStaleResponseRevalidated()
+    {
+        Assert.assertEquals("etag", get("/etag"));
+        Assert.assertEquals("etag", get("/etag"));
+
+        ResponseCache cache = adapter.getResponseCache();
+        Assert.assertEquals(2, upstreamRequests.get());
+        Assert.assertEquals(1, cache.getRevalidationCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    public void testResponseVariesOnRequestHeader()
+    {
+        Assert.assertEquals("en", get("/vary", "en"));
+        Assert.assertEquals("fr", get("/vary", "fr"));
+        Assert.assertEquals("fr", get("/vary", "fr"));
+
+        Assert.assertEquals(2, upstreamRequests.get());
+    }
+
+    public void testPostInvalidatesCachedResponse()
+    {
+        get("/fresh?maxAge=60");
+        invoke("/fresh?maxAge=60", "POST", null);
+        get("/fresh?maxAge=60");
+
+        Assert.assertEquals(3, upstreamRequests.get());
+    }
+
+    public void testLargeResponseNotCached()
+    {
+        ResponseCacheSettings settings = new ResponseCacheSettings();
+        settings.setMaxEntrySize(2);
+        adapter.setResponseCacheSettings(settings);
+
+        Assert.assertEquals("fresh", get("/fresh?maxAge=60"));
+        Assert.assertEquals("fresh", get("/fresh?maxAge=60"));
+        Assert.assertEquals(2, upstreamRequests.get());
+    }
+
+    public void testRequestWithCookiesNotCached()
+    {
+        get("/fresh?maxAge=60");
+
+        // A cookie the proxy forwards to the target, named with its domain and path hashes.
+        String name = ProxyConstants.COOKIE_PREFIX + ProxyConstants.COOKIE_SEPARATOR + "127.0.0.1".hashCode()
+                + ProxyConstants.COOKIE_SEPARATOR + "/".hashCode() + ProxyConstants.COOKIE_SEPARATOR + "id";
+        FlexContext.setThreadLocalHttpRequest(createClientRequest(new Cookie(name, "user")));
+        Assert.assertEquals("fresh", get("/fresh?maxAge=60"));
+        Assert.assertEquals("fresh", get("/fresh?maxAge=60"));
+
+        Assert.assertEquals(3, upstreamRequests.get());
+        Assert.assertEquals(0, adapter.getResponseCache().getHitCount());
+    }
+
+    public void testEvictedResponseReadFromDisk() throws Exception
+    {
+        diskDirectory = File.createTempFile("response-cache", "");
+        diskDirectory.delete();
+
+        ResponseCacheSettings settings = new ResponseCacheSettings();
+        settings.setMaxMemorySize(1);
+        settings.setDiskDirectory(diskDirectory.getPath());
+        adapter.setResponseCacheSettings(settings);
+
+        get("/fresh?maxAge=60");
+        ResponseCache cache = adapter.getResponseCache();
+        Assert.assertEquals(1, cache.getEntryCount());
+        Assert.assertEquals(0, cache.getMemorySize());
+        Assert.assertTrue(cache.getDiskSize() > 0);
+
+        Assert.assertEquals("fresh", get("/fresh?maxAge=60"));
+        Assert.assertEquals(1, upstreamRequests.get());
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+
+    private String get(String path)
+    {
+        return get(path, null);
+    }
+
+    private String get(String path, String language)
+    {
+        return invoke(path, "GET", language);
+    }
+
+    private String invoke(String path, String method, String language)
+    {
+        HTTPMessage message = new HTTPMessage();
+        message.setUrl("http://127.0.0.1:" + server.getAddress().getPort() + path);
+        message.setMethod(method);
+        message.setContentType(HTTPProxyAdapter.CONTENT_TYPE_FORM);
+        if (language != null)
+            message.setHttpHeaders(Collections.singletonMap("X-Language", language));
+        AcknowledgeMessage response = (AcknowledgeMessage)adapter.invoke(message);
+        return (String)response.getBody();
+    }
+
+    /**
+     * Returns a client request that only has cookies.
+     */
+    private static HttpServletRequest createClientRequest(final Cookie... cookies)
+    {
+        return (HttpServletRequest)Proxy.newProxyInstance(ResponseCacheTest.class.getClassLoader(),
+                new Class[] {HttpServletRequest.class}, new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                String name = method.getName();
+                if ("getCookies".equals(name))
+                    return cookies;
+                if ("getRequestURL".equals(name))
+                    return new StringBuffer("http://localhost:8400/messagebroker/amf");
+                if ("getServerName".equals(name))
+                    return "localhost";
+                if ("getHeaderNames".equals(name) || "getHeaders".equals(name))
+                    return Collections.enumeration(Collections.emptyList());
+                if (method.getReturnType() == int.class)
+                    return Integer.valueOf(0);
+                if (method.getReturnType() == boolean.class)
+                    return Boolean.FALSE;
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Replies with the caching headers selected by the request path.
+     */
+    private class UpstreamHandler implements HttpHandler
+    {
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            upstreamRequests.incrementAndGet();
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getQuery();
+            String body = path.substring(1);
+            int status = 200;
+
+            if ("/fresh".equals(path))
+            {
+                exchange.getResponseHeaders().set("Cache-Control", "max-age=" + query.substring("maxAge=".length()));
+            }
+            else if ("/nostore".equals(path))
+            {
+                exchange.getResponseHeaders().set("Cache-Control", "no-store");
+            }
+            else if ("/etag".equals(path))
+            {
+                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+                    status = 304;
+            }
+            else if ("/vary".equals(path))
+            {
+                exchange.getResponseHeaders().set("Cache-Control", "max-age=60");
+                exchange.getResponseHeaders().set("Vary", "X-Language");
+                body = exchange.getRequestHeaders().getFirst("X-Language");
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "text/plain");
+            if (status == 304)
+            {
+                exchange.sendResponseHeaders(304, -1);
+            }
+            else
+            {
+                byte[] bytes = body.getBytes("UTF-8");
+                exchange.sendResponseHeaders(status, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+            }
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging.services.messaging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import flex.messaging.MessageBroker;
+import flex.messaging.cluster.ClusterException;
+import flex.messaging.cluster.ClusterManager;
+import flex.messaging.cluster.TcpClusterTransport;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.services.MessageService;
+import flex.messaging.validators.ClassDeserializationValidator;
+
+public class PeerMessageBatcherTest extends TestCase
+{
+    private static final String DESTINATION = "dest";
+
+    private RecordingClusterManager clusterManager;
+    private PeerMessageBatcher batcher;
+
+    public PeerMessageBatcherTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(PeerMessageBatcherTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        MessageBroker broker = new MessageBroker(false)
+        {
+            public ClusterManager getClusterManager()
+            {
+                return clusterManager;
+            }
+        };
+        clusterManager = new RecordingClusterManager(broker);
+
+        MessageService service = new MessageService();
+        service.setId("message-service");
+        service.setMessageBroker(broker);
+        batcher = new PeerMessageBatcher(service);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        batcher.stop();
+        super.tearDown();
+    }
+
+    public void testMessagesCoalescedPerPeer() throws Exception
+    {
+        List<Object> peers = Arrays.<Object>asList("peer1", "peer2");
+        batcher.send(DESTINATION, createMessage("a"), true, peers, 60000);
+        batcher.send(DESTINATION, createMessage("b"), false, Collections.<Object>singletonList("peer2"), 60000);
+        batcher.send(DESTINATION, createMessage("c"), true, peers, 60000);
+        Assert.assertEquals(2, batcher.getPendingBatchCount());
+        Assert.assertTrue(clusterManager.operations.isEmpty());
+
+        batcher.flush();
+        Assert.assertEquals(0, batcher.getPendingBatchCount());
+        Assert.assertEquals(2, clusterManager.operations.size());
+
+        for (Operation op : clusterManager.operations)
+        {
+            Assert.assertEquals(ClusterManager.OPERATION_PUSH_MESSAGES_FROM_PEER_TO_PEER, op.name);
+            Assert.assertEquals(DESTINATION, op.destination);
+            if ("peer1".equals(op.address))
+            {
+                assertBatch(op.batch, new String[] {"a", "c"}, new boolean[] {true, true});
+            }
+            else
+            {
+                Assert.assertEquals("peer2", op.address);
+                assertBatch(op.batch, new String[] {"a", "b", "c"}, new boolean[] {true, false, true});
+            }
+        }
+    }
+
+    public void testBroadcastBatch() throws Exception
+    {
+        batcher.send(DESTINATION, createMessage("a"), false, null, 60000);
+        batcher.send(DESTINATION, createMessage("b"), false, null, 60000);
+        batcher.flush();
+
+        Assert.assertEquals(1, clusterManager.operations.size());
+        Operation op = clusterManager.operations.get(0);
+        Assert.assertEquals(ClusterManager.OPERATION_PUSH_MESSAGES_FROM_PEER, op.name);
+        Assert.assertNull(op.address);
+        assertBatch(op.batch, new String[] {"a", "b"}, new boolean[] {false, false});
+    }
+
+    public void testBatchSentWhenWindowCloses() throws Exception
+    {
+        batcher.send(DESTINATION, createMessage("a"), true, Collections.<Object>singletonList("peer1"), 20);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (clusterManager.operations.isEmpty() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        Assert.assertEquals(1, clusterManager.operations.size());
+        Assert.assertEquals(0, batcher.getPendingBatchCount());
+        assertBatch(clusterManager.operations.get(0).batch, new String[] {"a"}, new boolean[] {true});
+    }
+
+    public void testFullBatchSentImmediately() throws Exception
+    {
+        for (int i = 0; i < PeerMessageBatcher.MAX_BATCH_SIZE; i++)
+            batcher.send(DESTINATION, createMessage("m" + i), true, null, 60000);
+
+        Assert.assertEquals(1, clusterManager.operations.size());
+        Assert.assertEquals(PeerMessageBatcher.MAX_BATCH_SIZE, clusterManager.operations.get(0).batch.size());
+        Assert.assertEquals(0, batcher.getPendingBatchCount());
+    }
+
+    public void testBatchesSentInOrder() throws Exception
+    {
+        for (int i = 0; i < 2 * PeerMessageBatcher.MAX_BATCH_SIZE + 1; i++)
+            batcher.send(DESTINATION, createMessage("m" + i), true, null, 60000);
+        batcher.flush();
+
+        Assert.assertEquals(3, clusterManager.operations.size());
+        int next = 0;
+        for (Operation op : clusterManager.operations)
+        {
+            for (int i = 0; i < op.batch.size(); i++)
+                Assert.assertEquals("m" + next++, ((AsyncMessage)op.batch.getMessage(i)).getBody());
+        }
+    }
+
+    public void testBatchesStayWithinFrameSize() throws Exception
+    {
+        // 40 messages of about 100 KB fit in one batch by count, but not in one frame.
+        char[] chars = new char[100 * 1024];
+        Arrays.fill(chars, 'x');
+        String padding = new String(chars);
+        for (int i = 0; i < 40; i++)
+        {
+            AsyncMessage message = createMessage("m" + i);
+            message.setHeader("padding", padding);
+            batcher.send(DESTINATION, message, true, null, 60000);
+        }
+        batcher.flush();
+
+        Assert.assertTrue(clusterManager.operations.size() > 1);
+        int next = 0;
+        for (Operation op : clusterManager.operations)
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(op.batch);
+            out.close();
+            Assert.assertTrue(bytes.size() < TcpClusterTransport.MAX_FRAME_SIZE);
+
+            for (int i = 0; i < op.batch.size(); i++)
+                Assert.assertEquals("m" + next++, ((AsyncMessage)op.batch.getMessage(i)).getBody());
+        }
+        Assert.assertEquals(40, next);
+    }
+
+    public void testSendAfterStopRejected()
+    {
+        batcher.stop();
+        try
+        {
+            batcher.send(DESTINATION, createMessage("a"), true, null, 60000);
+            fail("ClusterException expected");
+        }
+        catch (ClusterException ce)
+        {
+            Assert.assertEquals(10224, ce.getNumber());
+        }
+        Assert.assertEquals(0, batcher.getPendingBatchCount());
+    }
+
+    public void testApplicationTypesRequireValidator() throws Exception
+    {
+        AsyncMessage message = createMessage(null);
+        message.setBody(new AtomicInteger(7));
+        PeerMessageBatch batch = new PeerMessageBatch(new byte[][] {PeerMessageBatch.serialize(message)}, new boolean[] {true});
+        try
+        {
+            batch.getMessage(0);
+            fail("InvalidClassException expected");
+        }
+        catch (InvalidClassException e)
+        {
+            // Expected.
+        }
+
+        ClassDeserializationValidator validator = new ClassDeserializationValidator();
+        validator.initialize(null, null);
+        Assert.assertEquals(7, ((AtomicInteger)((AsyncMessage)batch.getMessage(0, validator)).getBody()).get());
+    }
+
+    private void assertBatch(PeerMessageBatch batch, String[] bodies, boolean[] evalSelectors) throws Exception
+    {
+        Assert.assertEquals(bodies.length, batch.size());
+        for (int i = 0; i < bodies.length; i++)
+        {
+            AsyncMessage message = (AsyncMessage)batch.getMessage(i);
+            Assert.assertEquals(bodies[i], message.getBody());
+            Assert.assertEquals(DESTINATION, message.getDestination());
+            Assert.assertEquals(evalSelectors[i], batch.isEvalSelector(i));
+        }
+    }
+
+    private AsyncMessage createMessage(String body)
+    {
+        AsyncMessage message = new AsyncMessage();
+        message.setDestination(DESTINATION);
+        message.setBody(body);
+        return message;
+    }
+
+    private static class Operation
+    {
+        String name;
+        String destination;
+        PeerMessageBatch batch;
+        Object address;
+    }
+
+    /**
+     * Records the service operations sent to the cluster.
+     */
+    private static class RecordingClusterManager extends ClusterManager
+    {
+        final List<Operation> operations = Collections.synchronizedList(new ArrayList<Operation>());
+
+        RecordingClusterManager(MessageBroker broker)
+        {
+            super(broker);
+        }
+
+        public void invokeServiceOperation(String serviceType, String destinationName,
+                                           String operationName, Object[] params)
+        {
+            record(destinationName, operationName, params, null);
+        }
+
+        public void invokePeerToPeerOperation(String serviceType, String destinationName,
+                                              String operationName, Object[] params, Object targetAddress)
+        {
+            record(destinationName, operationName, params, targetAddress);
+        }
+
+        private void record(String destinationName, String operationName, Object[] params, Object address)
+        {
+            Operation op = new Operation();
+            op.name = operationName;
+            op.destination = destinationName;
+            op.batch = (PeerMessageBatch)params[0];
+            op.address = address;
+            operations.add(op);
+        }
+    }
+}
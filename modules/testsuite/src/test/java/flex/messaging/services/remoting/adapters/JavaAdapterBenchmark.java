@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging.services.remoting.adapters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import flex.messaging.MessageBroker;
+import flex.messaging.messages.RemotingMessage;
+import flex.messaging.services.RemotingService;
+import flex.messaging.services.remoting.RemotingDestination;
+
+/**
+ * JMH benchmark of <code>JavaAdapter.invoke</code> for small-argument methods,
+ * comparing the method handle and reflection invocation strategies.
+ *
+ * Run from the testsuite module after <code>mvn test-compile</code> with
+ * <code>java -cp target/test-classes:&lt;test classpath&gt; org.openjdk.jmh.Main JavaAdapterBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JavaAdapterBenchmark
+{
+    @Param({JavaAdapter.METHOD_INVOCATION_METHOD_HANDLE, JavaAdapter.METHOD_INVOCATION_REFLECTION})
+    public String methodInvocation;
+
+    private JavaAdapter adapter;
+    private RemotingMessage noArgMessage;
+    private RemotingMessage intArgsMessage;
+    private RemotingMessage stringArgsMessage;
+
+    @Setup
+    public void setUp()
+    {
+        MessageBroker broker = new MessageBroker(false);
+        broker.initThreadLocals();
+
+        RemotingService service = new RemotingService();
+        service.setId("remoting-service");
+        broker.addService(service);
+
+        RemotingDestination destination = new RemotingDestination();
+        destination.setId("echo");
+        destination.setSource(JavaAdapterTest.EchoService.class.getName());
+        destination.setService(service);
+
+        adapter = new JavaAdapter();
+        adapter.setId("java-object");
+        adapter.setDestination(destination);
+        adapter.setMethodInvocation(methodInvocation);
+
+        noArgMessage = createMessage("hello");
+        intArgsMessage = createMessage("add", new Integer(2), new Integer(3));
+        stringArgsMessage = createMessage("concat", "a", "b");
+    }
+
+    @Benchmark
+    public Object invokeNoArgs()
+    {
+        return adapter.invoke(noArgMessage);
+    }
+
+    @Benchmark
+    public Object invokeIntArgs()
+    {
+        return adapter.invoke(intArgsMessage);
+    }
+
+    @Benchmark
+    public Object invokeStringArgs()
+    {
+        return adapter.invoke(stringArgsMessage);
+    }
+
+    private static RemotingMessage createMessage(String operation, Object... args)
+    {
+        RemotingMessage message = new RemotingMessage();
+        message.setOperation(operation);
+        List parameters = new ArrayList();
+        for (Object arg : args)
+            parameters.add(arg);
+        message.setParameters(parameters);
+        return message;
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flex.messaging.services.remoting.adapters;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import flex.messaging.MessageBroker;
+import flex.messaging.MessageException;
+import flex.messaging.config.ConfigMap;
+import flex.messaging.config.ConfigurationException;
+import flex.messaging.io.amf.SelfContainedAmf3Value;
+import flex.messaging.messages.RemotingMessage;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.services.RemotingService;
+import flex.messaging.services.remoting.RemotingDestination;
+import flex.messaging.util.MethodMatcher;
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class JavaAdapterTest extends TestCase
+{
+    protected MessageBroker broker;
+    protected RemotingDestination destination;
+    protected JavaAdapter adapter;
+
+    public JavaAdapterTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(JavaAdapterTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        broker = new MessageBroker(false);
+        broker.initThreadLocals();
+
+        RemotingService service = new RemotingService();
+        service.setId("remoting-service");
+        broker.addService(service);
+
+        destination = new RemotingDestination();
+        destination.setId("echo");
+        destination.setSource(EchoService.class.getName());
+        destination.setService(service);
+
+        adapter = new JavaAdapter();
+        adapter.setId("java-object");
+        adapter.setDestination(destination);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        super.tearDown();
+    }
+
+    public void testInvokeNoArgs()
+    {
+        Assert.assertEquals("hello", invoke("hello"));
+    }
+
+    public void testInvokePrimitiveArgs()
+    {
+        Assert.assertEquals(new Integer(5), invoke("add", new Integer(2), new Integer(3)));
+    }
+
+    public void testInvokeObjectArgs()
+    {
+        Assert.assertEquals("a-b", invoke("concat", "a", "b"));
+    }
+
+    public void testInvokeNullArg()
+    {
+        Assert.assertEquals("a-null", invoke("concat", "a", null));
+    }
+
+    public void testInvokeVoid()
+    {
+        Assert.assertNull(invoke("noop"));
+    }
+
+    public void testInvokeStatic()
+    {
+        Assert.assertEquals("static", invoke("staticHello"));
+    }
+
+    public void testInvokeThrows()
+    {
+        try
+        {
+            invoke("fail", "boom");
+            fail("MessageException expected");
+        }
+        catch (MessageException me)
+        {
+            Assert.assertTrue(me.getRootCause() instanceof IllegalStateException);
+            Assert.assertEquals("boom", me.getRootCause().getMessage());
+        }
+    }
+
+    public void testInvokeRethrowsMessageException()
+    {
+        try
+        {
+            invoke("failWithMessageException");
+            fail("MessageException expected");
+        }
+        catch (MessageException me)
+        {
+            Assert.assertEquals("Custom.Code", me.getCode());
+        }
+    }
+
+    public void testReflectionInvocation()
+    {
+        adapter.setMethodInvocation(JavaAdapter.METHOD_INVOCATION_REFLECTION);
+        Assert.assertEquals(new Integer(5), invoke("add", new Integer(2), new Integer(3)));
+        Assert.assertNull(invoke("noop"));
+    }
+
+    public void testMethodHandleArgumentMismatch() throws Exception
+    {
+        Method add = EchoService.class.getMethod("add", int.class, int.class);
+        try
+        {
+            new MethodMatcher().invoke(add, new EchoService(), Arrays.asList(null, new Integer(1)));
+            fail("IllegalArgumentException expected");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected, as from Method.invoke.
+        }
+    }
+
+    public void testMethodHandleTargetException() throws Exception
+    {
+        Method fail = EchoService.class.getMethod("fail", String.class);
+        try
+        {
+            new MethodMatcher().invoke(fail, new EchoService(), Arrays.asList("boom"));
+            fail("InvocationTargetException expected");
+        }
+        catch (InvocationTargetException e)
+        {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    public void testInvalidMethodInvocation()
+    {
+        try
+        {
+            adapter.setMethodInvocation("bogus");
+            fail("ConfigurationException expected");
+        }
+        catch (ConfigurationException ce)
+        {
+            Assert.assertEquals(10661, ce.getNumber());
+        }
+    }
+
+    public void testResultCacheHit() throws Exception
+    {
+        addCachedMethod("lookup", 60000);
+        EchoService.lookupCount = 0;
+
+        Object first = invoke("lookup", "a");
+        Object second = invoke("lookup", "a");
+        Assert.assertTrue(first instanceof SelfContainedAmf3Value);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, EchoService.lookupCount);
+        Assert.assertEquals(Arrays.asList(new Object[] {"a", "a"}),
+                ((SelfContainedAmf3Value)first).toObject(new SerializationContext()));
+
+        invoke("lookup", "b");
+        Assert.assertEquals(2, EchoService.lookupCount);
+        Assert.assertEquals(2, adapter.getResultCache().getEntryCount());
+        Assert.assertEquals(1, adapter.getResultCache().getHitCount());
+        Assert.assertEquals(2, adapter.getResultCache().getMissCount());
+    }
+
+    public void testResultCacheExpiry() throws Exception
+    {
+        addCachedMethod("lookup", 1);
+        EchoService.lookupCount = 0;
+
+        invoke("lookup", "a");
+        Thread.sleep(5);
+        invoke("lookup", "a");
+        Assert.assertEquals(2, EchoService.lookupCount);
+    }
+
+    public void testResultCacheEviction()
+    {
+        addCachedMethod("lookup", 60000);
+        adapter.getResultCache().setMaxEntries(2);
+        EchoService.lookupCount = 0;
+
+        invoke("lookup", "a");
+        invoke("lookup", "b");
+        invoke("lookup", "a");
+        invoke("lookup", "c"); // Evicts "b", the least recently used.
+        invoke("lookup", "a");
+        Assert.assertEquals(3, EchoService.lookupCount);
+        invoke("lookup", "b");
+        Assert.assertEquals(4, EchoService.lookupCount);
+        Assert.assertEquals(2, adapter.getResultCache().getEvictedCount());
+    }
+
+    public void testResultCacheSkipsSharedReferences()
+    {
+        addCachedMethod("lookupShared", 60000);
+        Object result = invoke("lookupShared");
+        Assert.assertTrue(result instanceof List);
+        Assert.assertEquals(0, adapter.getResultCache().getEntryCount());
+    }
+
+    public void testResultCacheConfiguration()
+    {
+        ConfigMap method = new ConfigMap();
+        method.addProperty("name", "lookup");
+        method.addProperty("time-to-live-millis", "60000");
+        ConfigMap cache = new ConfigMap();
+        cache.addProperty("max-entries", "10");
+        cache.addProperty("method", method);
+        ConfigMap properties = new ConfigMap();
+        properties.addProperty("result-cache", cache);
+
+        adapter.initialize("java-object", properties);
+        Assert.assertEquals(10, adapter.getResultCache().getMaxEntries());
+        Assert.assertTrue(invoke("lookup", "a") instanceof SelfContainedAmf3Value);
+        Assert.assertEquals("hello", invoke("hello"));
+    }
+
+    public void testCachedMethodInvalidTimeToLive()
+    {
+        try
+        {
+            addCachedMethod("lookup", 0);
+            fail("ConfigurationException expected");
+        }
+        catch (ConfigurationException ce)
+        {
+            Assert.assertEquals(10663, ce.getNumber());
+        }
+    }
+
+    private void addCachedMethod(String name, long timeToLiveMillis)
+    {
+        RemotingMethod method = new RemotingMethod();
+        method.setName(name);
+        method.setResultCacheTimeToLiveMillis(timeToLiveMillis);
+        adapter.addCachedMethod(method);
+    }
+
+    private Object invoke(String operation, Object... args)
+    {
+        RemotingMessage message = new RemotingMessage();
+        message.setOperation(operation);
+        List parameters = new ArrayList(Arrays.asList(args));
+        message.setParameters(parameters);
+        return adapter.invoke(message);
+    }
+
+    public static class EchoService
+    {
+        static int lookupCount;
+
+        public List lookup(String key)
+        {
+            lookupCount++;
+            return new ArrayList(Arrays.asList(new Object[] {key, key}));
+        }
+
+        public List lookupShared()
+        {
+            List shared = new ArrayList();
+            List result = new ArrayList();
+            result.add(shared);
+            result.add(shared);
+            return result;
+        }
+
+        public String hello()
+        {
+            return "hello";
+        }
+
+        public int add(int a, int b)
+        {
+            return a + b;
+        }
+
+        public String concat(String a, String b)
+        {
+            return a + "-" + b;
+        }
+
+        public void noop()
+        {
+        }
+
+        public static String staticHello()
+        {
+            return "static";
+        }
+
+        public void fail(String message)
+        {
+            throw new IllegalStateException(message);
+        }
+
+        public void failWithMessageException()
+        {
+            MessageException me = new MessageException("custom");
+            me.setCode("Custom.Code");
+            throw me;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package flex.messaging.util.concurrent;
+
+import junit.framework.Assert;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit tests for the flex.messaging.util.concurrent.SlidingWindowMax
+ */
+public class SlidingWindowMaxTest extends TestCase
+{
+    private static final long MINUTE = 60000;
+    private static final long HOUR = 60 * MINUTE;
+
+    private SlidingWindowMax window;
+
+    public SlidingWindowMaxTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(SlidingWindowMaxTest.class);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        window = new SlidingWindowMax(HOUR, 60);
+    }
+
+    public void testEmpty()
+    {
+        Assert.assertEquals(Integer.MIN_VALUE, window.getMax(System.currentTimeMillis()));
+    }
+
+    public void testMaxWithinSlot()
+    {
+        long now = 1000 * HOUR;
+        window.record(3, now);
+        window.record(7, now + 10);
+        window.record(5, now + 20);
+        Assert.assertEquals(7, window.getMax(now + 30));
+    }
+
+    public void testWindowSlides()
+    {
+        long start = 1000 * HOUR;
+        window.record(10, start);
+        window.record(4, start + 30 * MINUTE);
+        Assert.assertEquals(10, window.getMax(start + 59 * MINUTE));
+
+        // The first value leaves the window an hour after it was recorded.
+        Assert.assertEquals(4, window.getMax(start + 60 * MINUTE));
+        Assert.assertEquals(Integer.MIN_VALUE, window.getMax(start + 90 * MINUTE));
+    }
+
+    public void testSlotReusedByLaterInterval()
+    {
+        long start = 1000 * HOUR;
+        window.record(10, start);
+        window.record(2, start + HOUR);
+        Assert.assertEquals(2, window.getMax(start + HOUR));
+
+        // A late update for the earlier interval doesn't overwrite the slot.
+        window.record(20, start);
+        Assert.assertEquals(2, window.getMax(start + HOUR));
+    }
+}